@@ -10,14 +10,25 @@ import com.github.juupje.calculator.helpers.exceptions.PluginException;
 
 public enum Algorithms {
 	INTEGRAL(new Integrator()),
+	AINTEGRAL(new AdaptiveIntegrator()),
+	MCINTEGRAL(new MonteCarloIntegrator()),
 	DERIVATIVE(new Deriver()),
 	GRAD(new Gradient()),
+	MAP(new Mapper()),
 	
 	REF(new GaussianElimination()),
 	RREF(new JordanElimination()),
 	LU(new LUDecomposition()),
 	SOLVE(new LUSolver()),
+	CG(new KrylovSolver(KrylovSolver.Method.CG)),
+	BICGSTAB(new KrylovSolver(KrylovSolver.Method.BICGSTAB)),
+	GMRES(new KrylovSolver(KrylovSolver.Method.GMRES)),
 	QR(new QRDecomposition()),
+	CHOL(new CholeskyDecomposition()),
+	LDL(new LDLDecomposition()),
+	SVD(new SingularValueDecomposition(SingularValueDecomposition.Type.SVD)),
+	PINV(new SingularValueDecomposition(SingularValueDecomposition.Type.PINV)),
+	RANK(new SingularValueDecomposition(SingularValueDecomposition.Type.RANK)),
 	DIAG(new Diagonal()),
 	ID(new MatrixGenerator(MatrixGenerator.Type.ID)),
 	FULL(new MatrixGenerator(MatrixGenerator.Type.FULL)),
@@ -25,6 +36,8 @@ public enum Algorithms {
 	ONES(new MatrixGenerator(MatrixGenerator.Type.ONES)),
 	TRACE(new Trace()),
 	EIG(new Eigenvalues()),
+	SPARSE(new Sparse(Sparse.Type.SPARSE)),
+	DENSE(new Sparse(Sparse.Type.DENSE)),
 	
 	NORM(new Norm()),
 	
@@ -0,0 +1,82 @@
+package com.github.juupje.calculator.algorithms;
+
+import com.github.juupje.calculator.helpers.exceptions.ShapeException;
+import com.github.juupje.calculator.mathobjects.MFunction;
+import com.github.juupje.calculator.mathobjects.MReal;
+import com.github.juupje.calculator.mathobjects.MVector;
+import com.github.juupje.calculator.mathobjects.MathObject;
+import com.github.juupje.calculator.mathobjects.Shape;
+
+/**
+ * Evaluates a function element-wise over one or more vectors, using
+ * {@link MFunction#evaluateBatch(double[][], double[])}.
+ * <tt>map(f, v1, ..., vn)</tt> returns the vector <tt>w</tt> with <tt>w_k=f(v1_k, ..., vn_k)</tt>.
+ * @author Joep Geuskens
+ */
+public class Mapper extends Algorithm {
+
+	MFunction f;
+	double[][] args;
+
+	public Mapper() {}
+
+	public Mapper(MFunction f, double[]... args) {
+		this.f = f;
+		this.args = args;
+		prepared = true;
+	}
+
+	@Override
+	public MVector execute() {
+		if(!prepared)
+			return null;
+		double[] out = new double[args.length == 0 ? 0 : args[0].length];
+		f.evaluateBatch(args, out);
+		return new MVector(out);
+	}
+
+	@Override
+	public MVector execute(MathObject... args) {
+		prepare(args);
+		return execute();
+	}
+
+	@Override
+	protected void prepare(MathObject[] args) {
+		super.prepare(args);
+		if(args.length < 2)
+			throw new IllegalArgumentException("Expected at least 2 arguments, type help(map) for more info.");
+		if(!(args[0] instanceof MFunction))
+			throw new IllegalArgumentException("Expected first argument to be a function, got " + argTypesToString(args));
+		f = (MFunction) args[0].evaluate();
+		if(f.getParameters().length != args.length-1)
+			throw new IllegalArgumentException("Function expects " + f.getParameters().length + " arguments, got " + (args.length-1) + " vectors.");
+		this.args = new double[args.length-1][];
+		int size = -1;
+		for(int i = 1; i < args.length; i++) {
+			args[i] = args[i].evaluate();
+			if(!(args[i] instanceof MVector) || !((MVector) args[i]).isOfType(MReal.class))
+				throw new IllegalArgumentException("Argument " + (i+1) + " has to be a vector of real numbers, got " + args[i]);
+			MVector v = (MVector) args[i];
+			if(size == -1)
+				size = v.size();
+			else if(size != v.size())
+				throw new ShapeException("All vectors should have the same size, got " + size + " and " + v.size());
+			double[] column = new double[size];
+			for(int k = 0; k < size; k++)
+				column[k] = ((MReal) v.get(k)).getValue();
+			this.args[i-1] = column;
+		}
+	}
+
+	@Override
+	public Shape shape(Shape... shapes) {
+		if(shapes.length >= 2 && shapes[0].dim() == 0 && shapes[1].dim() == 1) {
+			for(int i = 2; i < shapes.length; i++)
+				if(!shapes[i].equals(shapes[1]))
+					throw new ShapeException("All vectors should have the same size, got shapes " + shapes[1] + " and " + shapes[i]);
+			return shapes[1].copy();
+		}
+		throw new ShapeException("Map algorithm is not defined for arguments with shapes starting with " + shapes[0]);
+	}
+}
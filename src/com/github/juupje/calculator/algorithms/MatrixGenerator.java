@@ -55,6 +55,8 @@ public class MatrixGenerator extends Algorithm {
 				
 				if(rows<=0 || cols<=0)
 					throw new ShapeException("Matrix size cannot be <=0, got shape (" + rows + ", " + cols + ")");
+				if(args[2].getClass() == MReal.class)
+					return MMatrix.full(rows, cols, ((MReal) args[2]).getValue());
 				
 				MathObject[][] matrix = new MathObject[rows][cols];
 				for(int i = 0; i < rows; i++)
@@ -67,13 +69,7 @@ public class MatrixGenerator extends Algorithm {
 					cols = (int) ((MReal) args[1]).getValue();
 				if(rows<=0 || cols<=0)
 					throw new ShapeException("Matrix size cannot be <=0, got shape (" + rows + ", " + cols + ")");
-				
-				MathObject[][] matrix = new MathObject[rows][cols];
-				int k = type==Type.ONES ? 1 : 0;
-				for(int i = 0; i < rows; i++)
-					for(int j = 0; j < cols; j++)
-						matrix[i][j] = new MReal(k);
-				return new MMatrix(matrix);
+				return type==Type.ONES ? MMatrix.full(rows, cols, 1) : MMatrix.zeros(rows, cols);
 			}
 		} else
 			throw new IllegalArgumentException("Expected " + (args.length==1 ? " 1 real positive integer" : (args.length==3 ? " first 2 arguments to be " : "") + " 2 real positive integers") + ", got " + argTypesToString(args));
@@ -1,9 +1,12 @@
 package com.github.juupje.calculator.algorithms;
 
+import com.github.juupje.calculator.algorithms.linalg.DoubleKernels;
 import com.github.juupje.calculator.algorithms.linalg.Eigenvalues;
+import com.github.juupje.calculator.algorithms.linalg.SingularValueSolver;
 import com.github.juupje.calculator.mathobjects.MMatrix;
 import com.github.juupje.calculator.mathobjects.MReal;
 import com.github.juupje.calculator.mathobjects.MScalar;
+import com.github.juupje.calculator.mathobjects.MSparseMatrix;
 import com.github.juupje.calculator.mathobjects.MVector;
 import com.github.juupje.calculator.mathobjects.MathObject;
 import com.github.juupje.calculator.mathobjects.Shape;
@@ -16,6 +19,9 @@ public class Norm extends Algorithm {
 	MathObject mo;
 	
 	public static MReal eucl(MVector v) {
+		double[] x = v.values();
+		if(x != null)
+			return new MReal(Math.sqrt(DoubleKernels.get().sumOfSquares(x, 0, x.length)));
 		try {
 			double d = 0;
 			for(int i = 0; i < v.size(); i++) {
@@ -29,6 +35,8 @@ public class Norm extends Algorithm {
 	}
 	
 	public static MReal eucl(MMatrix m) {
+		if(m.isReal())
+			return new MReal(Math.sqrt(DoubleKernels.get().sumOfSquares(m.values(), 0, m.values().length)));
 		try {
 			double d = 0;
 			int rows = m.shape().rows();
@@ -68,10 +76,28 @@ public class Norm extends Algorithm {
 				}
 				return new MReal(d1);
 			}
+		} else if(mo instanceof MSparseMatrix) {
+			MSparseMatrix s = (MSparseMatrix) mo;
+			switch(type) {
+			case NORM2:
+				mo = s.toMMatrix();
+				return execute();
+			case NORM_FRO:
+				return new MReal(s.normFrobenius());
+			case NORM1:
+				return new MReal(s.norm1());
+			case NORM_INF:
+				return new MReal(s.normInf());
+			}
 		} else {
 			MMatrix m = (MMatrix) mo;
 			switch(type) {
 			case NORM2:
+				if(m.isReal()) {
+					//the largest singular value, which does not require the singular vectors
+					double[] s = new SingularValueSolver(m.values(), m.shape().rows(), m.shape().cols(), false).singularValues();
+					return new MReal(s.length == 0 ? 0 : s[0]);
+				}
 				MVector eigs = new Eigenvalues().execute(m.getHermitian().multiplyLeft(m));
 				double max = 0;
 				for(MathObject eig : eigs.elements())
@@ -120,7 +146,7 @@ public class Norm extends Algorithm {
 		mo = null;
 		prepared = false;
 		if(args.length==1) {
-			if(args[0] instanceof MMatrix)
+			if(args[0] instanceof MMatrix || args[0] instanceof MSparseMatrix)
 				type = NormType.NORM_FRO;
 			else if(args[0] instanceof MVector)
 				type = NormType.NORM2;
@@ -128,7 +154,7 @@ public class Norm extends Algorithm {
 				throw new IllegalArgumentException("Expected vector or matrix, got " + argTypesToString(args));
 			mo = args[0];
 		} else if(args.length==2) {
-			if(args[0] instanceof MVector || args[0] instanceof MMatrix) {
+			if(args[0] instanceof MVector || args[0] instanceof MMatrix || args[0] instanceof MSparseMatrix) {
 				if(args[1] instanceof MReal) {
 					double d = ((MReal) args[1]).getValue();
 					if(d==1)
@@ -14,19 +14,25 @@ import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 import com.github.juupje.calculator.algorithms.Algorithm;
+import com.github.juupje.calculator.algorithms.algebra.einsum.EinSumCache;
+import com.github.juupje.calculator.algorithms.algebra.einsum.EinSumExpression;
+import com.github.juupje.calculator.algorithms.algebra.einsum.RangeTask;
 import com.github.juupje.calculator.algorithms.algebra.range.*;
 import com.github.juupje.calculator.helpers.Tools;
 import com.github.juupje.calculator.helpers.exceptions.EinSumException;
 import com.github.juupje.calculator.helpers.exceptions.IndexException;
 import com.github.juupje.calculator.helpers.exceptions.ShapeException;
 import com.github.juupje.calculator.helpers.exceptions.TreeException;
+import com.github.juupje.calculator.main.Calculator;
 import com.github.juupje.calculator.main.Operator;
 import com.github.juupje.calculator.main.Parser;
 import com.github.juupje.calculator.main.Variable;
 import com.github.juupje.calculator.main.Variables;
 import com.github.juupje.calculator.mathobjects.MExpression;
+import com.github.juupje.calculator.mathobjects.MIndexable;
 import com.github.juupje.calculator.mathobjects.MIndexedObject;
 import com.github.juupje.calculator.mathobjects.MReal;
+import com.github.juupje.calculator.mathobjects.MScalar;
 import com.github.juupje.calculator.mathobjects.MVector;
 import com.github.juupje.calculator.mathobjects.MathObject;
 import com.github.juupje.calculator.mathobjects.Shape;
@@ -42,6 +48,8 @@ public class EinSum extends Algorithm {
 	Set<String> dummyIndices;
 	Set<String> indexNames;
 	Shape shape;
+	boolean reportPath;
+	String signature;
 	DFSTask indexVariablesToInternal = new DFSTask() {
 		@SuppressWarnings("unchecked")
 		@Override
@@ -88,10 +96,35 @@ public class EinSum extends Algorithm {
 		// collect all indices (both free and dummy)
 		indexNames = freeIndices.stream().map(index -> index.getName()).collect(Collectors.toSet());
 		indexNames.addAll(dummyIndices);
+		// reuse the compiled expression of an earlier einsum with the same arguments and operand shapes
+		EinSumExpression expression = EinSumCache.get(signature);
+		if (expression != null) {
+			if (reportPath)
+				Calculator.ioHandler.out("einsum (cached): " + expression.report());
+			MIndexedObject result = expression.evaluate(shape);
+			if (result != null)
+				return result;
+		}
 		// build the tree from the sum string
-		EinSumTree tree = new EinSumTree(
-				new Parser(sum, indexNames.stream().collect(Collectors.toMap(Function.identity(), s -> MReal.class)))
-						.getTree());
+		Tree parsed = new Parser(sum, indexNames.stream().collect(Collectors.toMap(Function.identity(), s -> MReal.class)))
+				.getTree();
+
+		// If the expression is a sum of products of indexed objects, contract them pairwise in the cheapest order
+		if (expression == null) {
+			expression = EinSumExpression.compile(parsed, freeIndices, dummyIndices);
+			if (expression != null) {
+				EinSumCache.put(signature, expression);
+				if (reportPath)
+					Calculator.ioHandler.out("einsum: " + expression.report());
+				MIndexedObject result = expression.evaluate(shape);
+				if (result != null)
+					return result;
+			}
+		}
+		if (reportPath)
+			Calculator.ioHandler.out("einsum: no contraction path, evaluating element by element");
+
+		EinSumTree tree = new EinSumTree(parsed);
 		tree.DFS(indexVariablesToInternal); // prepends a '$' to all index names
 		freeIndices.forEach(index -> index.setName("$" + index.getName()));
 		dummyIndices = dummyIndices.stream().map(s -> "$" + s).collect(Collectors.toSet());
@@ -106,26 +139,22 @@ public class EinSum extends Algorithm {
 		 */
 		tree.expand();		
 		int size = 1;
-		for (Index index : freeIndices)
-			size *= index.getRange().length();
-		MIndexedObject obj = new MIndexedObject(shape);
-
-		IndexIterator indit = new IndexIterator(freeIndices);
-		if (size > 1) {
-			while (true) {
-				// calculate the sum (with einstein summation) for each combination of index
-				// values
-				obj.set(tree.evaluateTree(), indit.getIndices());
-				if (!indit.next())
-					break;
-			}
-		} else {
-			obj.set(tree.evaluateTree(), 0);
+		int[][] values = new int[freeIndices.size()][];
+		for (int k = 0; k < values.length; k++) {
+			IndexRange range = freeIndices.get(k).getRange();
+			range.reset();
+			values[k] = new int[range.length()];
+			for (int j = 0; j < values[k].length; j++)
+				values[k][j] = range.next();
+			range.reset();
+			size *= values[k].length;
 		}
-		// Remove the internal variables
-		for (Index index : freeIndices)
-			Variables.remove(index.getName());
-		return obj;
+
+		// calculate the sum (with einstein summation) for each combination of index values
+		MathObject[] result = new MathObject[size];
+		RangeTask.run(size, (double) size * tree.count(tree.getRoot()),
+				(from, to) -> tree.evaluate(values, result, from, to));
+		return new MIndexedObject(shape, result);
 	}
 
 	public void resetIndices() {
@@ -163,7 +192,9 @@ public class EinSum extends Algorithm {
 		final Pattern pat3 = Pattern.compile("\\[(?:(?:\\w+|:),)*(?:[a-zA-Z:])\\]");
 		sum = args[0];
 		freeIndices = new ArrayList<Index>();
-		for (int i = 1; i < args.length; i++) {
+		reportPath = args.length > 1 && args[args.length - 1].equals("path");
+		int count = reportPath ? args.length - 1 : args.length;
+		for (int i = 1; i < count; i++) {
 			Matcher match = pat2.matcher(args[i]);
 			if (match.find()) {
 				String name = match.group(1);
@@ -200,9 +231,36 @@ public class EinSum extends Algorithm {
 					dummyIndices.add(element);
 			}
 		}
+		signature = signature(args, count, freeIndices);
 		prepared = true;
 	}
 
+	/**
+	 * The signature identifies the compiled expression in the {@link EinSumCache}. It consists of the arguments and,
+	 * for every name in the expression which is not an index, the shape of the variable with that name (if any).
+	 */
+	private String signature(String[] args, int count, Set<String> freeIndices) {
+		StringBuilder sb = new StringBuilder(args[0]);
+		for (int i = 1; i < count; i++)
+			sb.append(", ").append(args[i]);
+		Set<String> names = new HashSet<>();
+		Matcher match = Pattern.compile("[A-Za-z_]\\w*").matcher(args[0]);
+		while (match.find()) {
+			String name = match.group();
+			if (freeIndices.contains(name) || dummyIndices.contains(name) || !names.add(name))
+				continue;
+			MathObject mo = Variables.get(name);
+			sb.append(names.size() == 1 ? " | " : ", ").append(name).append(':');
+			if (mo instanceof MIndexable)
+				sb.append(mo.shape());
+			else if (mo instanceof MScalar)
+				sb.append('s');
+			else
+				sb.append(mo == null ? "-" : mo.getClass().getSimpleName());
+		}
+		return sb.toString();
+	}
+
 	private Shape computeShape(ArrayList<Index> freeIndices) {
 		int[] shape = new int[freeIndices.size()];
 		for (int i = 0; i < shape.length; i++) {
@@ -249,6 +307,71 @@ public class EinSum extends Algorithm {
 				replaceIndex(n.right(), indexName, indexValue);
 		}
 
+		/**
+		 * Evaluates the tree for the combinations of free index values <tt>from</tt> (inclusive) to <tt>to</tt>
+		 * (exclusive), where the last free index changes fastest. The free indices are bound to numbers in a copy of
+		 * the tree, so that different ranges can be evaluated at the same time without touching {@link Variables}.
+		 * @param values the values of every free index
+		 * @param result the array in which the results are stored
+		 */
+		void evaluate(int[][] values, MathObject[] result, int from, int to) {
+			MReal[] bound = new MReal[values.length];
+			for (int k = 0; k < bound.length; k++)
+				bound[k] = new MReal(0);
+			Tree copy = new Tree(root.copy());
+			bind(copy.getRoot(), bound);
+
+			int[] counter = new int[values.length];
+			for (int k = values.length - 1, r = from; k >= 0; k--) {
+				counter[k] = r % values[k].length;
+				r /= values[k].length;
+			}
+			for (int r = from; r < to; r++) {
+				for (int k = 0; k < bound.length; k++)
+					bound[k].setValue(values[k][counter[k]]);
+				result[r] = copy.evaluateTree();
+				for (int k = counter.length - 1; k >= 0; k--) {
+					if (++counter[k] < values[k].length)
+						break;
+					counter[k] = 0;
+				}
+			}
+		}
+
+		/**
+		 * Replaces every occurrence of a free index in the subtree by the corresponding number in <tt>bound</tt>.
+		 */
+		void bind(Node<?> n, MReal[] bound) {
+			if (n.getData() instanceof Variable) {
+				int k = freeIndices.indexOf(new Index(((Variable) n.getData()).getName(), null));
+				if (k >= 0) {
+					n.replace(new Node<MReal>(bound[k]));
+					return;
+				}
+			} else if (n.getData() instanceof MVector && n.parent != null && n == n.parent.right()
+					&& n.parent.getData().equals(Operator.ELEMENT)) {
+				MVector vec = (MVector) n.getData();
+				for (int i = 0; i < vec.size(); i++) {
+					if (vec.get(i) instanceof MExpression) {
+						Node<?> root = ((MExpression) vec.get(i)).getTree().getRoot();
+						if (!root.isInternal() && root.getData() instanceof Variable) {
+							int k = freeIndices.indexOf(new Index(((Variable) root.getData()).getName(), null));
+							if (k >= 0)
+								vec.set(i, bound[k]);
+						}
+					}
+				}
+			}
+			if (n.left() != null)
+				bind(n.left(), bound);
+			if (n.right() != null)
+				bind(n.right(), bound);
+		}
+
+		int count(Node<?> n) {
+			return n == null ? 0 : 1 + count(n.left()) + count(n.right());
+		}
+
 		Node<?> copyWithIndex(EinSumNode<?> n, String indexName, int indexValue) {
 			Node<?> copy = n.copy();
 			replaceIndex(copy, indexName, indexValue);
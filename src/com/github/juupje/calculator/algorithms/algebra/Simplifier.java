@@ -1,5 +1,6 @@
 package com.github.juupje.calculator.algorithms.algebra;
 
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.HashMap;
 
@@ -17,7 +18,9 @@ import com.github.juupje.calculator.mathobjects.MScalar;
 import com.github.juupje.calculator.mathobjects.MVector;
 import com.github.juupje.calculator.mathobjects.MathObject;
 import com.github.juupje.calculator.mathobjects.Shape;
+import com.github.juupje.calculator.tree.DAGNode;
 import com.github.juupje.calculator.tree.DFSTask;
+import com.github.juupje.calculator.tree.ExpressionDAG;
 import com.github.juupje.calculator.tree.Node;
 import com.github.juupje.calculator.tree.Tree;
 
@@ -202,6 +205,20 @@ public class Simplifier extends Algorithm {
 		tr.DFS(numericOperants);
 		tr.DFS(sort);
 		tr.DFS(simplifyOperators);
+		ExpressionDAG dag = new ExpressionDAG();
+		DAGNode root = dag.intern(tr.getRoot());
+		DAGNode combined = combineEqual(dag, root, new HashMap<>(), new HashMap<>());
+		if(combined != root) {
+			//the passes can't replace the root of a tree, so put a holder above it in case the whole expression can be
+			//simplified, like 2*0 in 2*(sin(x)-sin(x))
+			Node<Object> holder = new Node<Object>(null);
+			holder.left(dag.toTree(combined));
+			Tree t = new Tree(holder);
+			t.DFS(numericOperants);
+			t.DFS(simplifyOperators);
+			tr.root = holder.left();
+			tr.root.parent = null;
+		}
 		return tr;
 		/**
 		 * Idea:
@@ -213,6 +230,82 @@ public class Simplifier extends Algorithm {
 		 */
 	}
 
+	/**
+	 * Simplifies operations of which both operands are the same expression: {@code A+A=2*A} and, if <tt>A</tt> is known
+	 * to be a scalar, {@code A-A=0}. Because the expressions are nodes of a {@link ExpressionDAG}, two operands are the
+	 * same expression if they are the same node.<br/>
+	 * {@code A/A} is not simplified, as it is not defined where <tt>A</tt> is 0. So <tt>x/x</tt>, <tt>1+x/x</tt> and
+	 * <tt>x^2/x^2+1</tt> are left as they are, while <tt>2*(sin(x)-sin(x))</tt> becomes <tt>0</tt>.
+	 * @param done the simplified nodes, so that every shared subexpression is only simplified once.
+	 * @param shapes the shapes of the nodes, as calculated by {@link #shape(DAGNode, HashMap)}.
+	 * @return the simplified node, which is <tt>n</tt> itself if nothing could be simplified.
+	 */
+	private DAGNode combineEqual(ExpressionDAG dag, DAGNode n, HashMap<DAGNode, DAGNode> done, HashMap<DAGNode, Shape> shapes) {
+		DAGNode result = done.get(n);
+		if(result != null)
+			return result;
+		DAGNode left = n.left() == null ? null : combineEqual(dag, n.left(), done, shapes);
+		DAGNode right = n.right() == null ? null : combineEqual(dag, n.right(), done, shapes);
+		result = null;
+		if(left != null && left == right && n.data instanceof Operator) {
+			switch((Operator) n.data) {
+			case SUBTRACT:
+				Shape s = shape(left, shapes);
+				if(s != null && s.isScalar())
+					result = dag.node(new MReal(0));
+				break;
+			case ADD:
+				result = dag.node(Operator.MULTIPLY, dag.node(new MReal(2)), left);
+				break;
+			default:
+				break;
+			}
+		}
+		if(result == null)
+			result = left == n.left() && right == n.right() ? n : dag.node(n.data, left, right);
+		done.put(n, result);
+		return result;
+	}
+
+	/**
+	 * Calculates the shape of the expression of a node, like {@link Tree#getShape(Node)} does, but without assuming
+	 * that undefined variables are scalars.
+	 * @param shapes the shapes which have already been calculated.
+	 * @return the shape, or <tt>null</tt> if it is not known.
+	 */
+	private Shape shape(DAGNode n, HashMap<DAGNode, Shape> shapes) {
+		if(shapes.containsKey(n))
+			return shapes.get(n);
+		Shape s = null;
+		Shape left = n.left() == null ? null : shape(n.left(), shapes);
+		Shape right = n.right() == null ? null : shape(n.right(), shapes);
+		try {
+			if(n.data instanceof Operator) {
+				if(left != null && n.right() == null)
+					s = ((Operator) n.data).shape(left);
+				else if(left != null && right != null)
+					s = ((Operator) n.data).shape(left, right);
+			} else if(n.data instanceof Function) {
+				if(left != null)
+					s = ((Function) n.data).shape(left);
+			} else if(n.data instanceof Variable) {
+				Variable v = (Variable) n.data;
+				int index = func == null ? -1 : Arrays.asList(func.getParameters()).indexOf(v.getName());
+				if(index != -1)
+					s = func.getParamShapes()[index];
+				else if(v.get() != null && (n.isInternal() || !(v.get() instanceof MFunction)))
+					s = v.get().shape();
+			} else if(n.data instanceof MathObject)
+				s = ((MathObject) n.data).shape();
+			else if(n.data instanceof MConst)
+				s = Shape.SCALAR;
+		} catch(RuntimeException e) {
+			s = null;
+		}
+		shapes.put(n, s);
+		return s;
+	}
+
 	@Override
 	public MathObject execute() {
 		if(!prepared) return null;
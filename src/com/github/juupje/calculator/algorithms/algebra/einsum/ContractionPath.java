@@ -0,0 +1,203 @@
+package com.github.juupje.calculator.algorithms.algebra.einsum;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The order in which the operands of an einsum term are contracted pairwise. Every operand is described by the bitmask
+ * of its labels, where bit <tt>i</tt> is set if the operand has an axis with label <tt>i</tt>.
+ * <p>
+ * A step <tt>(i, j)</tt> removes the operands at positions <tt>i&lt;j</tt> from the list of operands and appends their
+ * contraction. A label is summed over as soon as no other operand and the output contain it. For up to
+ * {@value #OPTIMAL_LIMIT} operands all orders are tried, otherwise the pair with the smallest intermediate result is
+ * contracted first (the <i>greedy</i> strategy). The cost of a contraction is the number of floating point operations
+ * needed if every element of the result is computed separately, like <tt>opt_einsum</tt> counts them.
+ * </p>
+ * @author Joep Geuskens
+ */
+public class ContractionPath {
+
+	/**
+	 * The maximum number of operands for which all contraction orders are searched.
+	 */
+	public static final int OPTIMAL_LIMIT = 5;
+
+	private final long[] operands;
+	private final long output;
+	private final int[] sizes;
+	private final String[] names;
+	private int[][] steps;
+	private double cost;
+	private final double naiveCost;
+	private final boolean optimal;
+
+	/**
+	 * Finds the cheapest contraction path of the given operands.
+	 * @param operands the label masks of the operands
+	 * @param output the label mask of the result
+	 * @param sizes the dimension of every label
+	 * @param names the name of every label, used for {@link #toString()}
+	 */
+	public ContractionPath(long[] operands, long output, int[] sizes, String[] names) {
+		this.operands = operands;
+		this.output = output;
+		this.sizes = sizes;
+		this.names = names;
+		long all = 0;
+		for(long op : operands)
+			all |= op;
+		naiveCost = flops(all, (all & ~output) != 0, operands.length);
+		optimal = operands.length <= OPTIMAL_LIMIT;
+		if(operands.length < 2) {
+			steps = new int[0][];
+			cost = operands.length == 1 ? flops(operands[0], (operands[0] & ~output) != 0, 1) : 0;
+		} else if(optimal) {
+			cost = Double.POSITIVE_INFINITY;
+			search(toList(operands), new ArrayList<>(), 0);
+		} else
+			greedy();
+	}
+
+	private static List<Long> toList(long[] masks) {
+		List<Long> list = new ArrayList<>(masks.length);
+		for(long m : masks)
+			list.add(m);
+		return list;
+	}
+
+	private double size(long mask) {
+		double size = 1;
+		for(int label = 0; label < 64; label++)
+			if((mask & (1L << label)) != 0)
+				size *= sizes[label];
+		return size;
+	}
+
+	private double flops(long mask, boolean inner, int terms) {
+		return size(mask) * (Math.max(1, terms - 1) + (inner ? 1 : 0));
+	}
+
+	/**
+	 * @return the labels of the contraction of the operands at positions <tt>i</tt> and <tt>j</tt> which are still
+	 * needed by the other operands or the output.
+	 */
+	private long result(List<Long> ops, int i, int j) {
+		long rest = output;
+		for(int k = 0; k < ops.size(); k++)
+			if(k != i && k != j)
+				rest |= ops.get(k);
+		return (ops.get(i) | ops.get(j)) & rest;
+	}
+
+	private void search(List<Long> ops, List<int[]> path, double pathCost) {
+		if(pathCost >= cost)
+			return;
+		if(ops.size() == 1) {
+			cost = pathCost;
+			steps = path.toArray(new int[0][]);
+			return;
+		}
+		for(int i = 0; i < ops.size(); i++) {
+			for(int j = i + 1; j < ops.size(); j++) {
+				long union = ops.get(i) | ops.get(j);
+				long res = result(ops, i, j);
+				List<Long> next = new ArrayList<>(ops);
+				next.remove(j);
+				next.remove(i);
+				next.add(res);
+				path.add(new int[] { i, j });
+				search(next, path, pathCost + flops(union, union != res, 2));
+				path.remove(path.size() - 1);
+			}
+		}
+	}
+
+	private void greedy() {
+		List<Long> ops = toList(operands);
+		List<int[]> path = new ArrayList<>();
+		cost = 0;
+		while(ops.size() > 1) {
+			int bi = 0, bj = 1;
+			double bestGain = Double.POSITIVE_INFINITY, bestFlops = Double.POSITIVE_INFINITY;
+			for(int i = 0; i < ops.size(); i++) {
+				for(int j = i + 1; j < ops.size(); j++) {
+					long union = ops.get(i) | ops.get(j);
+					long res = result(ops, i, j);
+					double gain = size(res) - size(ops.get(i)) - size(ops.get(j));
+					double f = flops(union, union != res, 2);
+					if(gain < bestGain || (gain == bestGain && f < bestFlops)) {
+						bestGain = gain;
+						bestFlops = f;
+						bi = i;
+						bj = j;
+					}
+				}
+			}
+			long res = result(ops, bi, bj);
+			ops.remove(bj);
+			ops.remove(bi);
+			ops.add(res);
+			path.add(new int[] { bi, bj });
+			cost += bestFlops;
+		}
+		steps = path.toArray(new int[0][]);
+	}
+
+	/**
+	 * @return the contraction steps, each a pair of positions in the list of remaining operands.
+	 */
+	public int[][] getSteps() {
+		return steps;
+	}
+
+	/**
+	 * @return the estimated number of floating point operations of the contraction path.
+	 */
+	public double getCost() {
+		return cost;
+	}
+
+	/**
+	 * @return the estimated number of floating point operations when all operands are multiplied together for every
+	 * combination of labels.
+	 */
+	public double getNaiveCost() {
+		return naiveCost;
+	}
+
+	private String labels(long mask) {
+		StringBuilder sb = new StringBuilder();
+		boolean single = true;
+		for(String name : names)
+			single &= name.length() == 1;
+		for(int label = 0; label < 64; label++) {
+			if((mask & (1L << label)) != 0) {
+				if(!single && sb.length() > 0)
+					sb.append(' ');
+				sb.append(names[label]);
+			}
+		}
+		return sb.toString();
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("path (").append(optimal ? "optimal" : "greedy").append("): ");
+		for(int s = 0; s < steps.length; s++)
+			sb.append(s == 0 ? "" : ", ").append("(").append(steps[s][0]).append(", ").append(steps[s][1]).append(")");
+		if(steps.length == 0)
+			sb.append("-");
+		sb.append(String.format("%n  naive FLOP count: %.4g%n  optimized FLOP count: %.4g%n  speedup: %.4g", naiveCost, cost,
+				cost == 0 ? 1 : naiveCost / cost));
+		List<Long> ops = toList(operands);
+		for(int[] step : steps) {
+			long res = result(ops, step[0], step[1]);
+			sb.append(String.format("%n  %s,%s->%s", labels(ops.get(step[0])), labels(ops.get(step[1])), labels(res)));
+			ops.remove(step[1]);
+			ops.remove(step[0]);
+			ops.add(res);
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,100 @@
+package com.github.juupje.calculator.algorithms.algebra.einsum;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.github.juupje.calculator.settings.Settings;
+
+/**
+ * Caches compiled einsum expressions, so that evaluating the same einsum again (for example in a loop or with new
+ * values of the operands) does not parse the expression and search for contraction paths again.
+ * <p>
+ * Entries are identified by a signature consisting of the arguments of the einsum and the shapes of the variables
+ * used in it (see {@link com.github.juupje.calculator.algorithms.algebra.EinSum}). A compiled expression only depends
+ * on those shapes, so it stays valid if the values of the variables change.
+ * </p>
+ * The maximum number of cached expressions is set by the <tt>einsum_cache</tt> setting. If it is exceeded, the least
+ * recently used expressions are removed. Setting it to 0 disables the cache.
+ * @author Joep Geuskens
+ */
+public final class EinSumCache {
+
+	private static final Map<String, EinSumExpression> entries = new LinkedHashMap<>(16, 0.75f, true);
+	private static long hits = 0, misses = 0, evictions = 0;
+
+	private EinSumCache() {}
+
+	/**
+	 * @param signature the signature of the einsum
+	 * @return the cached expression with the given signature, or <tt>null</tt> if there is none.
+	 */
+	public static EinSumExpression get(String signature) {
+		if(limit() == 0)
+			return null;
+		synchronized(entries) {
+			EinSumExpression expr = entries.get(signature);
+			if(expr == null)
+				misses++;
+			else
+				hits++;
+			return expr;
+		}
+	}
+
+	/**
+	 * Adds a compiled expression to the cache, removing the least recently used expressions if the cache is full.
+	 * @param signature the signature of the einsum
+	 * @param expr the compiled expression
+	 */
+	public static void put(String signature, EinSumExpression expr) {
+		int limit = limit();
+		if(limit == 0)
+			return;
+		synchronized(entries) {
+			entries.put(signature, expr);
+			evict(limit);
+		}
+	}
+
+	/**
+	 * Removes all entries from the cache and resets the statistics.
+	 */
+	public static void clear() {
+		synchronized(entries) {
+			entries.clear();
+			hits = misses = evictions = 0;
+		}
+	}
+
+	/**
+	 * @return a description of the entries in the cache (from least to most recently used) and the amount of
+	 * hits, misses and evictions.
+	 */
+	public static String stats() {
+		synchronized(entries) {
+			evict(limit());
+			StringBuilder sb = new StringBuilder("Einsum cache: ").append(entries.size()).append(" of ").append(limit())
+					.append(" entries");
+			sb.append("\nHits: ").append(hits).append(", misses: ").append(misses).append(", evictions: ").append(evictions);
+			for(String signature : entries.keySet())
+				sb.append("\n  ").append(signature);
+			return sb.toString();
+		}
+	}
+
+	/**
+	 * Removes the least recently used entries until at most <tt>limit</tt> entries remain.
+	 */
+	private static void evict(int limit) {
+		for(Iterator<String> iter = entries.keySet().iterator(); iter.hasNext() && entries.size() > limit;) {
+			iter.next();
+			iter.remove();
+			evictions++;
+		}
+	}
+
+	private static int limit() {
+		return Math.max(0, Settings.getInt(Settings.EINSUM_CACHE));
+	}
+}
@@ -0,0 +1,470 @@
+package com.github.juupje.calculator.algorithms.algebra.einsum;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.github.juupje.calculator.algorithms.algebra.range.Index;
+import com.github.juupje.calculator.algorithms.algebra.range.IndexRange;
+import com.github.juupje.calculator.helpers.exceptions.EinSumException;
+import com.github.juupje.calculator.helpers.exceptions.IndexException;
+import com.github.juupje.calculator.main.Operator;
+import com.github.juupje.calculator.main.Variable;
+import com.github.juupje.calculator.main.Variables;
+import com.github.juupje.calculator.mathobjects.MExpression;
+import com.github.juupje.calculator.mathobjects.MIndexable;
+import com.github.juupje.calculator.mathobjects.MIndexedObject;
+import com.github.juupje.calculator.mathobjects.MReal;
+import com.github.juupje.calculator.mathobjects.MScalar;
+import com.github.juupje.calculator.mathobjects.MVector;
+import com.github.juupje.calculator.mathobjects.MathObject;
+import com.github.juupje.calculator.mathobjects.Shape;
+import com.github.juupje.calculator.printer.TextPrinter;
+import com.github.juupje.calculator.tree.Node;
+import com.github.juupje.calculator.tree.Tree;
+
+/**
+ * An einsum expression written as a sum of terms, each of which is a scalar coefficient times a product of indexed
+ * objects. Every term is evaluated as a series of pairwise tensor contractions, in the order given by its
+ * {@link ContractionPath}, instead of evaluating the whole product for every combination of indices.
+ * <p>
+ * Expressions which cannot be written in this form (for example because an index is used inside a function or an
+ * indexed object is not a variable) are rejected by {@link #compile(Tree, List, Set)}, after which the caller should
+ * evaluate the expression element by element. The same holds if {@link #evaluate(Shape)} returns <tt>null</tt>, which
+ * happens if one of the selected elements or coefficients is not a scalar.
+ * </p>
+ * <p>
+ * A compiled expression only depends on the shapes of the indexed objects, not on their values: the operands, the
+ * coefficients and the fixed indices given by variables are looked up every time the expression is evaluated. It can
+ * therefore be reused (see {@link EinSumCache}) as long as those shapes do not change. The operands are read into
+ * arrays without assigning the indices to variables. If all operands and coefficients are real, the contractions run
+ * as loops over <tt>double[]</tt>s. Otherwise the elements are combined using {@link Operator#MULTIPLY} and
+ * {@link Operator#ADD}.
+ * </p>
+ * @author Joep Geuskens
+ */
+public class EinSumExpression {
+
+	private final Tree tree;
+	private final String[] names;
+	private final int[] outputLabels;
+	private final int[] outputDims;
+	private final List<Term> terms = new ArrayList<>();
+
+	private static class Term {
+		boolean negative;
+		List<Node<?>> factors = new ArrayList<>();
+		List<Node<?>> divisors = new ArrayList<>();
+		List<Operand> operands = new ArrayList<>();
+		long output;
+		ContractionPath path;
+	}
+
+	/**
+	 * An indexed variable in a term. Every axis either has a label, or a fixed position which is a number or the name
+	 * of a variable holding a number.
+	 */
+	private static class Operand {
+		String name;
+		int[] axisLabels;
+		int[][] positions;
+		String[] fixed;
+		long mask;
+		/**
+		 * The labels which remain after summing over the labels which occur nowhere else in the term.
+		 */
+		long keep;
+		/**
+		 * The labels and dimensions after merging repeated labels, or <tt>null</tt> if no label is repeated.
+		 */
+		int[] labels, dims;
+	}
+
+	private EinSumExpression(Tree tree, String[] names, int[] outputDims) {
+		this.tree = tree;
+		this.names = names;
+		this.outputDims = outputDims;
+		outputLabels = new int[outputDims.length];
+		for(int i = 0; i < outputLabels.length; i++)
+			outputLabels[i] = i;
+	}
+
+	/**
+	 * Analyzes the given einsum expression and finds the contraction path of each of its terms.
+	 * @param tree the parsed expression, in which the indices are still {@link Variable}s with their original names
+	 * @param freeIndices the free indices, in the order of the axes of the result
+	 * @param dummyIndices the names of the dummy indices
+	 * @return the compiled expression, or <tt>null</tt> if the expression cannot be written as a sum of contractions.
+	 * @throws EinSumException if a dummy index does not occur exactly twice in a term
+	 * @throws IndexException if an index is out of bounds or if the ranges of a dummy index are inconsistent
+	 */
+	public static EinSumExpression compile(Tree tree, List<Index> freeIndices, Set<String> dummyIndices) {
+		if(freeIndices.size() + dummyIndices.size() > 64)
+			return null;
+		Map<String, Integer> ids = new HashMap<>();
+		String[] names = new String[freeIndices.size() + dummyIndices.size()];
+		int[][] freePositions = new int[freeIndices.size()][];
+		int[] outputDims = new int[freeIndices.size()];
+		for(int i = 0; i < freeIndices.size(); i++) {
+			Index index = freeIndices.get(i);
+			ids.put(index.getName(), i);
+			names[i] = index.getName();
+			freePositions[i] = values(index.getRange());
+			outputDims[i] = freePositions[i].length;
+		}
+		for(String name : dummyIndices) {
+			if(ids.containsKey(name))
+				return null;
+			names[ids.size()] = name;
+			ids.put(name, ids.size());
+		}
+		EinSumExpression expr = new EinSumExpression(tree, names, outputDims);
+
+		List<Node<?>> termNodes = new ArrayList<>();
+		List<Boolean> signs = new ArrayList<>();
+		split(tree.getRoot(), false, termNodes, signs);
+		for(int t = 0; t < termNodes.size(); t++) {
+			Term term = new Term();
+			term.negative = signs.get(t);
+			List<Node<?>> elements = new ArrayList<>();
+			if(!factorize(tree, termNodes.get(t), term, elements, ids))
+				return null;
+			if(!expr.addOperands(term, termNodes.get(t), elements, ids, freePositions))
+				return null;
+			expr.terms.add(term);
+		}
+		return expr;
+	}
+
+	private static int[] values(IndexRange range) {
+		range.reset();
+		int[] values = new int[range.length()];
+		for(int i = 0; i < values.length; i++)
+			values[i] = range.next();
+		range.reset();
+		return values;
+	}
+
+	private static void split(Node<?> n, boolean negative, List<Node<?>> terms, List<Boolean> signs) {
+		if(n.getData() == Operator.ADD || n.getData() == Operator.SUBTRACT) {
+			split(n.left(), negative, terms, signs);
+			split(n.right(), negative ^ (n.getData() == Operator.SUBTRACT), terms, signs);
+		} else {
+			terms.add(n);
+			signs.add(negative);
+		}
+	}
+
+	/**
+	 * Splits a term into its indexed objects and the factors and divisors of its scalar coefficient.
+	 * @return <tt>false</tt> if the term is not a product of indexed objects and scalars.
+	 */
+	private static boolean factorize(Tree tree, Node<?> n, Term term, List<Node<?>> elements, Map<String, Integer> ids) {
+		Object data = n.getData();
+		if(data == Operator.MULTIPLY)
+			return factorize(tree, n.left(), term, elements, ids) && factorize(tree, n.right(), term, elements, ids);
+		if(data == Operator.NEGATE && n.right() == null) {
+			term.negative = !term.negative;
+			return factorize(tree, n.left(), term, elements, ids);
+		}
+		if(data == Operator.DIVIDE) {
+			if(constant(tree, n.right(), ids) == null || !factorize(tree, n.left(), term, elements, ids))
+				return false;
+			term.divisors.add(n.right());
+			return true;
+		}
+		if(data == Operator.ELEMENT) {
+			elements.add(n);
+			return true;
+		}
+		if(constant(tree, n, ids) == null)
+			return false;
+		term.factors.add(n);
+		return true;
+	}
+
+	/**
+	 * @return the scalar value of the subtree, or <tt>null</tt> if it depends on an index or is not a scalar.
+	 */
+	private static MathObject constant(Tree tree, Node<?> n, Map<String, Integer> ids) {
+		if(ids != null && dependsOnIndex(n, ids))
+			return null;
+		MathObject mo = tree.evaluateNode(n);
+		return mo instanceof MScalar ? mo : null;
+	}
+
+	private static boolean dependsOnIndex(Node<?> n, Map<String, Integer> ids) {
+		if(n == null)
+			return false;
+		if(n.getData() == Operator.ELEMENT || (n.getData() instanceof Variable && ids.containsKey(((Variable) n.getData()).getName())))
+			return true;
+		return dependsOnIndex(n.left(), ids) || dependsOnIndex(n.right(), ids);
+	}
+
+	/**
+	 * Determines the labels and positions of the indexed objects of a term and plans their contraction.
+	 * @return <tt>false</tt> if one of the indexed objects is not supported.
+	 */
+	private boolean addOperands(Term term, Node<?> termNode, List<Node<?>> elements, Map<String, Integer> ids,
+			int[][] freePositions) {
+		int[] sizes = new int[names.length];
+		int[] counts = new int[names.length];
+		for(Node<?> element : elements) {
+			if(element.left().isInternal() || !(element.left().getData() instanceof Variable))
+				return false;
+			Operand op = new Operand();
+			op.name = ((Variable) element.left().getData()).getName();
+			if(ids.containsKey(op.name) || !(Variables.get(op.name) instanceof MIndexable))
+				return false;
+			Shape shape = Variables.get(op.name).shape();
+
+			// find the index entries: either an index name or a fixed position
+			Object[] entries;
+			Node<?> right = element.right();
+			if(right.isInternal())
+				return false;
+			if(right.getData() instanceof MVector) {
+				MVector vec = (MVector) right.getData();
+				entries = new Object[vec.size()];
+				for(int k = 0; k < entries.length; k++) {
+					MathObject mo = vec.get(k);
+					if(mo instanceof MExpression) {
+						Node<?> root = ((MExpression) mo).getTree().getRoot();
+						if(root.isInternal() || !(root.getData() instanceof Variable))
+							return false;
+						entries[k] = root.getData();
+					} else
+						entries[k] = mo;
+				}
+			} else
+				entries = new Object[] { right.getData() };
+			if(entries.length != shape.size())
+				throw new IndexException("Index dimension mismatch. Object dim: " + shape.size() + ", index dim: " + entries.length);
+
+			op.axisLabels = new int[entries.length];
+			op.positions = new int[entries.length][];
+			op.fixed = new String[entries.length];
+			for(int k = 0; k < entries.length; k++) {
+				Object entry = entries[k];
+				if(entry instanceof Variable && ids.containsKey(((Variable) entry).getName())) {
+					int label = ids.get(((Variable) entry).getName());
+					op.axisLabels[k] = label;
+					op.mask |= 1L << label;
+					counts[label]++;
+					if(label < freePositions.length) {
+						op.positions[k] = freePositions[label];
+						for(int p : op.positions[k])
+							checkBounds(p, shape.get(k));
+					} else {
+						if(sizes[label] != 0 && sizes[label] != shape.get(k))
+							throw new IndexException("Range for index " + names[label] + " inconsistent");
+						sizes[label] = shape.get(k);
+						op.positions[k] = new int[shape.get(k)];
+						for(int p = 0; p < op.positions[k].length; p++)
+							op.positions[k][p] = p;
+					}
+				} else {
+					if(entry instanceof Variable)
+						op.fixed[k] = ((Variable) entry).getName();
+					MathObject value = entry instanceof Variable ? Variables.get(op.fixed[k]) : (MathObject) entry;
+					if(!MReal.isPosInteger(value))
+						return false;
+					op.axisLabels[k] = -1;
+					op.positions[k] = new int[] { (int) ((MReal) value).getValue() };
+					checkBounds(op.positions[k][0], shape.get(k));
+				}
+			}
+			term.operands.add(op);
+		}
+
+		for(int label = freePositions.length; label < names.length; label++) {
+			if(counts[label] == 1)
+				throw new EinSumException("Unmatched dummy index " + names[label]);
+			if(counts[label] > 2)
+				throw new EinSumException(names[label] + " occurs " + counts[label] + " times in term '"
+						+ TextPrinter.nodeToText(termNode) + "'");
+		}
+		for(int label = 0; label < freePositions.length; label++) {
+			sizes[label] = freePositions[label].length;
+			if(counts[label] > 0)
+				term.output |= 1L << label;
+		}
+
+		long[] masks = new long[term.operands.size()];
+		for(int o = 0; o < masks.length; o++) {
+			Operand op = term.operands.get(o);
+			// repeated labels are merged into a diagonal
+			int count = 0;
+			for(int label : op.axisLabels)
+				if(label >= 0)
+					count++;
+			if(Long.bitCount(op.mask) != count) {
+				op.labels = new int[Long.bitCount(op.mask)];
+				op.dims = new int[op.labels.length];
+				for(int label = 0, l = 0; label < 64; label++) {
+					if((op.mask & (1L << label)) != 0) {
+						op.labels[l] = label;
+						op.dims[l++] = sizes[label];
+					}
+				}
+			}
+			masks[o] = op.mask;
+		}
+		// the labels which occur in only one operand (e.g. traces) are summed over right after gathering
+		for(int o = 0; o < masks.length; o++) {
+			long rest = term.output;
+			for(int p = 0; p < masks.length; p++)
+				if(p != o)
+					rest |= term.operands.get(p).mask;
+			masks[o] &= rest;
+			term.operands.get(o).keep = masks[o];
+		}
+		term.path = new ContractionPath(masks, term.output, sizes, names);
+		return true;
+	}
+
+	private static void checkBounds(int position, int length) {
+		if(position >= length)
+			throw new IndexException("Index " + position + " out of bounds for axis of length " + length);
+	}
+
+	/**
+	 * Reads the selected elements of an operand from its variable.
+	 * @return the operand as a tensor, or <tt>null</tt> if one of its elements or fixed indices is not supported.
+	 */
+	private static Tensor gather(Operand op) {
+		MIndexable obj = (MIndexable) Variables.get(op.name);
+		int[][] positions = op.positions;
+		for(int k = 0; k < op.fixed.length; k++) {
+			if(op.fixed[k] != null) {
+				MathObject value = Variables.get(op.fixed[k]);
+				if(!MReal.isPosInteger(value))
+					return null;
+				if(positions == op.positions)
+					positions = op.positions.clone();
+				positions[k] = new int[] { (int) ((MReal) value).getValue() };
+				checkBounds(positions[k][0], obj.shape().get(k));
+			}
+		}
+		Tensor t = Tensor.gather(obj, op.axisLabels, positions);
+		if(t == null)
+			return null;
+		if(op.labels != null)
+			t = t.rearrange(op.labels, op.dims);
+		return op.keep != op.mask ? t.sum(op.keep) : t;
+	}
+
+	/**
+	 * Evaluates the factors and divisors of the coefficient of a term.
+	 * @return the coefficient, <tt>null</tt> if the term has none, or {@link Operator#ELEMENT} if one of the factors
+	 * is no longer a scalar.
+	 */
+	private Object coefficient(Term term) {
+		MathObject c = null;
+		for(Node<?> n : term.factors) {
+			MathObject f = constant(tree, n, null);
+			if(f == null)
+				return Operator.ELEMENT;
+			c = c == null ? f : Operator.MULTIPLY.evaluate(c, f);
+		}
+		for(Node<?> n : term.divisors) {
+			MathObject d = constant(tree, n, null);
+			if(d == null)
+				return Operator.ELEMENT;
+			c = Operator.DIVIDE.evaluate(c == null ? new MReal(1) : c, d);
+		}
+		return c;
+	}
+
+	/**
+	 * Evaluates the expression by contracting the operands of every term along its contraction path. The operands and
+	 * coefficients are read from the current values of their variables.
+	 * @param shape the shape of the result
+	 * @return the result of the einsum, or <tt>null</tt> if one of the selected elements or coefficients is not a scalar.
+	 */
+	public MIndexedObject evaluate(Shape shape) {
+		Tensor[] results = new Tensor[terms.size()];
+		MathObject[] coefficients = new MathObject[terms.size()];
+		boolean real = true;
+		for(int i = 0; i < results.length; i++) {
+			Term term = terms.get(i);
+			Object c = coefficient(term);
+			if(c == Operator.ELEMENT)
+				return null;
+			coefficients[i] = (MathObject) c;
+			List<Tensor> ops = new ArrayList<>(term.operands.size());
+			for(Operand op : term.operands) {
+				Tensor t = gather(op);
+				if(t == null)
+					return null;
+				ops.add(t);
+			}
+			for(int[] step : term.path.getSteps()) {
+				Tensor b = ops.remove(step[1]);
+				Tensor a = ops.remove(step[0]);
+				long keep = term.output;
+				for(Tensor t : ops)
+					keep |= t.mask();
+				ops.add(Tensor.contract(a, b, keep));
+			}
+			Tensor t = ops.isEmpty() ? Tensor.ONE : ops.get(0);
+			results[i] = t.rearrange(outputLabels, outputDims);
+			real &= results[i].isReal() && (coefficients[i] == null || coefficients[i].getClass() == MReal.class);
+		}
+		if(real)
+			return new MIndexedObject(shape, sumReal(results, coefficients));
+
+		MathObject[] result = null;
+		for(int j = 0; j < results.length; j++) {
+			Term term = terms.get(j);
+			MathObject coefficient = coefficients[j];
+			MathObject[] values = results[j].objects();
+			if(result == null) {
+				result = new MathObject[values.length];
+				for(int i = 0; i < values.length; i++) {
+					MathObject v = coefficient == null ? values[i] : Operator.MULTIPLY.evaluate(coefficient, values[i]);
+					result[i] = term.negative ? Operator.NEGATE.evaluate(v) : v;
+				}
+			} else {
+				Operator op = term.negative ? Operator.SUBTRACT : Operator.ADD;
+				for(int i = 0; i < values.length; i++)
+					result[i] = op.evaluate(result[i],
+							coefficient == null ? values[i] : Operator.MULTIPLY.evaluate(coefficient, values[i]));
+			}
+		}
+		return new MIndexedObject(shape, result);
+	}
+
+	private MathObject[] sumReal(Tensor[] results, MathObject[] coefficients) {
+		double[] sum = new double[results[0].size()];
+		for(int j = 0; j < results.length; j++) {
+			double c = coefficients[j] == null ? 1 : ((MReal) coefficients[j]).getValue();
+			if(terms.get(j).negative)
+				c = -c;
+			double[] data = results[j].data;
+			for(int i = 0; i < sum.length; i++)
+				sum[i] += c * data[i];
+		}
+		MathObject[] result = new MathObject[sum.length];
+		for(int i = 0; i < sum.length; i++)
+			result[i] = new MReal(sum[i]);
+		return result;
+	}
+
+	/**
+	 * @return a description of the contraction path of every term and its estimated cost.
+	 */
+	public String report() {
+		StringBuilder sb = new StringBuilder();
+		for(int t = 0; t < terms.size(); t++) {
+			if(t > 0)
+				sb.append(System.lineSeparator());
+			if(terms.size() > 1)
+				sb.append("term ").append(t + 1).append(": ");
+			sb.append(terms.get(t).path.toString());
+		}
+		return sb.toString();
+	}
+}
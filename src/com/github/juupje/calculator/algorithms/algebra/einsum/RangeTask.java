@@ -0,0 +1,76 @@
+package com.github.juupje.calculator.algorithms.algebra.einsum;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import com.github.juupje.calculator.settings.Settings;
+
+/**
+ * Splits a range of indices in halves until at most <tt>grain</tt> indices remain, and passes every part to a
+ * {@link Body}. The parts write to disjoint parts of the result, so they can be computed on separate threads without
+ * any synchronization.
+ * <p>
+ * The number of parts is given by the <tt>einsum_threads</tt> setting, where 0 (the default) means one part per
+ * available processor and 1 means that everything is computed on the calling thread.
+ * </p>
+ * @author Joep Geuskens
+ */
+public class RangeTask extends RecursiveAction {
+	private static final long serialVersionUID = 4377093016426184552L;
+
+	/**
+	 * The estimated amount of work (multiply-adds or evaluated nodes) below which a range is not split.
+	 */
+	public static final double PARALLEL_THRESHOLD = 1 << 15;
+
+	/**
+	 * The calculation of the indices <tt>from</tt> (inclusive) to <tt>to</tt> (exclusive).
+	 */
+	@FunctionalInterface
+	public interface Body {
+		void run(int from, int to);
+	}
+
+	final Body body;
+	final int from, to, grain;
+
+	RangeTask(Body body, int from, int to, int grain) {
+		this.body = body;
+		this.from = from;
+		this.to = to;
+		this.grain = grain;
+	}
+
+	@Override
+	protected void compute() {
+		if(to - from <= grain)
+			body.run(from, to);
+		else {
+			int mid = (from + to) >>> 1;
+			invokeAll(new RangeTask(body, from, mid, grain), new RangeTask(body, mid, to, grain));
+		}
+	}
+
+	/**
+	 * Runs the body over the indices <tt>0</tt> to <tt>n</tt>, on multiple threads of the common {@link ForkJoinPool}
+	 * if the amount of work is at least {@link #PARALLEL_THRESHOLD} and the <tt>einsum_threads</tt> setting allows it.
+	 * @param n the number of indices
+	 * @param work the estimated amount of work of the whole range
+	 * @param body the calculation of a part of the range
+	 */
+	public static void run(int n, double work, Body body) {
+		int parts = work < PARALLEL_THRESHOLD ? 1 : Math.min(n, threads());
+		if(parts <= 1)
+			body.run(0, n);
+		else
+			ForkJoinPool.commonPool().invoke(new RangeTask(body, 0, n, (n + parts - 1) / parts));
+	}
+
+	/**
+	 * @return the maximum number of parts in which a range is split.
+	 */
+	public static int threads() {
+		int threads = Settings.getInt(Settings.EINSUM_THREADS);
+		return threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+	}
+}
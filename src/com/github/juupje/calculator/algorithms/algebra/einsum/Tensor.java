@@ -0,0 +1,461 @@
+package com.github.juupje.calculator.algorithms.algebra.einsum;
+
+import java.util.Arrays;
+
+import com.github.juupje.calculator.algorithms.linalg.MatrixMultiplication;
+import com.github.juupje.calculator.main.Operator;
+import com.github.juupje.calculator.mathobjects.MIndexable;
+import com.github.juupje.calculator.mathobjects.MIndexedObject;
+import com.github.juupje.calculator.mathobjects.MMatrix;
+import com.github.juupje.calculator.mathobjects.MReal;
+import com.github.juupje.calculator.mathobjects.MScalar;
+import com.github.juupje.calculator.mathobjects.MVector;
+import com.github.juupje.calculator.mathobjects.MathObject;
+import com.github.juupje.calculator.mathobjects.Shape;
+
+/**
+ * A dense tensor of which every axis is labelled by the id of an einsum index. The elements are stored in row-major order,
+ * as a <tt>double[]</tt> if all of them are real numbers and as a <tt>MathObject[]</tt> otherwise.
+ * Operations never modify the tensors they are applied to, but the elements of the result may be shared with the operands.
+ */
+final class Tensor {
+
+	static final Tensor ONE = scalar(1);
+
+	final int[] labels;
+	final int[] dims;
+	/**
+	 * The elements of a real tensor, or <tt>null</tt> if the tensor is not real.
+	 */
+	final double[] data;
+	/**
+	 * The elements of a tensor which is not real, or <tt>null</tt> if the tensor is real.
+	 */
+	final MathObject[] values;
+
+	Tensor(int[] labels, int[] dims, double[] data) {
+		this.labels = labels;
+		this.dims = dims;
+		this.data = data;
+		values = null;
+	}
+
+	Tensor(int[] labels, int[] dims, MathObject[] values) {
+		this.labels = labels;
+		this.dims = dims;
+		this.values = values;
+		data = null;
+	}
+
+	static Tensor scalar(double d) {
+		return new Tensor(new int[0], new int[0], new double[] { d });
+	}
+
+	boolean isReal() {
+		return data != null;
+	}
+
+	int size() {
+		return data != null ? data.length : values.length;
+	}
+
+	/**
+	 * @return the elements of this tensor as <tt>MathObject</tt>s. For a real tensor these are new {@link MReal}s.
+	 */
+	MathObject[] objects() {
+		if(values != null)
+			return values;
+		MathObject[] mo = new MathObject[data.length];
+		for(int i = 0; i < mo.length; i++)
+			mo[i] = new MReal(data[i]);
+		return mo;
+	}
+
+	/**
+	 * Collects the elements of an indexable object. Axis {@code k} of the object is iterated over the positions in
+	 * {@code positions[k]}. Axes with a negative label are dropped from the result, so they should have exactly one position.
+	 * The elements of real matrices and vectors, and of {@link MIndexedObject}s, are read from their arrays directly.
+	 * @param obj the object from which the elements are taken
+	 * @param axisLabels the label of every axis of {@code obj}
+	 * @param positions the positions along every axis of {@code obj}
+	 * @return a tensor with the labelled axes of {@code obj}, in the same order, or <tt>null</tt> if one of the
+	 * selected elements is not a scalar.
+	 */
+	static Tensor gather(MIndexable obj, int[] axisLabels, int[][] positions) {
+		int n = 0, size = 1;
+		for(int k = 0; k < axisLabels.length; k++) {
+			size *= positions[k].length;
+			if(axisLabels[k] >= 0)
+				n++;
+		}
+		int[] labels = new int[n];
+		int[] dims = new int[n];
+		for(int k = 0, l = 0; k < axisLabels.length; k++) {
+			if(axisLabels[k] >= 0) {
+				labels[l] = axisLabels[k];
+				dims[l++] = positions[k].length;
+			}
+		}
+
+		double[] source = null;
+		MathObject[] elements = null;
+		if(obj instanceof MMatrix)
+			source = ((MMatrix) obj).values();
+		else if(obj instanceof MVector) {
+			source = ((MVector) obj).values();
+			if(source == null)
+				elements = ((MVector) obj).elements();
+		} else if(obj instanceof MIndexedObject)
+			elements = ((MIndexedObject) obj).elements();
+		Shape shape = obj.shape();
+		int[] strides = new int[axisLabels.length];
+		for(int k = strides.length - 1, stride = 1; k >= 0; k--) {
+			strides[k] = stride;
+			stride *= shape.get(k);
+		}
+
+		double[] data = source == null ? null : new double[size];
+		MathObject[] values = source == null ? new MathObject[size] : null;
+		int[] counter = new int[axisLabels.length];
+		int[] index = new int[axisLabels.length];
+		int offset = 0;
+		for(int k = 0; k < index.length; k++) {
+			index[k] = positions[k][0];
+			offset += index[k] * strides[k];
+		}
+		for(int i = 0; i < size; i++) {
+			if(source != null)
+				data[i] = source[offset];
+			else
+				values[i] = elements != null ? elements[offset] : obj.get(index);
+			for(int k = index.length - 1; k >= 0; k--) {
+				offset -= index[k] * strides[k];
+				if(++counter[k] < positions[k].length) {
+					index[k] = positions[k][counter[k]];
+					offset += index[k] * strides[k];
+					break;
+				}
+				counter[k] = 0;
+				index[k] = positions[k][0];
+				offset += index[k] * strides[k];
+			}
+		}
+		if(data != null)
+			return new Tensor(labels, dims, data);
+
+		boolean real = true;
+		for(MathObject mo : values) {
+			if(!(mo instanceof MScalar))
+				return null;
+			real &= mo.getClass() == MReal.class;
+		}
+		if(!real)
+			return new Tensor(labels, dims, values);
+		data = new double[size];
+		for(int i = 0; i < size; i++)
+			data[i] = ((MReal) values[i]).getValue();
+		return new Tensor(labels, dims, data);
+	}
+
+	/**
+	 * Returns the tensor with the given axes. Every label of this tensor has to be among {@code targetLabels}. Axes
+	 * sharing a label are merged into their diagonal, labels which this tensor does not have are broadcast along the given
+	 * dimension and the remaining axes are permuted into the requested order.
+	 * @param targetLabels the labels of the axes of the result
+	 * @param targetDims the dimensions of the axes of the result
+	 * @return the rearranged tensor
+	 */
+	Tensor rearrange(int[] targetLabels, int[] targetDims) {
+		int[] strides = new int[targetLabels.length];
+		int stride = 1;
+		for(int k = labels.length - 1; k >= 0; k--) {
+			for(int t = 0; t < targetLabels.length; t++)
+				if(targetLabels[t] == labels[k])
+					strides[t] += stride;
+			stride *= dims[k];
+		}
+		int size = 1;
+		for(int d : targetDims)
+			size *= d;
+		double[] data = this.data == null ? null : new double[size];
+		MathObject[] values = this.data == null ? new MathObject[size] : null;
+		int[] counter = new int[targetLabels.length];
+		for(int i = 0, offset = 0; i < size; i++) {
+			if(data != null)
+				data[i] = this.data[offset];
+			else
+				values[i] = this.values[offset];
+			for(int k = counter.length - 1; k >= 0; k--) {
+				offset += strides[k];
+				if(++counter[k] < targetDims[k])
+					break;
+				offset -= strides[k] * targetDims[k];
+				counter[k] = 0;
+			}
+		}
+		return data != null ? new Tensor(targetLabels, targetDims, data) : new Tensor(targetLabels, targetDims, values);
+	}
+
+	/**
+	 * Sums over all axes whose label is not in <tt>keep</tt>.
+	 * @param keep the bitmask of the labels which are not summed over
+	 * @return the reduced tensor, with the remaining labels in ascending order.
+	 */
+	Tensor sum(long keep) {
+		return contract(this, ONE, keep);
+	}
+
+	/**
+	 * Multiplies two tensors element-wise over their shared labels and sums over every label which is not in
+	 * <tt>keep</tt>.
+	 * @param a the first tensor
+	 * @param b the second tensor
+	 * @param keep the bitmask of the labels which are not summed over
+	 * @return the contracted tensor, with the remaining labels in ascending order.
+	 */
+	static Tensor contract(Tensor a, Tensor b, long keep) {
+		long union = a.mask() | b.mask();
+		int[] sizes = new int[64];
+		for(Tensor t : new Tensor[] { a, b })
+			for(int k = 0; k < t.labels.length; k++)
+				sizes[t.labels[k]] = t.dims[k];
+		if(a.isReal() && b.isReal()) {
+			Tensor product = multiply(a, b, keep, sizes);
+			if(product != null)
+				return product;
+		}
+
+		// the kept labels form the outer loops, the summed labels the inner ones
+		int outerCount = Long.bitCount(union & keep);
+		int[] loop = new int[Long.bitCount(union)];
+		int outer = 1, inner = 1;
+		for(int label = 0, o = 0, s = outerCount; label < 64; label++) {
+			if((union & (1L << label)) == 0)
+				continue;
+			if((keep & (1L << label)) != 0) {
+				loop[o++] = label;
+				outer *= sizes[label];
+			} else {
+				loop[s++] = label;
+				inner *= sizes[label];
+			}
+		}
+		int[] loopDims = new int[loop.length];
+		for(int l = 0; l < loop.length; l++)
+			loopDims[l] = sizes[loop[l]];
+		int[] sa = a.strides(loop), sb = b.strides(loop);
+		int[] labels = new int[outerCount];
+		int[] dims = new int[outerCount];
+		System.arraycopy(loop, 0, labels, 0, outerCount);
+		System.arraycopy(loopDims, 0, dims, 0, outerCount);
+
+		double work = (double) outer * inner;
+		if(a.isReal() && b.isReal()) {
+			double[] result = new double[outer];
+			if(loop.length == 0)
+				result[0] = a.data[0] * b.data[0];
+			else if(outerCount == 0)
+				contract(a.data, sa, b.data, sb, result, loopDims, outerCount, 0, loopDims[0]);
+			else
+				RangeTask.run(loopDims[0], work, (from, to) -> contract(a.data, sa, b.data, sb, result, loopDims, outerCount, from, to));
+			return new Tensor(labels, dims, result);
+		}
+
+		MathObject[] va = a.objects(), vb = b.objects();
+		MathObject[] result = new MathObject[outer];
+		final int size = inner;
+		RangeTask.run(outer, work, (from, to) -> contract(va, sa, vb, sb, result, loopDims, outerCount, size, from, to));
+		return new Tensor(labels, dims, result);
+	}
+
+	/**
+	 * Contracts two tensors which are not both real, for the elements <tt>from</tt> (inclusive) to <tt>to</tt>
+	 * (exclusive) of the result.
+	 * @param va the elements of the first operand
+	 * @param sa the stride of the first operand for every loop
+	 * @param vb the elements of the second operand
+	 * @param sb the stride of the second operand for every loop
+	 * @param result the array in which the elements of the result are stored
+	 * @param loopDims the length of every loop, the loops over kept labels come first
+	 * @param outerCount the number of loops over kept labels
+	 * @param inner the number of terms summed for each element of the result
+	 */
+	private static void contract(MathObject[] va, int[] sa, MathObject[] vb, int[] sb, MathObject[] result, int[] loopDims,
+			int outerCount, int inner, int from, int to) {
+		int[] counter = new int[loopDims.length];
+		int oa = 0, ob = 0;
+		for(int l = outerCount - 1, r = from; l >= 0; l--) {
+			counter[l] = r % loopDims[l];
+			r /= loopDims[l];
+			oa += counter[l] * sa[l];
+			ob += counter[l] * sb[l];
+		}
+		for(int r = from; r < to; r++) {
+			MathObject acc = null;
+			for(int s = 0; s < inner; s++) {
+				MathObject term = Operator.MULTIPLY.evaluate(va[oa], vb[ob]);
+				acc = acc == null ? term : Operator.ADD.evaluate(acc, term);
+				for(int l = loopDims.length - 1; l >= 0; l--) {
+					oa += sa[l];
+					ob += sb[l];
+					if(++counter[l] < loopDims[l])
+						break;
+					oa -= sa[l] * loopDims[l];
+					ob -= sb[l] * loopDims[l];
+					counter[l] = 0;
+				}
+			}
+			result[r] = acc;
+		}
+	}
+
+	/**
+	 * Contracts two real tensors as a (batched) matrix product. The labels are divided into batch labels (shared and
+	 * kept), row labels (only in <tt>a</tt>), inner labels (shared and summed) and column labels (only in <tt>b</tt>). The
+	 * operands are permuted to <tt>A[batch,row,inner]</tt> and <tt>B[batch,inner,column]</tt>, after which every batch is
+	 * a single product computed by {@link MatrixMultiplication#multiply(double[], double[], int, int, int)}.
+	 * @return the contracted tensor, or <tt>null</tt> if the contraction has no inner labels or the products are too
+	 * small for the blocked kernel.
+	 */
+	private static Tensor multiply(Tensor a, Tensor b, long keep, int[] sizes) {
+		long ma = a.mask(), mb = b.mask();
+		long batch = ma & mb & keep, inner = ma & mb & ~keep, rows = ma & ~mb, cols = mb & ~ma;
+		if(inner == 0 || ((rows | cols) & ~keep) != 0)
+			return null;
+		int nb = size(batch, sizes), m = size(rows, sizes), k = size(inner, sizes), n = size(cols, sizes);
+		if(!MatrixMultiplication.isLarge(m, k, n))
+			return null;
+		double[] pa = a.permute(labels(batch, rows, inner), sizes).data;
+		double[] pb = b.permute(labels(batch, inner, cols), sizes).data;
+		double[] c;
+		if(nb == 1)
+			c = MatrixMultiplication.multiply(pa, pb, m, k, n);
+		else {
+			c = new double[nb * m * n];
+			for(int i = 0; i < nb; i++) {
+				double[] ci = MatrixMultiplication.multiply(Arrays.copyOfRange(pa, i * m * k, (i + 1) * m * k),
+						Arrays.copyOfRange(pb, i * k * n, (i + 1) * k * n), m, k, n);
+				System.arraycopy(ci, 0, c, i * m * n, m * n);
+			}
+		}
+		int[] labels = labels(batch, rows, cols);
+		return new Tensor(labels, dims(labels, sizes), c).permute(labels(batch | rows | cols), sizes);
+	}
+
+	/**
+	 * @return this tensor with its axes in the given order, which is this tensor itself if the order is unchanged.
+	 */
+	private Tensor permute(int[] order, int[] sizes) {
+		return Arrays.equals(order, labels) ? this : rearrange(order, dims(order, sizes));
+	}
+
+	/**
+	 * @return the labels in the given masks, in order of the masks and in ascending order within each mask.
+	 */
+	private static int[] labels(long... masks) {
+		int count = 0;
+		for(long mask : masks)
+			count += Long.bitCount(mask);
+		int[] labels = new int[count];
+		int l = 0;
+		for(long mask : masks)
+			for(int label = 0; label < 64; label++)
+				if((mask & (1L << label)) != 0)
+					labels[l++] = label;
+		return labels;
+	}
+
+	private static int[] dims(int[] labels, int[] sizes) {
+		int[] dims = new int[labels.length];
+		for(int l = 0; l < labels.length; l++)
+			dims[l] = sizes[labels[l]];
+		return dims;
+	}
+
+	private static int size(long mask, int[] sizes) {
+		int size = 1;
+		for(int label = 0; label < 64; label++)
+			if((mask & (1L << label)) != 0)
+				size *= sizes[label];
+		return size;
+	}
+
+	/**
+	 * Contracts two real tensors, for the values <tt>from</tt> (inclusive) to <tt>to</tt> (exclusive) of the outermost
+	 * loop. All loops but the innermost are run by an odometer, the innermost loop walks through both operands (and the
+	 * result, if the innermost label is kept) with a fixed stride. If the outermost loop is over a kept label, different
+	 * ranges of it write to different elements of the result.
+	 * @param a the elements of the first operand
+	 * @param sa the stride of the first operand for every loop
+	 * @param b the elements of the second operand
+	 * @param sb the stride of the second operand for every loop
+	 * @param result the array to which the products are added
+	 * @param loopDims the length of every loop, the loops over kept labels come first
+	 * @param outerCount the number of loops over kept labels
+	 */
+	private static void contract(double[] a, int[] sa, double[] b, int[] sb, double[] result, int[] loopDims, int outerCount,
+			int from, int to) {
+		int loops = loopDims.length;
+		int[] sr = new int[loops];
+		for(int l = outerCount - 1, stride = 1; l >= 0; l--) {
+			sr[l] = stride;
+			stride *= loopDims[l];
+		}
+		int[] dims = loopDims.clone();
+		dims[0] = to - from;
+		int last = loops - 1;
+		int n = dims[last];
+		int da = sa[last], db = sb[last], dr = sr[last];
+		int count = 1;
+		for(int l = 0; l < last; l++)
+			count *= dims[l];
+		int[] counter = new int[last];
+		int oa = from * sa[0], ob = from * sb[0], or = from * sr[0];
+		for(int c = 0; c < count; c++) {
+			if(dr == 0) {
+				double s = 0;
+				for(int k = 0, ia = oa, ib = ob; k < n; k++, ia += da, ib += db)
+					s += a[ia] * b[ib];
+				result[or] += s;
+			} else {
+				for(int k = 0, ia = oa, ib = ob, ir = or; k < n; k++, ia += da, ib += db, ir += dr)
+					result[ir] += a[ia] * b[ib];
+			}
+			for(int l = last - 1; l >= 0; l--) {
+				oa += sa[l];
+				ob += sb[l];
+				or += sr[l];
+				if(++counter[l] < dims[l])
+					break;
+				oa -= sa[l] * dims[l];
+				ob -= sb[l] * dims[l];
+				or -= sr[l] * dims[l];
+				counter[l] = 0;
+			}
+		}
+	}
+
+	/**
+	 * @param loop the labels of a series of nested loops
+	 * @return the step through the elements of this tensor for every loop, which is 0 if this tensor does not have that label.
+	 */
+	private int[] strides(int[] loop) {
+		int[] strides = new int[loop.length];
+		for(int l = 0; l < loop.length; l++) {
+			int stride = 1;
+			for(int k = labels.length - 1; k >= 0; k--) {
+				if(labels[k] == loop[l])
+					strides[l] += stride;
+				stride *= dims[k];
+			}
+		}
+		return strides;
+	}
+
+	long mask() {
+		long mask = 0;
+		for(int label : labels)
+			mask |= 1L << label;
+		return mask;
+	}
+}
@@ -0,0 +1,288 @@
+package com.github.juupje.calculator.algorithms.calculus;
+
+import java.util.PriorityQueue;
+
+import com.github.juupje.calculator.algorithms.Algorithm;
+import com.github.juupje.calculator.helpers.CompensatedSum;
+import com.github.juupje.calculator.helpers.exceptions.ShapeException;
+import com.github.juupje.calculator.main.Calculator;
+import com.github.juupje.calculator.mathobjects.MFunction;
+import com.github.juupje.calculator.mathobjects.MReal;
+import com.github.juupje.calculator.mathobjects.MRealError;
+import com.github.juupje.calculator.mathobjects.MathObject;
+import com.github.juupje.calculator.mathobjects.Shape;
+
+/**
+ * Integrates a function of one variable using adaptive Gauss-Kronrod quadrature.
+ * <p>
+ * Every subinterval is integrated with a Kronrod rule (15 or 21 points), of which the embedded Gauss rule (7 or 10 points)
+ * uses a subset of the same function values. The difference between both results is used to estimate the error.
+ * The subintervals are kept in a priority queue ordered by their error, and the interval with the largest error
+ * is bisected until the total error is below the tolerance. Only the two new halves are evaluated in every step,
+ * the results of all other intervals are kept.
+ * </p>
+ * <tt>aintegral(f, a, b, tol, k)</tt> returns an {@link MRealError} containing the value of the integral and its estimated error
+ * (or simply 0 if <tt>a=b</tt>).
+ * @author Joep Geuskens
+ */
+public class AdaptiveIntegrator extends Algorithm {
+
+	/**
+	 * The maximum number of subintervals, after which the integration stops even if the tolerance is not reached.
+	 */
+	public static final int MAX_INTERVALS = 2000;
+	public static final double DEFAULT_TOLERANCE = 1e-10;
+
+	MFunction f;
+	double a, b;
+	double tolerance;
+	Rule rule;
+
+	int evaluations;
+	int intervals;
+
+	public AdaptiveIntegrator() {}
+
+	public AdaptiveIntegrator(MFunction f, double a, double b, double tolerance, int points) {
+		this.f = f;
+		this.a = a;
+		this.b = b;
+		this.tolerance = tolerance;
+		rule = Rule.get(points);
+		prepared = true;
+	}
+
+	public AdaptiveIntegrator(MFunction f, double a, double b) {
+		this(f, a, b, DEFAULT_TOLERANCE, 21);
+	}
+
+	@Override
+	public MReal execute() {
+		if (!prepared)
+			return null;
+		evaluations = 0;
+		intervals = 0;
+		if (a == b)
+			return new MReal(0);
+		MRealError result = a < b ? integrate(a, b) : (MRealError) integrate(b, a).negate();
+		Calculator.ioHandler.debug("Adaptive integration used " + evaluations + " function evaluations on " + intervals + " subintervals.");
+		return result;
+	}
+
+	@Override
+	public MReal execute(MathObject... args) {
+		prepare(args);
+		return execute();
+	}
+
+	private MRealError integrate(double a, double b) {
+		PriorityQueue<Interval> queue = new PriorityQueue<>(MAX_INTERVALS, (i, j) -> Double.compare(j.error, i.error));
+		Interval whole = new Interval(a, b);
+		evaluate(whole);
+		queue.add(whole);
+		intervals = 1;
+		double value = whole.value, error = whole.error;
+		while (error > Math.max(tolerance, tolerance * Math.abs(value)) && intervals < MAX_INTERVALS) {
+			Interval worst = queue.peek();
+			double mid = (worst.a + worst.b) / 2;
+			if (!(mid > worst.a && mid < worst.b))
+				break; // the interval cannot be bisected any further
+			queue.poll();
+			Interval left = new Interval(worst.a, mid);
+			Interval right = new Interval(mid, worst.b);
+			evaluate(left, right);
+			queue.add(left);
+			queue.add(right);
+			intervals++;
+			value += left.value + right.value - worst.value;
+			error += left.error + right.error - worst.error;
+			if (Double.isNaN(value) || Double.isNaN(error))
+				break;
+		}
+		// recalculate the totals, as the running sums accumulate rounding errors.
+		CompensatedSum totalValue = new CompensatedSum();
+		CompensatedSum totalError = new CompensatedSum();
+		for (Interval i : queue) {
+			totalValue.add(i.value);
+			totalError.add(i.error);
+		}
+		value = totalValue.get();
+		error = totalError.get();
+		if (error > Math.max(tolerance, tolerance * Math.abs(value)))
+			Calculator.ioHandler.err("Adaptive integration did not reach the tolerance of " + tolerance + " after " + intervals
+					+ " subintervals, the estimated error is " + error + ".");
+		return new MRealError(value, error);
+	}
+
+	/**
+	 * Evaluates the Kronrod rule on the given intervals. The function values of all intervals are calculated in
+	 * a single batch.
+	 */
+	private void evaluate(Interval... intervals) {
+		double[] nodes = rule.nodes;
+		int n = 2 * nodes.length - 1;
+		double[] x = new double[n * intervals.length];
+		for (int k = 0; k < intervals.length; k++) {
+			double c = (intervals[k].a + intervals[k].b) / 2;
+			double h = (intervals[k].b - intervals[k].a) / 2;
+			for (int j = 0; j < nodes.length - 1; j++) {
+				x[k * n + 2 * j] = c - h * nodes[j];
+				x[k * n + 2 * j + 1] = c + h * nodes[j];
+			}
+			x[k * n + n - 1] = c;
+		}
+		double[] fx = new double[x.length];
+		f.evaluateBatch(new double[][] { x }, fx);
+		evaluations += x.length;
+		for (int k = 0; k < intervals.length; k++)
+			rule.apply(intervals[k], fx, k * n);
+	}
+
+	@Override
+	protected void prepare(MathObject[] args) {
+		super.prepare(args);
+		if (args.length < 3 || args.length > 5)
+			throw new IllegalArgumentException("Expected 3 to 5 arguments, type help(aintegral) for more info.");
+		if (!(args[0] instanceof MFunction))
+			throw new IllegalArgumentException("Expected first argument to be a function, got " + argTypesToString(args));
+		f = (MFunction) args[0].evaluate();
+		if (f.getParameters().length != 1)
+			throw new IllegalArgumentException("Adaptive integration is only defined for functions of one variable, got "
+					+ f.getParameters().length + " variables.");
+		for (int i = 1; i < args.length; i++) {
+			args[i] = args[i].evaluate();
+			if (!(args[i] instanceof MReal))
+				throw new IllegalArgumentException("Argument " + (i + 1) + " has to be a real number, got " + argTypeToString(args[i]));
+		}
+		a = ((MReal) args[1]).getValue();
+		b = ((MReal) args[2]).getValue();
+		tolerance = DEFAULT_TOLERANCE;
+		if (args.length > 3) {
+			tolerance = ((MReal) args[3]).getValue();
+			if (!(tolerance > 0))
+				throw new IllegalArgumentException("The tolerance has to be positive, got " + args[3]);
+		}
+		rule = Rule.get(args.length > 4 && ((MReal) args[4]).isInteger() ? (int) ((MReal) args[4]).getValue() : 21);
+	}
+
+	@Override
+	public Shape shape(Shape... shapes) {
+		if (shapes.length >= 3 && shapes.length <= 5) {
+			boolean scalars = shapes[0].dim() == 0;
+			for (int i = 1; i < shapes.length; i++)
+				scalars &= shapes[i].isScalar();
+			if (scalars)
+				return new Shape();
+		}
+		String msg = "";
+		for (int i = 0; i < shapes.length; i++)
+			msg += (i != 0 ? ", " : "") + shapes[i].toString();
+		throw new ShapeException("Adaptive integration algorithm is not defined for arguments with shapes: " + msg);
+	}
+
+	/**
+	 * @return the number of function evaluations used by the last integration.
+	 */
+	public int getEvaluations() {
+		return evaluations;
+	}
+
+	/**
+	 * @return the number of subintervals used by the last integration.
+	 */
+	public int getIntervals() {
+		return intervals;
+	}
+
+	private static class Interval {
+		final double a, b;
+		double value, error;
+
+		Interval(double a, double b) {
+			this.a = a;
+			this.b = b;
+		}
+	}
+
+	/**
+	 * A Gauss-Kronrod rule on [-1,1]. The nodes are the non-negative Kronrod nodes in decreasing order, the last
+	 * one being 0. The Gauss weights are 0 for nodes which are not part of the Gauss rule.
+	 */
+	private static class Rule {
+		static final Rule K15 = new Rule(
+				new double[] { 0.991455371120812639206854697526329, 0.949107912342758524526189684047851,
+						0.864864423359769072789712788640926, 0.741531185599394439863864773280788,
+						0.586087235467691130294144845693013, 0.405845151377397166906606412076961,
+						0.207784955007898467600689403773245, 0 },
+				new double[] { 0.022935322010529224963732008058970, 0.063092092629978553290700663189204,
+						0.104790010322250183839876322541518, 0.140653259715525918745189590510238,
+						0.169004726639267902826583426598550, 0.190350578064785409913256402421014,
+						0.204432940075298892414161999234649, 0.209482141084727828012999174891714 },
+				new double[] { 0, 0.129484966168869693270611432679082, 0, 0.279705391489276667901467771423780, 0,
+						0.381830050505118944950369775488975, 0, 0.417959183673469387755102040816327 });
+		static final Rule K21 = new Rule(
+				new double[] { 0.995657163025808080735527280689003, 0.973906528517171720077964012084452,
+						0.930157491355708226001207180059508, 0.865063366688984510732096688423493,
+						0.780817726586416897063717578345042, 0.679409568299024406234327365114874,
+						0.562757134668604683339000099272694, 0.433395394129247190799265943165784,
+						0.294392862701460198131126603103866, 0.148874338981631210884826001129720, 0 },
+				new double[] { 0.011694638867371874278064396062192, 0.032558162307964727478818972459390,
+						0.054755896574351996031381300244580, 0.075039674810919952767043140916190,
+						0.093125454583697605535065465083366, 0.109387158802297641899210590325805,
+						0.123491976262065851077208642822893, 0.134709217311473325928054001771707,
+						0.142775938577060080797094273138717, 0.147739104901338491374841515972068,
+						0.149445554002916905664936468389821 },
+				new double[] { 0, 0.066671344308688137593568809893332, 0, 0.149451349150580593145776339657697, 0,
+						0.219086362515982043995534934228163, 0, 0.269266719309996355091226921569469, 0,
+						0.295524224714752870173892994651338, 0 });
+
+		final double[] nodes, kronrodWeights, gaussWeights;
+
+		Rule(double[] nodes, double[] kronrodWeights, double[] gaussWeights) {
+			this.nodes = nodes;
+			this.kronrodWeights = kronrodWeights;
+			this.gaussWeights = gaussWeights;
+		}
+
+		static Rule get(int points) {
+			if (points == 15)
+				return K15;
+			else if (points == 21)
+				return K21;
+			throw new IllegalArgumentException("Expected a Kronrod rule with 15 or 21 points, got " + points);
+		}
+
+		/**
+		 * Calculates the value and error of the interval from the function values <tt>fx[offset]</tt> and up,
+		 * which are ordered as the points created by {@link AdaptiveIntegrator#evaluate(Interval...)}.
+		 * The error estimate is the one used by QUADPACK.
+		 */
+		void apply(Interval interval, double[] fx, int offset) {
+			int last = nodes.length - 1;
+			double h = (interval.b - interval.a) / 2;
+			double fc = fx[offset + 2 * last];
+			double kronrod = kronrodWeights[last] * fc, gauss = gaussWeights[last] * fc;
+			double abs = Math.abs(kronrod);
+			for (int j = 0; j < last; j++) {
+				double f1 = fx[offset + 2 * j], f2 = fx[offset + 2 * j + 1];
+				kronrod += kronrodWeights[j] * (f1 + f2);
+				gauss += gaussWeights[j] * (f1 + f2);
+				abs += kronrodWeights[j] * (Math.abs(f1) + Math.abs(f2));
+			}
+			double mean = kronrod / 2;
+			double asc = kronrodWeights[last] * Math.abs(fc - mean);
+			for (int j = 0; j < last; j++)
+				asc += kronrodWeights[j] * (Math.abs(fx[offset + 2 * j] - mean) + Math.abs(fx[offset + 2 * j + 1] - mean));
+			h = Math.abs(h);
+			double error = Math.abs((kronrod - gauss) * h);
+			asc *= h;
+			abs *= h;
+			if (asc != 0 && error != 0)
+				error = asc * Math.min(1, Math.pow(200 * error / asc, 1.5));
+			if (abs > Double.MIN_NORMAL / (50 * Math.ulp(1.0)))
+				error = Math.max(50 * Math.ulp(1.0) * abs, error);
+			interval.value = kronrod * (interval.b - interval.a) / 2;
+			interval.error = error;
+		}
+	}
+}
@@ -1,5 +1,7 @@
 package com.github.juupje.calculator.algorithms.calculus;
 
+import java.util.HashMap;
+
 import com.github.juupje.calculator.algorithms.Algorithm;
 import com.github.juupje.calculator.algorithms.functions.Function;
 import com.github.juupje.calculator.helpers.Tools;
@@ -20,6 +22,8 @@ import com.github.juupje.calculator.mathobjects.MScalar;
 import com.github.juupje.calculator.mathobjects.MVector;
 import com.github.juupje.calculator.mathobjects.MathObject;
 import com.github.juupje.calculator.mathobjects.Shape;
+import com.github.juupje.calculator.tree.DAGNode;
+import com.github.juupje.calculator.tree.ExpressionDAG;
 import com.github.juupje.calculator.tree.Node;
 import com.github.juupje.calculator.tree.Tree;
 
@@ -97,205 +101,221 @@ public class Deriver extends Algorithm {
 	private MFunction derive(MFunction f, String var) {
 		for(String s : f.getParameters())
 			if(s.equals(var))
-				return new MFunction(f.getParameters(), f.getParamShapes(), new Tree(derive(f.getTree().getRoot(), var)), f.isDefined());
+				return new MFunction(f.getParameters(), f.getParamShapes(), new Derivation(var).derive(f.getTree()), f.isDefined());
 		return new MFunction(f.getParameters(), f.getParamShapes(), new Tree(new Node<MReal>(new MReal(0))), false);
 	}
-	
-	private Node<?> derive(Node<?> n, String var) {
-		if(n.data instanceof Variable) {
-			if(n.data.equals(var))
-				return new Node<MReal>(new MReal(1));
-			else
-				return new Node<MReal>(new MReal(0));
+
+	/**
+	 * Calculates the derivative of a tree on its {@link ExpressionDAG}. The derivative of every subexpression is
+	 * calculated once and shared by all its occurrences, and the subexpressions of the original tree which appear in
+	 * the derivative (like <tt>f(x)</tt> in <tt>[f(x)*g(x)]'=f'(x)*g(x)+f(x)*g'(x)</tt>) are shared instead of
+	 * copied. Multiplications by 0 and 1 and additions of 0 are left out as the derivative is built.
+	 */
+	private class Derivation {
+		final ExpressionDAG dag = new ExpressionDAG();
+		final String var;
+		final HashMap<DAGNode, DAGNode> derivatives = new HashMap<>();
+		final HashMap<DAGNode, Boolean> dependencies = new HashMap<>();
+		final DAGNode zero = real(0), one = real(1), two = real(2);
+
+		Derivation(String var) {
+			this.var = var;
+		}
+
+		Tree derive(Tree tree) {
+			return new Tree(dag.toTree(derive(dag.intern(tree.getRoot()))));
+		}
+
+		DAGNode derive(DAGNode n) {
+			DAGNode d = derivatives.get(n);
+			if(d == null) {
+				d = calculate(n);
+				derivatives.put(n, d);
+			}
+			return d;
+		}
+
+		private DAGNode calculate(DAGNode n) {
+			if(n.data instanceof Variable)
+				return ((Variable) n.data).getName().equals(var) ? one : zero;
+			if(n.data instanceof MathObject) {
+				if(n.data instanceof MFunction)
+					return dag.intern(Deriver.this.derive(((MFunction) n.data), var).getTree().getRoot());
+				return zero;
+			} else if(n.data instanceof Operator) {
+				Operator op = (Operator) n.data;
+				DAGNode f = n.left(), g = n.right();
+				switch(op) {
+				case ADD:
+				case SUBTRACT://f(x)+-g(x)=f'(x)+-g'(x)
+					return apply(derive(f), op, derive(g));
+				case DIVIDE:
+					boolean varInTop = dependsOn(f);
+					boolean varInBottom = dependsOn(g);
+					if(varInTop && !varInBottom) //f(x)/a=f'(x)/a
+						return apply(derive(f), op, g);
+					else if(!varInTop && varInBottom) //a/f(x)=-a/(f(x))^2*f'(x)
+						return apply(derive(g), Operator.MULTIPLY,
+								apply(apply(real(-1), Operator.MULTIPLY, f), op, apply(g, Operator.POWER, two)));
+					else if(varInTop && varInBottom) //f(x)/g(x)=(g(x)*f'(x)-f(x)*g'(x))/(g(x))^2
+						return apply(apply(apply(g, Operator.MULTIPLY, derive(f)), Operator.SUBTRACT,
+								apply(f, Operator.MULTIPLY, derive(g))), op, apply(g, Operator.POWER, two));
+					return zero; //[a/b]'=0
+				case MULTIPLY:
+					boolean varLeft = dependsOn(f);
+					boolean varRight = dependsOn(g);
+					if(varLeft && varRight) //[f(x)*g(x)]'=f'(x)*g(x)+f(x)*g'(x)
+						return apply(apply(g, op, derive(f)), Operator.ADD, apply(derive(g), op, f));
+					else if(varLeft)
+						return apply(derive(f), op, g);
+					else if(varRight)
+						return apply(derive(g), op, f);
+					return zero;
+				case NEGATE:
+				case TRANSPOSE:
+					DAGNode d = derive(f);
+					return d == zero ? zero : dag.node(op, d);
+				case POWER:
+					boolean varLeft2 = dependsOn(f);
+					boolean varRight2 = dependsOn(g);
+					if(varLeft2 && !varRight2) { //[f(x)^a]'=a*f'(x)*f(x)^(a-1)
+						DAGNode exponent;
+						if(g.data instanceof MScalar) //if a is a scalar, we can subtract 1 directly off it.
+							exponent = dag.node(((MScalar) g.data).copy().subtract(1));
+						else
+							exponent = apply(g, Operator.SUBTRACT, one);
+						return apply(apply(g, Operator.MULTIPLY, derive(f)), Operator.MULTIPLY, apply(f, op, exponent));
+					} else if(!varRight2 && !varLeft2) //[a^b]'=0
+						return zero;
+					else if(!varLeft2 && varRight2) { //[a^f(x)]'=ln(a)*f'(x)*a^f(x)
+						DAGNode n2 = apply(derive(g), Operator.MULTIPLY, n);
+						if(!f.data.equals(MConst.e.evaluate()))
+							//Multiply n2 with ln(a)
+							return apply(dag.node(Function.LN, f), Operator.MULTIPLY, n2);
+						return n2;
+					}
+					//[f(x)^g(x)]'=f(x)^g(x)*g'(x)*ln(f(x))+f(x)^(g(x)-1)*g(x)*f'(x)
+					DAGNode left = apply(apply(n, Operator.MULTIPLY, derive(g)), Operator.MULTIPLY, dag.node(Function.LN, f));
+					DAGNode n3 = dag.node(op, f, apply(g, Operator.SUBTRACT, one));
+					DAGNode right = apply(apply(n3, Operator.MULTIPLY, g), Operator.MULTIPLY, derive(f));
+					return apply(left, Operator.ADD, right);
+				default:
+					throw new InvalidOperationException("Can't derive operator " + op);
+				}
+			} else if(n.data instanceof Function) {
+				DAGNode f = n.left();
+				if(!dependsOn(f))
+					return zero;
+				Function func = (Function) n.data;
+				DAGNode node;
+				switch(func) {
+				case ABS:
+					node = apply(f, Operator.DIVIDE, n);
+					break;
+				case ACOS:
+				case ASIN:
+					DAGNode n2 = apply(one, Operator.SUBTRACT, apply(f, Operator.POWER, two));
+					node = apply(real(func == Function.ACOS ? -1 : 1), Operator.DIVIDE, dag.node(Function.SQRT, n2));
+					break;
+				case ATAN:
+					node = apply(one, Operator.DIVIDE, apply(one, Operator.ADD, apply(f, Operator.POWER, two)));
+					break;
+				case COS:
+					node = apply(real(-1), Operator.MULTIPLY, dag.node(Function.SIN, f));
+					break;
+				case COSD:
+					node = apply(real(-1), Operator.MULTIPLY, dag.node(Function.SIND, f));
+					break;
+				case LN:
+					node = apply(one, Operator.DIVIDE, f);
+					break;
+				case LOG:
+					node = apply(one, Operator.DIVIDE, apply(f, Operator.MULTIPLY, dag.node(Function.LN, real(10))));
+					break;
+				case SIN:
+					node = dag.node(Function.COS, f);
+					break;
+				case SIND:
+					node = dag.node(Function.COSD, f);
+					break;
+				case SQRT:
+					node = apply(one, Operator.DIVIDE, apply(two, Operator.MULTIPLY, n));
+					break;
+				case TAN:
+				case TAND:
+					node = apply(apply(n, Operator.POWER, two), Operator.ADD, one);
+					break;
+				default:
+					throw new InvalidOperationException("Can't derive function " + func.toString().toLowerCase());
+				}
+				return apply(node, Operator.MULTIPLY, derive(f));
+			}
+			throw new RuntimeException("Can't derive " + n.data.toString());
 		}
-		if(n.data instanceof MathObject) {
-			if(n.data instanceof MFunction)
-				return derive(((MFunction) n.data), var).getTree().getRoot();
-			return new Node<MReal>(new MReal(0));
-		} else if(n.data instanceof Operator) {
-			Node<?> node;
-			Operator op = (Operator) n.data;
+
+		boolean dependsOn(DAGNode n) {
+			Boolean depends = dependencies.get(n);
+			if(depends == null) {
+				if(n.data instanceof Operator)
+					depends = dependsOn(n.left()) || (n.right() != null && dependsOn(n.right()));
+				else if(n.data instanceof Function)
+					depends = dependsOn(n.left());
+				else if(n.data instanceof MExpression)
+					depends = dependsOn(dag.intern(((MExpression) n.data).getTree().getRoot()));
+				else if(n.data instanceof Variable)
+					depends = ((Variable) n.data).getName().equals(var);
+				else
+					depends = false;
+				dependencies.put(n, depends);
+			}
+			return depends;
+		}
+
+		/**
+		 * @return the node representing <tt>left op right</tt>, or a simpler equivalent node if one of the operands
+		 * is 0 or 1.
+		 */
+		DAGNode apply(DAGNode left, Operator op, DAGNode right) {
 			switch(op) {
 			case ADD:
-			case SUBTRACT://f(x)+-g(x)=f'(x)+-g'(x)
-				node = applyOperator(derive(n.left(), var), op, derive(n.right(), var));
+				if(left == zero)
+					return right;
+				if(right == zero)
+					return left;
 				break;
-			case DIVIDE:
-				boolean varInTop = dependsOn(n.left(), var);
-				boolean varInBottom = dependsOn(n.right(), var);
-				if(varInTop && !varInBottom) { //f(x)/a=f'(x)/a
-					node = applyOperator(derive(n.left(), var), op, n.right().copy());
-				} else if(!varInTop && varInBottom) {//a/f(x)=-a/(f(x))^2*f'(x)
-					//First derive a/y [a/y]'=-a/y^2
-					Node<Operator> n2 = new Node<Operator>(op);
-					n2.left(applyOperator(new Node<MReal>(new MReal(-1)), Operator.MULTIPLY, n.left().copy()));
-					n2.right(applyOperator(n.right().copy(), Operator.POWER, new Node<MReal>(new MReal(2))));
-					//Chain rule: multiply n2 with the derivative of f(x)
-					node = applyOperator(derive(n.right(), var), Operator.MULTIPLY, n2);
-				} else if(varInTop && varInBottom) { //f(x)/g(x)=(g(x)*f'(x)-f(x)*g'(x))/(g(x))^2
-					//Calculate the numerator of the derivative
-					Node<Operator> n2 = new Node<Operator>(Operator.SUBTRACT);
-					n2.left(applyOperator(n.right().copy(), Operator.MULTIPLY, derive(n.left(), var)));
-					n2.right(applyOperator(n.left().copy(), Operator.MULTIPLY, derive(n.right(), var)));
-					//Divide the n2 by the denominator squared.
-					node = new Node<Operator>(Operator.DIVIDE);
-					node.left(n2);
-					node.right(applyOperator(n.right().copy(), Operator.POWER, new Node<MReal>(new MReal(2))));
-				} else //[a/b]'=0
-					node = new Node<MReal>(new MReal(0));
+			case SUBTRACT:
+				if(right == zero)
+					return left;
+				if(left == zero)
+					return dag.node(Operator.NEGATE, right);
 				break;
 			case MULTIPLY:
-				boolean varLeft = dependsOn(n.left(), var);
-				boolean varRight = dependsOn(n.right(), var);
-				if(varLeft && varRight) { //[f(x)*g(x)]'=f'(x)*g(x)+f(x)*g'(x)
-					node = new Node<Operator>(Operator.ADD);
-					node.right(applyOperator(derive(n.right(), var), Operator.MULTIPLY, n.left().copy()));
-					node.left(applyOperator(n.right().copy(), Operator.MULTIPLY, derive(n.left(), var)));
-				} else if(varLeft || varRight) {
-					node = new Node<Operator>(Operator.MULTIPLY);
-					node.right(varLeft ? n.right().copy() : n.left().copy());
-					node.left(varLeft ? derive(n.left(), var) : derive(n.right(), var));
-				} else
-					node = new Node<MReal>(new MReal(0));
+				if(left == zero || right == zero)
+					return zero;
+				if(left == one)
+					return right;
+				if(right == one)
+					return left;
 				break;
-			case NEGATE:
-				node = new Node<Operator>(op);
-				node.left(derive(n.left(), var));
+			case DIVIDE:
+				if(left == zero)
+					return zero;
+				if(right == one)
+					return left;
 				break;
 			case POWER:
-				boolean varLeft2 = dependsOn(n.left(), var);
-				boolean varRight2 = dependsOn(n.right(), var);
-				if(varLeft2 && !varRight2) { //[f(x)^a]'=a*f'(x)*f(x)^(a-1)
-					node = new Node<Operator>(Operator.MULTIPLY);
-					node.left(applyOperator(n.right().copy(), Operator.MULTIPLY, derive(n.left(), var)));
-					node.right(new Node<Operator>(Operator.POWER));
-					node.right().left(n.left().copy());
-					if(n.right().data instanceof MScalar) //if a is a scalar, we can subtract 1 directly off it.
-						node.right().right(new Node<MScalar>(((MScalar) n.right().data).copy().subtract(1)));
-					else
-						node.right().right(applyOperator(n.right().copy(), Operator.SUBTRACT, new Node<MReal>(new MReal(1))));
-				} else if(!varRight2 && !varLeft2) //[a^b]'=0
-					node = new Node<MReal>(new MReal(0));
-				else if(!varLeft2 && varRight2) { //[a^f(x)]'=ln(a)*f'(x)*a^f(x)
-					Node<?> n2 = applyOperator(derive(n.right(), var), Operator.MULTIPLY, n.copy());
-					if(!n.left().data.equals(MConst.e.evaluate())) {
-						//Multiply n2 with ln(a)=ln(n.left)
-						Node<Function> fnode = new Node<>(Function.LN);
-						fnode.left(n.left().copy());
-						node = applyOperator(fnode, Operator.MULTIPLY, n2);
-					} else
-						node = n2;
-				} else { //[f(x)^g(x)]'=f(x)^g(x)*g'(x)*ln(f(x))+f(x)^(g(x)-1)*g(x)*f'(x)
-					//Left of the + sign
-					//multiply n with g'(x)
-					Node<Operator> n2 = applyOperator(n.copy(), Operator.MULTIPLY, derive(n.right(), var));
-					Node<Function> fnode = new Node<>(Function.LN);
-					fnode.left(n.left().copy());
-					//Multiply n2 with ln(f(x))
-					Node<Operator> left = applyOperator(n2, Operator.MULTIPLY, fnode);
-					
-					//right of the + sign
-					Node<?> n3 = n.copy(); //n=f(x)^g(x)
-					//subtract 1 of g(x): f(x)^(g(x)-1)
-					n3.right(applyOperator(n3.right(), Operator.SUBTRACT, new Node<MReal>(new MReal(1))));
-					//multiply n3 with g(x)
-					Node<Operator> n4 = applyOperator(n3, Operator.MULTIPLY, n.right().copy());
-					//multiply n4 with f'(x)
-					Node<Operator> right = applyOperator(n4, Operator.MULTIPLY, derive(n.left(), var));
-					
-					//add left and right
-					node = applyOperator(left, Operator.ADD, right);
-				}
-				break;
-			case TRANSPOSE:
-				node = new Node<Operator>(op);
-				node.left(derive(n.left(), var));
+				if(right == one)
+					return left;
 				break;
 			default:
-				throw new InvalidOperationException("Can't derive operator " + op);
-			}
-			return node;
-		} else if(n.data instanceof Function) {
-			if(!dependsOn(n.left(), var))
-				return new Node<MReal>(new MReal(0));
-			Function func = (Function) n.data;
-			Node<?> node = null;
-			switch(func) {
-			case ABS:
-				node = applyOperator(n.left().copy(), Operator.DIVIDE, n.copy());
-				break;
-			case ACOS:
-			case ASIN:
-				Node<Operator> n2 = applyOperator(new Node<MReal>(new MReal(1)),  Operator.SUBTRACT, 
-						applyOperator(n.left().copy(), Operator.POWER, new Node<MReal>(new MReal(2))));
-				node = applyOperator(new Node<MReal>(new MReal(func == Function.ACOS ? -1 : 1)), Operator.DIVIDE, applyFunction(Function.SQRT, n2));
-				break;
-			case ATAN:
-				Node<Operator> n3 = applyOperator(new Node<MReal>(new MReal(1)),  Operator.ADD, 
-						applyOperator(n.left().copy(), Operator.POWER, new Node<MReal>(new MReal(2))));
-				node = applyOperator(new Node<MReal>(new MReal(1)), Operator.DIVIDE, n3);
-				break;
-			case COS:
-				node = applyOperator(new Node<MReal>(new MReal(-1)), Operator.MULTIPLY, applyFunction(Function.SIN, n.left().copy()));
-				break;
-			case COSD:
-				applyOperator(new Node<MReal>(new MReal(-1)), Operator.MULTIPLY, applyFunction(Function.SIND, n.left().copy()));
-				break;
-			case LN:
-				node = applyOperator(new Node<MReal>(new MReal(1)), Operator.DIVIDE, n.left().copy());
-				break;
-			case LOG:
-				node = applyOperator(new Node<MReal>(new MReal(1)), Operator.DIVIDE,
-						applyOperator(n.left().copy(), Operator.MULTIPLY,
-								applyFunction(Function.LN, new Node<MReal>(new MReal(10)))));
-				break;
-			case SIN:
-				node = applyFunction(Function.COS, n.left().copy());
-				break;
-			case SIND:
-				node = applyFunction(Function.COSD, n.left().copy());
-				break;
-			case SQRT:
-				node = applyOperator(new Node<MReal>(new MReal(1)), Operator.DIVIDE, applyOperator(new Node<MReal>(new MReal(2)), Operator.MULTIPLY, n.copy()));
 				break;
-			case TAN:
-			case TAND:
-				node = applyOperator(applyOperator(n.copy(), Operator.POWER, new Node<MReal>(new MReal(2))), Operator.ADD, new Node<MReal>(new MReal(1)));
-				break;
-			default:
-				throw new InvalidOperationException("Can't derive function " + func.toString().toLowerCase());
 			}
-			return applyOperator(node, Operator.MULTIPLY, derive(n.left(), var));
+			return dag.node(op, left, right);
+		}
+
+		DAGNode real(double d) {
+			return dag.node(new MReal(d));
 		}
-		throw new RuntimeException("Can't derive " + n.data.toString());
-	}
-	
-	private boolean dependsOn(Node<?> n, String var) {
-		if(n.data instanceof Operator) {
-			if(n.right() != null)
-				return dependsOn(n.right(), var) || dependsOn(n.left(), var);
-			else
-				return dependsOn(n.left(), var);
-		} else if(n.data instanceof Function)
-			return dependsOn(n.left(), var);
-		else if(n.data instanceof MExpression) {
-			return dependsOn(((MExpression) n.data).getTree().getRoot(), var);
-		} else if(n.data instanceof Variable)
-			return ((Variable) n.data).getName().equals(var);
-		return false;
-	}
-	
-	private Node<Operator> applyOperator(Node<?> left, Operator op, Node<?> right) {
-		Node<Operator> n = new Node<>(op);
-		n.right(right);
-		n.left(left);
-		return n;
-	}
-	
-	private Node<Function> applyFunction(Function func, Node<?> left) {
-		Node<Function> n = new Node<>(func);
-		n.left(left);
-		return n;
 	}
 	
 	@Override
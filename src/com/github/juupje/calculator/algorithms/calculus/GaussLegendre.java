@@ -0,0 +1,124 @@
+package com.github.juupje.calculator.algorithms.calculus;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.github.juupje.calculator.helpers.io.CSVHandler;
+
+/**
+ * Provides the abscissae and weights of Gauss-Legendre quadrature on [-1,1] for any number of points.
+ * <p>
+ * For up to {@link #TABULATED} points the values are read from the data files shipped with the calculator, for more points
+ * they are calculated by Newton's method on the Legendre polynomials. In both cases, the result is stored in a table
+ * shared by all threads, so the data files are read (and the nodes calculated) at most once per number of points.
+ * </p>
+ * The order of the nodes is unspecified.
+ * @author Joep Geuskens
+ */
+public final class GaussLegendre {
+
+	/**
+	 * The largest number of points for which the nodes are stored in the data files.
+	 */
+	public static final int TABULATED = 64;
+
+	private static final ConcurrentHashMap<Integer, GaussLegendre> table = new ConcurrentHashMap<>();
+
+	private final double[] abscissae;
+	private final double[] weights;
+
+	private GaussLegendre(double[] abscissae, double[] weights) {
+		this.abscissae = abscissae;
+		this.weights = weights;
+	}
+
+	/**
+	 * Returns the nodes of the rule with <tt>n</tt> points.
+	 * @throws IllegalArgumentException if <tt>n&lt;2</tt>.
+	 */
+	public static GaussLegendre get(int n) {
+		if (n < 2)
+			throw new IllegalArgumentException("Gaussian quadrature needs at least 2 nodes, got " + n);
+		return table.computeIfAbsent(n, GaussLegendre::create);
+	}
+
+	private static GaussLegendre create(int n) {
+		if (n <= TABULATED) {
+			double[] abscissae = CSVHandler.readDoubleLine("/com/github/juupje/calculator/files/gaussquad_abscissae.dat", n - 2);
+			double[] weights = CSVHandler.readDoubleLine("/com/github/juupje/calculator/files/gaussquad_weights.dat", n - 2);
+			if (abscissae != null && weights != null && abscissae.length == n && weights.length == n)
+				return new GaussLegendre(abscissae, weights);
+		}
+		return calculate(n);
+	}
+
+	/**
+	 * Calculates the roots of the Legendre polynomial <tt>P_n</tt> using Newton's method, starting from the
+	 * approximation <tt>cos(pi*(i+3/4)/(n+1/2))</tt> of the i-th root. The weights are <tt>2/((1-x^2)P_n'(x)^2)</tt>.
+	 * The nodes are stored in pairs <tt>(-x,x)</tt> from the center outwards, preceded by 0 if <tt>n</tt> is odd.
+	 */
+	static GaussLegendre calculate(int n) {
+		double[] abscissae = new double[n];
+		double[] weights = new double[n];
+		int index = 0;
+		if (n % 2 == 1) {
+			double dp = legendre(n, 0)[1];
+			weights[index++] = 2 / (dp * dp);
+		}
+		for (int i = n / 2 - 1; i >= 0; i--) {
+			double x = Math.cos(Math.PI * (i + 0.75) / (n + 0.5));
+			double[] p = legendre(n, x);
+			for (int iteration = 0; iteration < 100; iteration++) {
+				double dx = p[0] / p[1];
+				x -= dx;
+				p = legendre(n, x);
+				if (Math.abs(dx) <= 2 * Math.ulp(x))
+					break;
+			}
+			double w = 2 / ((1 - x * x) * p[1] * p[1]);
+			abscissae[index] = -x;
+			weights[index++] = w;
+			abscissae[index] = x;
+			weights[index++] = w;
+		}
+		return new GaussLegendre(abscissae, weights);
+	}
+
+	/**
+	 * @return <tt>{P_n(x), P_n'(x)}</tt>, calculated with the three-term recurrence.
+	 */
+	private static double[] legendre(int n, double x) {
+		double p0 = 1, p1 = x;
+		for (int k = 2; k <= n; k++) {
+			double p2 = ((2 * k - 1) * x * p1 - (k - 1) * p0) / k;
+			p0 = p1;
+			p1 = p2;
+		}
+		return new double[] { p1, n * (x * p1 - p0) / (x * x - 1) };
+	}
+
+	public int size() {
+		return abscissae.length;
+	}
+
+	public double abscissa(int i) {
+		return abscissae[i];
+	}
+
+	public double weight(int i) {
+		return weights[i];
+	}
+
+	/**
+	 * @return a copy of the abscissae.
+	 */
+	public double[] getAbscissae() {
+		return abscissae.clone();
+	}
+
+	/**
+	 * @return a copy of the weights.
+	 */
+	public double[] getWeights() {
+		return weights.clone();
+	}
+}
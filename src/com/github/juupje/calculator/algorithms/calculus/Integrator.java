@@ -1,9 +1,13 @@
 package com.github.juupje.calculator.algorithms.calculus;
 
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
 import com.github.juupje.calculator.algorithms.Algorithm;
+import com.github.juupje.calculator.helpers.CompensatedSum;
 import com.github.juupje.calculator.helpers.exceptions.ShapeException;
 import com.github.juupje.calculator.helpers.exceptions.TreeException;
-import com.github.juupje.calculator.helpers.io.CSVHandler;
 import com.github.juupje.calculator.main.Calculator;
 import com.github.juupje.calculator.mathobjects.MFunction;
 import com.github.juupje.calculator.mathobjects.MReal;
@@ -14,14 +18,16 @@ import com.github.juupje.calculator.settings.Settings;
 
 public class Integrator extends Algorithm {
 
+	/**
+	 * The minimum number of abscissae of the outer dimension handled by a single task when integrating in parallel.
+	 */
+	private static final int PARALLEL_GRAIN = 4;
+
 	MFunction f;
 	MReal[] a;
 	MReal[] b;
 	int steps;
 	int multiplier;
-	double[] weights;
-	double[] abscissae;
-	double[][] lcoef;
 
 	public Integrator() {
 	};
@@ -60,10 +66,18 @@ public class Integrator extends Algorithm {
 			} else if (a[i].equals(b[i]))
 				return new MReal(0);
 		}
-		MReal[] x = new MReal[a.length];
-		for (int i = 0; i < a.length; i++)
-			x[i] = (MReal) a[i].copy();
-		return new MReal(integrate(f, x, a, b, steps, 0) * multiplier);
+		double[] lower = new double[a.length];
+		double[] upper = new double[b.length];
+		for (int i = 0; i < a.length; i++) {
+			lower[i] = a[i].getValue();
+			upper[i] = b[i].getValue();
+		}
+		try {
+			return new MReal(integrate(f, lower, upper, steps) * multiplier);
+		} catch (TreeException e) {
+			Calculator.errorHandler.handle(e);
+			return MReal.NaN();
+		}
 	}
 
 	@Override
@@ -72,41 +86,126 @@ public class Integrator extends Algorithm {
 		return execute();
 	}
 
-	private void loadGaussQuadData(int n) {
-		if (abscissae == null || weights == null || abscissae.length != n || weights.length != n) {
-			abscissae = CSVHandler.readDoubleLine("/com/github/juupje/calculator/files/gaussquad_abscissae.dat", n - 2);
-			weights = CSVHandler.readDoubleLine("/com/github/juupje/calculator/files/gaussquad_weights.dat", n - 2);
+	/**
+	 * Integrates <tt>f</tt> over the box <tt>[a,b]</tt> using Gaussian quadrature with <tt>steps</tt> points in every dimension.
+	 * <p>
+	 * For integrals of more than one dimension, the contribution of every abscissa of the outer dimension is
+	 * calculated separately, after which these contributions are added in order. If <tt>int_parallel</tt> is enabled,
+	 * the contributions are calculated in parallel on the common {@link ForkJoinPool}. As the terms and the order in which
+	 * they are added are the same in both cases, the serial and parallel results are identical.
+	 * </p>
+	 * @param a the lower bounds of every dimension.
+	 * @param b the upper bounds of every dimension.
+	 */
+	private double integrate(MFunction f, double[] a, double[] b, int steps) {
+		if (steps < 2)
+			throw new IllegalArgumentException("Can't integrate with less than 2 steps, got " + steps);
+		GaussLegendre nodes = GaussLegendre.get(steps);
+		int dim = a.length;
+		double[] c = new double[dim];
+		double[] d = new double[dim];
+		double scale = 1;
+		for (int i = 0; i < dim; i++) {
+			c[i] = (b[i] - a[i]) / 2;
+			d[i] = (a[i] + b[i]) / 2;
+			scale *= c[i];
 		}
-		if(abscissae == null || weights == null)
-			throw new RuntimeException("Could not read abscissae and/or weights from data files.");
+		Quadrature quad = new Quadrature(f, c, d, nodes.getAbscissae(), nodes.getWeights());
+		if (dim == 1)
+			return quad.sum(new double[1], 0) * scale;
+		double[] terms = new double[steps];
+		if (Settings.getBool(Settings.INT_PARALLEL))
+			ForkJoinPool.commonPool().invoke(new QuadratureTask(quad, terms, 0, steps));
+		else
+			quad.terms(terms, 0, steps);
+		return CompensatedSum.sum(terms) * scale;
 	}
 
-	private double gauss_quad(MFunction f, MReal[] x, MReal[] a, MReal[] b, int steps, int index) {
-		double sum = 0;
-		double c = (b[index].getValue() - a[index].getValue()) / 2;
-		double d = (a[index].getValue() + b[index].getValue()) / 2;
-		try {
-			for (int i = 0; i < steps; i++) {
-				x[index].setValue(c * abscissae[i] + d);
-				if (index == x.length - 1)
-					sum += ((MReal) f.evaluateAt(x)).getValue() * weights[i];
-				else {
-					sum += integrate(f, x, a, b, steps, index + 1) * weights[i];
-					for (int j = index + 1; j < a.length; j++)
-						x[j].setValue(a[j].getValue());
+	/**
+	 * Calculates the weighted sums of a (multidimensional) Gaussian quadrature on the reference interval [-1,1].
+	 * An instance does not change during the integration, and can therefore be shared between threads.
+	 */
+	private static class Quadrature {
+		final MFunction f;
+		final double[] c, d, abscissae, weights;
+
+		Quadrature(MFunction f, double[] c, double[] d, double[] abscissae, double[] weights) {
+			this.f = f;
+			this.c = c;
+			this.d = d;
+			this.abscissae = abscissae;
+			this.weights = weights;
+		}
+
+		/**
+		 * Calculates the contributions of the abscissae <tt>from</tt> (inclusive) to <tt>to</tt> (exclusive)
+		 * of the outer dimension and stores them in <tt>terms</tt>.
+		 */
+		void terms(double[] terms, int from, int to) {
+			double[] x = new double[c.length];
+			for (int i = from; i < to; i++) {
+				x[0] = c[0] * abscissae[i] + d[0];
+				terms[i] = weights[i] * sum(x, 1);
+			}
+		}
+
+		/**
+		 * Calculates the weighted sum over the dimensions <tt>index</tt> and up, with the coordinates of the
+		 * lower dimensions fixed to the values in <tt>x</tt>. The innermost dimension is evaluated as a single
+		 * batch using {@link MFunction#evaluateBatch(double[][], double[])}.
+		 */
+		double sum(double[] x, int index) {
+			int n = abscissae.length;
+			CompensatedSum sum = new CompensatedSum();
+			if (index == x.length - 1) {
+				double[][] columns = new double[x.length][];
+				for (int j = 0; j < index; j++) {
+					columns[j] = new double[n];
+					Arrays.fill(columns[j], x[j]);
+				}
+				columns[index] = new double[n];
+				for (int i = 0; i < n; i++)
+					columns[index][i] = c[index] * abscissae[i] + d[index];
+				double[] values = new double[n];
+				f.evaluateBatch(columns, values);
+				for (int i = 0; i < n; i++)
+					sum.add(weights[i] * values[i]);
+			} else {
+				for (int i = 0; i < n; i++) {
+					x[index] = c[index] * abscissae[i] + d[index];
+					sum.add(weights[i] * sum(x, index + 1));
 				}
 			}
-		} catch (TreeException e) {
-			Calculator.errorHandler.handle(e);
+			return sum.get();
 		}
-		return sum * c;
 	}
 
-	private double integrate(MFunction f, MReal[] x, MReal[] a, MReal[] b, int steps, int index) {
-		if (steps < 2 || steps>64)
-			throw new IllegalArgumentException("Can't integrate with less than 2 or more than 64 steps, got " + steps);
-		loadGaussQuadData(steps);
-		return gauss_quad(f, x, a, b, steps, index);
+	/**
+	 * Splits the abscissae of the outer dimension in halves until at most {@link #PARALLEL_GRAIN} remain,
+	 * and calculates their contributions.
+	 */
+	private static class QuadratureTask extends RecursiveAction {
+		private static final long serialVersionUID = 4000837427271735338L;
+		final Quadrature quad;
+		final double[] terms;
+		final int from, to;
+
+		QuadratureTask(Quadrature quad, double[] terms, int from, int to) {
+			this.quad = quad;
+			this.terms = terms;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= PARALLEL_GRAIN)
+				quad.terms(terms, from, to);
+			else {
+				int mid = (from + to) >>> 1;
+				invokeAll(new QuadratureTask(quad, terms, from, mid), new QuadratureTask(quad, terms, mid, to));
+			}
+		}
 	}
 
 	@Override
@@ -176,82 +275,4 @@ public class Integrator extends Algorithm {
 			msg += (i != 0 ? ", " : "") + shapes[i].toString();
 		throw new ShapeException("Integration algorithm is not defined for arguments with shapes: " + msg);
 	}
-
-/*	Methods for calculating abscissae and weights of Legendre Polynomials for Gaussian Quadrature.
- * Note that these methods only work for an even n, and n<44
- * private void legendreCoef(int k, int N) {
-		if(k==0) {
-			lcoef[0][0]=lcoef[1][1]=1;
-			lcoef[1][0]=0;
-			k=1;
-		}
-		//(n+1)P_(n+1)=(2n+1)*x*P_n-nP_(n-1)
-		//lcoef[n+1][m]=((2n+1)*lcoef[n][m-1]-n*lcoef[n-1][m])/(n+1)
-		for(int n = k; n <N; n++) {
-			lcoef[n+1][0]=-n*lcoef[n-1][0]/(n+1);
-			for(int m = 1; m <= N; m++) {
-				lcoef[n+1][m]=((2*n+1)*lcoef[n][m-1]-n*lcoef[n-1][m])/(n+1);
-			}
-		}
-	}
-
-	private double legendre(int n, double x) {
-		if (x == 0)
-			return 0;
-		double p = 0;
-		for (int i = 0; i <= n; i += 2)
-			p += lcoef[n][i] * Math.pow(x, i);
-		return p;
-	}
-
-	private double legendreDiff(int n, double x) {
-		if (x == 0)
-			return 0;
-		double p = 0;
-		for (int i = 2; i <= n; i += 2) //skip the i=0 term, as the derivative of x^0=0
-			p += i * lcoef[n][i] * Math.pow(x, i - 1);
-		return p;
-	}
-
-	private void legendreRoots(int n) {
-		double l, s, z, epsilon;
-		int count;
-		for (int i = 0; i < n / 2; i++) {
-			l = Math.cos(Math.PI * (i + 0.75) / (n + 0.5));
-			epsilon = 1E-10;
-			count = 0;
-			do {
-				s = l;
-				l -= legendre(n, l) / legendreDiff(n, l);
-				count++;
-				if(count>100) {
-					count=0;
-					epsilon*=10;
-				}
-			} while (Math.abs(l - s) > epsilon);
-			if(epsilon!=1E-10)
-				System.out.println("For n=" + n + ", i=" + i + " used epsilon: " + epsilon);
-			abscissae[i] = l;
-			abscissae[n - i - 1] = -l;
-			z = legendreDiff(n, l);
-			weights[i] = weights[n - i - 1] = 2 / ((1 - l * l) * z * z);
-		}
-	}
-
-	private void calculateAbscissae(int n) {
-		abscissae = new double[n];
-		weights = new double[n];
-		if(lcoef==null) {
-			lcoef = new double[n + 1][n + 1];
-			legendreCoef(0,n);
-		} if(lcoef.length<n) {
-			double[][] temp = lcoef;
-			lcoef = new double[n + 1][n + 1];
-			for(int i = 0; i < temp.length; i++)
-				for(int j = 0; j < temp[i].length; j++)
-					lcoef[i][j]=temp[i][j];
-			legendreCoef(temp.length-1, n);
-		}
-		legendreRoots(n);
-	}*/
 }
\ No newline at end of file
@@ -0,0 +1,319 @@
+package com.github.juupje.calculator.algorithms.calculus;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import com.github.juupje.calculator.algorithms.Algorithm;
+import com.github.juupje.calculator.helpers.CompensatedSum;
+import com.github.juupje.calculator.helpers.exceptions.ShapeException;
+import com.github.juupje.calculator.main.Calculator;
+import com.github.juupje.calculator.mathobjects.MFunction;
+import com.github.juupje.calculator.mathobjects.MReal;
+import com.github.juupje.calculator.mathobjects.MRealError;
+import com.github.juupje.calculator.mathobjects.MVector;
+import com.github.juupje.calculator.mathobjects.MathObject;
+import com.github.juupje.calculator.mathobjects.Shape;
+import com.github.juupje.calculator.settings.Settings;
+
+/**
+ * Integrates a function over a (high dimensional) box using randomized quasi-Monte Carlo integration.
+ * <p>
+ * The integrand is sampled at the points of a scrambled Halton sequence, of which {@link #REPLICATES} independently
+ * randomized copies are used. The estimate is the mean of the replicates, and the spread of the replicates gives the
+ * error estimate. Unlike {@link Integrator}, the cost does not grow exponentially with the number of dimensions.
+ * </p>
+ * The points are evaluated in rounds, each consisting of batches which are evaluated in parallel if the <tt>int_parallel</tt>
+ * setting is enabled. After every round, the integration stops if the estimated error is below the tolerance. For long runs,
+ * the current estimate is printed every few seconds.
+ * @author Joep Geuskens
+ */
+public class MonteCarloIntegrator extends Algorithm {
+
+	public static final int REPLICATES = 8;
+	public static final long DEFAULT_POINTS = 1 << 16;
+	/**
+	 * The number of points of a single replicate evaluated at once by {@link MFunction#evaluateBatch(double[][], double[])}.
+	 */
+	private static final int BATCH_SIZE = 1024;
+	/**
+	 * The number of batches per replicate in a single round.
+	 */
+	private static final int BATCHES_PER_ROUND = 16;
+	private static final long PROGRESS_INTERVAL = 2000;
+	private static final long SEED = 0x2545F4914F6CDD1DL;
+
+	MFunction f;
+	double[] a, b;
+	long points;
+	double tolerance;
+
+	long evaluations;
+
+	public MonteCarloIntegrator() {}
+
+	public MonteCarloIntegrator(MFunction f, double[] a, double[] b, long points, double tolerance) {
+		this.f = f;
+		this.a = a;
+		this.b = b;
+		this.points = points;
+		this.tolerance = tolerance;
+		prepared = true;
+	}
+
+	public MonteCarloIntegrator(MFunction f, double[] a, double[] b) {
+		this(f, a, b, DEFAULT_POINTS, 0);
+	}
+
+	@Override
+	public MReal execute() {
+		if (!prepared)
+			return null;
+		int dim = a.length;
+		double volume = 1;
+		for (int j = 0; j < dim; j++)
+			volume *= b[j] - a[j];
+		SplittableRandom random = new SplittableRandom(SEED);
+		Halton[] sequences = new Halton[REPLICATES];
+		CompensatedSum[] sums = new CompensatedSum[REPLICATES];
+		for (int r = 0; r < REPLICATES; r++) {
+			sequences[r] = new Halton(dim, random);
+			sums[r] = new CompensatedSum();
+		}
+
+		long perReplicate = Math.max(2, (points + REPLICATES - 1) / REPLICATES);
+		long done = 0;
+		long lastProgress = System.currentTimeMillis();
+		double value = 0, error = 0;
+		evaluations = 0;
+		while (done < perReplicate) {
+			int batches = (int) Math.min(BATCHES_PER_ROUND, (perReplicate - done + BATCH_SIZE - 1) / BATCH_SIZE);
+			double[] partial = new double[REPLICATES * batches];
+			Round round = new Round(sequences, done, Math.min(perReplicate, done + (long) batches * BATCH_SIZE), batches, partial);
+			if (Settings.getBool(Settings.INT_PARALLEL))
+				ForkJoinPool.commonPool().invoke(new RoundTask(round, 0, partial.length));
+			else
+				round.evaluate(0, partial.length);
+			for (int r = 0; r < REPLICATES; r++)
+				for (int k = 0; k < batches; k++)
+					sums[r].add(partial[r * batches + k]);
+			done = round.end;
+			evaluations = done * REPLICATES;
+
+			double[] means = new double[REPLICATES];
+			for (int r = 0; r < REPLICATES; r++)
+				means[r] = sums[r].get() / done;
+			value = CompensatedSum.sum(means) / REPLICATES;
+			CompensatedSum variance = new CompensatedSum();
+			for (double m : means)
+				variance.add((m - value) * (m - value));
+			error = Math.sqrt(variance.get() / (REPLICATES * (REPLICATES - 1)));
+			if (tolerance > 0 && error * Math.abs(volume) <= Math.max(tolerance, tolerance * Math.abs(value * volume)))
+				break;
+			if (done < perReplicate && System.currentTimeMillis() - lastProgress >= PROGRESS_INTERVAL) {
+				lastProgress = System.currentTimeMillis();
+				Calculator.ioHandler.out("mcintegral: " + evaluations + " points, estimate " + value * volume + " +/- " + error * Math.abs(volume));
+			}
+		}
+		Calculator.ioHandler.debug("Quasi-Monte Carlo integration used " + evaluations + " function evaluations.");
+		return new MRealError(value * volume, error * Math.abs(volume));
+	}
+
+	@Override
+	public MReal execute(MathObject... args) {
+		prepare(args);
+		return execute();
+	}
+
+	/**
+	 * @return the number of function evaluations used by the last integration.
+	 */
+	public long getEvaluations() {
+		return evaluations;
+	}
+
+	/**
+	 * The batches evaluated in a single round: batch <tt>k</tt> of replicate <tt>r</tt> has index <tt>r*batches+k</tt>
+	 * and contains the points <tt>start+k*BATCH_SIZE</tt> up to (but not including) <tt>start+(k+1)*BATCH_SIZE</tt> or <tt>end</tt>.
+	 */
+	private class Round {
+		final Halton[] sequences;
+		final long start, end;
+		final int batches;
+		final double[] partial;
+
+		Round(Halton[] sequences, long start, long end, int batches, double[] partial) {
+			this.sequences = sequences;
+			this.start = start;
+			this.end = end;
+			this.batches = batches;
+			this.partial = partial;
+		}
+
+		/**
+		 * Evaluates the batches <tt>from</tt> (inclusive) up to <tt>to</tt> (exclusive) and stores the sums of the function values in <tt>partial</tt>.
+		 */
+		void evaluate(int from, int to) {
+			int dim = a.length;
+			double[][] columns = new double[dim][BATCH_SIZE];
+			double[] values = new double[BATCH_SIZE];
+			double[] u = new double[dim];
+			for (int index = from; index < to; index++) {
+				Halton seq = sequences[index / batches];
+				long first = start + (long) (index % batches) * BATCH_SIZE;
+				int len = (int) Math.min(BATCH_SIZE, end - first);
+				if (len != values.length) {
+					for (int j = 0; j < dim; j++)
+						columns[j] = new double[len];
+					values = new double[len];
+				}
+				for (int i = 0; i < len; i++) {
+					seq.point(first + i + 1, u); // skip the first point of the sequence, which is the shift itself
+					for (int j = 0; j < dim; j++)
+						columns[j][i] = a[j] + u[j] * (b[j] - a[j]);
+				}
+				f.evaluateBatch(columns, values);
+				partial[index] = CompensatedSum.sum(values);
+			}
+		}
+	}
+
+	private static class RoundTask extends RecursiveAction {
+		private static final long serialVersionUID = -6245049237004906146L;
+		final Round round;
+		final int from, to;
+
+		RoundTask(Round round, int from, int to) {
+			this.round = round;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= 1)
+				round.evaluate(from, to);
+			else {
+				int mid = (from + to) >>> 1;
+				invokeAll(new RoundTask(round, from, mid), new RoundTask(round, mid, to));
+			}
+		}
+	}
+
+	/**
+	 * A Halton sequence with random digit scrambling and a random shift (modulo 1). Every dimension uses the next prime
+	 * as its base, and a random permutation of the digits in that base (keeping 0 fixed, such that every point has a
+	 * finite expansion). Instances do not change after their creation and can therefore be shared between threads.
+	 */
+	static class Halton {
+		final int[] bases;
+		final int[][] permutations;
+		final double[] shifts;
+
+		Halton(int dim, SplittableRandom random) {
+			bases = primes(dim);
+			permutations = new int[dim][];
+			shifts = new double[dim];
+			for (int j = 0; j < dim; j++) {
+				int[] perm = new int[bases[j]];
+				for (int d = 0; d < perm.length; d++)
+					perm[d] = d;
+				for (int d = perm.length - 1; d > 1; d--) {
+					int k = 1 + random.nextInt(d);
+					int temp = perm[d];
+					perm[d] = perm[k];
+					perm[k] = temp;
+				}
+				permutations[j] = perm;
+				shifts[j] = random.nextDouble();
+			}
+		}
+
+		/**
+		 * Stores the coordinates of the k-th point of this sequence in <tt>u</tt>.
+		 */
+		void point(long k, double[] u) {
+			for (int j = 0; j < bases.length; j++) {
+				int base = bases[j];
+				int[] perm = permutations[j];
+				double inv = 1.0 / base, weight = inv, x = shifts[j];
+				for (long n = k; n > 0; n /= base) {
+					x += perm[(int) (n % base)] * weight;
+					weight *= inv;
+				}
+				u[j] = x - Math.floor(x);
+			}
+		}
+
+		static int[] primes(int n) {
+			int[] primes = new int[n];
+			int count = 0;
+			for (int p = 2; count < n; p++) {
+				boolean prime = true;
+				for (int i = 0; i < count && primes[i] * primes[i] <= p; i++)
+					if (p % primes[i] == 0) {
+						prime = false;
+						break;
+					}
+				if (prime)
+					primes[count++] = p;
+			}
+			return primes;
+		}
+	}
+
+	@Override
+	protected void prepare(MathObject[] args) {
+		super.prepare(args);
+		if (args.length < 3 || args.length > 5)
+			throw new IllegalArgumentException("Expected 3 to 5 arguments, type help(mcintegral) for more info.");
+		if (!(args[0] instanceof MFunction))
+			throw new IllegalArgumentException("Expected first argument to be a function, got " + argTypesToString(args));
+		f = (MFunction) args[0].evaluate();
+		args[1] = args[1].evaluate();
+		args[2] = args[2].evaluate();
+		a = toBounds(args[1]);
+		b = toBounds(args[2]);
+		if (a.length != b.length || a.length != f.getParameters().length)
+			throw new IllegalArgumentException("The bounds should have one value for each of the " + f.getParameters().length
+					+ " variables of the function, got " + a.length + " and " + b.length);
+		points = DEFAULT_POINTS;
+		tolerance = 0;
+		if (args.length > 3) {
+			args[3] = args[3].evaluate();
+			if (!(args[3] instanceof MReal && ((MReal) args[3]).isInteger() && ((MReal) args[3]).getValue() > 0))
+				throw new IllegalArgumentException("Argument 4 has to be a positive integer, got " + args[3]);
+			points = (long) ((MReal) args[3]).getValue();
+		}
+		if (args.length > 4) {
+			args[4] = args[4].evaluate();
+			if (!(args[4] instanceof MReal && ((MReal) args[4]).getValue() >= 0))
+				throw new IllegalArgumentException("The tolerance has to be a non-negative real number, got " + args[4]);
+			tolerance = ((MReal) args[4]).getValue();
+		}
+	}
+
+	private double[] toBounds(MathObject mo) {
+		if (mo instanceof MReal)
+			return new double[] { ((MReal) mo).getValue() };
+		if (mo instanceof MVector && ((MVector) mo).isOfType(MReal.class)) {
+			MVector v = (MVector) mo;
+			double[] bounds = new double[v.size()];
+			for (int i = 0; i < bounds.length; i++)
+				bounds[i] = ((MReal) v.get(i)).getValue();
+			return bounds;
+		}
+		throw new IllegalArgumentException("The bounds have to be real numbers or vectors of real numbers, got " + argTypeToString(mo));
+	}
+
+	@Override
+	public Shape shape(Shape... shapes) {
+		if (shapes.length >= 3 && shapes.length <= 5 && shapes[0].dim() == 0 && shapes[1].equals(shapes[2])
+				&& shapes[1].dim() <= 1 && (shapes.length < 4 || shapes[3].isScalar()) && (shapes.length < 5 || shapes[4].isScalar()))
+			return new Shape();
+		String msg = "";
+		for (int i = 0; i < shapes.length; i++)
+			msg += (i != 0 ? ", " : "") + shapes[i].toString();
+		throw new ShapeException("Quasi-Monte Carlo integration algorithm is not defined for arguments with shapes: " + msg);
+	}
+}
@@ -0,0 +1,253 @@
+package com.github.juupje.calculator.algorithms.linalg;
+
+import com.github.juupje.calculator.algorithms.Algorithm;
+import com.github.juupje.calculator.helpers.Tools;
+import com.github.juupje.calculator.helpers.exceptions.InvalidOperationException;
+import com.github.juupje.calculator.helpers.exceptions.ShapeException;
+import com.github.juupje.calculator.mathobjects.MMatrix;
+import com.github.juupje.calculator.mathobjects.MVector;
+import com.github.juupje.calculator.mathobjects.MathObject;
+import com.github.juupje.calculator.mathobjects.Shape;
+
+/**
+ * Calculates the Cholesky decomposition <tt>A=LL<sup>T</sup></tt> of a symmetric positive definite matrix <tt>A</tt>,
+ * in which <tt>L</tt> is lower triangular with a positive diagonal. This takes half the operations of the LU decomposition
+ * and needs no pivoting.
+ * <p>
+ * The decomposition is calculated {@link #BLOCK_SIZE} columns at a time. After the diagonal block and the rows of
+ * <tt>L</tt> below it have been calculated, the lower triangle of the remaining matrix is updated using
+ * {@link MatrixMultiplication#multiplyAddLower(double[], double[], double[], int, int, int, int, int)}.
+ * </p>
+ * If the matrix turns out not to be positive definite (a diagonal element of the remaining matrix is smaller than
+ * {@link #TOLERANCE}), the decomposition is marked as degenerate.
+ * @author Joep Geuskens
+ */
+public class CholeskyDecomposition extends Algorithm implements Factorization {
+
+	private static final double TOLERANCE = 1e-10;
+	/**
+	 * The amount of columns calculated at once.
+	 */
+	static final int BLOCK_SIZE = 64;
+
+	int n;
+	/**
+	 * The values of the matrix, which are replaced by <tt>L</tt> in the lower triangle. The upper triangle is not used.
+	 */
+	double[] data;
+	boolean factorized = false;
+	boolean degenerate = false;
+
+	public CholeskyDecomposition() {}
+
+	public CholeskyDecomposition(MMatrix m) {
+		prepare(new MathObject[] {m});
+	}
+
+	/**
+	 * Returns the (possibly cached) Cholesky decomposition of <tt>m</tt>, which has already been calculated.
+	 * Use {@link #isDegenerate()} to check whether <tt>m</tt> is positive definite.
+	 * @see FactorizationCache
+	 */
+	public static CholeskyDecomposition of(MMatrix m) {
+		long size = m.shape().rows();
+		return FactorizationCache.get(m, FactorizationCache.Kind.CHOLESKY, 8*size*size, mat -> {
+			CholeskyDecomposition chol = new CholeskyDecomposition(mat);
+			chol.factorize();
+			return chol;
+		});
+	}
+
+	/**
+	 * @return <tt>true</tt> if <tt>m</tt> is a real, square matrix which is exactly equal to its transpose.
+	 */
+	public static boolean isSymmetric(MMatrix m) {
+		if(!m.isReal() || !m.isSquare())
+			return false;
+		int n = m.shape().rows();
+		double[] a = m.values();
+		for(int i = 0; i < n; i++)
+			for(int j = 0; j < i; j++)
+				if(a[i*n+j] != a[j*n+i])
+					return false;
+		return true;
+	}
+
+	/**
+	 * @return <tt>true</tt> if all diagonal elements of the real, square matrix <tt>m</tt> are positive, which is necessary
+	 * for <tt>m</tt> to be positive definite.
+	 */
+	static boolean hasPositiveDiagonal(MMatrix m) {
+		int n = m.shape().rows();
+		double[] a = m.values();
+		for(int i = 0; i < n; i++)
+			if(!(a[i*n+i] > 0))
+				return false;
+		return true;
+	}
+
+	@Override
+	public MMatrix execute() {
+		if(!prepared) return null;
+		factorize();
+		if(degenerate)
+			throw new IllegalArgumentException("Cholesky decomposition failed, the matrix is not positive definite.");
+		double[] L = new double[n*n];
+		for(int i = 0; i < n; i++)
+			System.arraycopy(data, i*n, L, i*n, i+1);
+		return new MMatrix(n, n, L);
+	}
+
+	@Override
+	protected MMatrix execute(MathObject... args) {
+		prepare(args);
+		if(!isSymmetric((MMatrix) args[0]))
+			throw new IllegalArgumentException("Cholesky decomposition is only defined for symmetric matrices.");
+		return of((MMatrix) args[0]).execute();
+	}
+
+	@Override
+	protected void prepare(MathObject[] args) {
+		prepared = false;
+		if(args.length != 1 || !(args[0] instanceof MMatrix))
+			throw new IllegalArgumentException("Arguments " + argTypesToString(args) + " not applicable for Cholesky decomposition, see help for correct use.");
+		MMatrix m = (MMatrix) args[0];
+		if(!m.isSquare())
+			throw new ShapeException("Cholesky decomposition only works for square matrices, got shape " + m.shape());
+		if(!m.isReal())
+			throw new IllegalArgumentException("Cholesky decomposition only works for real-valued matrices.");
+		n = m.shape().rows();
+		data = m.values().clone();
+		factorized = false;
+		degenerate = false;
+		prepared = true;
+	}
+
+	/**
+	 * Calculates the decomposition, unless that has already been done.
+	 */
+	private void factorize() {
+		if(factorized) return;
+		factorized = true;
+		DoubleKernels kernels = DoubleKernels.get();
+		double[] a = data;
+		for(int k0 = 0; k0 < n; k0 += BLOCK_SIZE) {
+			int kend = Math.min(k0+BLOCK_SIZE, n);
+			int kb = kend-k0;
+			//the diagonal block
+			for(int i = k0; i < kend; i++) {
+				for(int j = k0; j <= i; j++) {
+					double s = a[i*n+j] - kernels.dot(a, i*n+k0, a, j*n+k0, j-k0);
+					if(j < i)
+						a[i*n+j] = s/a[j*n+j];
+					else if(s < TOLERANCE) {
+						degenerate = true;
+						data = null;
+						return;
+					} else
+						a[i*n+i] = Math.sqrt(s);
+				}
+			}
+			int m = n-kend;
+			if(m == 0)
+				break;
+			//the rows of L below the diagonal block
+			for(int i = kend; i < n; i++)
+				for(int j = k0; j < kend; j++)
+					a[i*n+j] = (a[i*n+j] - kernels.dot(a, i*n+k0, a, j*n+k0, j-k0))/a[j*n+j];
+			//update the lower triangle of the remaining matrix: A22 += (-L21)*L21^T
+			double[] l = new double[m*kb];
+			double[] lt = new double[kb*m];
+			for(int i = 0; i < m; i++) {
+				for(int j = 0; j < kb; j++) {
+					double v = a[(kend+i)*n+k0+j];
+					l[i*kb+j] = -v;
+					lt[j*m+i] = v;
+				}
+			}
+			MatrixMultiplication.multiplyAddLower(l, lt, a, kend*n+kend, n, m, kb, m);
+		}
+	}
+
+	/**
+	 * Solves <tt>LL<sup>T</sup>x=b</tt> by forward and backward substitution.
+	 */
+	double[] solve(double[] b) {
+		DoubleKernels kernels = DoubleKernels.get();
+		double[] x = b.clone();
+		for(int i = 0; i < n; i++)
+			x[i] = (x[i] - kernels.dot(data, i*n, x, 0, i))/data[i*n+i];
+		for(int i = n-1; i >= 0; i--) {
+			x[i] /= data[i*n+i];
+			kernels.axpy(-x[i], data, i*n, x, 0, i);
+		}
+		return x;
+	}
+
+	@Override
+	public MVector solve(MVector b) {
+		if(!prepared) return null;
+		factorize();
+		if(degenerate)
+			throw new InvalidOperationException("Cannot solve using the Cholesky decomposition of a matrix which is not positive definite.");
+		if(b.size() != n)
+			throw new ShapeException("Shape mismatch: (" + n + ", " + n + ") and " + b.shape());
+		double[] values = b.values();
+		if(values == null)
+			throw new IllegalArgumentException("Could not solve for non-numeric or complex vector");
+		return new MVector(solve(values));
+	}
+
+	/**
+	 * Calculates the determinant, which is the square of the product of the diagonal elements of <tt>L</tt>.
+	 */
+	@Override
+	public double det() {
+		if(!prepared) return Double.NaN;
+		factorize();
+		if(degenerate)
+			return Double.NaN;
+		double prod = 1;
+		for(int i = 0; i < n; i++)
+			prod *= data[i*n+i];
+		return prod*prod;
+	}
+
+	@Override
+	public double[] inverse() {
+		if(!prepared) return null;
+		factorize();
+		if(degenerate)
+			throw new InvalidOperationException("Cannot invert using the Cholesky decomposition of a matrix which is not positive definite.");
+		double[] inv = new double[n*n];
+		double[] e = new double[n];
+		for(int col = 0; col < n; col++) {
+			e[col] = 1;
+			double[] x = solve(e);
+			e[col] = 0;
+			for(int i = 0; i < n; i++)
+				inv[i*n+col] = x[i];
+		}
+		return inv;
+	}
+
+	/**
+	 * @return <tt>true</tt> if the matrix is not (numerically) positive definite.
+	 */
+	@Override
+	public boolean isDegenerate() {
+		factorize();
+		return degenerate;
+	}
+
+	@Override
+	public Shape shape(Shape... shapes) {
+		if(shapes.length==1 && shapes[0].dim()==2) {
+			if(shapes[0].rows() == shapes[0].cols())
+				return shapes[0];
+			else
+				throw new ShapeException("Cholesky decomposition only works for square matrices.");
+		}
+		throw new IllegalArgumentException("Algorithm not defined for shapes " + Tools.join(", ", (Object[]) shapes));
+	}
+}
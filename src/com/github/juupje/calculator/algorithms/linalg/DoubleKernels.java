@@ -0,0 +1,129 @@
+package com.github.juupje.calculator.algorithms.linalg;
+
+import com.github.juupje.calculator.settings.Settings;
+
+/**
+ * The loops on arrays of <tt>double</tt>s used by the dense linear algebra on real matrices and vectors.
+ * <p>
+ * This class contains the plain implementation, in which every sum is calculated in order. The instance returned by
+ * {@link #get()} when the <tt>simd_enabled</tt> setting is enabled splits the sums (dot products and norms) over
+ * eight independent accumulators. As these no longer depend on the previous addition, they can be executed in parallel
+ * by the CPU and vectorized by the JIT compiler. This changes the order of the additions, and therefore the rounding
+ * of the result. Element-wise operations are vectorized by the JIT compiler in both cases and give the same result.
+ * </p>
+ * @author Joep Geuskens
+ */
+public class DoubleKernels {
+
+	/**
+	 * The plain implementation, which calculates every sum in order.
+	 */
+	public static final DoubleKernels SCALAR = new DoubleKernels();
+	/**
+	 * The implementation which calculates sums using eight accumulators.
+	 */
+	public static final DoubleKernels VECTORIZED = new Vectorized();
+
+	DoubleKernels() {}
+
+	/**
+	 * Returns the implementation selected by the <tt>simd_enabled</tt> setting. Algorithms should call this once
+	 * when they start, so that a single calculation does not mix both implementations.
+	 */
+	public static DoubleKernels get() {
+		return Settings.getBool(Settings.SIMD_ENABLED) ? VECTORIZED : SCALAR;
+	}
+
+	/**
+	 * Calculates the dot product of <tt>x[xOff...xOff+n-1]</tt> and <tt>y[yOff...yOff+n-1]</tt>.
+	 */
+	public double dot(double[] x, int xOff, double[] y, int yOff, int n) {
+		double sum = 0;
+		for(int i = 0; i < n; i++)
+			sum += x[xOff+i]*y[yOff+i];
+		return sum;
+	}
+
+	/**
+	 * Calculates the sum of the squares of <tt>x[off...off+n-1]</tt>.
+	 */
+	public double sumOfSquares(double[] x, int off, int n) {
+		double sum = 0;
+		for(int i = 0; i < n; i++)
+			sum += x[off+i]*x[off+i];
+		return sum;
+	}
+
+	/**
+	 * Adds <tt>a</tt> times <tt>x[xOff...xOff+n-1]</tt> to <tt>y[yOff...yOff+n-1]</tt>.
+	 */
+	public void axpy(double a, double[] x, int xOff, double[] y, int yOff, int n) {
+		for(int i = 0; i < n; i++)
+			y[yOff+i] += a*x[xOff+i];
+	}
+
+	/**
+	 * Multiplies <tt>x[off...off+n-1]</tt> with <tt>a</tt>.
+	 */
+	public void scale(double a, double[] x, int off, int n) {
+		for(int i = 0; i < n; i++)
+			x[off+i] *= a;
+	}
+
+	/**
+	 * Adds <tt>y</tt> to <tt>x</tt> element-wise.
+	 */
+	public void add(double[] x, double[] y) {
+		for(int i = 0; i < x.length; i++)
+			x[i] += y[i];
+	}
+
+	/**
+	 * Subtracts <tt>y</tt> from <tt>x</tt> element-wise.
+	 */
+	public void subtract(double[] x, double[] y) {
+		for(int i = 0; i < x.length; i++)
+			x[i] -= y[i];
+	}
+
+	private static class Vectorized extends DoubleKernels {
+
+		@Override
+		public double dot(double[] x, int xOff, double[] y, int yOff, int n) {
+			double s0 = 0, s1 = 0, s2 = 0, s3 = 0, s4 = 0, s5 = 0, s6 = 0, s7 = 0;
+			int i = xOff, j = yOff, end = xOff+n;
+			for(; i+7 < end; i += 8, j += 8) {
+				s0 += x[i]*y[j];
+				s1 += x[i+1]*y[j+1];
+				s2 += x[i+2]*y[j+2];
+				s3 += x[i+3]*y[j+3];
+				s4 += x[i+4]*y[j+4];
+				s5 += x[i+5]*y[j+5];
+				s6 += x[i+6]*y[j+6];
+				s7 += x[i+7]*y[j+7];
+			}
+			for(; i < end; i++, j++)
+				s0 += x[i]*y[j];
+			return ((s0+s1)+(s2+s3))+((s4+s5)+(s6+s7));
+		}
+
+		@Override
+		public double sumOfSquares(double[] x, int off, int n) {
+			double s0 = 0, s1 = 0, s2 = 0, s3 = 0, s4 = 0, s5 = 0, s6 = 0, s7 = 0;
+			int i = off, end = off+n;
+			for(; i+7 < end; i += 8) {
+				s0 += x[i]*x[i];
+				s1 += x[i+1]*x[i+1];
+				s2 += x[i+2]*x[i+2];
+				s3 += x[i+3]*x[i+3];
+				s4 += x[i+4]*x[i+4];
+				s5 += x[i+5]*x[i+5];
+				s6 += x[i+6]*x[i+6];
+				s7 += x[i+7]*x[i+7];
+			}
+			for(; i < end; i++)
+				s0 += x[i]*x[i];
+			return ((s0+s1)+(s2+s3))+((s4+s5)+(s6+s7));
+		}
+	}
+}
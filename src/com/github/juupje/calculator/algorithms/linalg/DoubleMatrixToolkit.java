@@ -1,55 +1,134 @@
 package com.github.juupje.calculator.algorithms.linalg;
 
+import java.util.Arrays;
+
 import com.github.juupje.calculator.helpers.exceptions.ShapeException;
 import com.github.juupje.calculator.mathobjects.MMatrix;
-import com.github.juupje.calculator.mathobjects.MReal;
 import com.github.juupje.calculator.printer.TextPrinter;
 
+/**
+ * A {@link MatrixToolkit} for real matrices. The values are stored in a single <tt>double[]</tt>,
+ * in which the element at [i,j] of the (parent) matrix is located at <tt>i*rowStride+j*colStride</tt>.
+ * Submatrices created by {@link #sub(int, int, int, int)} share this array with their parent.
+ */
 public class DoubleMatrixToolkit extends MatrixToolkit<Double> {
 
+	double[] data;
+	int rowStride, colStride;
+	/**
+	 * The amount of columns of the array in which the values are stored, which is larger than <tt>cols</tt> for submatrices.
+	 */
+	int width;
+	/**
+	 * The kernels used for operations on rows and vectors, selected when the toolkit is created.
+	 */
+	final DoubleKernels kernels = DoubleKernels.get();
+
 	public DoubleMatrixToolkit(double[][] matrix) {
 		super(matrix.length, matrix[0].length);
-		this.matrix = new Double[rows][cols];
+		init(rows, cols);
 		for(int i = 0; i < rows; i++)
-			for(int j = 0; j < cols; j++)
-				this.matrix[i][j] = matrix[i][j];
+			System.arraycopy(matrix[i], 0, data, i*cols, cols);
 	}
-	
+
 	public DoubleMatrixToolkit(Double[][] matrix) {
-		super(matrix);
+		super(matrix.length, matrix[0].length);
+		init(rows, cols);
+		for(int i = 0; i < rows; i++)
+			for(int j = 0; j < cols; j++)
+				data[i*cols+j] = matrix[i][j];
+	}
+
+	/**
+	 * Constructs a toolkit containing a copy of the given values.
+	 * @param rows the amount of rows of the matrix
+	 * @param cols the amount of columns of the matrix
+	 * @param values the values of the matrix in row-major order.
+	 */
+	public DoubleMatrixToolkit(int rows, int cols, double[] values) {
+		super(rows, cols);
+		if(values.length != rows*cols)
+			throw new ShapeException("Cannot create matrix of shape (" + rows + ", " + cols + ") from " + values.length + " values");
+		init(rows, cols);
+		System.arraycopy(values, 0, data, 0, data.length);
 	}
-	
+
 	/**
 	 * Constructs a submatrix from the given matrix
-	 * @param matrix
+	 * @param parent the toolkit of which the values are shared with the submatrix
 	 * @param rstart the index of the first row (inclusive)
 	 * @param rend the index of the last row (inclusive)
 	 * @param cstart the index of the first column (inclusive)
 	 * @param cend the index of the last column (inclusive)
 	 */
-	public DoubleMatrixToolkit(Double[][] matrix, int rstart, int rend, int cstart, int cend) {
-		super(matrix, rstart, rend, cstart, cend);
-	}
-	
-	/*public DoubleMatrixToolkit(MMatrix m) {
-		rows = m.shape().rows();
-		cols = m.shape().cols();
-		matrix = new Double[rows][cols];
-		for(int i = 0; i < rows; i++) {
-			for(int j = 0; j < cols; j++) {
-				if(m.get(i, j) instanceof MReal)
-					matrix[i][j] = ((MReal) m.get(i, j)).getValue();
-				else if(m.get(i, j) instanceof MExpression) {
-					try {
-						matrix[i][j] = ((MReal) m.get(i,j).evaluate()).getValue();
-					} catch(ClassCastException e) {
-						throw new IllegalArgumentException("This toolkit only supports scalar-valued matrices, got " + Tools.type(m));
-					}
-				} else
-					throw new IllegalArgumentException("This toolkit only supports scalar-valued matrices, got " + Tools.type(m));
-			}
+	private DoubleMatrixToolkit(DoubleMatrixToolkit parent, int rstart, int rend, int cstart, int cend) {
+		super(rend-rstart+1, cend-cstart+1);
+		this.rstart = rstart;
+		this.rend = rend;
+		this.cstart = cstart;
+		this.cend = cend;
+		isSubMatrix = true;
+		data = parent.data;
+		rowStride = parent.rowStride;
+		colStride = parent.colStride;
+		width = parent.width;
+	}
+
+	private void init(int rows, int cols) {
+		data = new double[rows*cols];
+		width = cols;
+		rowStride = cols;
+		colStride = 1;
+	}
+
+	/**
+	 * @return the index in {@link #data} of the element at [i,j] (relative to the start of this (sub)matrix).
+	 */
+	final int index(int i, int j) {
+		return (i+rstart)*rowStride+(j+cstart)*colStride;
+	}
+
+	/**
+	 * Returns the value at the i-th row and j-th column.
+	 */
+	public double value(int i, int j) {
+		return data[index(i, j)];
+	}
+
+	/**
+	 * Sets the value at the i-th row and j-th column to <tt>d</tt>.
+	 */
+	public void setValue(int i, int j, double d) {
+		data[index(i, j)] = d;
+	}
+
+	@Override
+	public Double get(int i, int j) {
+		return data[index(i, j)];
+	}
+
+	@Override
+	public void set(Double d, int i, int j) {
+		data[index(i, j)] = d;
+	}
+
+	/**
+	 * Switches rows i and j. Like switching the rows of a <tt>double[][]</tt>, this switches the entire rows
+	 * of the parent matrix.
+	 * @param i index of the row to be replaced by the <tt>j</tt>-th row.
+	 * @param j index of the row to be replaced by the <tt>i</tt>-th row.
+	 */
+	@Override
+	public void switchRows(int i, int j) {
+		if(i == j)
+			return;
+		int a = (i+rstart)*rowStride, b = (j+rstart)*rowStride;
+		for(int k = 0; k < width; k++, a += colStride, b += colStride) {
+			double temp = data[a];
+			data[a] = data[b];
+			data[b] = temp;
 		}
-	}*/
+	}
 
 	/**
 	 * Adds the i-th row multiplied with c to the n-th row. Like so: <br/>
@@ -58,25 +137,53 @@ public class DoubleMatrixToolkit extends MatrixToolkit<Double> {
 	 * @param i the row to be added to the <tt>n</tt>-th row
 	 * @param c a constant with which the i-th row will be multiplied before being added to the <tt>n</tt>-th row.
 	 */
+	public void addToRow(int n, int i, double c) {
+		addToRow(n, i, c, 0);
+	}
+
+	/**
+	 * Adds the i-th row multiplied with c to the n-th row, starting at column <tt>start</tt>. Like so: <br/>
+	 * <tt>M_nj -> M_nj+c*M_ij   with   j=start....m</tt>
+	 * @param n the index of the row to which the <tt>i</tt>-th row will be added.
+	 * @param i the row to be added to the <tt>n</tt>-th row
+	 * @param c a constant with which the i-th row will be multiplied before being added to the <tt>n</tt>-th row.
+	 * @param start the index of the first column to which the row is added.
+	 */
+	public void addToRow(int n, int i, double c, int start) {
+		int a = index(n, start), b = index(i, start);
+		if(colStride == 1) {
+			kernels.axpy(c, data, b, data, a, cols-start);
+			return;
+		}
+		for(int j = start; j < cols; j++, a += colStride, b += colStride)
+			data[a] += c*data[b];
+	}
+
 	@Override
 	public void addToRow(int n, int i, Double c) {
-		n += rstart; i += rstart;
-		for(int j = cstart; j <= cend; j++)
-			matrix[n][j] += c*matrix[i][j];
+		addToRow(n, i, c.doubleValue());
 	}
-	
+
 	/**
 	 * Multiplies the <tt>n</tt>-th row with a constant scalar value.
 	 * @param n the index of the row to be multiplied with <tt>c</tt>
 	 * @param c the value with which the row will be multiplied.
 	 */
+	public void multiplyRow(int n, double c) {
+		int a = index(n, 0);
+		if(colStride == 1) {
+			kernels.scale(c, data, a, cols);
+			return;
+		}
+		for(int j = 0; j < cols; j++, a += colStride)
+			data[a] *= c;
+	}
+
 	@Override
 	public void multiplyRow(int n, Double c) {
-		n += rstart;
-		for(int j = cstart; j <= cend; j++)
-			matrix[n][j] *= c;
+		multiplyRow(n, c.doubleValue());
 	}
-	
+
 	/**
 	 * Multiplies the matrix (from the right) with the given matrix using a matrix product.
 	 * In Einstein notation: M_ij=A_ik*B_kj
@@ -89,24 +196,26 @@ public class DoubleMatrixToolkit extends MatrixToolkit<Double> {
 					+ rows + "x" + cols + ") and (" + M.length + "x" + M[0].length + ")");
 		if(isSubMatrix && M[0].length != cols)
 			throw new ShapeException("Cannot multiply submatrix with non-square matrix! Shape (" + M.length + ", "  +M[0].length + ")");
-		Double[][] result = new Double[rows][M[0].length];
-		for(int i = 0; i < result.length; i++) {
-			for(int j = 0; j < result[0].length; j++) {
-				result[i][j] = 0d;
-				for(int k = 0; k < cols; k++)
-					result[i][j] += matrix[i+rstart][k+cstart]*M[k][j];
+		int k = M[0].length;
+		if(MatrixMultiplication.isLarge(rows, cols, k)) {
+			store(MatrixMultiplication.multiply(values(), flatten(M), rows, cols, k), rows, k);
+			return;
+		}
+		double[] result = new double[rows*k];
+		double[] row = new double[cols];
+		for(int i = 0; i < rows; i++) {
+			for(int l = 0, a = index(i, 0); l < cols; l++, a += colStride)
+				row[l] = data[a];
+			for(int j = 0; j < k; j++) {
+				double sum = 0;
+				for(int l = 0; l < cols; l++)
+					sum += row[l]*M[l][j];
+				result[i*k+j] = sum;
 			}
 		}
-		rows = result.length;
-		cols = result[0].length;
-		if(isSubMatrix) {
-			for(int i = 0; i < rows; i++)
-				for(int j = 0; j < cols; j++)
-					matrix[i+rstart][j+cstart] = result[i][j];
-		} else			
-			matrix = result;
+		store(result, rows, k);
 	}
-	
+
 	/**
 	 * Multiplies the matrix (from the left) with the given matrix using a matrix product.
 	 * In Einstein notation: M_ij=B_ik*A_kj
@@ -119,24 +228,48 @@ public class DoubleMatrixToolkit extends MatrixToolkit<Double> {
 					+ M.length + "x" + M[0].length + ") and (" + rows + "x" + cols + ")");
 		if(isSubMatrix && M.length != rows)
 			throw new ShapeException("Cannot multiply submatrix with non-square matrix! Shape (" + M.length + ", "  +M[0].length + ")");
-		Double[][] result = new Double[M.length][cols];
-		for(int i = 0; i < result.length; i++) {
-			for(int j = 0; j < result[0].length; j++) {
-				result[i][j] = 0d;
-				for(int k = 0; k < rows; k++)
-					result[i][j] += M[i][k]*matrix[k+rstart][j+cstart];
+		if(MatrixMultiplication.isLarge(M.length, rows, cols)) {
+			store(MatrixMultiplication.multiply(flatten(M), values(), M.length, rows, cols), M.length, cols);
+			return;
+		}
+		double[] result = new double[M.length*cols];
+		double[] col = new double[rows];
+		for(int j = 0; j < cols; j++) {
+			for(int l = 0, a = index(0, j); l < rows; l++, a += rowStride)
+				col[l] = data[a];
+			for(int i = 0; i < M.length; i++) {
+				double[] M_i = M[i];
+				double sum = 0;
+				for(int l = 0; l < rows; l++)
+					sum += M_i[l]*col[l];
+				result[i*cols+j] = sum;
 			}
 		}
-		rows = result.length;
-		cols = result[0].length;
+		store(result, M.length, cols);
+	}
+
+	/**
+	 * Stores the result of a matrix product. A submatrix (which is square, and so is the result) is overwritten,
+	 * otherwise the matrix is replaced by the result.
+	 * @param result the row-major values of the result.
+	 */
+	private void store(double[] result, int rows, int cols) {
 		if(isSubMatrix) {
 			for(int i = 0; i < rows; i++)
-				for(int j = 0; j < cols; j++)
-					matrix[i+rstart][j+cstart] = result[i][j];
-		} else			
-			matrix = result;
+				for(int j = 0, a = index(i, 0); j < cols; j++, a += colStride)
+					data[a] = result[i*cols+j];
+		} else {
+			this.rows = rows;
+			this.cols = cols;
+			rend = rows-1;
+			cend = cols-1;
+			data = result;
+			width = cols;
+			rowStride = cols;
+			colStride = 1;
+		}
 	}
-	
+
 	/**
 	 * Multiplies the matrix (from the right) with the given vector using a matrix product.
 	 * In Einstein notation: w_i=A_ij*v_j
@@ -148,12 +281,17 @@ public class DoubleMatrixToolkit extends MatrixToolkit<Double> {
 			throw new ShapeException("Can't multiply matrix of size ("
 					+ rows + "x" + cols + ") with vector of size (" + v.length + ") on the right");
 		double[] w = new double[rows];
+		if(colStride == 1) {
+			for(int i = 0; i < rows; i++)
+				w[i] = kernels.dot(data, index(i, 0), v, 0, cols);
+			return w;
+		}
 		for(int i = 0; i < rows; i++)
-			for(int j = 0; j < cols; j++)
-				w[i] += matrix[i+rstart][j+cstart]*v[j];
+			for(int j = 0, a = index(i, 0); j < cols; j++, a += colStride)
+				w[i] += data[a]*v[j];
 		return w;
 	}
-	
+
 	/**
 	 * Multiplies the matrix (from the left) with the given vector using a matrix product.
 	 * In Einstein notation: w_i=v_j*A_ji
@@ -165,20 +303,26 @@ public class DoubleMatrixToolkit extends MatrixToolkit<Double> {
 			throw new ShapeException("Can't multiply matrix of size ("
 					+ rows + "x" + cols + ") with vector of size (" + v.length + ") on the left");
 		double[] w = new double[cols];
-		for(int i = 0; i < cols; i++)
+		if(colStride == 1) {
+			//add the rows one by one, which adds the terms of every element in the same order
 			for(int j = 0; j < rows; j++)
-				w[i] += v[j]*matrix[j+rstart][i+cstart];
+				kernels.axpy(v[j], data, index(j, 0), w, 0, cols);
+			return w;
+		}
+		for(int i = 0; i < cols; i++)
+			for(int j = 0, a = index(0, i); j < rows; j++, a += rowStride)
+				w[i] += v[j]*data[a];
 		return w;
 	}
-	
+
 	public void add(double[][] A) {
 		if(A.length != rows || A[0].length != cols)
 			throw new ShapeException("Cannot add matrices with different shapes: (" + rows + "x" + cols + ") and (" + A.length + "x" + A[0].length + ")");
 		for(int i = 0; i < rows; i++)
-			for(int j = 0; j < cols; j++)
-				matrix[i+rstart][j+cstart] += A[i][j];
+			for(int j = 0, a = index(i, 0); j < cols; j++, a += colStride)
+				data[a] += A[i][j];
 	}
-	
+
 	/**
 	 * Recursively reorders the rows of this matrix.
 	 * This means that the rows with the most leading zeros will end up on the bottom,
@@ -194,7 +338,7 @@ public class DoubleMatrixToolkit extends MatrixToolkit<Double> {
 		for(int i = rstart; i < maxRow; i++) {
 			int j = cstart;
 			curZeros = 0;
-			while(j < cols-augmcols && matrix[i][j] == 0) { j++; curZeros++;}
+			while(j < cols-augmcols && data[i*rowStride+j*colStride] == 0) { j++; curZeros++;}
 			if(curZeros < prevZeros)
 				switchRows(i-rstart, i-rstart-1);
 			else
@@ -202,20 +346,19 @@ public class DoubleMatrixToolkit extends MatrixToolkit<Double> {
 		}
 		reorder(maxRow-1);
 	}
-	
+
 	public double[] equalize() {
 		double[] s = new double[rows];
 		for(int i = 0; i < rows; i++) {
 			s[i] = 0;
-			for(int j = cstart; j <= cend; j++)
-				s[i] += Math.abs(matrix[i+rstart][j]);
+			for(int j = 0; j < cols; j++)
+				s[i] += Math.abs(value(i, j));
 			s[i] = 1/s[i];
-			for(int j = cstart; j <= cend; j++)
-				matrix[i+rstart][j]*=s[i];
+			multiplyRow(i, s[i]);
 		}
 		return s;
 	}
-	
+
 	public int[][] getPivotMatrix() {
 		int[][] P = new int[rows][cols];
 		for(int i = 0; i < rows; i++)
@@ -223,11 +366,11 @@ public class DoubleMatrixToolkit extends MatrixToolkit<Double> {
 				P[i][j] = i==j ? 1 : 0;
 		//P=identity
 		for(int col = 0; col < rows; col++) {
-			double colmax = matrix[col+rstart][col+cstart]; //max element in this column
+			double colmax = value(col, col); //max element in this column
 			int max_row = col;
 			for(int i = col; i < rows; i++) {
-				if(matrix[i+rstart][col+cstart]>colmax) {
-					colmax = matrix[i+rstart][col+cstart];
+				if(value(i, col)>colmax) {
+					colmax = value(i, col);
 					max_row = i;
 				}
 			}
@@ -239,35 +382,50 @@ public class DoubleMatrixToolkit extends MatrixToolkit<Double> {
 		}
 		return P;
 	}
-	
+
 	public void applyPivot(int[][] pivot) {
-		Double[][] m = new Double[rows][cols];
+		double[] copy = data.clone();
 		for(int i = 0; i < rows; i++)
 			for(int j = 0; j < cols; j++)
-				if(pivot[i][j]==1)
-					m[i] = matrix[j+rstart];
-		if(!isSubMatrix)
-			matrix = m;
-		else {
-			for(int row = rstart; row<= rend; row++)
-				matrix[row] = m[row-rstart];
-		}
+				if(pivot[i][j]==1) {
+					int a = (i+rstart)*rowStride, b = (j+rstart)*rowStride;
+					for(int k = 0; k < width; k++, a += colStride, b += colStride)
+						data[a] = copy[b];
+				}
 	}
-	
+
 	@Override
 	public MMatrix toMMatrix() {
-		MReal[][] m = new MReal[rows][cols];
+		return new MMatrix(rows, cols, values());
+	}
+
+	/**
+	 * @return a copy of the values of this matrix in row-major order.
+	 */
+	private double[] values() {
+		double[] values = new double[rows*cols];
 		for(int i = 0; i < rows; i++)
-			for(int j = 0; j < cols; j++)
-				m[i][j]= new MReal(matrix[i+rstart][j+cstart]);
-		return new MMatrix(m);
+			for(int j = 0, a = index(i, 0); j < cols; j++, a += colStride)
+				values[i*cols+j] = data[a];
+		return values;
 	}
-	
+
+	/**
+	 * @return the values of the given matrix in row-major order.
+	 */
+	private static double[] flatten(double[][] A) {
+		int cols = A[0].length;
+		double[] values = new double[A.length*cols];
+		for(int i = 0; i < A.length; i++)
+			System.arraycopy(A[i], 0, values, i*cols, cols);
+		return values;
+	}
+
 	@Override
 	public boolean isReal() {
 		return true;
 	}
-	
+
 	/**
 	 * Checks if the matrix is hermitian. This means that the matrix equals its conjugated transpose.
 	 * As this matrix consists only of doubles, this means that the matrix is hermitian iff its symmetric.
@@ -278,57 +436,66 @@ public class DoubleMatrixToolkit extends MatrixToolkit<Double> {
 	protected final boolean isHermitian(int mask) {
 		return (mask & SYMMETRIC) == SYMMETRIC;
 	}
-	
-	public DoubleMatrixToolkit sub(int rstart, int rend, int cstart, int cend) {
-		return new DoubleMatrixToolkit(matrix, rstart+this.rstart, rend+this.rstart, cstart+this.cstart, cend+this.cstart);
-	}
-	
+
 	/**
-	 * Multiplies the matrix (from the right) with the given matrix using a matrix product.
-	 * In Einstein notation: M_ij=A_ik*B_kj
-	 * Note that this method does not take the augmented columns into account.
-	 * @param A
-	 * @param B
-	 * @return A*B
+	 * Transposes the matrix. For a matrix which is not a submatrix this is done by switching the strides,
+	 * so the values do not need to be moved.
 	 */
-	public static Double[][] multiply(Double[][] A, Double[][] B) {
-		if(A[0].length != B.length)
-			throw new ShapeException("Can't multiply matrices of size ("
-					+ A.length + "x" + A[0].length + ") and (" + B.length + "x" + B[0].length + ")");
-		Double[][] result = new Double[A.length][B[0].length];
-		for(int i = 0; i < result.length; i++) {
-			for(int j = 0; j < result[0].length; j++) {
-				result[i][j] = 0d;
-				for(int k = 0; k < B.length; k++)
-					result[i][j] += A[i][k]*B[k][j];
-			}
+	@Override
+	public DoubleMatrixToolkit transpose() {
+		if(rows != cols)
+			throw new ShapeException("This method only works for square matrices");
+		if(isSubMatrix) {
+			for(int i = rstart; i <= rend; i++)
+				for(int j = cstart; j < i; j++) {
+					int a = i*rowStride+j*colStride, b = j*rowStride+i*colStride;
+					double temp = data[a];
+					data[a] = data[b];
+					data[b] = temp;
+				}
+		} else {
+			int temp = rowStride;
+			rowStride = colStride;
+			colStride = temp;
 		}
-		return result;
+		return this;
+	}
+
+	public DoubleMatrixToolkit sub(int rstart, int rend, int cstart, int cend) {
+		return new DoubleMatrixToolkit(this, rstart+this.rstart, rend+this.rstart, cstart+this.cstart, cend+this.cstart);
 	}
-	
+
 	/**
 	 * Multiplies the matrix (from the right) with the given matrix using a matrix product.
 	 * In Einstein notation: M_ij=A_ik*B_kj
-	 * Note that this method does not take the augmented columns into account.
 	 * @param A
 	 * @param B
 	 * @return A*B
 	 */
-	public static Double[][] multiply(double[][] A, Double[][] B) {
+	public static double[][] multiply(double[][] A, double[][] B) {
 		if(A[0].length != B.length)
 			throw new ShapeException("Can't multiply matrices of size ("
 					+ A.length + "x" + A[0].length + ") and (" + B.length + "x" + B[0].length + ")");
-		Double[][] result = new Double[A.length][B[0].length];
+		if(MatrixMultiplication.isLarge(A.length, B.length, B[0].length)) {
+			int k = B[0].length;
+			double[] c = MatrixMultiplication.multiply(flatten(A), flatten(B), A.length, B.length, k);
+			double[][] result = new double[A.length][];
+			for(int i = 0; i < result.length; i++)
+				result[i] = Arrays.copyOfRange(c, i*k, (i+1)*k);
+			return result;
+		}
+		double[][] result = new double[A.length][B[0].length];
 		for(int i = 0; i < result.length; i++) {
 			for(int j = 0; j < result[0].length; j++) {
-				result[i][j] = 0d;
+				double sum = 0;
 				for(int k = 0; k < B.length; k++)
-					result[i][j] += A[i][k]*B[k][j];
+					sum += A[i][k]*B[k][j];
+				result[i][j] = sum;
 			}
 		}
 		return result;
 	}
-	
+
 	public static double[][] dyadic(double[] v) {
 		double[][] A = new double[v.length][v.length];
 		for(int i = 0; i < v.length; i++) {
@@ -339,26 +506,25 @@ public class DoubleMatrixToolkit extends MatrixToolkit<Double> {
 		}
 		return A;
 	}
-	
-	public static Double[][] multiply(Double[][] A, double d) {
+
+	public static double[][] multiply(double[][] A, double d) {
 		for(int i = 0; i < A.length; i++)
 			for(int j = 0; j < A[0].length; j++)
 				A[i][j] *= d;
 		return A;
 	}
-	
-	public static Double[][] identity(int n) {
-		Double[][] A = new Double[n][n];
+
+	public static double[][] identity(int n) {
+		double[][] A = new double[n][n];
 		for(int i = 0; i < n; i++)
-			for(int j = 0; j < n; j++)
-				A[i][j] = (i==j ? 1d : 0d);
+			A[i][i] = 1;
 		return A;
 	}
-	
+
 	@Override
 	public String toString() {
 		StringBuilder sb = new StringBuilder();
-		TextPrinter.toText(sb, matrix, rstart, rend, cstart, cend);
+		TextPrinter.toText(sb, toMMatrix());
 		return sb.toString();
 	}
 }
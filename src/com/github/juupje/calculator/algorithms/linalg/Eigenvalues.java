@@ -2,6 +2,8 @@ package com.github.juupje.calculator.algorithms.linalg;
 
 import static com.github.juupje.calculator.algorithms.linalg.MatrixToolkit.*;
 
+import java.util.Arrays;
+
 import com.github.juupje.calculator.algorithms.Algorithm;
 import com.github.juupje.calculator.algorithms.algebra.ABCFormula;
 import com.github.juupje.calculator.helpers.Tools;
@@ -23,9 +25,13 @@ public class Eigenvalues extends Algorithm {
 	MMatrix m;
 	int n;
 	double epsilon = 1e-6;
+	boolean symmetric;
+	boolean vectors = false;
 	
 	@Override
 	public MVector execute() {
+		if(symmetric && mtk instanceof DoubleMatrixToolkit && (vectors || n > 3))
+			return eigSymmetric((DoubleMatrixToolkit) mtk);
 		if ((matrixType & UTRIANGULAR) == UTRIANGULAR || (matrixType & LTRIANGULAR) == LTRIANGULAR)
 			return eigDiag(m);
 		if(mtk.rows==1)
@@ -43,19 +49,19 @@ public class Eigenvalues extends Algorithm {
 		}
 		
 		if(mtk instanceof DoubleMatrixToolkit) {
-			//Double[][] U = null;
+			//double[][] U = null;
 			DoubleMatrixToolkit dmtk = (DoubleMatrixToolkit) mtk;
 			if((matrixType & UHESSENBERG) != UHESSENBERG)
 				//U = hessenberg(dmtk);
 				hessenberg(dmtk);
 			//Matrix is now tri-diagonal (as only symmetric matrices have guaranteed real eigenvalues)
-			//Double[][] Q = eig_francis(dmtk);
+			//double[][] Q = eig_francis(dmtk);
 			eig_francis(dmtk);
 			//if(U != null)
 			//	Q = DoubleMatrixToolkit.multiply(U, Q);
 			double[] d = new double[n];
 			for(int i = 0; i < n; i++)
-				d[i] = dmtk.matrix[i][i];
+				d[i] = dmtk.value(i, i);
 			return new MVector(d);
 		} else {
 			MMatrix U_hess = hessenberg(m);
@@ -70,6 +76,23 @@ public class Eigenvalues extends Algorithm {
 		}
 	}
 	
+	/**
+	 * Calculates the eigenvalues (and eigenvectors) of a real symmetric matrix using the {@link SymmetricEigenSolver}.
+	 * @return the eigenvalues in ascending order or, if {@link #vectors} is set, a vector containing the eigenvalues and a
+	 * matrix with the corresponding eigenvectors in its columns.
+	 */
+	private MVector eigSymmetric(DoubleMatrixToolkit tk) {
+		double[] a = new double[n*n];
+		for(int i = 0; i < n; i++)
+			for(int j = i; j < n; j++)
+				a[i*n+j] = tk.value(i, j);
+		SymmetricEigenSolver solver = new SymmetricEigenSolver(a, n, vectors);
+		MVector values = new MVector(solver.eigenvalues());
+		if(!vectors)
+			return values;
+		return new MVector(values, new MMatrix(n, n, solver.eigenvectors()));
+	}
+
 	private MVector eig1(MMatrix m) {
 		return new MVector(m.get(0, 0).copy());
 	}
@@ -83,8 +106,8 @@ public class Eigenvalues extends Algorithm {
 	}
 	
 	private MVector eig2(DoubleMatrixToolkit m) {
-		double tr = m.get(0, 0)+m.get(1, 1);
-		double det = m.get(0, 0)*m.get(1, 1)-m.get(1, 0)*m.get(0, 1);
+		double tr = m.value(0, 0)+m.value(1, 1);
+		double det = m.value(0, 0)*m.value(1, 1)-m.value(1, 0)*m.value(0, 1);
 		double d = tr*tr-4*det;
 		double a = 0.5d*tr;
 		if(d>=0) {
@@ -105,12 +128,14 @@ public class Eigenvalues extends Algorithm {
 	}
 	
 	private MVector eig3(DoubleMatrixToolkit m) {
-		Double[][] matrix = m.matrix;
-		double b = matrix[0][0]+matrix[1][1]+matrix[2][2];
-		double c = matrix[0][1]*matrix[1][0]+matrix[2][1]*matrix[1][2]+matrix[0][2]*matrix[2][0]
-					-matrix[0][0]*matrix[1][1]-matrix[1][1]*matrix[2][2]-matrix[0][0]*matrix[2][2];
-		double d = matrix[0][0]*matrix[1][1]*matrix[2][2]+matrix[2][0]*matrix[0][1]*matrix[1][2]+matrix[0][2]*matrix[1][0]*matrix[2][1]
-					-matrix[2][2]*matrix[1][0]*matrix[0][1]-matrix[2][1]*matrix[1][2]*matrix[0][0]-matrix[2][0]*matrix[0][2]*matrix[1][1];
+		double a00 = m.value(0, 0), a01 = m.value(0, 1), a02 = m.value(0, 2);
+		double a10 = m.value(1, 0), a11 = m.value(1, 1), a12 = m.value(1, 2);
+		double a20 = m.value(2, 0), a21 = m.value(2, 1), a22 = m.value(2, 2);
+		double b = a00+a11+a22;
+		double c = a01*a10+a21*a12+a02*a20
+					-a00*a11-a11*a22-a00*a22;
+		double d = a00*a11*a22+a20*a01*a12+a02*a10*a21
+					-a22*a10*a01-a21*a12*a00-a20*a02*a11;
 		
 		return new ABCFormula(-1, b, c, d).execute();
 	}
@@ -159,20 +184,19 @@ public class Eigenvalues extends Algorithm {
 	 * Calculates the eigenvalues of a symmetric tridiagonal matrix.
 	 * This algorithm has a drawback though: <br/>
 	 * <b>IT DOESN'T FRICKIN' WORK!! WHY TF NOT?</b>
-	 * @param tk A symmetric tridiagonal matrix
+	 * @param H A symmetric tridiagonal matrix
 	 * @return the matrix Q containing the eigenvectors of the matrix in its columns
 	 */
-	private Double[][] eig_francis(DoubleMatrixToolkit tk) {
+	private double[][] eig_francis(DoubleMatrixToolkit H) {
 		int p = n-1;
 		int count = 0;
-		Double[][] H = tk.matrix;
 		while(p>1 && count++ < 1000) {
 			int q = p-1;
-			double s = H[q][q]+H[p][p];
-			double t = H[q][q]*H[p][p]-H[q][p]*H[p][q];
-			double x = H[0][0]*H[0][0]+H[0][1]*H[1][0]-s*H[0][0]+t;
-			double y = H[1][0]*(H[0][0]+H[1][1]-s);
-			double z = H[1][0]*H[2][1];
+			double s = H.value(q, q)+H.value(p, p);
+			double t = H.value(q, q)*H.value(p, p)-H.value(q, p)*H.value(p, q);
+			double x = H.value(0, 0)*H.value(0, 0)+H.value(0, 1)*H.value(1, 0)-s*H.value(0, 0)+t;
+			double y = H.value(1, 0)*(H.value(0, 0)+H.value(1, 1)-s);
+			double z = H.value(1, 0)*H.value(2, 1);
 			for(int k = 0; k <= p-2; k++) {
 				double norm = y*y+z*z;
 				x += Math.copySign(Math.sqrt(norm+x*x), x);
@@ -182,23 +206,23 @@ public class Eigenvalues extends Algorithm {
 				double z1 = z / norm;
 				double[][] P = {{1-2*x*x, -2*x*y, -2*x*z1}, {-2*y*x, 1-2*y*y, -2*y*z1}, {-2*z1*x, -2*z1*y, 1-2*z1*z1}};
 				int r = Math.max(0, k-1);
-				tk.sub(k,k+2, r, n-1).multiplyLeft(P);
+				H.sub(k,k+2, r, n-1).multiplyLeft(P);
 				r = Math.min(k+3, p);
-				tk.sub(0,r, k,k+2).multiplyRight(P);
-				x = H[k+1][k];
-				y = H[k+2][k];
+				H.sub(0,r, k,k+2).multiplyRight(P);
+				x = H.value(k+1, k);
+				y = H.value(k+2, k);
 				if(k+3<=p)
-					z = H[k+3][k];
+					z = H.value(k+3, k);
 			}
 			double[] g = givens(x,y);
 			double[][] P = {{g[0], -g[1]}, {g[1], g[0]}};
-			tk.sub(q,p, p-2,n-1).multiplyLeft(P);
+			H.sub(q,p, p-2,n-1).multiplyLeft(P);
 			P[0][1] = -P[0][1]; P[1][0] = -P[1][0];
-			tk.sub(0,p, p-1, p).multiplyRight(P);
-			if(Math.abs(H[p][q])<1e-40*(Math.abs(H[q][q])+Math.abs(H[p][p]))) {
-				H[p][q] = 0d; p--;	
-			} else if(Math.abs(H[p-1][q-1])<1e-40*(Math.abs(H[q-1][q-1]+Math.abs(H[q][q])))) {
-				H[p-1][q-1] = 0d;
+			H.sub(0,p, p-1, p).multiplyRight(P);
+			if(Math.abs(H.value(p, q))<1e-40*(Math.abs(H.value(q, q))+Math.abs(H.value(p, p)))) {
+				H.setValue(p, q, 0); p--;	
+			} else if(Math.abs(H.value(p-1, q-1))<1e-40*(Math.abs(H.value(q-1, q-1)+Math.abs(H.value(q, q))))) {
+				H.setValue(p-1, q-1, 0);
 				p -= 2;
 			}
 		}
@@ -214,28 +238,27 @@ public class Eigenvalues extends Algorithm {
 	 * This uses Householder reflections to transform the given matrix
 	 * to a similar Hessenberg matrix. 
 	 */
-	private Double[][] hessenberg(DoubleMatrixToolkit tk) {
-		Double[][] A = tk.matrix;
-		Double[][] U = null;
+	private double[][] hessenberg(DoubleMatrixToolkit tk) {
+		double[][] U = null;
 		for(int k = 0; k < tk.cols-2;k++) {	
 			//calculate the householder vector
 			double[] u = new double[tk.rows-k-1];
 			double n = 0; //normalization
 			for(int i = 1; i<u.length;i++) {
-				u[i] = A[i+k+1][k];
+				u[i] = tk.value(i+k+1, k);
 				n += u[i]*u[i];
 			}
-			u[0] = A[k+1][k];
+			u[0] = tk.value(k+1, k);
 			u[0] += Math.signum(u[0])*Math.sqrt(n+u[0]*u[0]);
 			n = Math.sqrt(n+u[0]*u[0]);
 			for(int i = 0; i < u.length; i++)
 				u[i] /= n;
-			Double[][] P = computeP(tk.rows, u);
+			double[][] P = computeP(tk.rows, u);
 			if(U == null) U = P;
 			else U = DoubleMatrixToolkit.multiply(U, P);
-			A = DoubleMatrixToolkit.multiply(DoubleMatrixToolkit.multiply(P, A), P);
+			tk.multiplyLeft(P);
+			tk.multiplyRight(P);
 		}
-		tk.matrix = A;
 		return U;
 	}
 	
@@ -301,8 +324,8 @@ public class Eigenvalues extends Algorithm {
 		}
 	}
 	
-	private Double[][] computeP(int size, double[] u) {
-		Double[][] A = new Double[size][size];
+	private double[][] computeP(int size, double[] u) {
+		double[][] A = new double[size][size];
 		int offset = size-u.length;
 		for(int i = -offset; i < A.length-offset; i++)
 			for(int j = -offset; j < A[0].length-offset; j++) {
@@ -359,6 +382,23 @@ public class Eigenvalues extends Algorithm {
 		return new Double[][][] {Q, H};
 	}*/
 	
+	/**
+	 * Accepts <tt>vectors</tt> as the last argument, in which case the eigenvectors are calculated as well.
+	 * All other arguments are parsed as usual.
+	 */
+	@Override
+	public MathObject execute(String... args) {
+		if(args.length > 1 && args[args.length-1].trim().equalsIgnoreCase("vectors")) {
+			vectors = true;
+			args = Arrays.copyOf(args, args.length-1);
+		}
+		try {
+			return super.execute(args);
+		} finally {
+			vectors = false;
+		}
+	}
+
 	@Override
 	public MVector execute(MathObject... args) {
 		prepare(args);
@@ -373,9 +413,10 @@ public class Eigenvalues extends Algorithm {
 		n = 0;
 		if (args.length == 1 && args[0] instanceof MMatrix) {
 			if (((MMatrix) args[0]).isSquare()) {
-				m = (MMatrix) args[0];				
+				//the calculation changes the elements of the matrix, so don't use the argument itself
+				m = ((MMatrix) args[0]).copy();
 				//check symmetry
-				boolean symmetric = true;
+				symmetric = true;
 				for(int i = 1; i < m.shape().rows() && symmetric; i++) {
 					for(int j = 0; j < i; j++)
 						if(!m.get(i, j).equals(m.get(j, i))) {
@@ -389,6 +430,8 @@ public class Eigenvalues extends Algorithm {
 					mtk = new ScalarMatrixToolkit(m);
 				matrixType = mtk.classify();
 				n = mtk.rows;
+				if(vectors && !(symmetric && mtk instanceof DoubleMatrixToolkit))
+					throw new IllegalArgumentException("Eigenvectors can only be calculated for real symmetric matrices.");
 				if((matrixType & REAL) == REAL) {
 					prepared = true;
 					return;
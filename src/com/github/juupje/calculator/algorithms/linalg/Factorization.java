@@ -0,0 +1,52 @@
+package com.github.juupje.calculator.algorithms.linalg;
+
+import com.github.juupje.calculator.mathobjects.MMatrix;
+import com.github.juupje.calculator.mathobjects.MVector;
+
+/**
+ * A factorization of a real, square matrix <tt>A</tt> which can be used to solve systems <tt>Ax=b</tt> and to calculate
+ * the determinant and inverse of <tt>A</tt>.
+ * @author Joep Geuskens
+ */
+public interface Factorization {
+
+	/**
+	 * @return the vector <tt>x</tt> which solves <tt>Ax=b</tt>.
+	 */
+	MVector solve(MVector b);
+
+	/**
+	 * @return the determinant of <tt>A</tt>.
+	 */
+	double det();
+
+	/**
+	 * @return the values of the inverse of <tt>A</tt> in row-major order.
+	 */
+	double[] inverse();
+
+	/**
+	 * @return <tt>true</tt> if a (near-)zero pivot was found, in which case the results of the other methods are unreliable.
+	 */
+	boolean isDegenerate();
+
+	/**
+	 * Returns the cheapest (cached) factorization of <tt>m</tt>. If <tt>m</tt> is symmetric, the Cholesky decomposition is
+	 * tried first, followed by the LDL<sup>T</sup> decomposition if <tt>m</tt> is not positive definite. If neither
+	 * succeeds, or if <tt>m</tt> is not symmetric, the LU decomposition is returned.
+	 * @throws IllegalArgumentException if <tt>m</tt> is not a real matrix.
+	 */
+	public static Factorization of(MMatrix m) {
+		if(CholeskyDecomposition.isSymmetric(m)) {
+			if(CholeskyDecomposition.hasPositiveDiagonal(m)) {
+				CholeskyDecomposition chol = CholeskyDecomposition.of(m);
+				if(!chol.isDegenerate())
+					return chol;
+			}
+			LDLDecomposition ldl = LDLDecomposition.of(m);
+			if(!ldl.isDegenerate())
+				return ldl;
+		}
+		return LUDecomposition.of(m);
+	}
+}
@@ -0,0 +1,175 @@
+package com.github.juupje.calculator.algorithms.linalg;
+
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+import com.github.juupje.calculator.mathobjects.MMatrix;
+import com.github.juupje.calculator.settings.Settings;
+
+/**
+ * Caches the factorizations of real matrices, so that repeatedly solving systems with (or calculating the determinant
+ * or inverse of) the same matrix only factorizes it once.
+ * <p>
+ * Entries are identified by the matrix object itself (not its value) and the kind of factorization. Every entry
+ * remembers the modification count of the matrix ({@link MMatrix#getModificationCount()}) at the time it was
+ * factorized. If the matrix has been modified since, the entry is discarded. The matrices are referenced weakly,
+ * so the cache does not keep matrices which are no longer used in memory.
+ * </p>
+ * The estimated memory used by the cached factorizations is bounded by the <tt>factorization_cache</tt> setting
+ * (in megabytes). If the bound is exceeded, the least recently used entries are removed. Setting it to 0 disables the cache.
+ * @author Joep Geuskens
+ */
+public final class FactorizationCache {
+
+	public enum Kind {
+		LU, QR, CHOLESKY, LDL
+	}
+
+	private static final Map<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+	private static long memory = 0;
+	private static long hits = 0, misses = 0, evictions = 0;
+
+	private FactorizationCache() {}
+
+	/**
+	 * Returns the cached factorization of the given kind of <tt>m</tt>, or calculates (and caches) it if there is none.
+	 * Matrices which are not real (see {@link MMatrix#isReal()}) are never cached. The returned factorization is shared,
+	 * so it should not be modified.
+	 * @param m the matrix to be factorized.
+	 * @param kind the kind of factorization.
+	 * @param bytes the estimated amount of memory used by the factorization.
+	 * @param factorize the function which calculates the factorization of <tt>m</tt>.
+	 * @return the factorization of <tt>m</tt>
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> T get(MMatrix m, Kind kind, long bytes, Function<MMatrix, T> factorize) {
+		long limit = limit();
+		if(!m.isReal() || bytes > limit)
+			return factorize.apply(m);
+		Key key = new Key(m, kind);
+		int stamp = m.getModificationCount();
+		synchronized(entries) {
+			Entry e = entries.get(key);
+			if(e != null) {
+				if(e.stamp == stamp) {
+					hits++;
+					return (T) e.value;
+				}
+				remove(key);
+			}
+			misses++;
+		}
+		// factorize outside of the lock, so that other threads are not blocked
+		T value = factorize.apply(m);
+		synchronized(entries) {
+			Entry old = entries.put(key, new Entry(value, stamp, bytes));
+			if(old != null)
+				memory -= old.bytes;
+			memory += bytes;
+			evict(limit);
+		}
+		return value;
+	}
+
+	/**
+	 * Removes all entries from the cache and resets the statistics.
+	 */
+	public static void clear() {
+		synchronized(entries) {
+			entries.clear();
+			memory = 0;
+			hits = misses = evictions = 0;
+		}
+	}
+
+	/**
+	 * @return a description of the entries in the cache (from least to most recently used) and the amount of
+	 * hits, misses and evictions.
+	 */
+	public static String stats() {
+		synchronized(entries) {
+			evict(limit());
+			StringBuilder sb = new StringBuilder("Factorization cache: ").append(entries.size()).append(" entries using ")
+					.append(toMB(memory)).append(" of ").append(toMB(limit())).append(" MB");
+			sb.append("\nHits: ").append(hits).append(", misses: ").append(misses).append(", evictions: ").append(evictions);
+			for(Map.Entry<Key, Entry> e : entries.entrySet()) {
+				MMatrix m = e.getKey().ref.get();
+				sb.append("\n  ").append(e.getKey().kind).append(" of ")
+					.append(m == null ? "(released matrix)" : m.shape().toString()).append(": ").append(toMB(e.getValue().bytes)).append(" MB");
+			}
+			return sb.toString();
+		}
+	}
+
+	/**
+	 * Removes the entries of released matrices, and the least recently used entries until at most <tt>limit</tt>
+	 * bytes are used.
+	 */
+	private static void evict(long limit) {
+		for(Iterator<Map.Entry<Key, Entry>> iter = entries.entrySet().iterator(); iter.hasNext();) {
+			Map.Entry<Key, Entry> e = iter.next();
+			if(e.getKey().ref.get() == null || memory > limit) {
+				memory -= e.getValue().bytes;
+				iter.remove();
+				evictions++;
+			}
+		}
+	}
+
+	private static void remove(Key key) {
+		Entry e = entries.remove(key);
+		if(e != null)
+			memory -= e.bytes;
+	}
+
+	private static long limit() {
+		return Math.max(0, Settings.getInt(Settings.FACTORIZATION_CACHE))*1024L*1024L;
+	}
+
+	private static String toMB(long bytes) {
+		return String.format("%.2f", bytes/(1024.0*1024.0));
+	}
+
+	private static class Key {
+		final WeakReference<MMatrix> ref;
+		final Kind kind;
+		final int hash;
+
+		Key(MMatrix m, Kind kind) {
+			ref = new WeakReference<>(m);
+			this.kind = kind;
+			hash = System.identityHashCode(m)*31 + kind.hashCode();
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if(this == other)
+				return true;
+			if(!(other instanceof Key))
+				return false;
+			Key k = (Key) other;
+			MMatrix m = ref.get();
+			return m != null && kind == k.kind && m == k.ref.get();
+		}
+	}
+
+	private static class Entry {
+		final Object value;
+		final int stamp;
+		final long bytes;
+
+		Entry(Object value, int stamp, long bytes) {
+			this.value = value;
+			this.stamp = stamp;
+			this.bytes = bytes;
+		}
+	}
+}
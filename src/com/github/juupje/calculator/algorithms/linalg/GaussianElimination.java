@@ -44,12 +44,14 @@ public class GaussianElimination extends Algorithm {
 		if(mtk.isReal()) {
 			DoubleMatrixToolkit tk = (DoubleMatrixToolkit) mtk;
 			for(int i = 0; i < shape.rows(); i++) {
-				if(tk.matrix[i][i]!=0 && tk.matrix[i][i] != 1)
-					tk.multiplyRow(i, 1.0/tk.matrix[i][i]);
+				double pivot = tk.value(i, i);
+				if(pivot!=0 && pivot != 1)
+					tk.multiplyRow(i, 1.0/pivot);
 				for(int row = i+1; row < shape.rows(); row++) {
-					if(tk.matrix[row][i] != 0) {
-						tk.addToRow(row, i, -tk.matrix[row][i]);
-						tk.matrix[row][i] = 0d;
+					double c = tk.value(row, i);
+					if(c != 0) {
+						tk.addToRow(row, i, -c);
+						tk.setValue(row, i, 0);
 					}
 				}
 				tk.reorder(tk.rows);
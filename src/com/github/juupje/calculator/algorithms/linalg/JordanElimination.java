@@ -21,8 +21,8 @@ public class JordanElimination extends GaussianElimination {
 			DoubleMatrixToolkit tk = (DoubleMatrixToolkit) mtk;
 			for(int j = tk.cols - tk.augmcols-1; j>0; j--) {
 				for(int i = j-1; i>=0; i--) {
-					tk.addToRow(i, j, -tk.matrix[i][j]);
-					tk.matrix[i][j] = 0d;
+					tk.addToRow(i, j, -tk.value(i, j));
+					tk.setValue(i, j, 0);
 				}
 			}
 		} else {
@@ -0,0 +1,368 @@
+package com.github.juupje.calculator.algorithms.linalg;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+import com.github.juupje.calculator.algorithms.Algorithm;
+import com.github.juupje.calculator.helpers.Tools;
+import com.github.juupje.calculator.helpers.exceptions.InvalidOperationException;
+import com.github.juupje.calculator.mathobjects.MFunction;
+import com.github.juupje.calculator.mathobjects.MMatrix;
+import com.github.juupje.calculator.mathobjects.MReal;
+import com.github.juupje.calculator.mathobjects.MSparseMatrix;
+import com.github.juupje.calculator.mathobjects.MVector;
+import com.github.juupje.calculator.mathobjects.MathObject;
+import com.github.juupje.calculator.mathobjects.Shape;
+
+/**
+ * Solves <tt>Ax=b</tt> iteratively using a Krylov subspace method. These methods only need the products of
+ * <tt>A</tt> with vectors (see {@link LinearOperator}), so unlike {@link LUSolver} they can handle large sparse systems.
+ * <ul>
+ * <li>{@link Method#CG}: the conjugate gradient method, for symmetric positive definite matrices.</li>
+ * <li>{@link Method#BICGSTAB}: the stabilized biconjugate gradient method, for general matrices.</li>
+ * <li>{@link Method#GMRES}: the generalized minimal residual method, restarted after {@link #RESTART} iterations,
+ * for general matrices.</li>
+ * </ul>
+ * Every method starts at <tt>x=0</tt> and stops when the relative residual <tt>|b-Ax|/|b|</tt> is smaller than the tolerance,
+ * or when the maximum amount of iterations is reached. The result is a vector containing the solution, the amount of
+ * iterations and the relative residual of the solution.
+ * @author Joep Geuskens
+ */
+public class KrylovSolver extends Algorithm {
+
+	public enum Method {
+		CG, BICGSTAB, GMRES
+	}
+
+	public static final double DEFAULT_TOLERANCE = 1e-10;
+	/**
+	 * The amount of iterations after which GMRES is restarted.
+	 */
+	public static final int RESTART = 30;
+
+	Method method;
+	LinearOperator A;
+	Preconditioner.Type preconditionerType = Preconditioner.Type.NONE;
+	Preconditioner M;
+	double[] b;
+	double tol;
+	int maxIterations;
+
+	private double[] x;
+	private int iterations;
+	private DoubleKernels kernels;
+
+	public KrylovSolver(Method method) {
+		Objects.requireNonNull(method);
+		this.method = method;
+	}
+
+	public KrylovSolver(Method method, LinearOperator A, Preconditioner M, double[] b, double tol, int maxIterations) {
+		this(method);
+		if(A.size() != b.length)
+			throw new IllegalArgumentException("Shape mismatch: operator of size " + A.size() + " and vector of size " + b.length);
+		this.A = A;
+		this.M = M;
+		this.b = b;
+		this.tol = tol;
+		this.maxIterations = maxIterations;
+		prepared = true;
+	}
+
+	@Override
+	public MVector execute() {
+		if(!prepared) return null;
+		kernels = DoubleKernels.get();
+		x = new double[b.length];
+		iterations = 0;
+		double bnorm = norm(b);
+		if(bnorm != 0) {
+			switch(method) {
+			case CG:
+				cg(bnorm);
+				break;
+			case BICGSTAB:
+				bicgstab(bnorm);
+				break;
+			case GMRES:
+				gmres(bnorm);
+				break;
+			}
+		}
+		return new MVector(new MVector(x), new MReal(iterations), new MReal(bnorm == 0 ? 0 : residual()/bnorm));
+	}
+
+	/**
+	 * Accepts the name of the preconditioner (<tt>none</tt>, <tt>jacobi</tt> or <tt>ilu</tt>) as the last argument.
+	 * All other arguments are parsed as usual.
+	 */
+	@Override
+	public MathObject execute(String... args) {
+		if(args.length > 2) {
+			String last = args[args.length-1].trim().toUpperCase();
+			for(Preconditioner.Type type : Preconditioner.Type.values()) {
+				if(type.toString().equals(last)) {
+					preconditionerType = type;
+					args = Arrays.copyOf(args, args.length-1);
+					break;
+				}
+			}
+		}
+		try {
+			return super.execute(args);
+		} finally {
+			preconditionerType = Preconditioner.Type.NONE;
+		}
+	}
+
+	@Override
+	protected MVector execute(MathObject... args) {
+		prepare(args);
+		return execute();
+	}
+
+	@Override
+	protected void prepare(MathObject[] args) {
+		prepared = false;
+		String name = method.toString().toLowerCase();
+		if(args.length < 2 || args.length > 4)
+			throw new IllegalArgumentException(argumentCountMessage(args.length) + ". See help(" + name + ")");
+		MathObject b = args[1].evaluate();
+		if(!(b instanceof MVector) || (this.b = ((MVector) b).values()) == null)
+			throw new IllegalArgumentException(name + " expected second argument to be a real vector, got " + Tools.type(b));
+		int n = this.b.length;
+		if(args[0] instanceof MFunction) {
+			if(preconditionerType != Preconditioner.Type.NONE)
+				throw new IllegalArgumentException("Functions can not be preconditioned, use a matrix instead.");
+			A = LinearOperator.of((MFunction) args[0].evaluate(), n);
+		} else if(args[0] instanceof MSparseMatrix)
+			A = LinearOperator.of((MSparseMatrix) args[0]);
+		else if(args[0] instanceof MMatrix)
+			A = LinearOperator.of((MMatrix) args[0]);
+		else
+			throw new IllegalArgumentException(name + " expected first argument to be a matrix or function, got " + Tools.type(args[0]));
+		if(A.size() != n)
+			throw new IllegalArgumentException("Shape mismatch: " + args[0].shape() + " and " + b.shape());
+		if(method == Method.CG) {
+			// cg does not break down for most non-symmetric matrices, it just doesn't converge
+			boolean symmetric = true;
+			if(args[0] instanceof MSparseMatrix)
+				symmetric = isSymmetric((MSparseMatrix) args[0]);
+			else if(args[0] instanceof MMatrix)
+				symmetric = CholeskyDecomposition.isSymmetric((MMatrix) args[0]);
+			if(!symmetric)
+				throw new IllegalArgumentException("cg requires a symmetric matrix, use bicgstab or gmres instead.");
+		}
+		tol = DEFAULT_TOLERANCE;
+		if(args.length > 2) {
+			if(!(args[2] instanceof MReal) || ((MReal) args[2]).getValue() <= 0)
+				throw new IllegalArgumentException(name + " expected the tolerance to be a positive real number, got " + args[2]);
+			tol = ((MReal) args[2]).getValue();
+		}
+		maxIterations = Math.max(100, 10*n);
+		if(args.length > 3) {
+			if(!MReal.isPosInteger(args[3]) || ((MReal) args[3]).getValue() == 0)
+				throw new IllegalArgumentException(name + " expected the maximum amount of iterations to be a positive integer, got " + args[3]);
+			maxIterations = (int) ((MReal) args[3]).getValue();
+		}
+		switch(preconditionerType) {
+		case JACOBI:
+			M = Preconditioner.jacobi(A);
+			break;
+		case ILU:
+			M = Preconditioner.ilu0(args[0] instanceof MSparseMatrix ? (MSparseMatrix) args[0] : new MSparseMatrix((MMatrix) args[0]));
+			break;
+		default:
+			M = Preconditioner.NONE;
+		}
+		prepared = true;
+	}
+
+	/**
+	 * The preconditioned conjugate gradient method.
+	 */
+	private void cg(double bnorm) {
+		int n = b.length;
+		double[] r = b.clone(), z = new double[n], p = new double[n], Ap = new double[n];
+		M.apply(r, z);
+		System.arraycopy(z, 0, p, 0, n);
+		double rz = dot(r, z);
+		while(iterations < maxIterations) {
+			iterations++;
+			A.apply(p, Ap);
+			double pAp = dot(p, Ap);
+			if(pAp <= 0)
+				throw new InvalidOperationException("cg failed, the matrix is not positive definite. Use bicgstab or gmres instead.");
+			double alpha = rz/pAp;
+			kernels.axpy(alpha, p, 0, x, 0, n);
+			kernels.axpy(-alpha, Ap, 0, r, 0, n);
+			if(norm(r) <= tol*bnorm)
+				break;
+			M.apply(r, z);
+			double rzNew = dot(r, z);
+			double beta = rzNew/rz;
+			rz = rzNew;
+			for(int i = 0; i < n; i++)
+				p[i] = z[i] + beta*p[i];
+		}
+	}
+
+	/**
+	 * The right-preconditioned stabilized biconjugate gradient method.
+	 */
+	private void bicgstab(double bnorm) {
+		int n = b.length;
+		double[] r = b.clone(), rhat = b.clone();
+		double[] p = new double[n], v = new double[n], s = new double[n], t = new double[n];
+		double[] phat = new double[n], shat = new double[n];
+		double rho = 1, alpha = 1, omega = 1;
+		while(iterations < maxIterations) {
+			iterations++;
+			double rhoNew = dot(rhat, r);
+			if(rhoNew == 0)
+				break;
+			double beta = (rhoNew/rho)*(alpha/omega);
+			rho = rhoNew;
+			for(int i = 0; i < n; i++)
+				p[i] = r[i] + beta*(p[i] - omega*v[i]);
+			M.apply(p, phat);
+			A.apply(phat, v);
+			double rv = dot(rhat, v);
+			if(rv == 0)
+				break;
+			alpha = rho/rv;
+			for(int i = 0; i < n; i++)
+				s[i] = r[i] - alpha*v[i];
+			kernels.axpy(alpha, phat, 0, x, 0, n);
+			if(norm(s) <= tol*bnorm)
+				break;
+			M.apply(s, shat);
+			A.apply(shat, t);
+			double tt = dot(t, t);
+			omega = tt == 0 ? 0 : dot(t, s)/tt;
+			kernels.axpy(omega, shat, 0, x, 0, n);
+			for(int i = 0; i < n; i++)
+				r[i] = s[i] - omega*t[i];
+			if(omega == 0 || norm(r) <= tol*bnorm)
+				break;
+		}
+	}
+
+	/**
+	 * The right-preconditioned generalized minimal residual method, restarted after {@link #RESTART} iterations.
+	 * The least squares problem is solved by applying Givens rotations to the Hessenberg matrix.
+	 */
+	private void gmres(double bnorm) {
+		int n = b.length;
+		int m = Math.min(RESTART, n);
+		double[][] V = new double[m+1][n];
+		double[][] H = new double[m+1][m];
+		double[] cs = new double[m], sn = new double[m], g = new double[m+1];
+		double[] r = new double[n], w = new double[n];
+		boolean converged = false;
+		while(!converged && iterations < maxIterations) {
+			A.apply(x, r);
+			for(int i = 0; i < n; i++)
+				r[i] = b[i] - r[i];
+			double beta = norm(r);
+			if(beta <= tol*bnorm)
+				break;
+			for(int i = 0; i < n; i++)
+				V[0][i] = r[i]/beta;
+			Arrays.fill(g, 0);
+			g[0] = beta;
+			int k = 0;
+			while(k < m && iterations < maxIterations) {
+				iterations++;
+				M.apply(V[k], r);
+				A.apply(r, w);
+				// modified Gram-Schmidt
+				for(int i = 0; i <= k; i++) {
+					H[i][k] = dot(w, V[i]);
+					kernels.axpy(-H[i][k], V[i], 0, w, 0, n);
+				}
+				H[k+1][k] = norm(w);
+				if(H[k+1][k] != 0)
+					for(int i = 0; i < n; i++)
+						V[k+1][i] = w[i]/H[k+1][k];
+				for(int i = 0; i < k; i++) {
+					double h = cs[i]*H[i][k] + sn[i]*H[i+1][k];
+					H[i+1][k] = -sn[i]*H[i][k] + cs[i]*H[i+1][k];
+					H[i][k] = h;
+				}
+				double d = Math.hypot(H[k][k], H[k+1][k]);
+				cs[k] = H[k][k]/d;
+				sn[k] = H[k+1][k]/d;
+				H[k][k] = d;
+				H[k+1][k] = 0;
+				g[k+1] = -sn[k]*g[k];
+				g[k] = cs[k]*g[k];
+				k++;
+				if(Math.abs(g[k]) <= tol*bnorm || d == 0) {
+					converged = true;
+					break;
+				}
+			}
+			// solve the upper triangular system H*y=g and add M^-1 V*y to x
+			double[] y = new double[k];
+			for(int i = k-1; i >= 0; i--) {
+				double sum = g[i];
+				for(int j = i+1; j < k; j++)
+					sum -= H[i][j]*y[j];
+				y[i] = H[i][i] == 0 ? 0 : sum/H[i][i];
+			}
+			Arrays.fill(w, 0);
+			for(int i = 0; i < k; i++)
+				kernels.axpy(y[i], V[i], 0, w, 0, n);
+			M.apply(w, r);
+			kernels.axpy(1, r, 0, x, 0, n);
+		}
+	}
+
+	/**
+	 * @return the norm of the residual <tt>b-Ax</tt> of the current solution.
+	 */
+	private double residual() {
+		double[] r = new double[b.length];
+		A.apply(x, r);
+		for(int i = 0; i < r.length; i++)
+			r[i] = b[i] - r[i];
+		return norm(r);
+	}
+
+	/**
+	 * @return <tt>true</tt> if the square matrix <tt>m</tt> is exactly equal to its transpose.
+	 */
+	private static boolean isSymmetric(MSparseMatrix m) {
+		int[] rowPtr = m.getRowPointers(), colIdx = m.getColumnIndices();
+		double[] values = m.getValues();
+		for(int i = 0; i < rowPtr.length-1; i++)
+			for(int k = rowPtr[i]; k < rowPtr[i+1]; k++)
+				if(values[k] != m.value(colIdx[k], i))
+					return false;
+		return true;
+	}
+
+	private double dot(double[] u, double[] v) {
+		return kernels.dot(u, 0, v, 0, u.length);
+	}
+
+	private double norm(double[] u) {
+		return Math.sqrt(kernels.sumOfSquares(u, 0, u.length));
+	}
+
+	@Override
+	public Shape shape(Shape... shapes) {
+		// the name of the preconditioner is counted as an argument here
+		if(shapes.length < 2 || shapes.length > 5)
+			throw new InvalidOperationException(argumentCountMessage(shapes.length));
+		if(shapes[1].dim() != 1)
+			throw new InvalidOperationException("Expected second argument to be a vector, got shape " + shapes[1]);
+		return new Shape(3);
+	}
+
+	private String argumentCountMessage(int count) {
+		return method.toString().toLowerCase() + " expected 2 to 4 arguments and optionally a preconditioner (none, jacobi or ilu), got "
+				+ count;
+	}
+}
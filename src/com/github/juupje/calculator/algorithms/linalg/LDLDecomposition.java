@@ -0,0 +1,323 @@
+package com.github.juupje.calculator.algorithms.linalg;
+
+import com.github.juupje.calculator.algorithms.Algorithm;
+import com.github.juupje.calculator.helpers.Tools;
+import com.github.juupje.calculator.helpers.exceptions.InvalidOperationException;
+import com.github.juupje.calculator.helpers.exceptions.ShapeException;
+import com.github.juupje.calculator.mathobjects.MIndexedObject;
+import com.github.juupje.calculator.mathobjects.MMatrix;
+import com.github.juupje.calculator.mathobjects.MVector;
+import com.github.juupje.calculator.mathobjects.MathObject;
+import com.github.juupje.calculator.mathobjects.Shape;
+
+/**
+ * Calculates the decomposition <tt>PAP<sup>T</sup>=LDL<sup>T</sup></tt> of a symmetric matrix <tt>A</tt>, in which
+ * <tt>L</tt> is lower triangular with ones on the diagonal, <tt>D</tt> is block diagonal with blocks of size 1x1 and 2x2
+ * and <tt>P</tt> is a permutation matrix. Unlike the Cholesky decomposition, this also works for indefinite matrices.
+ * <p>
+ * The pivots are chosen using the Bunch-Kaufman strategy, which uses a 2x2 block when no diagonal element is large enough
+ * compared to the other elements in its column. This keeps the elements of <tt>L</tt> bounded. Only the lower
+ * triangle of the matrix is used, so the decomposition takes half the operations of the LU decomposition.
+ * </p>
+ * @author Joep Geuskens
+ */
+public class LDLDecomposition extends Algorithm implements Factorization {
+
+	private static final double TOLERANCE = 1e-10;
+	private static final double ALPHA = (1+Math.sqrt(17))/8;
+
+	int n;
+	/**
+	 * The values of the matrix, which are replaced by <tt>L</tt> below the diagonal and <tt>D</tt> on the diagonal. The
+	 * off-diagonal element of a 2x2 block of <tt>D</tt> starting at row <tt>k</tt> is stored at <tt>[k+1,k]</tt>.
+	 */
+	double[] data;
+	/**
+	 * The size of the block of <tt>D</tt> starting at every row: 1, 2, or 0 for the second row of a 2x2 block.
+	 */
+	int[] blocks;
+	/**
+	 * Row <tt>i</tt> of <tt>PAP<sup>T</sup></tt> is row <tt>order[i]</tt> of <tt>A</tt>.
+	 */
+	int[] order;
+	boolean factorized = false;
+	boolean degenerate = false;
+
+	public LDLDecomposition() {}
+
+	public LDLDecomposition(MMatrix m) {
+		prepare(new MathObject[] {m});
+	}
+
+	/**
+	 * Returns the (possibly cached) LDL<sup>T</sup> decomposition of <tt>m</tt>, which has already been calculated.
+	 * @see FactorizationCache
+	 */
+	public static LDLDecomposition of(MMatrix m) {
+		long size = m.shape().rows();
+		return FactorizationCache.get(m, FactorizationCache.Kind.LDL, 8*size*size + 8*size, mat -> {
+			LDLDecomposition ldl = new LDLDecomposition(mat);
+			ldl.factorize();
+			return ldl;
+		});
+	}
+
+	/**
+	 * @return a vector containing (L, D, P) such that <tt>PAP<sup>T</sup>=LDL<sup>T</sup></tt>.
+	 */
+	@Override
+	public MIndexedObject execute() {
+		if(!prepared) return null;
+		factorize();
+		double[] L = new double[n*n], D = new double[n*n], P = new double[n*n];
+		for(int i = 0; i < n; i++) {
+			System.arraycopy(data, i*n, L, i*n, i);
+			L[i*n+i] = 1;
+			D[i*n+i] = data[i*n+i];
+			P[i*n+order[i]] = 1;
+		}
+		for(int i = 0; i < n; i++) {
+			if(blocks[i] == 2) {
+				L[(i+1)*n+i] = 0;
+				D[(i+1)*n+i] = D[i*n+i+1] = data[(i+1)*n+i];
+			}
+		}
+		return new MIndexedObject(new Shape(3), new MathObject[] {new MMatrix(n, n, L), new MMatrix(n, n, D), new MMatrix(n, n, P)});
+	}
+
+	@Override
+	protected MIndexedObject execute(MathObject... args) {
+		prepare(args);
+		if(!CholeskyDecomposition.isSymmetric((MMatrix) args[0]))
+			throw new IllegalArgumentException("LDL decomposition is only defined for symmetric matrices.");
+		return of((MMatrix) args[0]).execute();
+	}
+
+	@Override
+	protected void prepare(MathObject[] args) {
+		prepared = false;
+		if(args.length != 1 || !(args[0] instanceof MMatrix))
+			throw new IllegalArgumentException("Arguments " + argTypesToString(args) + " not applicable for LDL decomposition, see help for correct use.");
+		MMatrix m = (MMatrix) args[0];
+		if(!m.isSquare())
+			throw new ShapeException("LDL decomposition only works for square matrices, got shape " + m.shape());
+		if(!m.isReal())
+			throw new IllegalArgumentException("LDL decomposition only works for real-valued matrices.");
+		n = m.shape().rows();
+		data = m.values().clone();
+		factorized = false;
+		degenerate = false;
+		prepared = true;
+	}
+
+	/**
+	 * Calculates the decomposition, unless that has already been done.
+	 */
+	private void factorize() {
+		if(factorized) return;
+		factorized = true;
+		DoubleKernels kernels = DoubleKernels.get();
+		double[] a = data;
+		blocks = new int[n];
+		order = new int[n];
+		for(int i = 0; i < n; i++) order[i] = i;
+		double[] c1 = new double[n], c2 = new double[n];
+		int k = 0;
+		while(k < n) {
+			//choose the pivot
+			double absakk = Math.abs(a[k*n+k]);
+			double colmax = 0;
+			int imax = k;
+			for(int i = k+1; i < n; i++) {
+				if(Math.abs(a[i*n+k]) > colmax) {
+					colmax = Math.abs(a[i*n+k]);
+					imax = i;
+				}
+			}
+			int kstep = 1, kp = k;
+			if(absakk < ALPHA*colmax) {
+				double rowmax = 0;
+				for(int j = k; j < imax; j++)
+					rowmax = Math.max(rowmax, Math.abs(a[imax*n+j]));
+				for(int i = imax+1; i < n; i++)
+					rowmax = Math.max(rowmax, Math.abs(a[i*n+imax]));
+				if(absakk >= ALPHA*colmax*(colmax/rowmax))
+					kp = k;
+				else if(Math.abs(a[imax*n+imax]) >= ALPHA*rowmax)
+					kp = imax;
+				else {
+					kp = imax;
+					kstep = 2;
+				}
+			}
+			int kk = k+kstep-1;
+			if(kp != kk) {
+				swap(kk, kp);
+				int temp = order[kk];
+				order[kk] = order[kp];
+				order[kp] = temp;
+			}
+			if(kstep == 1) {
+				double d = a[k*n+k];
+				if(Math.abs(d) < TOLERANCE) {
+					degenerate = true;
+					data = null;
+					return;
+				}
+				//a[i,j] -= a[i,k]*a[j,k]/d for the lower triangle, after which a[i,k] is replaced by l[i,k]=a[i,k]/d
+				for(int i = k+1; i < n; i++)
+					c1[i] = a[i*n+k];
+				for(int i = k+1; i < n; i++) {
+					double l = c1[i]/d;
+					kernels.axpy(-l, c1, k+1, a, i*n+k+1, i-k);
+					a[i*n+k] = l;
+				}
+				blocks[k] = 1;
+			} else {
+				double d11 = a[k*n+k], d21 = a[(k+1)*n+k], d22 = a[(k+1)*n+k+1];
+				double det = d11*d22 - d21*d21;
+				if(Math.abs(det) < TOLERANCE*Math.abs(d21)) {
+					degenerate = true;
+					data = null;
+					return;
+				}
+				for(int i = k+2; i < n; i++) {
+					c1[i] = a[i*n+k];
+					c2[i] = a[i*n+k+1];
+				}
+				for(int i = k+2; i < n; i++) {
+					double l1 = (d22*c1[i] - d21*c2[i])/det;
+					double l2 = (d11*c2[i] - d21*c1[i])/det;
+					kernels.axpy(-l1, c1, k+2, a, i*n+k+2, i-k-1);
+					kernels.axpy(-l2, c2, k+2, a, i*n+k+2, i-k-1);
+					a[i*n+k] = l1;
+					a[i*n+k+1] = l2;
+				}
+				blocks[k] = 2;
+			}
+			k += kstep;
+		}
+	}
+
+	/**
+	 * Interchanges row and column <tt>i</tt> with row and column <tt>j&gt;i</tt> of the lower triangle, including the
+	 * rows of the columns of <tt>L</tt> calculated so far.
+	 */
+	private void swap(int i, int j) {
+		double[] a = data;
+		for(int k = 0; k < i; k++)
+			swap(a, i*n+k, j*n+k);
+		swap(a, i*n+i, j*n+j);
+		for(int k = i+1; k < j; k++)
+			swap(a, k*n+i, j*n+k);
+		for(int k = j+1; k < n; k++)
+			swap(a, k*n+i, k*n+j);
+	}
+
+	private static void swap(double[] a, int i, int j) {
+		double temp = a[i];
+		a[i] = a[j];
+		a[j] = temp;
+	}
+
+	/**
+	 * Solves <tt>Ax=b</tt> using <tt>A=P<sup>T</sup>LDL<sup>T</sup>P</tt>.
+	 */
+	double[] solve(double[] b) {
+		DoubleKernels kernels = DoubleKernels.get();
+		double[] y = new double[n];
+		for(int i = 0; i < n; i++)
+			y[i] = b[order[i]];
+		//solve Lz=Pb, skipping the off-diagonal elements of the 2x2 blocks of D
+		for(int i = 0; i < n; i++)
+			y[i] -= kernels.dot(data, i*n, y, 0, i > 0 && blocks[i-1] == 2 ? i-1 : i);
+		//solve Dw=z
+		for(int i = 0; i < n; i++) {
+			if(blocks[i] == 1)
+				y[i] /= data[i*n+i];
+			else if(blocks[i] == 2) {
+				double d11 = data[i*n+i], d21 = data[(i+1)*n+i], d22 = data[(i+1)*n+i+1];
+				double det = d11*d22 - d21*d21;
+				double y1 = y[i], y2 = y[i+1];
+				y[i] = (d22*y1 - d21*y2)/det;
+				y[i+1] = (d11*y2 - d21*y1)/det;
+			}
+		}
+		//solve L^T(Px)=w
+		for(int i = n-1; i >= 0; i--)
+			kernels.axpy(-y[i], data, i*n, y, 0, i > 0 && blocks[i-1] == 2 ? i-1 : i);
+		double[] x = new double[n];
+		for(int i = 0; i < n; i++)
+			x[order[i]] = y[i];
+		return x;
+	}
+
+	@Override
+	public MVector solve(MVector b) {
+		if(!prepared) return null;
+		factorize();
+		if(degenerate)
+			throw new InvalidOperationException("Cannot solve using the LDL decomposition of a (near-)degenerate matrix.");
+		if(b.size() != n)
+			throw new ShapeException("Shape mismatch: (" + n + ", " + n + ") and " + b.shape());
+		double[] values = b.values();
+		if(values == null)
+			throw new IllegalArgumentException("Could not solve for non-numeric or complex vector");
+		return new MVector(solve(values));
+	}
+
+	/**
+	 * Calculates the determinant, which is the product of the determinants of the blocks of <tt>D</tt>
+	 * (as <tt>det(P)<sup>2</sup>=1</tt>).
+	 */
+	@Override
+	public double det() {
+		if(!prepared) return Double.NaN;
+		factorize();
+		if(degenerate)
+			return 0;
+		double det = 1;
+		for(int i = 0; i < n; i++) {
+			if(blocks[i] == 1)
+				det *= data[i*n+i];
+			else if(blocks[i] == 2)
+				det *= data[i*n+i]*data[(i+1)*n+i+1] - data[(i+1)*n+i]*data[(i+1)*n+i];
+		}
+		return det;
+	}
+
+	@Override
+	public double[] inverse() {
+		if(!prepared) return null;
+		factorize();
+		if(degenerate)
+			throw new InvalidOperationException("Cannot invert a (near-)degenerate matrix.");
+		double[] inv = new double[n*n];
+		double[] e = new double[n];
+		for(int col = 0; col < n; col++) {
+			e[col] = 1;
+			double[] x = solve(e);
+			e[col] = 0;
+			for(int i = 0; i < n; i++)
+				inv[i*n+col] = x[i];
+		}
+		return inv;
+	}
+
+	@Override
+	public boolean isDegenerate() {
+		factorize();
+		return degenerate;
+	}
+
+	@Override
+	public Shape shape(Shape... shapes) {
+		if(shapes.length==1 && shapes[0].dim()==2) {
+			if(shapes[0].rows() == shapes[0].cols())
+				return new Shape(3);
+			else
+				throw new ShapeException("LDL decomposition only works for square matrices.");
+		}
+		throw new IllegalArgumentException("Algorithm not defined for shapes " + Tools.join(", ", (Object[]) shapes));
+	}
+}
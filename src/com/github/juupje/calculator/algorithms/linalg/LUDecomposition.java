@@ -2,6 +2,7 @@ package com.github.juupje.calculator.algorithms.linalg;
 
 import com.github.juupje.calculator.algorithms.Algorithm;
 import com.github.juupje.calculator.helpers.Tools;
+import com.github.juupje.calculator.helpers.exceptions.InvalidOperationException;
 import com.github.juupje.calculator.helpers.exceptions.ShapeException;
 import com.github.juupje.calculator.mathobjects.MIndexable;
 import com.github.juupje.calculator.mathobjects.MIndexedObject;
@@ -11,13 +12,21 @@ import com.github.juupje.calculator.mathobjects.MVector;
 import com.github.juupje.calculator.mathobjects.MathObject;
 import com.github.juupje.calculator.mathobjects.Shape;
 
-public class LUDecomposition extends Algorithm {
+public class LUDecomposition extends Algorithm implements Factorization {
 
 	Shape shape;
 	DoubleMatrixToolkit mtk;
 	int permutations = 0;
 	private static final double TOLERANCE = 1e-10;
+	/**
+	 * The amount of columns factorized at once by {@link #blockedLU()}.
+	 */
+	static final int BLOCK_SIZE = 64;
 	boolean degenerate = false;
+	/**
+	 * The order of the rows after pivoting, or <tt>null</tt> if the matrix has not been factorized yet.
+	 */
+	int[] order;
 	
 	public LUDecomposition() {}
 	
@@ -30,30 +39,57 @@ public class LUDecomposition extends Algorithm {
 		prepared = true;
 	}
 	
+	/**
+	 * Returns the LU decomposition of <tt>m</tt>, which is taken from the {@link FactorizationCache} if <tt>m</tt>
+	 * has been factorized before (and has not been modified since). The returned decomposition is shared and has
+	 * already been factorized, so {@link #solve(MVector)}, {@link #det()} and {@link #inverse()} do not have to
+	 * factorize it again.
+	 * @throws IllegalArgumentException if <tt>m</tt> is not a real matrix.
+	 */
+	public static LUDecomposition of(MMatrix m) {
+		long n = m.shape().cols();
+		return FactorizationCache.get(m, FactorizationCache.Kind.LU, 8*n*m.shape().rows() + 4*n, mat -> {
+			LUDecomposition decomp = new LUDecomposition(mat);
+			decomp.factorize();
+			return decomp;
+		});
+	}
+
 	@Override
 	public MIndexable execute() {
 		if(!prepared) return null;
-		permutations = 0;
-		int[] order = lu();
-		return expand(mtk.matrix, order);
+		factorize();
+		return expand(order);
 	}
 	
 	@Override
 	public MIndexable execute(MathObject... args) {
+		if(args.length == 1 && args[0] instanceof MMatrix && ((MMatrix) args[0]).isReal())
+			return of((MMatrix) args[0]).execute();
 		prepare(args);
 		return execute();
 	}
+
+	/**
+	 * Calculates the LU decomposition, unless that has already been done.
+	 */
+	private void factorize() {
+		if(order != null) return;
+		permutations = 0;
+		degenerate = false;
+		order = lu();
+	}
 	
 	/**
 	 * Returns vector {@code x} that solves the equation {@code Ax=b} using the results of the LU decomposition.
 	 * @param b MVector
 	 * @return a MVector which equals {@code x=inv(A)b}
 	 */
+	@Override
 	public MVector solve(MVector b) {
 		if(!prepared) return null;
-		permutations = 0;
-		int[] order = lu();
-		int n = mtk.matrix.length;
+		factorize();
+		int n = mtk.rows;
 		double[] y = new double[n];
 		//First, we solve Ly=Pb -> Forward solve
 		try {
@@ -65,15 +101,15 @@ public class LUDecomposition extends Algorithm {
 				 *   \* * * ... 1 / \yn/    \b[P[n]]/
 				 */
 				for(int j = 0; j < i; j++)
-					y[i] -= mtk.matrix[i][j]*y[j];
+					y[i] -= mtk.value(i, j)*y[j];
 			}
 			
 			//Solve Ux=y -> backward solve
 			double[] x = y;
 			for(int i = n-1; i >= 0; i--) {
 				for(int j = i+1; j < n; j++)
-					x[i] -= mtk.matrix[i][j]*x[j];
-				x[i] /= mtk.matrix[i][i];
+					x[i] -= mtk.value(i, j)*x[j];
+				x[i] /= mtk.value(i, i);
 			}
 			return new MVector(x);
 		} catch(ClassCastException e) {
@@ -88,27 +124,70 @@ public class LUDecomposition extends Algorithm {
 	 * The determinant of U can be found by multiplying the diagonal entries together.
 	 * @return the determinant of the matrix
 	 */
+	@Override
 	public double det() {
 		if(!prepared) return Double.NaN;
-		permutations = 0;
-		lu();
+		factorize();
 		double dot = permutations%2==0 ? 1 : -1;
-		for(int i = 0; i < mtk.matrix.length; i++)
-			dot *= mtk.matrix[i][i];
+		for(int i = 0; i < mtk.rows; i++)
+			dot *= mtk.value(i, i);
 		return dot;
 	}
 	
 	/**
-	 * Changes mtk.matrix such that it equals (L-I)+U where L is a lower triangular matrix
+	 * Calculates the inverse of the matrix by solving <tt>Ax=e<sub>j</sub></tt> for every column <tt>e<sub>j</sub></tt>
+	 * of the identity matrix.
+	 * @return the values of the inverse in row-major order.
+	 * @throws InvalidOperationException if the matrix is (near-)degenerate.
+	 */
+	@Override
+	public double[] inverse() {
+		if(!prepared) return null;
+		factorize();
+		if(degenerate)
+			throw new InvalidOperationException("Cannot invert a (near-)degenerate matrix.");
+		int n = mtk.rows;
+		double[] inv = new double[n*n];
+		double[] x = new double[n];
+		for(int col = 0; col < n; col++) {
+			for(int i = 0; i < n; i++) {
+				x[i] = order[i]==col ? 1 : 0;
+				for(int j = 0; j < i; j++)
+					x[i] -= mtk.value(i, j)*x[j];
+			}
+			for(int i = n-1; i >= 0; i--) {
+				for(int j = i+1; j < n; j++)
+					x[i] -= mtk.value(i, j)*x[j];
+				x[i] /= mtk.value(i, i);
+			}
+			for(int i = 0; i < n; i++)
+				inv[i*n+col] = x[i];
+		}
+		return inv;
+	}
+
+	/**
+	 * @return <tt>true</tt> if a (near-)zero pivot was found during the decomposition.
+	 */
+	@Override
+	public boolean isDegenerate() {
+		factorize();
+		return degenerate;
+	}
+	
+	/**
+	 * Changes the values in mtk such that it equals (L-I)+U where L is a lower triangular matrix
 	 * with 1's on the diagonal and U an upper triangular matrix, such that LU=PA, where P is a permutation matrix.
 	 * The permutation matrix is stored in an integer array which i-th value corresponds to the element in the i-th row 
 	 * of P which equals 1.
-	 * L can be reconstructed by taking the lower triangular part of mtk.matrix and setting the diagonals to 1.
-	 * U can be reconstructed by taking the upper triangular part of mtk.matrix (including the diagonal).
+	 * L can be reconstructed by taking the lower triangular part of mtk and setting the diagonals to 1.
+	 * U can be reconstructed by taking the upper triangular part of mtk (including the diagonal).
 	 * @return the order vector which can be used to construct P
 	 */
 	protected int[] lu() {
 		int n = mtk.cols;
+		if(n > BLOCK_SIZE && mtk.rows == n && !mtk.isSubMatrix && mtk.colStride == 1)
+			return blockedLU();
 		int[] order = new int[n];
 		
 		//set the order to unity
@@ -117,7 +196,7 @@ public class LUDecomposition extends Algorithm {
 			//Find pivot row
 			int pivot = findPivotIndex(col);
 			//Check if the matrix is degenerate
-			if(Math.abs(mtk.matrix[pivot][col])<TOLERANCE) {
+			if(Math.abs(mtk.value(pivot, col))<TOLERANCE) {
 				degenerate=true;
 				//throw new RuntimeException("LU-Decomposition failed, matrix is (near-)degenerate");
 				continue;
@@ -134,28 +213,96 @@ public class LUDecomposition extends Algorithm {
 				permutations++;
 			}
 			
+			double pivotValue = mtk.value(col, col);
 			for(int row = col+1; row < n; row++) {
-				mtk.matrix[row][col] /= mtk.matrix[col][col];
-				for(int k = col+1; k < n; k++)
-					mtk.matrix[row][k] -= mtk.matrix[row][col]*mtk.matrix[col][k];
+				double factor = mtk.value(row, col) / pivotValue;
+				mtk.setValue(row, col, factor);
+				mtk.addToRow(row, col, -factor, col+1);
+			}
+		}
+		return order;
+	}
+	
+	/**
+	 * Calculates the same decomposition as {@link #lu()}, but {@link #BLOCK_SIZE} columns at a time.
+	 * <p>
+	 * First, the block of columns (the panel) is factorized as in {@link #lu()}, including the pivoting of entire rows.
+	 * The eliminations of the panel are then applied to the rows of the block (which become rows of U) and finally,
+	 * all of them are applied at once to the remaining rows and columns, the trailing matrix. This update is a matrix
+	 * product, which is calculated by {@link MatrixMultiplication#multiplyAdd(double[], double[], double[], int, int, int, int, int)}
+	 * on multiple threads.
+	 * </p>
+	 * Every element receives the same updates in the same order as in {@link #lu()}, so the result is exactly the same.
+	 * This requires a square matrix stored in its own array (not a submatrix) with rows of consecutive elements.
+	 * @return the order vector which can be used to construct P
+	 */
+	private int[] blockedLU() {
+		final int n = mtk.cols;
+		final double[] a = mtk.data;
+		final DoubleKernels kernels = mtk.kernels;
+		int[] order = new int[n];
+		for(int i = 0; i < n; i++) order[i] = i;
+		for(int k0 = 0; k0 < n; k0 += BLOCK_SIZE) {
+			int kend = Math.min(k0+BLOCK_SIZE, n);
+			//the columns of the panel which were eliminated (not skipped because of a zero pivot)
+			int[] used = new int[kend-k0];
+			int nused = 0;
+			//factorize the panel, updating only its own columns
+			for(int col = k0; col < kend; col++) {
+				int pivot = findPivotIndex(col);
+				if(Math.abs(a[pivot*n+col])<TOLERANCE) {
+					degenerate=true;
+					continue;
+				}
+				if(pivot != col) {
+					int temp = order[col];
+					order[col] = order[pivot];
+					order[pivot] = temp;
+					mtk.switchRows(col, pivot);
+					permutations++;
+				}
+				used[nused++] = col;
+				double pivotValue = a[col*n+col];
+				for(int row = col+1; row < n; row++) {
+					double factor = a[row*n+col] / pivotValue;
+					a[row*n+col] = factor;
+					kernels.axpy(-factor, a, col*n+col+1, a, row*n+col+1, kend-col-1);
+				}
+			}
+			int m = n-kend;
+			if(m == 0 || nused == 0)
+				continue;
+			//apply the eliminations to the remaining columns of the rows of the panel
+			for(int u = 0; u < nused; u++) {
+				int col = used[u];
+				for(int row = col+1; row < kend; row++)
+					kernels.axpy(-a[row*n+col], a, col*n+kend, a, row*n+kend, m);
 			}
+			//update the trailing matrix: A22 += (-L21)*U12
+			double[] l = new double[m*nused];
+			double[] u12 = new double[nused*m];
+			for(int i = 0; i < m; i++)
+				for(int u = 0; u < nused; u++)
+					l[i*nused+u] = -a[(kend+i)*n+used[u]];
+			for(int u = 0; u < nused; u++)
+				System.arraycopy(a, used[u]*n+kend, u12, u*m, m);
+			MatrixMultiplication.multiplyAdd(l, u12, a, kend*n+kend, n, m, nused, m);
 		}
 		return order;
 	}
 	
 	/**
 	 * Using the output of {@link #lu()} this method reconstructs the matrices L, U and P.
-	 * @param matrix the changed mtk.matrix of {@code lu()}
 	 * @param order the returned array of {@code lu()}
 	 * @return an MIndexedObject which equals [L, U, P]
 	 */
-	private MIndexedObject expand(Double[][] matrix, int[] order) {
-		int n = matrix.length;
+	private MIndexedObject expand(int[] order) {
+		int n = mtk.rows;
 		MReal[][] L = new MReal[n][n];
 		for(int i = 0; i < n; i++) {
 			for(int j = 0; j < n; j++) {
 				if(i==j) L[i][i] = new MReal(1); //Diagonal
-				else if(i>j) L[i][j] = new MReal(mtk.matrix[i][j]); //row>col -> below diagonal
+				else if(i>j) L[i][j] = new MReal(mtk.value(i, j)); //row>col -> below diagonal
 				else L[i][j] = new MReal(0); //above diagonal
 			}
 		}
@@ -163,7 +310,7 @@ public class LUDecomposition extends Algorithm {
 		MReal[][] U = new MReal[n][n];
 		for(int i = 0; i < n; i++) {
 			for(int j = 0; j < n; j++) {
-				if(j>=i) U[i][j] = new MReal(mtk.matrix[i][j]);//col>=row -> diagonal or above
+				if(j>=i) U[i][j] = new MReal(mtk.value(i, j));//col>=row -> diagonal or above
 				else U[i][j] = new MReal(0);
 			}
 		}
@@ -188,7 +335,7 @@ public class LUDecomposition extends Algorithm {
 		double max = 0, curr_abs;
 		int indexMax = col;
 		for(int row = col; row < mtk.cols; row++) {
-			if((curr_abs = Math.abs(mtk.matrix[row][col])) > max) {
+			if((curr_abs = Math.abs(mtk.value(row, col))) > max) {
 				max = curr_abs;
 				indexMax = row;
 			}
@@ -209,6 +356,7 @@ public class LUDecomposition extends Algorithm {
 			if(!(tk instanceof DoubleMatrixToolkit))
 				throw new IllegalArgumentException("LU-Decomposition only works for real-values matrices.");
 			mtk = (DoubleMatrixToolkit) tk; 
+			order = null;
 		}else
 			throw new IllegalArgumentException("Arguments " + argTypesToString(args) + " not applicable for LU-decomposition, see help for correct use.");
 		shape = new Shape(mtk.rows, mtk.cols);
@@ -16,7 +16,9 @@ public class LUSolver extends Algorithm {
 	@Override
 	public MVector execute() {
 		if(!prepared) return null;
-		return new LUDecomposition(A).solve(b);
+		if(A.isReal() && A.isSquare())
+			return Factorization.of(A).solve(b);
+		return LUDecomposition.of(A).solve(b);
 	}
 
 	@Override
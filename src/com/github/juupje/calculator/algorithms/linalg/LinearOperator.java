@@ -0,0 +1,143 @@
+package com.github.juupje.calculator.algorithms.linalg;
+
+import com.github.juupje.calculator.helpers.Tools;
+import com.github.juupje.calculator.mathobjects.EvaluationContext;
+import com.github.juupje.calculator.mathobjects.MFunction;
+import com.github.juupje.calculator.mathobjects.MMatrix;
+import com.github.juupje.calculator.mathobjects.MSparseMatrix;
+import com.github.juupje.calculator.mathobjects.MVector;
+import com.github.juupje.calculator.mathobjects.MathObject;
+
+/**
+ * A square, real linear operator <tt>A</tt>, which is only accessed through its product <tt>Ax</tt> with a vector.
+ * This is all the iterative solvers in {@link KrylovSolver} need, so these can be used for matrices which are
+ * too large to be decomposed, or which are not stored as a matrix at all.
+ * @author Joep Geuskens
+ */
+public interface LinearOperator {
+
+	/**
+	 * @return the amount of rows (and columns) of the operator.
+	 */
+	int size();
+
+	/**
+	 * Calculates <tt>y=Ax</tt>.
+	 * @param x the vector to which the operator is applied, which should not be modified.
+	 * @param y the array in which the result is stored.
+	 */
+	void apply(double[] x, double[] y);
+
+	/**
+	 * Returns the diagonal of this operator.
+	 * @throws UnsupportedOperationException if the operator does not know its diagonal.
+	 */
+	default double[] diagonal() {
+		throw new UnsupportedOperationException("The diagonal of this operator is unknown.");
+	}
+
+	/**
+	 * Creates an operator from a square matrix with real elements.
+	 * @throws IllegalArgumentException if the matrix is not square or not real.
+	 */
+	public static LinearOperator of(MMatrix m) {
+		if(!m.isSquare())
+			throw new IllegalArgumentException("Expected a square matrix, got shape " + m.shape());
+		if(!m.isReal())
+			throw new IllegalArgumentException("Expected a matrix with real elements.");
+		final double[] a = m.values();
+		final int n = m.shape().rows();
+		final DoubleKernels kernels = DoubleKernels.get();
+		return new LinearOperator() {
+			@Override
+			public int size() {
+				return n;
+			}
+
+			@Override
+			public void apply(double[] x, double[] y) {
+				for(int i = 0; i < n; i++)
+					y[i] = kernels.dot(a, i*n, x, 0, n);
+			}
+
+			@Override
+			public double[] diagonal() {
+				double[] d = new double[n];
+				for(int i = 0; i < n; i++)
+					d[i] = a[i*n+i];
+				return d;
+			}
+		};
+	}
+
+	/**
+	 * Creates an operator from a square sparse matrix. Applying it takes <tt>O(nnz)</tt> operations.
+	 * @throws IllegalArgumentException if the matrix is not square.
+	 */
+	public static LinearOperator of(MSparseMatrix m) {
+		if(!m.isSquare())
+			throw new IllegalArgumentException("Expected a square matrix, got shape " + m.shape());
+		final int n = m.shape().rows();
+		final int[] rowPtr = m.getRowPointers(), colIdx = m.getColumnIndices();
+		final double[] values = m.getValues();
+		return new LinearOperator() {
+			@Override
+			public int size() {
+				return n;
+			}
+
+			@Override
+			public void apply(double[] x, double[] y) {
+				for(int i = 0; i < n; i++) {
+					double sum = 0;
+					for(int k = rowPtr[i]; k < rowPtr[i+1]; k++)
+						sum += values[k]*x[colIdx[k]];
+					y[i] = sum;
+				}
+			}
+
+			@Override
+			public double[] diagonal() {
+				double[] d = new double[n];
+				for(int i = 0; i < n; i++)
+					d[i] = m.value(i, i);
+				return d;
+			}
+		};
+	}
+
+	/**
+	 * Creates an operator from a function of a single vector, which should return a vector of the same size.
+	 * The function is assumed to be linear, this is not checked.
+	 * @param n the size of the vectors on which the operator acts.
+	 * @throws IllegalArgumentException if the function does not have exactly one parameter, or if that parameter is
+	 * declared with a shape other than <tt>(n)</tt>.
+	 */
+	public static LinearOperator of(MFunction f, int n) {
+		if(f.getParameters().length != 1)
+			throw new IllegalArgumentException("Expected a function of a single vector, got " + f.getParameters().length + " parameters.");
+		if(f.getParamShapes()[0].dim() != 0 && (f.getParamShapes()[0].dim() != 1 || f.getParamShapes()[0].get(0) != n))
+			throw new IllegalArgumentException("Expected a function of a vector of size " + n + ", got parameter shape " + f.getParamShapes()[0]);
+		return new LinearOperator() {
+			@Override
+			public int size() {
+				return n;
+			}
+
+			@Override
+			public void apply(double[] x, double[] y) {
+				EvaluationContext ctx = EvaluationContext.acquire(new MVector(x.clone()));
+				MathObject result;
+				try {
+					result = f.evaluateAt(ctx).evaluate();
+				} finally {
+					ctx.release();
+				}
+				double[] values = result instanceof MVector ? ((MVector) result).values() : null;
+				if(values == null || values.length != n)
+					throw new IllegalArgumentException("Expected the function to return a real vector of size " + n + ", got " + Tools.type(result));
+				System.arraycopy(values, 0, y, 0, n);
+			}
+		};
+	}
+}
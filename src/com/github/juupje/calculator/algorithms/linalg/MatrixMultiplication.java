@@ -0,0 +1,254 @@
+package com.github.juupje.calculator.algorithms.linalg;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Calculates products of real matrices stored as row-major <tt>double[]</tt>s.
+ * <p>
+ * Small products are calculated using a simple loop. For larger products, the columns of the right matrix are first
+ * copied into panels of {@link #NR} columns, after which the result is calculated in tiles of {@link #MR}x{@link #NR}
+ * elements, which are kept in local variables while the inner dimension is summed. The inner dimension and the columns
+ * are split in blocks that fit in the cache. Blocks of {@link #ROWS_PER_TASK} rows are calculated in parallel on the
+ * common {@link ForkJoinPool}.
+ * </p>
+ * Every element of the result is calculated by a single thread, adding the terms in the same order as the simple loop.
+ * Therefore, the result does not depend on the size of the matrices or the number of threads.
+ * @author Joep Geuskens
+ */
+public final class MatrixMultiplication {
+
+	/**
+	 * The amount of multiplications (<tt>n*m*k</tt>) below which the simple loop is used.
+	 */
+	public static final long THRESHOLD = 32*32*32;
+
+	/**
+	 * The amount of rows and columns of a tile of the result.
+	 */
+	static final int MR = 4, NR = 4;
+	/**
+	 * The size of the blocks of the inner dimension and the columns of the result.
+	 */
+	static final int KC = 256, NC = 128;
+	/**
+	 * The maximum amount of rows calculated by a single task.
+	 */
+	static final int ROWS_PER_TASK = 64;
+
+	private MatrixMultiplication() {}
+
+	/**
+	 * @return <tt>true</tt> if the product of a (n x m)-matrix and a (m x k)-matrix is large enough to be
+	 * calculated with the blocked kernel.
+	 */
+	public static boolean isLarge(int n, int m, int k) {
+		return (long) n*m*k >= THRESHOLD;
+	}
+
+	/**
+	 * Calculates the matrix product of two real matrices stored in row-major order.
+	 * @param a the values of the (n x m)-matrix A
+	 * @param b the values of the (m x k)-matrix B
+	 * @return the values of the (n x k)-matrix AB
+	 */
+	public static double[] multiply(double[] a, double[] b, int n, int m, int k) {
+		double[] c = new double[n*k];
+		if(!isLarge(n, m, k)) {
+			for (int i = 0; i < n; i++) {
+				for (int l = 0; l < m; l++) {
+					double a_il = a[i*m+l];
+					for (int j = 0; j < k; j++)
+						c[i*k+j] += a_il*b[l*k+j];
+				}
+			}
+			return c;
+		}
+		Product p = new Product(a, pack(b, m, k), c, 0, k, m, k, false);
+		if(n > ROWS_PER_TASK)
+			ForkJoinPool.commonPool().invoke(new RowTask(p, 0, n));
+		else
+			p.rows(0, n);
+		return c;
+	}
+
+	/**
+	 * Adds the product of a (n x m)-matrix A and a (m x k)-matrix B to the (n x k)-submatrix of C starting at
+	 * <tt>c[cOff]</tt>, in which the rows are <tt>ldc</tt> elements apart. The terms of the product are added to every
+	 * element of C one by one, in order of the inner dimension. Therefore, the result is the same as that of
+	 * <tt>m</tt> consecutive rank-one updates <tt>C+=A<sub>:,l</sub>B<sub>l,:</sub></tt>.
+	 * @param a the values of A in row-major order
+	 * @param b the values of B in row-major order
+	 */
+	static void multiplyAdd(double[] a, double[] b, double[] c, int cOff, int ldc, int n, int m, int k) {
+		multiplyAdd(a, b, c, cOff, ldc, n, m, k, false);
+	}
+
+	/**
+	 * Same as {@link #multiplyAdd(double[], double[], double[], int, int, int, int, int)}, but only the lower triangle
+	 * (including the diagonal) of the result is needed. Elements above the diagonal are either left as they are or
+	 * updated as well.
+	 */
+	static void multiplyAddLower(double[] a, double[] b, double[] c, int cOff, int ldc, int n, int m, int k) {
+		multiplyAdd(a, b, c, cOff, ldc, n, m, k, true);
+	}
+
+	private static void multiplyAdd(double[] a, double[] b, double[] c, int cOff, int ldc, int n, int m, int k, boolean lower) {
+		if(!isLarge(n, m, k)) {
+			for (int i = 0; i < n; i++) {
+				int kmax = lower ? Math.min(i+1, k) : k;
+				for (int l = 0; l < m; l++) {
+					double a_il = a[i*m+l];
+					for (int j = 0, c_i = cOff+i*ldc; j < kmax; j++)
+						c[c_i+j] += a_il*b[l*k+j];
+				}
+			}
+			return;
+		}
+		Product p = new Product(a, pack(b, m, k), c, cOff, ldc, m, k, lower);
+		if(n > ROWS_PER_TASK)
+			ForkJoinPool.commonPool().invoke(new RowTask(p, 0, n));
+		else
+			p.rows(0, n);
+	}
+
+	/**
+	 * Copies the (m x k)-matrix B into panels of {@link #NR} columns. Within a panel, the values are stored row by row,
+	 * so that the element at row <tt>l</tt> and column <tt>NR*p+t</tt> is stored at <tt>NR*(m*p+l)+t</tt>.
+	 * The last panel is padded with zeros.
+	 */
+	static double[] pack(double[] b, int m, int k) {
+		int panels = (k+NR-1)/NR;
+		double[] packed = new double[panels*NR*m];
+		for(int p = 0; p < panels; p++) {
+			int width = Math.min(NR, k-p*NR);
+			for(int l = 0; l < m; l++)
+				System.arraycopy(b, l*k+p*NR, packed, NR*(m*p+l), width);
+		}
+		return packed;
+	}
+
+	/**
+	 * The operands and result of a single matrix product. An instance is shared by all tasks, which write to
+	 * disjoint rows of the result. The product is added to the values already in the result, which starts at
+	 * <tt>c[cOff]</tt> and has rows which are <tt>ldc</tt> elements apart. If <tt>lower</tt> is set, the columns to the
+	 * right of the last row of a task are skipped.
+	 */
+	private static class Product {
+		final double[] a, packed, c;
+		final int cOff, ldc, m, k;
+		final boolean lower;
+
+		Product(double[] a, double[] packed, double[] c, int cOff, int ldc, int m, int k, boolean lower) {
+			this.a = a;
+			this.packed = packed;
+			this.c = c;
+			this.cOff = cOff;
+			this.ldc = ldc;
+			this.m = m;
+			this.k = k;
+			this.lower = lower;
+		}
+
+		/**
+		 * Calculates the rows <tt>from</tt> (inclusive) to <tt>to</tt> (exclusive) of the result.
+		 */
+		void rows(int from, int to) {
+			int kmax = lower ? Math.min(k, to) : k;
+			for(int jc = 0; jc < kmax; jc += NC) {
+				int jend = Math.min(jc+NC, kmax);
+				for(int lc = 0; lc < m; lc += KC) {
+					int lend = Math.min(lc+KC, m);
+					int i = from;
+					for(; i+MR <= to; i += MR)
+						for(int j = jc; j < jend; j += NR)
+							tile(i, j, lc, lend);
+					for(; i < to; i++)
+						for(int j = jc; j < jend; j += NR)
+							row(i, j, lc, lend);
+				}
+			}
+		}
+
+		/**
+		 * Adds the terms <tt>lc</tt> to <tt>lend</tt> of the inner dimension to the 4x4 tile of the result
+		 * starting at row <tt>i</tt> and column <tt>j</tt>.
+		 */
+		private void tile(int i, int j, int lc, int lend) {
+			final double[] a = this.a, packed = this.packed, c = this.c;
+			int width = Math.min(NR, k-j);
+			int c0 = cOff+i*ldc+j, c1 = c0+ldc, c2 = c1+ldc, c3 = c2+ldc;
+			double c00 = c[c0], c01 = 0, c02 = 0, c03 = 0;
+			double c10 = c[c1], c11 = 0, c12 = 0, c13 = 0;
+			double c20 = c[c2], c21 = 0, c22 = 0, c23 = 0;
+			double c30 = c[c3], c31 = 0, c32 = 0, c33 = 0;
+			if(width > 1) { c01 = c[c0+1]; c11 = c[c1+1]; c21 = c[c2+1]; c31 = c[c3+1]; }
+			if(width > 2) { c02 = c[c0+2]; c12 = c[c1+2]; c22 = c[c2+2]; c32 = c[c3+2]; }
+			if(width > 3) { c03 = c[c0+3]; c13 = c[c1+3]; c23 = c[c2+3]; c33 = c[c3+3]; }
+			int a0 = i*m, a1 = a0+m, a2 = a1+m, a3 = a2+m;
+			for(int l = lc, b = NR*(m*(j/NR)+lc); l < lend; l++, b += NR) {
+				double b0 = packed[b], b1 = packed[b+1], b2 = packed[b+2], b3 = packed[b+3];
+				double x = a[a0+l];
+				c00 += x*b0; c01 += x*b1; c02 += x*b2; c03 += x*b3;
+				x = a[a1+l];
+				c10 += x*b0; c11 += x*b1; c12 += x*b2; c13 += x*b3;
+				x = a[a2+l];
+				c20 += x*b0; c21 += x*b1; c22 += x*b2; c23 += x*b3;
+				x = a[a3+l];
+				c30 += x*b0; c31 += x*b1; c32 += x*b2; c33 += x*b3;
+			}
+			c[c0] = c00; c[c1] = c10; c[c2] = c20; c[c3] = c30;
+			if(width > 1) { c[c0+1] = c01; c[c1+1] = c11; c[c2+1] = c21; c[c3+1] = c31; }
+			if(width > 2) { c[c0+2] = c02; c[c1+2] = c12; c[c2+2] = c22; c[c3+2] = c32; }
+			if(width > 3) { c[c0+3] = c03; c[c1+3] = c13; c[c2+3] = c23; c[c3+3] = c33; }
+		}
+
+		/**
+		 * Same as {@link #tile(int, int, int, int)}, but for a single row.
+		 */
+		private void row(int i, int j, int lc, int lend) {
+			final double[] a = this.a, packed = this.packed, c = this.c;
+			int width = Math.min(NR, k-j);
+			int c0 = cOff+i*ldc+j;
+			double c00 = c[c0], c01 = 0, c02 = 0, c03 = 0;
+			if(width > 1) c01 = c[c0+1];
+			if(width > 2) c02 = c[c0+2];
+			if(width > 3) c03 = c[c0+3];
+			int a0 = i*m;
+			for(int l = lc, b = NR*(m*(j/NR)+lc); l < lend; l++, b += NR) {
+				double x = a[a0+l];
+				c00 += x*packed[b]; c01 += x*packed[b+1]; c02 += x*packed[b+2]; c03 += x*packed[b+3];
+			}
+			c[c0] = c00;
+			if(width > 1) c[c0+1] = c01;
+			if(width > 2) c[c0+2] = c02;
+			if(width > 3) c[c0+3] = c03;
+		}
+	}
+
+	/**
+	 * Splits the rows of the result in halves until at most {@link #ROWS_PER_TASK} remain, and calculates them.
+	 */
+	private static class RowTask extends RecursiveAction {
+		private static final long serialVersionUID = -3127420183466027931L;
+		final Product p;
+		final int from, to;
+
+		RowTask(Product p, int from, int to) {
+			this.p = p;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if(to - from <= ROWS_PER_TASK)
+				p.rows(from, to);
+			else {
+				// keep the split at a multiple of MR, so that only the last task has rows outside a tile
+				int mid = from + ((to - from) / 2 / MR) * MR;
+				invokeAll(new RowTask(p, from, mid), new RowTask(p, mid, to));
+			}
+		}
+	}
+}
@@ -61,6 +61,8 @@ public abstract class MatrixToolkit<T> {
 	}
 	
 	public static MatrixToolkit<?> getToolkit(MMatrix m) {
+		if(m.isReal())
+			return new DoubleMatrixToolkit(m.shape().rows(), m.shape().cols(), m.values());
 		boolean allReal = true;
 		boolean complex = true;
 		for(int i = 0; i < m.shape().rows(); i++) {
@@ -177,7 +179,7 @@ public abstract class MatrixToolkit<T> {
 			return false;
 		for(int i = rstart; i <= rend; i++)
 			for(int j = i+1; j <= cend; j++)
-				if(!matrix[i][j].equals(matrix[j][i]))
+				if(!get(i-rstart, j-cstart).equals(get(j-rstart, i-cstart)))
 					return false;
 		return true;
 	}
@@ -191,7 +193,7 @@ public abstract class MatrixToolkit<T> {
 		//because the matrix is upper hessenberg,
 		//only the first lower subdiagonal needs to contain no non-zero elements.
 		for(int i = rstart+1; i <= rend; i++)
-			if(!matrix[i][i-1].equals(0d)) return false;
+			if(!get(i-rstart, i-1-cstart).equals(0d)) return false;
 		return true;				
 	}
 	
@@ -204,7 +206,7 @@ public abstract class MatrixToolkit<T> {
 		//because the matrix is lower hessenberg,
 		//only the first upper subdiagonal needs to contain no non-zero elements.
 		for(int i = rstart; i <= rend-1; i++)
-				if(!matrix[i][i+1].equals(0d)) return false;
+				if(!get(i-rstart, i+1-cstart).equals(0d)) return false;
 		return true;				
 	}
 	
@@ -216,7 +218,7 @@ public abstract class MatrixToolkit<T> {
 		if((mask & SQUARE) != SQUARE) return false;
 		for(int i = rstart; i <= rend; i++)
 			for(int j = cstart; j < i-1; j++)
-				if(!matrix[i][j].equals(0d)) return false;
+				if(!get(i-rstart, j-cstart).equals(0d)) return false;
 		return true;				
 	}
 	
@@ -228,7 +230,7 @@ public abstract class MatrixToolkit<T> {
 		if((mask & SQUARE) != SQUARE) return false;
 		for(int i = rstart; i <= rend; i++)
 			for(int j = i+2; j <= cend; j++)
-				if(!matrix[i][j].equals(0d)) return false;
+				if(!get(i-rstart, j-cstart).equals(0d)) return false;
 		return true;				
 	}
 	
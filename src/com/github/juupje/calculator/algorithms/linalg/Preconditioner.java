@@ -0,0 +1,113 @@
+package com.github.juupje.calculator.algorithms.linalg;
+
+import java.util.Arrays;
+
+import com.github.juupje.calculator.mathobjects.MSparseMatrix;
+
+/**
+ * A preconditioner <tt>M</tt> approximates a matrix <tt>A</tt> by a matrix which can be inverted cheaply.
+ * The iterative solvers in {@link KrylovSolver} solve systems with <tt>M</tt> in every iteration, which
+ * reduces the amount of iterations needed when <tt>M<sup>-1</sup>A</tt> is closer to the identity than <tt>A</tt>.
+ * @author Joep Geuskens
+ */
+public abstract class Preconditioner {
+
+	public enum Type {
+		NONE, JACOBI, ILU
+	}
+
+	/**
+	 * The identity, which does not precondition the system.
+	 */
+	public static final Preconditioner NONE = new Preconditioner() {
+		@Override
+		public void apply(double[] r, double[] z) {
+			System.arraycopy(r, 0, z, 0, r.length);
+		}
+	};
+
+	/**
+	 * Solves <tt>Mz=r</tt>.
+	 * @param r the right hand side, which should not be modified.
+	 * @param z the array in which the solution is stored.
+	 */
+	public abstract void apply(double[] r, double[] z);
+
+	/**
+	 * Creates the Jacobi preconditioner, which approximates <tt>A</tt> by its diagonal.
+	 * @throws IllegalArgumentException if the diagonal contains a zero.
+	 */
+	public static Preconditioner jacobi(LinearOperator A) {
+		double[] d = A.diagonal();
+		final double[] inv = new double[d.length];
+		for(int i = 0; i < d.length; i++) {
+			if(d[i] == 0)
+				throw new IllegalArgumentException("The Jacobi preconditioner requires a non-zero diagonal, element " + i + " is zero.");
+			inv[i] = 1/d[i];
+		}
+		return new Preconditioner() {
+			@Override
+			public void apply(double[] r, double[] z) {
+				for(int i = 0; i < inv.length; i++)
+					z[i] = inv[i]*r[i];
+			}
+		};
+	}
+
+	/**
+	 * Creates the incomplete LU preconditioner without fill-in (ILU(0)). This calculates the LU decomposition of
+	 * <tt>A</tt>, ignoring every element of <tt>L</tt> and <tt>U</tt> at a position where <tt>A</tt> is zero.
+	 * Therefore, the factors have the same sparsity pattern as <tt>A</tt>.
+	 * @throws IllegalArgumentException if the matrix is not square, or if a zero pivot is encountered.
+	 */
+	public static Preconditioner ilu0(MSparseMatrix A) {
+		if(!A.isSquare())
+			throw new IllegalArgumentException("Expected a square matrix, got shape " + A.shape());
+		final int n = A.shape().rows();
+		final int[] rowPtr = A.getRowPointers(), colIdx = A.getColumnIndices();
+		final double[] lu = A.getValues().clone();
+		final int[] diag = new int[n];
+		int[] position = new int[n]; // position[j] is the index of column j in the current row, or -1
+		Arrays.fill(position, -1);
+		for(int i = 0; i < n; i++) {
+			diag[i] = -1;
+			for(int k = rowPtr[i]; k < rowPtr[i+1]; k++) {
+				position[colIdx[k]] = k;
+				if(colIdx[k] == i)
+					diag[i] = k;
+			}
+			if(diag[i] == -1)
+				throw new IllegalArgumentException("ILU(0) requires a non-zero diagonal, element " + i + " is zero.");
+			for(int k = rowPtr[i]; k < diag[i]; k++) {
+				int col = colIdx[k];
+				lu[k] /= lu[diag[col]];
+				for(int l = diag[col]+1; l < rowPtr[col+1]; l++)
+					if(position[colIdx[l]] != -1)
+						lu[position[colIdx[l]]] -= lu[k]*lu[l];
+			}
+			if(lu[diag[i]] == 0)
+				throw new IllegalArgumentException("ILU(0) encountered a zero pivot in row " + i);
+			for(int k = rowPtr[i]; k < rowPtr[i+1]; k++)
+				position[colIdx[k]] = -1;
+		}
+		return new Preconditioner() {
+			@Override
+			public void apply(double[] r, double[] z) {
+				// forward substitution with the unit lower triangle
+				for(int i = 0; i < n; i++) {
+					double sum = r[i];
+					for(int k = rowPtr[i]; k < diag[i]; k++)
+						sum -= lu[k]*z[colIdx[k]];
+					z[i] = sum;
+				}
+				// backward substitution with the upper triangle
+				for(int i = n-1; i >= 0; i--) {
+					double sum = z[i];
+					for(int k = diag[i]+1; k < rowPtr[i+1]; k++)
+						sum -= lu[k]*z[colIdx[k]];
+					z[i] = sum/lu[diag[i]];
+				}
+			}
+		};
+	}
+}
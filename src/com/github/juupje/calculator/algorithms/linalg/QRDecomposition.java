@@ -28,7 +28,7 @@ public class QRDecomposition extends Algorithm {
 			double[] v2 = cmultiply(v, -2);
 			sub.add(dyadic(v2, sub.multiplyLeft(v)));
 			for(int i = k+1; i < tk.rows; i++)
-				tk.matrix[i][k] = 0d;
+				tk.setValue(i, k, 0);
 			if(k==0) {
 				//construct an identity matrix
 				double[][] Q1 = new double[tk.rows][tk.rows];
@@ -66,6 +66,12 @@ public class QRDecomposition extends Algorithm {
 	@Override
 	protected MathObject execute(MathObject... args) {
 		prepare(args);
+		if(tk instanceof DoubleMatrixToolkit) {
+			//the cached result is shared, so return a copy
+			MMatrix m = (MMatrix) args[0];
+			long rows = tk.rows;
+			return FactorizationCache.get(m, FactorizationCache.Kind.QR, 8*rows*(rows+tk.cols), mat -> (MVector) execute()).copy();
+		}
 		return execute();
 	}
 	
@@ -89,9 +95,9 @@ public class QRDecomposition extends Algorithm {
 	private double[] householder(DoubleMatrixToolkit dmtk, int col) {
 		double[] u = new double[dmtk.rows - col];
 		double norm = 0;
-		u[0] = dmtk.get(col,col);
+		u[0] = dmtk.value(col,col);
 		for(int i = col+1, j=1; i<dmtk.rows; i++, j++) {
-			u[j] = dmtk.get(i, col);
+			u[j] = dmtk.value(i, col);
 			norm += u[j]*u[j];
 		}
 		u[0] += Math.sqrt(norm+u[0]*u[0])*(u[0]>0 ? 1 : -1); //can't use signum in case u[0]==0
@@ -0,0 +1,109 @@
+package com.github.juupje.calculator.algorithms.linalg;
+
+import java.util.Objects;
+
+import com.github.juupje.calculator.algorithms.Algorithm;
+import com.github.juupje.calculator.helpers.Tools;
+import com.github.juupje.calculator.helpers.exceptions.ShapeException;
+import com.github.juupje.calculator.mathobjects.MMatrix;
+import com.github.juupje.calculator.mathobjects.MReal;
+import com.github.juupje.calculator.mathobjects.MSparseMatrix;
+import com.github.juupje.calculator.mathobjects.MVector;
+import com.github.juupje.calculator.mathobjects.MathObject;
+import com.github.juupje.calculator.mathobjects.Shape;
+
+/**
+ * Calculates the singular value decomposition of a real matrix (see {@link SingularValueSolver}), or one of the
+ * quantities derived from it: the pseudo-inverse and the rank.
+ * <p>
+ * Singular values smaller than a tolerance are treated as zero by the pseudo-inverse and the rank. By default, this
+ * tolerance is <tt>max(m,n)*eps(s<sub>max</sub>)</tt>, with <tt>s<sub>max</sub></tt> the largest singular value.
+ * </p>
+ * @author Joep Geuskens
+ */
+public class SingularValueDecomposition extends Algorithm {
+
+	public enum Type {
+		SVD, PINV, RANK
+	}
+
+	Type type;
+	MMatrix m;
+	double tolerance;
+
+	public SingularValueDecomposition(Type type) {
+		Objects.requireNonNull(type);
+		this.type = type;
+	}
+
+	@Override
+	public MathObject execute() {
+		if(!prepared) return null;
+		int rows = m.shape().rows(), cols = m.shape().cols();
+		int k = Math.min(rows, cols);
+		SingularValueSolver solver = new SingularValueSolver(m.values(), rows, cols, type != Type.RANK);
+		double[] s = solver.singularValues();
+		if(type == Type.SVD)
+			return new MVector(new MMatrix(rows, k, solver.u()), new MVector(s), new MMatrix(cols, k, solver.v()));
+		double tol = tolerance >= 0 ? tolerance : (k == 0 ? 0 : Math.max(rows, cols)*Math.ulp(s[0]));
+		int rank = 0;
+		while(rank < k && s[rank] > tol)
+			rank++;
+		if(type == Type.RANK)
+			return new MReal(rank);
+		//pinv(A)=V*inv(S)*U^T, using only the first 'rank' singular values
+		double[] u = solver.u(), v = solver.v();
+		double[] vs = new double[cols*rank], utr = new double[rank*rows];
+		for(int i = 0; i < cols; i++)
+			for(int j = 0; j < rank; j++)
+				vs[i*rank+j] = v[i*k+j]/s[j];
+		for(int i = 0; i < rows; i++)
+			for(int j = 0; j < rank; j++)
+				utr[j*rows+i] = u[i*k+j];
+		return new MMatrix(cols, rows, MatrixMultiplication.multiply(vs, utr, cols, rank, rows));
+	}
+
+	@Override
+	protected MathObject execute(MathObject... args) {
+		prepare(args);
+		return execute();
+	}
+
+	@Override
+	protected void prepare(MathObject[] args) {
+		prepared = false;
+		String name = type.toString().toLowerCase();
+		int maxArgs = type == Type.SVD ? 1 : 2;
+		if(args.length == 0 || args.length > maxArgs)
+			throw new IllegalArgumentException(name + " expected " + (maxArgs == 1 ? "1 argument" : "1 or 2 arguments") + ", got " + args.length);
+		if(args[0] instanceof MSparseMatrix)
+			m = ((MSparseMatrix) args[0]).toMMatrix();
+		else if(args[0] instanceof MMatrix)
+			m = (MMatrix) args[0];
+		else
+			throw new IllegalArgumentException(name + " expected a matrix, got " + argTypesToString(args));
+		if(!m.isReal())
+			throw new IllegalArgumentException(name + " is only defined for real-valued matrices.");
+		tolerance = -1;
+		if(args.length == 2) {
+			if(!(args[1] instanceof MReal) || ((MReal) args[1]).getValue() < 0)
+				throw new IllegalArgumentException("Expected the tolerance to be a non-negative real number, got " + args[1]);
+			tolerance = ((MReal) args[1]).getValue();
+		}
+		prepared = true;
+	}
+
+	@Override
+	public Shape shape(Shape... shapes) {
+		if(shapes.length == 0 || shapes[0].dim() != 2)
+			throw new ShapeException(type.toString().toLowerCase() + " is only defined for matrices, got shape(s) " + Tools.join(", ", (Object[]) shapes));
+		switch(type) {
+		case SVD:
+			return new Shape(3);
+		case PINV:
+			return new Shape(shapes[0].cols(), shapes[0].rows());
+		default:
+			return new Shape();
+		}
+	}
+}
@@ -0,0 +1,354 @@
+package com.github.juupje.calculator.algorithms.linalg;
+
+import java.util.Arrays;
+
+import com.github.juupje.calculator.helpers.exceptions.InvalidOperationException;
+
+/**
+ * Calculates the singular value decomposition <tt>A=USV<sup>T</sup></tt> of a real (m x n)-matrix, in which <tt>U</tt> is
+ * a (m x k)-matrix and <tt>V</tt> a (n x k)-matrix with orthonormal columns, <tt>S</tt> is a diagonal matrix containing
+ * the singular values and <tt>k=min(m,n)</tt>.
+ * <p>
+ * The matrix is first reduced to an upper bidiagonal matrix using Householder reflections from the left and the right
+ * (Golub-Kahan bidiagonalization), after which the singular values of the bidiagonal matrix are found using the implicit
+ * shifted QR algorithm. The matrix and <tt>U</tt> and <tt>V</tt> are stored column by column (every column in a separate
+ * array), so that the reflections and rotations, which all act on columns, run over contiguous memory. If <tt>m&lt;n</tt>,
+ * the decomposition of <tt>A<sup>T</sup></tt> is calculated instead.
+ * </p>
+ * If only the singular values are needed, the QR iterations take <tt>O(k<sup>2</sup>)</tt> operations.
+ * @author Joep Geuskens
+ */
+public class SingularValueSolver {
+
+	/**
+	 * The maximum amount of QR iterations per singular value.
+	 */
+	private static final int MAX_ITERATIONS = 75;
+
+	final int rows, cols, k;
+	final double[] s;
+	/**
+	 * The columns of <tt>U</tt> and <tt>V</tt> (or <tt>null</tt> if the singular vectors were not calculated).
+	 */
+	double[][] ut, vt;
+
+	/**
+	 * Calculates the singular values (and the singular vectors if <tt>vectors</tt> is set) of the (rows x cols)-matrix
+	 * with the given values.
+	 * @param a the values of the matrix in row-major order, this array is not modified.
+	 * @throws InvalidOperationException if the QR algorithm did not converge.
+	 */
+	public SingularValueSolver(double[] a, int rows, int cols, boolean vectors) {
+		this.rows = rows;
+		this.cols = cols;
+		k = Math.min(rows, cols);
+		boolean transpose = rows < cols;
+		int m = transpose ? cols : rows, n = transpose ? rows : cols;
+		//the columns of the matrix which is decomposed (A or A^T)
+		double[][] at = new double[n][m];
+		if(transpose) {
+			for(int j = 0; j < n; j++)
+				System.arraycopy(a, j*m, at[j], 0, m);
+		} else {
+			for(int i = 0; i < m; i++)
+				for(int j = 0; j < n; j++)
+					at[j][i] = a[i*n+j];
+		}
+		s = new double[n];
+		decompose(at, m, n, vectors);
+		if(transpose) {
+			double[][] temp = ut;
+			ut = vt;
+			vt = temp;
+		}
+	}
+
+	/**
+	 * @return the singular values in descending order.
+	 */
+	public double[] singularValues() {
+		return s;
+	}
+
+	/**
+	 * @return the values of the (rows x k)-matrix <tt>U</tt> in row-major order, or <tt>null</tt> if the singular vectors
+	 * were not calculated.
+	 */
+	public double[] u() {
+		return ut == null ? null : toRowMajor(ut, rows);
+	}
+
+	/**
+	 * @return the values of the (cols x k)-matrix <tt>V</tt> in row-major order, or <tt>null</tt> if the singular vectors
+	 * were not calculated.
+	 */
+	public double[] v() {
+		return vt == null ? null : toRowMajor(vt, cols);
+	}
+
+	private double[] toRowMajor(double[][] columns, int length) {
+		double[] values = new double[length*k];
+		for(int j = 0; j < k; j++)
+			for(int i = 0; i < length; i++)
+				values[i*k+j] = columns[j][i];
+		return values;
+	}
+
+	/**
+	 * Decomposes the (m x n)-matrix with columns <tt>at</tt>, where <tt>m&ge;n</tt>.
+	 */
+	private void decompose(double[][] at, int m, int n, boolean vectors) {
+		DoubleKernels kernels = DoubleKernels.get();
+		double[] e = new double[n];
+		double[] work = new double[m];
+		if(vectors) {
+			ut = new double[n][m];
+			vt = new double[n][n];
+		}
+		// Reduce A to bidiagonal form, storing the diagonal elements in s and the super-diagonal elements in e.
+		int nct = Math.min(m-1, n);
+		int nrt = Math.max(0, Math.min(n-2, m));
+		for(int k = 0; k < Math.max(nct, nrt); k++) {
+			double[] ak = at[k];
+			if(k < nct) {
+				// Compute the transformation for the k-th column and place the k-th diagonal in s[k].
+				s[k] = Math.sqrt(kernels.sumOfSquares(ak, k, m-k));
+				if(s[k] != 0) {
+					if(ak[k] < 0)
+						s[k] = -s[k];
+					kernels.scale(1/s[k], ak, k, m-k);
+					ak[k] += 1;
+				}
+				s[k] = -s[k];
+			}
+			for(int j = k+1; j < n; j++) {
+				// Apply the transformation.
+				if(k < nct && s[k] != 0) {
+					double t = -kernels.dot(ak, k, at[j], k, m-k)/ak[k];
+					kernels.axpy(t, ak, k, at[j], k, m-k);
+				}
+				// Place the k-th row of A into e for the subsequent calculation of the row transformation.
+				e[j] = at[j][k];
+			}
+			if(vectors && k < nct)
+				System.arraycopy(ak, k, ut[k], k, m-k);
+			if(k < nrt) {
+				// Compute the k-th row transformation and place the k-th super-diagonal in e[k].
+				e[k] = Math.sqrt(kernels.sumOfSquares(e, k+1, n-k-1));
+				if(e[k] != 0) {
+					if(e[k+1] < 0)
+						e[k] = -e[k];
+					kernels.scale(1/e[k], e, k+1, n-k-1);
+					e[k+1] += 1;
+				}
+				e[k] = -e[k];
+				if(k+1 < m && e[k] != 0) {
+					// Apply the transformation.
+					Arrays.fill(work, k+1, m, 0);
+					for(int j = k+1; j < n; j++)
+						kernels.axpy(e[j], at[j], k+1, work, k+1, m-k-1);
+					for(int j = k+1; j < n; j++)
+						kernels.axpy(-e[j]/e[k+1], work, k+1, at[j], k+1, m-k-1);
+				}
+				if(vectors)
+					System.arraycopy(e, k+1, vt[k], k+1, n-k-1);
+			}
+		}
+
+		// Set up the final bidiagonal matrix of order p.
+		int p = n;
+		if(nct < n)
+			s[nct] = at[nct][nct];
+		if(nrt+1 < p)
+			e[nrt] = at[p-1][nrt];
+		e[p-1] = 0;
+
+		if(vectors) {
+			// Generate U.
+			for(int j = nct; j < n; j++) {
+				Arrays.fill(ut[j], 0);
+				ut[j][j] = 1;
+			}
+			for(int k = nct-1; k >= 0; k--) {
+				double[] uk = ut[k];
+				if(s[k] != 0) {
+					for(int j = k+1; j < n; j++) {
+						double t = -kernels.dot(uk, k, ut[j], k, m-k)/uk[k];
+						kernels.axpy(t, uk, k, ut[j], k, m-k);
+					}
+					kernels.scale(-1, uk, k, m-k);
+					uk[k] += 1;
+					Arrays.fill(uk, 0, k, 0);
+				} else {
+					Arrays.fill(uk, 0);
+					uk[k] = 1;
+				}
+			}
+			// Generate V.
+			for(int k = n-1; k >= 0; k--) {
+				double[] vk = vt[k];
+				if(k < nrt && e[k] != 0) {
+					for(int j = k+1; j < n; j++) {
+						double t = -kernels.dot(vk, k+1, vt[j], k+1, n-k-1)/vk[k+1];
+						kernels.axpy(t, vk, k+1, vt[j], k+1, n-k-1);
+					}
+				}
+				Arrays.fill(vk, 0);
+				vk[k] = 1;
+			}
+		}
+
+		// Main iteration loop for the singular values.
+		int pp = p-1;
+		int iter = 0;
+		double eps = Math.ulp(1.0);
+		double tiny = Math.pow(2, -966);
+		while(p > 0) {
+			int k, kase;
+			// Find the largest k such that e[k] is negligible (or k=-1).
+			for(k = p-2; k >= 0; k--) {
+				if(Math.abs(e[k]) <= tiny + eps*(Math.abs(s[k]) + Math.abs(s[k+1]))) {
+					e[k] = 0;
+					break;
+				}
+			}
+			if(k == p-2)
+				kase = 4; // s[p-1] has converged
+			else {
+				int ks;
+				for(ks = p-1; ks > k; ks--) {
+					double t = (ks != p ? Math.abs(e[ks]) : 0) + (ks != k+1 ? Math.abs(e[ks-1]) : 0);
+					if(Math.abs(s[ks]) <= tiny + eps*t) {
+						s[ks] = 0;
+						break;
+					}
+				}
+				if(ks == k)
+					kase = 3; // QR step
+				else if(ks == p-1)
+					kase = 1; // s[p-1] is negligible
+				else {
+					kase = 2; // s[ks] is negligible
+					k = ks;
+				}
+			}
+			k++;
+			switch(kase) {
+			case 1: {
+				// Deflate negligible s[p-1].
+				double f = e[p-2];
+				e[p-2] = 0;
+				for(int j = p-2; j >= k; j--) {
+					double t = Math.hypot(s[j], f);
+					double cs = s[j]/t, sn = f/t;
+					s[j] = t;
+					if(j != k) {
+						f = -sn*e[j-1];
+						e[j-1] = cs*e[j-1];
+					}
+					if(vectors)
+						rotate(vt[j], vt[p-1], cs, sn);
+				}
+				break;
+			}
+			case 2: {
+				// Split at negligible s[k-1].
+				double f = e[k-1];
+				e[k-1] = 0;
+				for(int j = k; j < p; j++) {
+					double t = Math.hypot(s[j], f);
+					double cs = s[j]/t, sn = f/t;
+					s[j] = t;
+					f = -sn*e[j];
+					e[j] = cs*e[j];
+					if(vectors)
+						rotate(ut[j], ut[k-1], cs, sn);
+				}
+				break;
+			}
+			case 3: {
+				if(++iter > MAX_ITERATIONS)
+					throw new InvalidOperationException("Singular value decomposition did not converge within " + MAX_ITERATIONS + " iterations.");
+				// Calculate the shift.
+				double scale = Math.max(Math.max(Math.max(Math.max(Math.abs(s[p-1]), Math.abs(s[p-2])), Math.abs(e[p-2])),
+						Math.abs(s[k])), Math.abs(e[k]));
+				double sp = s[p-1]/scale, spm1 = s[p-2]/scale, epm1 = e[p-2]/scale;
+				double sk = s[k]/scale, ek = e[k]/scale;
+				double b = ((spm1 + sp)*(spm1 - sp) + epm1*epm1)/2;
+				double c = (sp*epm1)*(sp*epm1);
+				double shift = 0;
+				if(b != 0 || c != 0) {
+					shift = Math.sqrt(b*b + c);
+					if(b < 0)
+						shift = -shift;
+					shift = c/(b + shift);
+				}
+				double f = (sk + sp)*(sk - sp) + shift;
+				double g = sk*ek;
+				// Chase zeros.
+				for(int j = k; j < p-1; j++) {
+					double t = Math.hypot(f, g);
+					double cs = f/t, sn = g/t;
+					if(j != k)
+						e[j-1] = t;
+					f = cs*s[j] + sn*e[j];
+					e[j] = cs*e[j] - sn*s[j];
+					g = sn*s[j+1];
+					s[j+1] = cs*s[j+1];
+					if(vectors)
+						rotate(vt[j], vt[j+1], cs, sn);
+					t = Math.hypot(f, g);
+					cs = f/t;
+					sn = g/t;
+					s[j] = t;
+					f = cs*e[j] + sn*s[j+1];
+					s[j+1] = -sn*e[j] + cs*s[j+1];
+					g = sn*e[j+1];
+					e[j+1] = cs*e[j+1];
+					if(vectors && j < m-1)
+						rotate(ut[j], ut[j+1], cs, sn);
+				}
+				e[p-2] = f;
+				break;
+			}
+			case 4: {
+				// Make the singular value positive.
+				if(s[k] <= 0) {
+					s[k] = s[k] < 0 ? -s[k] : 0;
+					if(vectors)
+						kernels.scale(-1, vt[k], 0, n);
+				}
+				// Order the singular values.
+				while(k < pp && s[k] < s[k+1]) {
+					double t = s[k];
+					s[k] = s[k+1];
+					s[k+1] = t;
+					if(vectors) {
+						double[] temp = vt[k];
+						vt[k] = vt[k+1];
+						vt[k+1] = temp;
+						temp = ut[k];
+						ut[k] = ut[k+1];
+						ut[k+1] = temp;
+					}
+					k++;
+				}
+				iter = 0;
+				p--;
+				break;
+			}
+			}
+		}
+	}
+
+	/**
+	 * Replaces <tt>x</tt> by <tt>cs*x+sn*y</tt> and <tt>y</tt> by <tt>cs*y-sn*x</tt>.
+	 */
+	private static void rotate(double[] x, double[] y, double cs, double sn) {
+		for(int i = 0; i < x.length; i++) {
+			double t = cs*x[i] + sn*y[i];
+			y[i] = cs*y[i] - sn*x[i];
+			x[i] = t;
+		}
+	}
+}
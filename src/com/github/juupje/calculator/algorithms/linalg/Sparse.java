@@ -0,0 +1,82 @@
+package com.github.juupje.calculator.algorithms.linalg;
+
+import java.util.Objects;
+
+import com.github.juupje.calculator.algorithms.Algorithm;
+import com.github.juupje.calculator.mathobjects.MMatrix;
+import com.github.juupje.calculator.mathobjects.MReal;
+import com.github.juupje.calculator.mathobjects.MSparseMatrix;
+import com.github.juupje.calculator.mathobjects.MVector;
+import com.github.juupje.calculator.mathobjects.MathObject;
+import com.github.juupje.calculator.mathobjects.Shape;
+
+/**
+ * Converts between dense matrices ({@link MMatrix}) and sparse matrices ({@link MSparseMatrix}),
+ * and creates sparse matrices from (row, column, value) triplets.
+ */
+public class Sparse extends Algorithm {
+
+	public enum Type {
+		SPARSE, DENSE
+	}
+
+	Type type;
+
+	public Sparse(Type type) {
+		Objects.requireNonNull(type);
+		this.type = type;
+	}
+
+	@Override
+	public MathObject execute() {
+		return null;
+	}
+
+	@Override
+	protected MathObject execute(MathObject... args) {
+		if(type == Type.DENSE) {
+			if(args.length != 1)
+				throw new IllegalArgumentException("dense expected 1 argument, got " + args.length);
+			if(args[0] instanceof MSparseMatrix)
+				return ((MSparseMatrix) args[0]).toMMatrix();
+			if(args[0] instanceof MMatrix)
+				return args[0].copy();
+			throw new IllegalArgumentException("Expected a matrix, got " + argTypesToString(args));
+		}
+		if(args.length == 1) {
+			if(args[0] instanceof MSparseMatrix)
+				return args[0].copy();
+			if(args[0] instanceof MMatrix)
+				return new MSparseMatrix((MMatrix) args[0]);
+			throw new IllegalArgumentException("Expected a matrix, got " + argTypesToString(args));
+		}
+		if(args.length != 2 && args.length != 5)
+			throw new IllegalArgumentException("sparse expected 1, 2 or 5 arguments, got " + args.length);
+		if(!MReal.isPosInteger(args[0]) || !MReal.isPosInteger(args[1]))
+			throw new IllegalArgumentException("Expected first 2 arguments to be positive integers, got " + argTypesToString(args));
+		int rows = (int) ((MReal) args[0]).getValue();
+		int cols = (int) ((MReal) args[1]).getValue();
+		if(args.length == 2)
+			return new MSparseMatrix(rows, cols);
+		if(!(args[2] instanceof MVector && args[3] instanceof MVector && args[4] instanceof MVector))
+			throw new IllegalArgumentException("Expected last 3 arguments to be vectors, got " + argTypesToString(args));
+		MVector I = (MVector) args[2], J = (MVector) args[3], V = (MVector) args[4];
+		if(I.size() != J.size() || I.size() != V.size())
+			throw new IllegalArgumentException("The vectors of rows, columns and values should have the same size, got "
+					+ I.size() + ", " + J.size() + " and " + V.size());
+		MSparseMatrix.Builder builder = new MSparseMatrix.Builder(rows, cols);
+		for(int k = 0; k < I.size(); k++) {
+			if(!MReal.isPosInteger(I.get(k)) || !MReal.isPosInteger(J.get(k)))
+				throw new IllegalArgumentException("Row and column indices should be positive integers, got " + I.get(k) + " and " + J.get(k));
+			if(!(V.get(k) instanceof MReal))
+				throw new IllegalArgumentException("Sparse matrices can only contain real numbers, got " + V.get(k));
+			builder.add((int) ((MReal) I.get(k)).getValue(), (int) ((MReal) J.get(k)).getValue(), ((MReal) V.get(k)).getValue());
+		}
+		return builder.build();
+	}
+
+	@Override
+	public Shape shape(Shape... shapes) {
+		return null;
+	}
+}
@@ -0,0 +1,299 @@
+package com.github.juupje.calculator.algorithms.linalg;
+
+import java.util.Arrays;
+
+import com.github.juupje.calculator.helpers.exceptions.InvalidOperationException;
+
+/**
+ * Calculates the eigenvalues and (optionally) the eigenvectors of a real symmetric matrix.
+ * <p>
+ * The matrix is first reduced to a similar tridiagonal matrix <tt>T=Q<sup>T</sup>AQ</tt> using Householder reflections.
+ * Only the upper triangle is used and updated, row by row. The eigenvalues of <tt>T</tt> are then found using the
+ * implicit QL algorithm with Wilkinson shifts. If the eigenvectors are needed, the Givens rotations of every QL step are
+ * applied to <tt>Q<sup>T</sup></tt>, which is stored as separate rows such that every eigenvector occupies a single array
+ * (which allows the JIT compiler to vectorize the rotations).
+ * </p>
+ * The reduction takes <tt>4n<sup>3</sup>/3</tt> operations. Without eigenvectors, the QL algorithm only takes
+ * <tt>O(n<sup>2</sup>)</tt> operations.
+ * @author Joep Geuskens
+ */
+public class SymmetricEigenSolver {
+
+	/**
+	 * The maximum amount of QL iterations per eigenvalue.
+	 */
+	private static final int MAX_ITERATIONS = 50;
+	/**
+	 * The amount of Householder reflections which are accumulated at once.
+	 */
+	static final int BLOCK_SIZE = 64;
+
+	final int n;
+	final double[] d;
+	double[][] vt;
+
+	/**
+	 * Calculates the eigenvalues (and eigenvectors if <tt>vectors</tt> is set) of the symmetric (n x n)-matrix with
+	 * the given values. Only the upper triangle is used.
+	 * @param a the values of the matrix in row-major order, this array is not modified.
+	 * @throws InvalidOperationException if the QL algorithm did not converge.
+	 */
+	public SymmetricEigenSolver(double[] a, int n, boolean vectors) {
+		this.n = n;
+		d = new double[n];
+		double[] e = new double[n];
+		double[] u = a.clone();
+		double[] beta = tridiagonalize(u, e);
+		if(vectors) {
+			vt = accumulate(u, beta);
+			ql(e, vt);
+		} else
+			ql(e, null);
+	}
+
+	/**
+	 * @return the eigenvalues in ascending order.
+	 */
+	public double[] eigenvalues() {
+		return d;
+	}
+
+	/**
+	 * @return the values of the matrix containing the normalized eigenvectors in its columns (in the same order as the
+	 * eigenvalues), or <tt>null</tt> if they were not calculated.
+	 */
+	public double[] eigenvectors() {
+		if(vt == null)
+			return null;
+		double[] v = new double[n*n];
+		for(int i = 0; i < n; i++)
+			for(int j = 0; j < n; j++)
+				v[j*n+i] = vt[i][j];
+		return v;
+	}
+
+	/**
+	 * Reduces the upper triangle of <tt>a</tt> to a tridiagonal matrix. The diagonal is stored in {@link #d} and the
+	 * off-diagonal in <tt>e</tt> (with <tt>e[i]=T[i,i+1]</tt>). The Householder vector of step <tt>k</tt> is stored in
+	 * row <tt>k</tt> of <tt>a</tt>, right of the diagonal.
+	 * <p>
+	 * The rank-2 update of every step is postponed until the next step, in which every row is updated right before it is
+	 * multiplied with the next Householder vector. This way, the remaining matrix is only read once per step.
+	 * </p>
+	 * @return the factors <tt>beta</tt> of the reflections <tt>I-beta*vv<sup>T</sup></tt>.
+	 */
+	private double[] tridiagonalize(double[] a, double[] e) {
+		DoubleKernels kernels = DoubleKernels.get();
+		double[] beta = new double[n];
+		double[] p = new double[n], w = new double[n];
+		boolean pending = false;
+		for(int k = 0; k < n-2; k++) {
+			int row = k*n+k+1;
+			int m = n-k-1;
+			if(pending)
+				update(kernels, a, w, k-1, k);
+			d[k] = a[k*n+k];
+			double sigma = kernels.sumOfSquares(a, row+1, m-1);
+			double x0 = a[row];
+			if(sigma == 0) {
+				//this column is already reduced
+				if(pending)
+					for(int i = k+1; i < n; i++)
+						update(kernels, a, w, k-1, i);
+				pending = false;
+				e[k] = x0;
+				continue;
+			}
+			double alpha = -Math.copySign(Math.sqrt(sigma+x0*x0), x0);
+			a[row] = x0 - alpha;
+			beta[k] = 2/(sigma + a[row]*a[row]);
+			e[k] = alpha;
+			//p=beta*A22*v, using the upper triangle of A22
+			Arrays.fill(p, k+1, n, 0);
+			for(int i = k+1; i < n; i++) {
+				if(pending)
+					update(kernels, a, w, k-1, i);
+				double vi = a[k*n+i];
+				int ri = i*n+i;
+				p[i] += kernels.dot(a, ri, a, k*n+i, n-i);
+				kernels.axpy(vi, a, ri+1, p, i+1, n-i-1);
+			}
+			kernels.scale(beta[k], p, k+1, m);
+			//w=p-(beta/2)(p.v)v
+			double K = 0.5*beta[k]*kernels.dot(p, k+1, a, row, m);
+			kernels.axpy(-K, a, row, p, k+1, m);
+			//A22-=vw^T+wv^T is done in the next step
+			double[] temp = w;
+			w = p;
+			p = temp;
+			pending = true;
+		}
+		if(pending)
+			for(int i = n-2; i < n; i++)
+				update(kernels, a, w, n-3, i);
+		if(n > 1) {
+			d[n-2] = a[(n-2)*n+n-2];
+			e[n-2] = a[(n-2)*n+n-1];
+		}
+		d[n-1] = a[n*n-1];
+		e[n-1] = 0;
+		return beta;
+	}
+
+	/**
+	 * Applies the rank-2 update <tt>A22-=vw<sup>T</sup>+wv<sup>T</sup></tt> of step <tt>k</tt> of the reduction to the
+	 * upper triangle of row <tt>i</tt>.
+	 */
+	private void update(DoubleKernels kernels, double[] a, double[] w, int k, int i) {
+		int ri = i*n+i;
+		kernels.axpy(-a[k*n+i], w, i, a, ri, n-i);
+		kernels.axpy(-w[i], a, k*n+i, a, ri, n-i);
+	}
+
+	/**
+	 * Calculates <tt>Q<sup>T</sup></tt>, where <tt>Q=H<sub>0</sub>H<sub>1</sub>...H<sub>n-3</sub></tt> is the product of
+	 * the Householder reflections stored in <tt>a</tt> by {@link #tridiagonalize(double[], double[])}.
+	 * <p>
+	 * The reflections are applied {@link #BLOCK_SIZE} at a time, starting with the last ones. The product of a block of
+	 * reflections <tt>H<sub>k</sub>...H<sub>k+b-1</sub></tt> equals <tt>I-VTV<sup>T</sup></tt>, in which <tt>V</tt>
+	 * contains the Householder vectors in its columns and <tt>T</tt> is upper triangular. This allows the block to be
+	 * applied using two matrix products.
+	 * </p>
+	 */
+	private double[][] accumulate(double[] a, double[] beta) {
+		DoubleKernels kernels = DoubleKernels.get();
+		double[] q = new double[n*n];
+		for(int i = 0; i < n; i++)
+			q[i*n+i] = 1;
+		//every reflection H_k only affects rows and columns k+1 to n-1
+		for(int k1 = n-2; k1 > 0; k1 -= BLOCK_SIZE) {
+			int k0 = Math.max(0, k1-BLOCK_SIZE);
+			int nb = k1-k0, r = k0+1, m = n-r;
+			//the rows of V^T and the columns of V
+			double[] vt = new double[nb*m], v = new double[m*nb];
+			for(int j = 0; j < nb; j++) {
+				int k = k0+j;
+				if(beta[k] == 0)
+					continue;
+				System.arraycopy(a, k*n+k+1, vt, j*m+k+1-r, n-k-1);
+				for(int i = k+1-r; i < m; i++)
+					v[i*nb+j] = vt[j*m+i];
+			}
+			//T[j,j]=beta_j and T[0:j,j]=-beta_j*T[0:j,0:j]*V[:,0:j]^T*v_j
+			double[] t = new double[nb*nb], z = new double[nb];
+			for(int j = 0; j < nb; j++) {
+				for(int i = 0; i < j; i++)
+					z[i] = kernels.dot(vt, i*m, vt, j*m, m);
+				for(int i = 0; i < j; i++)
+					t[i*nb+j] = -beta[k0+j]*kernels.dot(t, i*nb+i, z, i, j-i);
+				t[j*nb+j] = beta[k0+j];
+			}
+			//Q-=V*(T*(V^T*Q)), restricted to the rows and columns r to n-1
+			double[] qsub = new double[m*m];
+			for(int i = 0; i < m; i++)
+				System.arraycopy(q, (r+i)*n+r, qsub, i*m, m);
+			double[] w = MatrixMultiplication.multiply(vt, qsub, nb, m, m);
+			double[] tw = MatrixMultiplication.multiply(t, w, nb, nb, m);
+			for(int i = 0; i < v.length; i++)
+				v[i] = -v[i];
+			MatrixMultiplication.multiplyAdd(v, tw, q, r*n+r, n, m, nb, m);
+		}
+		double[][] qt = new double[n][n];
+		for(int i = 0; i < n; i++)
+			for(int j = 0; j < n; j++)
+				qt[j][i] = q[i*n+j];
+		return qt;
+	}
+
+	/**
+	 * Diagonalizes the symmetric tridiagonal matrix with diagonal {@link #d} and off-diagonal <tt>e</tt> using the
+	 * implicit QL algorithm, after which the eigenvalues are sorted. If <tt>vt</tt> is not <tt>null</tt>, the rotations
+	 * are applied to its rows.
+	 */
+	private void ql(double[] e, double[][] vt) {
+		double f = 0, tst1 = 0;
+		double eps = Math.ulp(1.0);
+		for(int l = 0; l < n; l++) {
+			tst1 = Math.max(tst1, Math.abs(d[l]) + Math.abs(e[l]));
+			int m = l;
+			while(m < n-1 && Math.abs(e[m]) > eps*tst1)
+				m++;
+			if(m > l) {
+				int iter = 0;
+				do {
+					if(++iter > MAX_ITERATIONS)
+						throw new InvalidOperationException("Eigenvalue algorithm did not converge within " + MAX_ITERATIONS + " iterations.");
+					//the Wilkinson shift
+					double g = d[l];
+					double p = (d[l+1]-g)/(2*e[l]);
+					double r = Math.copySign(Math.hypot(p, 1), p);
+					d[l] = e[l]/(p+r);
+					d[l+1] = e[l]*(p+r);
+					double dl1 = d[l+1];
+					double h = g-d[l];
+					for(int i = l+2; i < n; i++)
+						d[i] -= h;
+					f += h;
+					//implicit QL step
+					p = d[m];
+					double c = 1, c2 = 1, c3 = 1, s = 0, s2 = 0;
+					double el1 = e[l+1];
+					for(int i = m-1; i >= l; i--) {
+						c3 = c2;
+						c2 = c;
+						s2 = s;
+						g = c*e[i];
+						h = c*p;
+						r = Math.hypot(p, e[i]);
+						e[i+1] = s*r;
+						s = e[i]/r;
+						c = p/r;
+						p = c*d[i] - s*g;
+						d[i+1] = h + s*(c*g + s*d[i]);
+						if(vt != null)
+							rotate(vt[i], vt[i+1], c, s);
+					}
+					p = -s*s2*c3*el1*e[l]/dl1;
+					e[l] = s*p;
+					d[l] = c*p;
+				} while(Math.abs(e[l]) > eps*tst1);
+			}
+			d[l] += f;
+			e[l] = 0;
+		}
+		sort(vt);
+	}
+
+	/**
+	 * Applies a Givens rotation to the rows <tt>x</tt> and <tt>y</tt>.
+	 */
+	private void rotate(double[] x, double[] y, double c, double s) {
+		for(int k = 0; k < n; k++) {
+			double h = y[k];
+			y[k] = s*x[k] + c*h;
+			x[k] = c*x[k] - s*h;
+		}
+	}
+
+	/**
+	 * Sorts the eigenvalues in ascending order, together with the rows of <tt>vt</tt> (if it is not <tt>null</tt>).
+	 */
+	private void sort(double[][] vt) {
+		for(int i = 0; i < n-1; i++) {
+			int k = i;
+			for(int j = i+1; j < n; j++)
+				if(d[j] < d[k])
+					k = j;
+			if(k != i) {
+				double temp = d[k];
+				d[k] = d[i];
+				d[i] = temp;
+				if(vt != null) {
+					double[] row = vt[k];
+					vt[k] = vt[i];
+					vt[i] = row;
+				}
+			}
+		}
+	}
+}
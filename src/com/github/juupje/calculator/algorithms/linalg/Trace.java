@@ -4,6 +4,8 @@ import com.github.juupje.calculator.algorithms.Algorithm;
 import com.github.juupje.calculator.helpers.Tools;
 import com.github.juupje.calculator.main.Operator;
 import com.github.juupje.calculator.mathobjects.MMatrix;
+import com.github.juupje.calculator.mathobjects.MReal;
+import com.github.juupje.calculator.mathobjects.MSparseMatrix;
 import com.github.juupje.calculator.mathobjects.MathObject;
 import com.github.juupje.calculator.mathobjects.Shape;
 
@@ -26,6 +28,11 @@ public class Trace extends Algorithm {
 
 	@Override
 	protected MathObject execute(MathObject... args) {
+		if(args.length == 1 && args[0] instanceof MSparseMatrix) {
+			if(!((MSparseMatrix) args[0]).isSquare())
+				throw new IllegalArgumentException("Trace is only defined for square matrices.");
+			return new MReal(((MSparseMatrix) args[0]).trace());
+		}
 		prepare(args);
 		return execute();
 	}
@@ -1,9 +1,12 @@
 package com.github.juupje.calculator.commands;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
 
+import com.github.juupje.calculator.algorithms.algebra.einsum.EinSumCache;
+import com.github.juupje.calculator.algorithms.linalg.FactorizationCache;
 import com.github.juupje.calculator.algorithms.linalg.MatrixToolkit;
 import com.github.juupje.calculator.helpers.Helper;
 import com.github.juupje.calculator.helpers.Timer;
@@ -14,6 +17,7 @@ import com.github.juupje.calculator.helpers.exceptions.PluginException;
 import com.github.juupje.calculator.helpers.exceptions.ShapeException;
 import com.github.juupje.calculator.helpers.exceptions.TreeException;
 import com.github.juupje.calculator.helpers.exceptions.UnexpectedCharacterException;
+import com.github.juupje.calculator.helpers.io.MatrixMarket;
 import com.github.juupje.calculator.main.Calculator;
 import com.github.juupje.calculator.main.Interpreter;
 import com.github.juupje.calculator.main.Parser;
@@ -26,7 +30,19 @@ import com.github.juupje.calculator.settings.Settings;
 
 public enum Commands {
 	
-	DEL(new Command() {
+	CACHE(new Command() {
+		@Override
+		public void process(String args) {
+			if(args == null || args.trim().length()==0) {
+				Calculator.ioHandler.out(FactorizationCache.stats());
+				Calculator.ioHandler.out(EinSumCache.stats());
+			} else if(args.trim().equals("clear")) {
+				FactorizationCache.clear();
+				EinSumCache.clear();
+			} else
+				Calculator.ioHandler.err("cache expected no arguments or 'clear', got " + args);
+		}
+	}), DEL(new Command() {
 		@Override
 		public void process(String args) {
 			DELETE.process(args);
@@ -72,6 +88,20 @@ public enum Commands {
 		public void process(String args) {
 			Helper.printList(args);
 		}
+	}), MMREAD(new Command() {
+		@Override
+		public void process(String args) {
+			String[] params = Parser.getArguments(args);
+			if(params.length != 2) {
+				Calculator.ioHandler.err("mmread expected 2 arguments, got " + params.length);
+				return;
+			}
+			try {
+				Variables.set(params[0].trim(), MatrixMarket.read(new File(Calculator.ioHandler.getDefaultPath() + params[1].trim())));
+			} catch (IOException e) {
+				Calculator.errorHandler.handle("Failed to read file", e);
+			}
+		}
 	}), PRINT(new Command() {
 		@Override
 		public void process(String args) {
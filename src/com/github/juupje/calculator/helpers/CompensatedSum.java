@@ -0,0 +1,41 @@
+package com.github.juupje.calculator.helpers;
+
+/**
+ * Sums doubles using Neumaier's variant of Kahan summation. The rounding error of every addition is kept
+ * in a separate compensation term, such that the error of the total does not grow with the amount of terms.
+ * @author Joep Geuskens
+ */
+public class CompensatedSum {
+
+	private double sum = 0;
+	private double compensation = 0;
+
+	public CompensatedSum add(double d) {
+		double t = sum + d;
+		if (Math.abs(sum) >= Math.abs(d))
+			compensation += (sum - t) + d;
+		else
+			compensation += (d - t) + sum;
+		sum = t;
+		return this;
+	}
+
+	public CompensatedSum add(CompensatedSum other) {
+		add(other.sum);
+		return add(other.compensation);
+	}
+
+	public double get() {
+		return sum + compensation;
+	}
+
+	/**
+	 * @return the compensated sum of the given values, added in order.
+	 */
+	public static double sum(double[] values) {
+		CompensatedSum s = new CompensatedSum();
+		for (double d : values)
+			s.add(d);
+		return s.get();
+	}
+}
@@ -0,0 +1,82 @@
+package com.github.juupje.calculator.helpers.io;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+
+import com.github.juupje.calculator.mathobjects.MSparseMatrix;
+
+/**
+ * Reads sparse matrices from files in the Matrix Market coordinate format. Such a file starts with the header
+ * <pre>%%MatrixMarket matrix coordinate &lt;field&gt; &lt;symmetry&gt;</pre>
+ * followed by comment lines starting with <tt>%</tt>, a line containing the amount of rows, columns and non-zero elements,
+ * and a line <tt>i j value</tt> for every element, where the (1-based) indices <tt>i</tt> and <tt>j</tt> are the row
+ * and column of the element. The field can be <tt>real</tt>, <tt>integer</tt> or <tt>pattern</tt> (in which case the value
+ * is omitted and taken to be 1), the symmetry can be <tt>general</tt>, <tt>symmetric</tt> or <tt>skew-symmetric</tt>
+ * (in which case only the lower triangle is stored).
+ */
+public class MatrixMarket {
+
+	private MatrixMarket() {}
+
+	/**
+	 * Reads the sparse matrix in the given file.
+	 * @throws IOException if the file could not be read.
+	 * @throws IllegalArgumentException if the file is not a Matrix Market file in the (supported) coordinate format.
+	 */
+	public static MSparseMatrix read(File file) throws IOException {
+		try(BufferedReader br = new BufferedReader(new FileReader(file))) {
+			String line = br.readLine();
+			if(line == null || !line.startsWith("%%MatrixMarket"))
+				throw new IllegalArgumentException(file.getName() + " is not a Matrix Market file.");
+			String[] header = line.trim().toLowerCase().split("\\s+");
+			if(header.length < 5 || !header[1].equals("matrix") || !header[2].equals("coordinate"))
+				throw new IllegalArgumentException("Only Matrix Market files in coordinate format are supported, got '" + line + "'");
+			boolean pattern = header[3].equals("pattern");
+			if(!pattern && !header[3].equals("real") && !header[3].equals("integer"))
+				throw new IllegalArgumentException("Sparse matrices can only contain real numbers, got field '" + header[3] + "'");
+			int symmetry;
+			switch(header[4]) {
+			case "general":
+				symmetry = 0;
+				break;
+			case "symmetric":
+				symmetry = 1;
+				break;
+			case "skew-symmetric":
+				symmetry = -1;
+				break;
+			default:
+				throw new IllegalArgumentException("Unsupported symmetry '" + header[4] + "'");
+			}
+			do {
+				line = br.readLine();
+			} while(line != null && (line.startsWith("%") || line.trim().isEmpty()));
+			if(line == null)
+				throw new IllegalArgumentException("Missing size line in " + file.getName());
+			String[] size = line.trim().split("\\s+");
+			int rows = Integer.parseInt(size[0]);
+			int cols = Integer.parseInt(size[1]);
+			int nnz = Integer.parseInt(size[2]);
+			MSparseMatrix.Builder builder = new MSparseMatrix.Builder(rows, cols);
+			for(int k = 0; k < nnz; k++) {
+				do {
+					line = br.readLine();
+				} while(line != null && (line.startsWith("%") || line.trim().isEmpty()));
+				if(line == null)
+					throw new IllegalArgumentException("Expected " + nnz + " elements in " + file.getName() + ", got " + k);
+				String[] entry = line.trim().split("\\s+");
+				int i = Integer.parseInt(entry[0])-1;
+				int j = Integer.parseInt(entry[1])-1;
+				double d = pattern ? 1 : Double.parseDouble(entry[2]);
+				builder.add(i, j, d);
+				if(symmetry != 0 && i != j)
+					builder.add(j, i, symmetry*d);
+			}
+			return builder.build();
+		} catch(NumberFormatException | ArrayIndexOutOfBoundsException e) {
+			throw new IllegalArgumentException("Could not parse " + file.getName() + ": " + e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,36 @@
+package com.github.juupje.calculator.main;
+
+import com.github.juupje.calculator.helpers.exceptions.UndefinedException;
+import com.github.juupje.calculator.mathobjects.MathObject;
+
+/**
+ * A {@link Variable} which is bound to the {@link VariableHolder} of its name.
+ * Looking up the value of a bound variable does not require a search in {@link Variables}.
+ * @author Joep Geuskens
+ */
+public class BoundVariable extends Variable {
+	
+	private final VariableHolder holder;
+	
+	public BoundVariable(String name) {
+		super(name);
+		holder = Variables.holder(name);
+	}
+	
+	public VariableHolder getHolder() {
+		return holder;
+	}
+	
+	@Override
+	public MathObject get() {
+		return holder.get();
+	}
+	
+	@Override
+	public MathObject evaluate() {
+		MathObject mo = holder.get();
+		if(mo == null)
+			throw new UndefinedException("Variable with name " + name + " is not defined.");
+		return mo.evaluate();
+	}
+}
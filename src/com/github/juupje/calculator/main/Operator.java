@@ -20,6 +20,7 @@ import com.github.juupje.calculator.mathobjects.MMatrix;
 import com.github.juupje.calculator.mathobjects.MReal;
 import com.github.juupje.calculator.mathobjects.MScalar;
 import com.github.juupje.calculator.mathobjects.MSequence;
+import com.github.juupje.calculator.mathobjects.MSparseMatrix;
 import com.github.juupje.calculator.mathobjects.MVector;
 import com.github.juupje.calculator.mathobjects.MathObject;
 import com.github.juupje.calculator.mathobjects.Shape;
@@ -73,6 +74,17 @@ public enum Operator {
 			} else if (a instanceof MMatrix) {
 				if (b[0] instanceof MMatrix)
 					return ((MMatrix) a.copy()).add((MMatrix) b[0]);
+				else if (b[0] instanceof MSparseMatrix)
+					return ((MSparseMatrix) b[0]).add((MMatrix) a);
+				else
+					throw new InvalidOperationException(
+							"Only other matrices can be added to matrices. You're trying to add " + Tools.type(b[0])
+									+ " to a matrix.");
+			} else if (a instanceof MSparseMatrix) {
+				if (b[0] instanceof MSparseMatrix)
+					return ((MSparseMatrix) a).add((MSparseMatrix) b[0]);
+				else if (b[0] instanceof MMatrix)
+					return ((MSparseMatrix) a).add((MMatrix) b[0]);
 				else
 					throw new InvalidOperationException(
 							"Only other matrices can be added to matrices. You're trying to add " + Tools.type(b[0])
@@ -117,6 +129,17 @@ public enum Operator {
 			} else if (a instanceof MMatrix) {
 				if (b[0] instanceof MMatrix)
 					return ((MMatrix) a.copy()).subtract((MMatrix) b[0]);
+				else if (b[0] instanceof MSparseMatrix)
+					return ((MSparseMatrix) b[0].copy().negate()).add((MMatrix) a);
+				else
+					throw new InvalidOperationException(
+							"Only other matrices can be subtracted off matrices. You're trying to subtract "
+									+ Tools.type(b[0]) + " off a matrix.");
+			} else if (a instanceof MSparseMatrix) {
+				if (b[0] instanceof MSparseMatrix)
+					return ((MSparseMatrix) a).subtract((MSparseMatrix) b[0]);
+				else if (b[0] instanceof MMatrix)
+					return ((MSparseMatrix) a).add((MMatrix) b[0].copy().negate());
 				else
 					throw new InvalidOperationException(
 							"Only other matrices can be subtracted off matrices. You're trying to subtract "
@@ -157,11 +180,22 @@ public enum Operator {
 																// change either of the MVectors.
 				if (b[0] instanceof MMatrix)
 					return ((MMatrix) b[0].copy()).multiplyRight((MVector) a);
+				if (b[0] instanceof MSparseMatrix)
+					return ((MSparseMatrix) b[0]).multiplyRight((MVector) a);
 			} else if (a instanceof MMatrix) {
 				if (b[0] instanceof MVector)
 					return ((MMatrix) a).multiplyLeft((MVector) b[0]);
 				if (b[0] instanceof MMatrix)
 					return ((MMatrix) a).multiplyLeft((MMatrix) b[0]);
+				if (b[0] instanceof MSparseMatrix)
+					return ((MSparseMatrix) b[0]).multiplyRight((MMatrix) a);
+			} else if (a instanceof MSparseMatrix) {
+				if (b[0] instanceof MVector)
+					return ((MSparseMatrix) a).multiply((MVector) b[0]);
+				if (b[0] instanceof MMatrix)
+					return ((MSparseMatrix) a).multiply((MMatrix) b[0]);
+				if (b[0] instanceof MSparseMatrix)
+					return ((MSparseMatrix) a).multiply((MSparseMatrix) b[0]);
 			}
 			throw new InvalidOperationException(
 					"MULTIPLY operator is not defined for " + Tools.type(a) + " and " + Tools.type(b[0]));
@@ -237,7 +271,7 @@ public enum Operator {
 			} else if (a instanceof MMatrix) {
 				if (b[0] instanceof MReal) {
 					if (((MReal) b[0]).getValue() == -1)
-						return ((MMatrix) a.copy()).invert();
+						return ((MMatrix) a).inverse();
 					else if(((MReal) b[0]).isInteger())
 						return ((MMatrix) a).pow((int) ((MReal) b[0]).getValue());
 					else
@@ -286,6 +320,8 @@ public enum Operator {
 		public MathObject evaluate(MathObject a, MathObject... b) {
 			if (b.length != 0)
 				throw new IllegalArgumentException("You can only invert exactly one MathObject, got " + (1 + b.length));
+			if (a instanceof MMatrix)
+				return ((MMatrix) a).inverse();
 			return a.copy().invert();
 		}
 		
@@ -322,6 +358,8 @@ public enum Operator {
 				return ((MMatrix) a.copy()).transpose();
 			else if(a instanceof MVector)
 				return ((MVector) a.copy()).transpose();
+			else if(a instanceof MSparseMatrix)
+				return ((MSparseMatrix) a).transpose();
 			else if(a instanceof MExpression || b[0] instanceof MExpression)
 				return applyOnExpression(a, null, this);
 			throw new InvalidOperationException("Can't transpose object " + Tools.type(a));
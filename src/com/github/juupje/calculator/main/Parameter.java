@@ -0,0 +1,23 @@
+package com.github.juupje.calculator.main;
+
+/**
+ * A {@link Variable} which refers to a parameter of a function.
+ * Instead of being looked up by name, the value of the parameter is found at the given index in the arguments of the function.
+ * @author Joep Geuskens
+ */
+public class Parameter extends Variable {
+	
+	private final int index;
+	
+	public Parameter(String name, int index) {
+		super(name);
+		this.index = index;
+	}
+	
+	/**
+	 * @return the index of the parameter in the declaration of the function.
+	 */
+	public int getIndex() {
+		return index;
+	}
+}
@@ -0,0 +1,53 @@
+package com.github.juupje.calculator.main;
+
+import com.github.juupje.calculator.mathobjects.MathObject;
+
+/**
+ * A stable reference to the value stored in {@link Variables} under a certain name.
+ * There is exactly one holder for every name (see {@link Variables#holder(String)}), which is updated whenever
+ * that variable is set or removed. This allows expressions to look up the value of a variable without
+ * searching the map of variables every time.
+ * <br/>
+ * Every change of the value increases the version of the holder, which can be used to check whether
+ * anything computed from the value is outdated.
+ * @author Joep Geuskens
+ */
+public final class VariableHolder {
+	
+	private final String name;
+	private volatile MathObject value;
+	private volatile int version = 0;
+	
+	VariableHolder(String name, MathObject value) {
+		this.name = name;
+		this.value = value;
+	}
+	
+	void set(MathObject value) {
+		this.value = value;
+		version++;
+	}
+	
+	/**
+	 * @return the current value of the variable, or <tt>null</tt> if it is not defined.
+	 */
+	public MathObject get() {
+		return value;
+	}
+	
+	/**
+	 * @return the amount of times the value of this variable has been changed.
+	 */
+	public int getVersion() {
+		return version;
+	}
+	
+	public String getName() {
+		return name;
+	}
+	
+	@Override
+	public String toString() {
+		return name;
+	}
+}
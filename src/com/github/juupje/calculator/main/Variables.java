@@ -5,10 +5,12 @@ import java.util.HashMap;
 import com.github.juupje.calculator.helpers.exceptions.CircularDefinitionException;
 import com.github.juupje.calculator.helpers.exceptions.IndexException;
 import com.github.juupje.calculator.mathobjects.MExpression;
+import com.github.juupje.calculator.mathobjects.MFunction;
 import com.github.juupje.calculator.mathobjects.MSequence;
 import com.github.juupje.calculator.mathobjects.MathObject;
 public final class Variables {
 	private static HashMap<String, MathObject> vars = new HashMap<String, MathObject>();
+	private static HashMap<String, VariableHolder> holders = new HashMap<String, VariableHolder>();
 	private static ArrayList<MathObject> ans = new ArrayList<>();
 	
 	/**
@@ -21,6 +23,28 @@ public final class Variables {
 		return vars.get(key);
 	}
 	
+	/**
+	 * Returns the {@link VariableHolder} for the given name, creating it if it doesn't exist yet.
+	 * The holder is kept up-to-date with the value stored under that name, even if that variable
+	 * is removed and later defined again.
+	 * @param key the name of the variable
+	 * @return the holder of the variable with the given name.
+	 */
+	public static VariableHolder holder(String key) {
+		VariableHolder holder = holders.get(key);
+		if(holder == null) {
+			holder = new VariableHolder(key, vars.get(key));
+			holders.put(key, holder);
+		}
+		return holder;
+	}
+	
+	private static void updateHolder(String key, MathObject value) {
+		VariableHolder holder = holders.get(key);
+		if(holder != null)
+			holder.set(value);
+	}
+	
 	/**
 	 * Stores a variable with name {@code key} and value {@code value} as a key-value pair.
 	 * Additionally, if the value is an expression or sequence, a check is made to see if this
@@ -56,7 +80,8 @@ public final class Variables {
 			}
 		}
 		//Save te variable to the map
-		vars.put(key, value);
+		release(vars.put(key, value), value);
+		updateHolder(key, value);
 		//Call the change listeners of the objects which depend on this variable
 		Calculator.dependencyGraph.onValueChanged(new Variable(key));
 	}
@@ -66,7 +91,20 @@ public final class Variables {
 	}
 
 	public static void remove(String string) {
-		vars.remove(string);
+		release(vars.remove(string), null);
+		updateHolder(string, null);
+	}
+	
+	/**
+	 * Releases the compiled code of the function that was stored under a name which is
+	 * now redefined or deleted.
+	 * @param old the previous value
+	 * @param value the new value
+	 * @see MFunction#release()
+	 */
+	private static void release(MathObject old, MathObject value) {
+		if(old instanceof MFunction && old != value)
+			((MFunction) old).release();
 	}
 	
 	/**
@@ -74,7 +112,11 @@ public final class Variables {
 	 * Should only be called from {@link Calculator#reset()}.
 	 */
 	public static void reset() {
+		for(MathObject mo : vars.values())
+			release(mo, null);
 		vars.clear();
+		for(VariableHolder holder : holders.values())
+			holder.set(null);
 		ans.clear();
 	}
 	
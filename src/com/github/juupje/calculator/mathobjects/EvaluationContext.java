@@ -0,0 +1,95 @@
+package com.github.juupje.calculator.mathobjects;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * Holds the values of the arguments for a single evaluation of an {@link MFunction} (or {@link MVectorFunction}).
+ * Functions do not store their arguments themselves, but read them from the context that is passed along during
+ * the evaluation of their tree. This means that the same function can be evaluated recursively and from several
+ * threads at the same time.
+ * <p>
+ * Contexts are taken from a pool which is kept per thread, so evaluating a function does not need to create a new context
+ * every time. A context obtained by {@link #acquire(int)} should be given back using {@link #release()} once the evaluation
+ * is done, after which it should no longer be used.
+ * </p>
+ * @author Joep Geuskens
+ */
+public final class EvaluationContext {
+
+	/**
+	 * The maximum amount of unused contexts kept per thread.
+	 */
+	private static final int POOL_SIZE = 32;
+	private static final ThreadLocal<ArrayDeque<EvaluationContext>> pool = ThreadLocal.withInitial(ArrayDeque::new);
+
+	private MathObject[] args;
+	private int size;
+
+	private EvaluationContext(int size) {
+		args = new MathObject[size];
+		this.size = size;
+	}
+
+	/**
+	 * Returns an empty context which can hold <tt>size</tt> arguments, reusing a released context of the current thread if possible.
+	 * @param size the number of arguments.
+	 * @return a context in which all arguments are <tt>null</tt>.
+	 */
+	public static EvaluationContext acquire(int size) {
+		EvaluationContext ctx = pool.get().poll();
+		if (ctx == null)
+			return new EvaluationContext(size);
+		if (ctx.args.length < size)
+			ctx.args = new MathObject[size];
+		ctx.size = size;
+		return ctx;
+	}
+
+	/**
+	 * Returns a context containing the given arguments.
+	 * @see #acquire(int)
+	 */
+	public static EvaluationContext acquire(MathObject... args) {
+		EvaluationContext ctx = acquire(args.length);
+		System.arraycopy(args, 0, ctx.args, 0, args.length);
+		return ctx;
+	}
+
+	/**
+	 * Clears this context and returns it to the pool of the current thread.
+	 */
+	public void release() {
+		Arrays.fill(args, 0, size, null);
+		size = 0;
+		ArrayDeque<EvaluationContext> contexts = pool.get();
+		if (contexts.size() < POOL_SIZE)
+			contexts.push(this);
+	}
+
+	/**
+	 * @param i the index of the argument.
+	 * @return the value of the i-th argument, or <tt>null</tt> if it has not been set.
+	 */
+	public MathObject get(int i) {
+		if (i < 0 || i >= size)
+			throw new IndexOutOfBoundsException("Argument " + i + " does not exist in a context with " + size + " arguments.");
+		return args[i];
+	}
+
+	/**
+	 * Sets the value of the i-th argument.
+	 */
+	public void set(int i, MathObject value) {
+		if (i < 0 || i >= size)
+			throw new IndexOutOfBoundsException("Argument " + i + " does not exist in a context with " + size + " arguments.");
+		args[i] = value;
+	}
+
+	/**
+	 * @return the number of arguments in this context.
+	 */
+	public int size() {
+		return size;
+	}
+}
@@ -1,23 +1,38 @@
 package com.github.juupje.calculator.mathobjects;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
 
+import com.github.juupje.calculator.algorithms.functions.Function;
 import com.github.juupje.calculator.helpers.Tools;
 import com.github.juupje.calculator.helpers.exceptions.InvalidFunctionException;
 import com.github.juupje.calculator.helpers.exceptions.ShapeException;
 import com.github.juupje.calculator.helpers.exceptions.TreeException;
 import com.github.juupje.calculator.helpers.exceptions.UnexpectedCharacterException;
+import com.github.juupje.calculator.main.BoundVariable;
 import com.github.juupje.calculator.main.Calculator;
 import com.github.juupje.calculator.main.Operator;
+import com.github.juupje.calculator.main.Parameter;
 import com.github.juupje.calculator.main.Parser;
 import com.github.juupje.calculator.main.Variable;
+import com.github.juupje.calculator.main.VariableHolder;
 import com.github.juupje.calculator.main.Variables;
 import com.github.juupje.calculator.printer.TextPrinter;
+import com.github.juupje.calculator.tree.DAGNode;
 import com.github.juupje.calculator.tree.DFSTask;
+import com.github.juupje.calculator.tree.ExpressionDAG;
 import com.github.juupje.calculator.tree.Node;
 import com.github.juupje.calculator.tree.Tree;
 import com.github.juupje.calculator.tree.TreeFunction;
+import com.github.juupje.calculator.settings.Settings;
+import com.github.juupje.calculator.tree.compiler.BytecodeCompiler;
+import com.github.juupje.calculator.tree.compiler.CompiledFunction;
+import com.github.juupje.calculator.tree.compiler.ScalarCompiler;
+import com.github.juupje.calculator.tree.compiler.ScalarProgram;
 
 public class MFunction extends MExpression {
 
@@ -26,15 +41,24 @@ public class MFunction extends MExpression {
 	String[] vars;
 	Shape[] varShapes;
 	boolean defined;
-	HashMap<String, MathObject> paramMap;
+	
+	private Node<?> boundRoot;
+	private VariableHolder[] globals;
+	private int[] globalVersions;
+	
+	private volatile ScalarProgram program;
+	private volatile CompiledFunction compiled;
+	private volatile Node<?> programRoot;
+	private volatile SharedNodes shared;
+	private int calls = 0;
 
 	public MFunction(String vars[], Shape[] varShapes, FunctionTree tr, boolean defined) {
 		super(tr);
 		this.vars = vars;
 		this.defined = defined;
-		paramMap = new HashMap<String, MathObject>(vars.length);
 		for (int i = 0; i < varShapes.length; i++)
 			varShapes[i] = new Shape();
+		bind();
 	}
 
 	public MFunction(String vars[], Shape[] varShapes, Tree tr, boolean defined) {
@@ -43,7 +67,86 @@ public class MFunction extends MExpression {
 		this.defined = defined;
 		this.varShapes = varShapes;
 		tree = new FunctionTree(processTree(tr, defined, vars).getRoot());
-		paramMap = new HashMap<String, MathObject>(vars.length);
+		bind();
+	}
+
+	/**
+	 * Binds the variables in the tree of this function. References to the
+	 * function's parameters are replaced by {@link Parameter}s, which refer to the
+	 * index of the parameter in the argument array. All other variables are
+	 * replaced by {@link BoundVariable}s, which refer to the
+	 * {@link VariableHolder} of that variable. This way, no variable has to be
+	 * looked up by its name during the evaluation of the function.
+	 * <br/>
+	 * The tree is bound again if its root has changed (for example by
+	 * {@link #add(MathObject)}).
+	 */
+	private void bind() {
+		boundRoot = tree.getRoot();
+		ArrayList<VariableHolder> holders = new ArrayList<>();
+		tree.DFS(new DFSTask(false) {
+			@SuppressWarnings("unchecked")
+			@Override
+			public void accept(Node<?> n) {
+				if (!(n.data instanceof Variable))
+					return;
+				String name = ((Variable) n.data).getName();
+				int index = indexOf(name);
+				if (index != -1) {
+					if (!(n.data instanceof Parameter && ((Parameter) n.data).getIndex() == index))
+						((Node<Variable>) n).data = new Parameter(name, index);
+				} else {
+					if (!(n.data instanceof BoundVariable))
+						((Node<Variable>) n).data = new BoundVariable(name);
+					VariableHolder holder = ((BoundVariable) n.data).getHolder();
+					if (!holders.contains(holder))
+						holders.add(holder);
+				}
+			}
+		});
+		globals = holders.toArray(new VariableHolder[holders.size()]);
+		globalVersions = null;
+	}
+
+	private void checkBinding() {
+		if (boundRoot != tree.getRoot())
+			bind();
+	}
+
+	/**
+	 * @return the index of the parameter with the given name, or -1 if this
+	 *         function has no such parameter.
+	 */
+	private int indexOf(String name) {
+		for (int i = 0; i < vars.length; i++)
+			if (vars[i].equals(name))
+				return i;
+		return -1;
+	}
+
+	/**
+	 * Returns the shape of this function. The shape is stored, but will be
+	 * recalculated if one of the (non-parameter) variables on which this function
+	 * depends has changed since.
+	 */
+	@Override
+	public Shape shape() {
+		checkBinding();
+		if (s != null && globalVersions != null) {
+			for (int i = 0; i < globals.length; i++)
+				if (globals[i].getVersion() != globalVersions[i]) {
+					s = null;
+					break;
+				}
+		}
+		if (s == null) {
+			int[] versions = new int[globals.length];
+			for (int i = 0; i < globals.length; i++)
+				versions[i] = globals[i].getVersion();
+			s = tree.getShape(tree.getRoot());
+			globalVersions = versions;
+		}
+		return s;
 	}
 	
 	@Override
@@ -242,22 +345,23 @@ public class MFunction extends MExpression {
 							return;
 					//MathObject obj = ((Variable) n.data).get();
 
-					n.replace(new Node<MathObject>(tree.evaluateNode(n)));//new Node<MathObject>(obj.evaluate()));
+					tree.replace(n, new Node<MathObject>(tree.evaluateNode(n)));//new Node<MathObject>(obj.evaluate()));
 				} else if (n.data instanceof MathObject)
-					n.replace(new Node<MathObject>(tree.evaluateNode(n)));//n.replace(new Node<MathObject>(((MathObject) n.data).evaluate()));
+					tree.replace(n, new Node<MathObject>(tree.evaluateNode(n)));//n.replace(new Node<MathObject>(((MathObject) n.data).evaluate()));
 			}
 		});
 		return tree;
 	}
 
 	/**
-	 * Evaluates the function at the values as given by the arguments. In order to
-	 * evaluate the function, the values for the parameters are temporarily stored
-	 * in {@link Variables} before {@link MFunction#evaluateAt()} is called. After
-	 * the evaluation is complete, the original values for the parameters in
-	 * {@code Variables} are restored (if there was no entry in {@code Variables}
-	 * with the same name as a parameter, the created entry will be removed from
-	 * {@code Variables}. Note that evaluating the tree can change the inputs.
+	 * Evaluates the function at the values as given by the arguments. The values
+	 * are stored in an {@link EvaluationContext} taken from the pool of the current
+	 * thread, after which {@link #evaluateAt(EvaluationContext)} is called.
+	 * <br/>
+	 * If all arguments are real numbers and the tree can be compiled by
+	 * {@link ScalarCompiler}, the compiled program is run instead of the tree.
+	 * Once the function has been called more than <tt>jit_threshold</tt> times,
+	 * that program is compiled to bytecode by {@link BytecodeCompiler}.
 	 * 
 	 * @param paramVals an array of {@link MathObject}s containing the values at
 	 *                  which the function should be evaluated. Note that the order
@@ -268,7 +372,7 @@ public class MFunction extends MExpression {
 	 * @throws TreeException
 	 * @throws IllegalArgumentException if
 	 *                 {@code paramVals.length != vars.length = true}.
-	 * @see #evaluateAt()
+	 * @see #evaluateAt(EvaluationContext)
 	 */
 	public MathObject evaluateAt(MathObject... paramVals) throws TreeException {
 		if (paramVals.length != vars.length)
@@ -278,10 +382,162 @@ public class MFunction extends MExpression {
 			if (!paramVals[i].shape().equals(varShapes[i]))
 				throw new IllegalArgumentException("Shape of argument " + i + " with name " + vars[i]
 						+ " is not compatible with the function definition: expected shape " + varShapes[i] + ".");
-		paramMap.clear();
-		for (int i = 0; i < paramVals.length; i++)
-			paramMap.put(vars[i], paramVals[i]);
-		return evaluateAt();
+		double[] values = toDoubles(paramVals);
+		if (values != null) {
+			CompiledFunction f = getCompiled();
+			if (f != null) {
+				try {
+					return new MReal(f.evaluate(values));
+				} catch (ScalarProgram.Fallback e) {
+					// the program can't handle these values, use the tree instead.
+				}
+			}
+		}
+		EvaluationContext ctx = EvaluationContext.acquire(paramVals);
+		try {
+			return evaluateAt(ctx);
+		} finally {
+			ctx.release();
+		}
+	}
+
+	/**
+	 * Evaluates this function for a batch of (real) argument values at once. If
+	 * the tree can be compiled, the batch is evaluated by
+	 * {@link ScalarProgram#evaluateBatch(double[][], double[])}, which processes
+	 * every instruction once per chunk of points. Points which cannot be handled by
+	 * the compiled program (or all points, if the tree cannot be compiled) are
+	 * evaluated separately using {@link #evaluateAt(MathObject...)}.
+	 * 
+	 * @param args the values of the parameters, <tt>args[i]</tt> contains the
+	 *             values of the i-th parameter of this function.
+	 * @param out  the array in which the results will be stored.
+	 * @throws IllegalArgumentException if the amount of columns does not match the
+	 *                                  amount of parameters, if the columns are
+	 *                                  shorter than <tt>out</tt>, if one of the
+	 *                                  parameters is not a scalar or if the
+	 *                                  function does not evaluate to a real number.
+	 */
+	public void evaluateBatch(double[][] args, double[] out) {
+		if (args.length != vars.length)
+			throw new IllegalArgumentException("Function expected " + vars.length + " arguments, got " + args.length);
+		for (int i = 0; i < args.length; i++) {
+			if (!varShapes[i].isScalar())
+				throw new IllegalArgumentException("Can only evaluate batches of scalar arguments, but argument " + i
+						+ " with name " + vars[i] + " has shape " + varShapes[i]);
+			if (args[i].length < out.length)
+				throw new IllegalArgumentException("Expected " + out.length + " values for argument " + i + " with name "
+						+ vars[i] + ", got " + args[i].length);
+		}
+		ScalarProgram p = getProgram();
+		boolean[] failed = p == null ? null : p.evaluateBatch(args, out);
+		if (p != null && failed == null)
+			return;
+		MathObject[] point = new MathObject[args.length];
+		for (int k = 0; k < out.length; k++) {
+			if (failed != null && !failed[k])
+				continue;
+			for (int i = 0; i < args.length; i++)
+				point[i] = new MReal(args[i][k]);
+			MathObject result = evaluateAt(point);
+			if (!(result instanceof MReal))
+				throw new IllegalArgumentException("Function does not evaluate to a real number at " + Tools.join(", ", (Object[]) point)
+						+ ", got " + Tools.type(result));
+			out[k] = ((MReal) result).getValue();
+		}
+	}
+
+	/**
+	 * Returns the compiled form of this function's tree, compiling it if the tree
+	 * has changed since the last compilation.
+	 * 
+	 * @return the compiled {@link ScalarProgram}, or <tt>null</tt> if the tree
+	 *         cannot be compiled.
+	 */
+	public ScalarProgram getProgram() {
+		checkBinding();
+		Node<?> root = tree.getRoot();
+		if (programRoot != root) {
+			// publish the program before the root, such that other threads never see a new root with an old program.
+			ScalarProgram p = ScalarCompiler.compile(tree, vars);
+			program = p;
+			compiled = null;
+			calls = 0;
+			programRoot = root;
+			return p;
+		}
+		return program;
+	}
+
+	/**
+	 * Returns the fastest available compiled form of this function. Initially,
+	 * this is the {@link ScalarProgram} returned by {@link #getProgram()}. After
+	 * the function has been called more than <tt>jit_threshold</tt> times (see
+	 * {@link Settings#JIT_THRESHOLD}), the program is compiled to bytecode and the
+	 * resulting class is used instead. A negative threshold disables the bytecode
+	 * compilation.<br/>
+	 * The call counter is not synchronized, so when called from several threads at
+	 * once the function might be compiled slightly later (or twice), which is
+	 * harmless.
+	 * 
+	 * @return the compiled function, or <tt>null</tt> if the tree cannot be
+	 *         compiled.
+	 */
+	private CompiledFunction getCompiled() {
+		ScalarProgram p = getProgram();
+		if (p == null || compiled != null)
+			return p == null ? null : compiled;
+		int threshold = Settings.getInt(Settings.JIT_THRESHOLD);
+		if (threshold < 0 || ++calls <= threshold)
+			return p;
+		compiled = BytecodeCompiler.compile(p);
+		if (compiled == null)
+			compiled = p;
+		return compiled;
+	}
+
+	/**
+	 * Discards the compiled forms of this function, such that the generated
+	 * classes can be unloaded. This is called when the variable holding this
+	 * function is redefined or deleted. If the function is evaluated again
+	 * afterwards, it will simply be recompiled.
+	 */
+	public void release() {
+		program = null;
+		compiled = null;
+		programRoot = null;
+		shared = null;
+		calls = 0;
+	}
+
+	/**
+	 * Returns the subtrees of this function's tree which occur more than once (like <tt>sin(x)</tt> in
+	 * <tt>sin(x)^2+sin(x)*cos(x)</tt>), finding them again if the tree has changed.
+	 * 
+	 * @see ExpressionDAG
+	 */
+	private SharedNodes getShared() {
+		Node<?> root = tree.getRoot();
+		SharedNodes s = shared;
+		if (s == null || s.root != root) {
+			s = new SharedNodes(root);
+			shared = s;
+		}
+		return s;
+	}
+
+	/**
+	 * @return the values of the arguments if they are all real numbers (and not
+	 *         fractions or numbers with an error), <tt>null</tt> otherwise.
+	 */
+	private static double[] toDoubles(MathObject[] paramVals) {
+		double[] values = new double[paramVals.length];
+		for (int i = 0; i < paramVals.length; i++) {
+			if (paramVals[i].getClass() != MReal.class)
+				return null;
+			values[i] = ((MReal) paramVals[i]).getValue();
+		}
+		return values;
 	}
 
 	/**
@@ -307,31 +563,66 @@ public class MFunction extends MExpression {
 		return evaluateAt(Parser.getArgumentsAsMathObject(s));
 	}
 
-	private MathObject evaluateAt(HashMap<String, MathObject> map) throws TreeException {
-		setParamMap(map);
-		return evaluateAt();
+	/**
+	 * Evaluates the function at the values stored under the names of its parameters
+	 * in the given map. Parameters which are not in the map are looked up in
+	 * {@link Variables}.
+	 */
+	public MathObject evaluateAt(HashMap<String, MathObject> map) throws TreeException {
+		EvaluationContext ctx = EvaluationContext.acquire(vars.length);
+		for (int i = 0; i < vars.length; i++)
+			ctx.set(i, map.get(vars[i]));
+		try {
+			return evaluateAt(ctx);
+		} finally {
+			ctx.release();
+		}
 	}
 
 	/**
-	 * Evaluates the {@link Tree} defined by this {@code MFunction}.
-	 * Note that the parameters map needs to be set before calling this method.
-	 * In nearly all cases, {@link #evaluateAt(MathObject...)} or {@link #evaluateAt(HashMap)} is what you'd want to use.
+	 * Evaluates the {@link Tree} defined by this {@code MFunction}, reading the
+	 * values of the parameters from the given context. Parameters whose value in
+	 * the context is <tt>null</tt> are looked up in {@link Variables}.
+	 * <br/>
+	 * The function itself is not changed by the evaluation, so it can be evaluated
+	 * from several threads at once, as long as every call uses its own context. In
+	 * nearly all cases, {@link #evaluateAt(MathObject...)} is what you'd want to
+	 * use.
+	 * <br/>
+	 * Subtrees which occur more than once in the tree are evaluated only once per
+	 * call, after which their value is reused.
 	 * 
+	 * @param ctx the context containing the values of the parameters, in the order
+	 *            of the function's declaration.
 	 * @return A {@link MathObject} containing the result of the evaluation.
 	 * @throws TreeException as thrown by {@link Tree#evaluateTree()}
-	 * @see Tree#evaluateTree()
+	 * @throws IllegalArgumentException if the size of the context is not equal to
+	 *                                  the number of parameters.
 	 */
-	public MathObject evaluateAt() throws TreeException {
-		return ((FunctionTree) tree).evaluateTree();
+	public MathObject evaluateAt(EvaluationContext ctx) throws TreeException {
+		if (ctx.size() != vars.length)
+			throw new IllegalArgumentException("Function expected " + vars.length + " arguments, got " + ctx.size());
+		checkBinding();
+		return ((FunctionTree) tree).evaluateNode(tree.getRoot(), ctx, getShared().memo());
 	}
 
-	public void putVariable(String name, MathObject mo) {
-		paramMap.put(name, mo);
-	}
-
-	public void setParamMap(HashMap<String, MathObject> map) {
-		paramMap.clear();
-		paramMap.putAll(map);
+	/**
+	 * Creates a context for a function with the given parameters, containing the
+	 * values of the parameters with the same name in <tt>ctx</tt>. This is used to
+	 * evaluate functions which are embedded in the tree of this function and
+	 * therefore take their arguments from this function. If the parameters are
+	 * the same, <tt>ctx</tt> itself is returned.
+	 */
+	private EvaluationContext forward(EvaluationContext ctx, String[] params) {
+		if (params == vars || Arrays.equals(params, vars))
+			return ctx;
+		EvaluationContext forwarded = EvaluationContext.acquire(params.length);
+		for (int i = 0; i < params.length; i++) {
+			int index = indexOf(params[i]);
+			if (index != -1)
+				forwarded.set(i, ctx.get(index));
+		}
+		return forwarded;
 	}
 
 	public boolean isDefined() {
@@ -382,6 +673,58 @@ public class MFunction extends MExpression {
 		return TextPrinter.toText(this);
 	}
 
+	/**
+	 * The nodes of a tree whose subtree also occurs elsewhere in the tree. Every
+	 * such node gets an index, which is the same for all occurrences of the same
+	 * subtree.
+	 */
+	private static class SharedNodes {
+		final Node<?> root;
+		final IdentityHashMap<Node<?>, Integer> ids = new IdentityHashMap<>();
+		final int count;
+
+		SharedNodes(Node<?> root) {
+			this.root = root;
+			IdentityHashMap<Node<?>, DAGNode> nodes = new IdentityHashMap<>();
+			new ExpressionDAG().intern(root, nodes);
+			HashMap<DAGNode, Integer> indices = new HashMap<>();
+			for (Map.Entry<Node<?>, DAGNode> e : nodes.entrySet()) {
+				DAGNode n = e.getValue();
+				if (n.isInternal() && n.getParents() > 1) {
+					Integer index = indices.get(n);
+					if (index == null) {
+						index = indices.size();
+						indices.put(n, index);
+					}
+					ids.put(e.getKey(), index);
+				}
+			}
+			count = indices.size();
+		}
+
+		/**
+		 * @return an empty memo for a single evaluation, or <tt>null</tt> if no
+		 *         subtree is shared.
+		 */
+		Memo memo() {
+			return count == 0 ? null : new Memo(ids, new MathObject[count]);
+		}
+	}
+
+	/**
+	 * The values of the shared subtrees (see {@link SharedNodes}) which have
+	 * already been evaluated during the current evaluation.
+	 */
+	private static class Memo {
+		final IdentityHashMap<Node<?>, Integer> ids;
+		final MathObject[] values;
+
+		Memo(IdentityHashMap<Node<?>, Integer> ids, MathObject[] values) {
+			this.ids = ids;
+			this.values = values;
+		}
+	}
+
 	private class FunctionTree extends Tree {
 
 		public FunctionTree(Node<?> root) {
@@ -396,9 +739,11 @@ public class MFunction extends MExpression {
 		public Shape getShape(Node<?> n) {
 			if (n.data instanceof Variable) {
 				Variable v = (Variable) n.data;
-				for (int i = 0; i < vars.length; i++)
-					if (v.getName().equals(vars[i]))
-						return varShapes[i];
+				if (v instanceof Parameter)
+					return varShapes[((Parameter) v).getIndex()];
+				int index = indexOf(v.getName());
+				if (index != -1)
+					return varShapes[index];
 				if (v.get() != null)
 					return v.get().shape();
 				else {
@@ -409,32 +754,111 @@ public class MFunction extends MExpression {
 				return super.getShape(n);
 		}
 
+		/**
+		 * Evaluates the node without any arguments, meaning that the parameters are
+		 * looked up in {@link Variables}.
+		 */
 		@Override
 		public MathObject evaluateNode(Node<?> n) throws TreeException {
+			return evaluateNode(n, null);
+		}
+
+		/**
+		 * Evaluates the node, reading the values of the parameters from the given
+		 * context. This does the same as {@link Tree#evaluateNode(Node)}, but passes
+		 * the context along to the children.
+		 */
+		public MathObject evaluateNode(Node<?> n, EvaluationContext ctx) throws TreeException {
+			return evaluateNode(n, ctx, null);
+		}
+
+		/**
+		 * Evaluates the node like {@link #evaluateNode(Node, EvaluationContext)},
+		 * but takes the values of shared subtrees from the memo if they have already
+		 * been evaluated.
+		 * 
+		 * @param memo the values of the shared subtrees, or <tt>null</tt>.
+		 */
+		MathObject evaluateNode(Node<?> n, EvaluationContext ctx, Memo memo) throws TreeException {
+			Integer id = memo == null ? null : memo.ids.get(n);
+			if (id == null)
+				return compute(n, ctx, memo);
+			MathObject value = memo.values[id];
+			if (value == null)
+				value = memo.values[id] = compute(n, ctx, memo);
+			return value;
+		}
+
+		private MathObject compute(Node<?> n, EvaluationContext ctx, Memo memo) throws TreeException {
 			if (n.data instanceof Variable) {
-				MathObject var = paramMap.get(((Variable) n.data).getName());
-				if(var == null)
-					return super.evaluateNode(n);
-				else if (var instanceof MFunction) {
+				MathObject var = argument((Variable) n.data, ctx);
+				if (var instanceof MFunction) {
 					System.out.println("YO! Dude, what the hell is this? Please check why this line is executed.");
-					if (n.left() == null)
-						return ((MFunction) var).evaluateAt(paramMap);
-					else
-						return ((MFunction) var).evaluateAt(((MVector) evaluateNode(n.left())).elements());
-				} else
+					return evaluateFunction((MFunction) var, n, ctx, memo);
+				} else if (var != null)
 					return var;
+				else if (n.isInternal() && ((Variable) n.data).get() instanceof MFunction)
+					return ((MFunction) ((Variable) n.data).get())
+							.evaluateAt(((MVector) evaluateNode(n.left(), ctx, memo)).elements());
+				return ((Variable) n.data).evaluate();
 			} else if (n.data instanceof MVectorFunction) {
-				if (n.left() == null)
-					return ((MVectorFunction) n.data).evaluateAt(paramMap);
-				else
-					return ((MVectorFunction) n.data).evaluateAt(((MVector) evaluateNode(n.left())).elements());
+				MVectorFunction f = (MVectorFunction) n.data;
+				if (n.left() != null)
+					return f.evaluateAt(((MVector) evaluateNode(n.left(), ctx, memo)).elements());
+				if (ctx == null)
+					return f.evaluateAt(new HashMap<String, MathObject>());
+				EvaluationContext forwarded = forward(ctx, f.getParameters());
+				try {
+					return f.evaluateAt(forwarded);
+				} finally {
+					if (forwarded != ctx)
+						forwarded.release();
+				}
 			} else if (n.data instanceof MFunction) {
-				if (n.left() == null)
-					return ((MFunction) n.data).evaluateAt(paramMap);
-				else
-					return ((MFunction) n.data).evaluateAt(((MVector) evaluateNode(n.left())).elements());
+				return evaluateFunction((MFunction) n.data, n, ctx, memo);
+			} else if (n.isInternal()) {
+				if (n.data instanceof Function)
+					return ((Function) n.data).evaluate(evaluateNode(n.left(), ctx, memo));
+				else if (n.data instanceof Operator) {
+					if (n.right() != null)
+						return ((Operator) n.data).evaluate(evaluateNode(n.left(), ctx, memo), evaluateNode(n.right(), ctx, memo));
+					return ((Operator) n.data).evaluate(evaluateNode(n.left(), ctx, memo));
+				}
 			}
 			return super.evaluateNode(n);
 		}
+
+		/**
+		 * Evaluates a function embedded in this tree. If the node has a child, it
+		 * contains the arguments of the function, otherwise the function takes its
+		 * arguments from this function.
+		 */
+		private MathObject evaluateFunction(MFunction f, Node<?> n, EvaluationContext ctx, Memo memo) throws TreeException {
+			if (n.left() != null)
+				return f.evaluateAt(((MVector) evaluateNode(n.left(), ctx, memo)).elements());
+			if (ctx == null)
+				return f.evaluateAt(new HashMap<String, MathObject>());
+			EvaluationContext forwarded = forward(ctx, f.getParameters());
+			try {
+				return f.evaluateAt(forwarded);
+			} finally {
+				if (forwarded != ctx)
+					forwarded.release();
+			}
+		}
+
+		/**
+		 * @return the value of the argument referred to by the given variable, or
+		 *         <tt>null</tt> if it does not refer to a parameter of this function
+		 *         (or if no value is given for that parameter).
+		 */
+		private MathObject argument(Variable v, EvaluationContext ctx) {
+			if (ctx == null || v instanceof BoundVariable)
+				return null;
+			else if (v instanceof Parameter)
+				return ctx.get(((Parameter) v).getIndex());
+			int index = indexOf(v.getName());
+			return index == -1 ? null : ctx.get(index);
+		}
 	}
 }
\ No newline at end of file
@@ -1,47 +1,92 @@
 package com.github.juupje.calculator.mathobjects;
 
+import java.util.Arrays;
 import java.util.List;
 import java.util.function.Function;
 
+import com.github.juupje.calculator.algorithms.linalg.DoubleKernels;
+import com.github.juupje.calculator.algorithms.linalg.FactorizationCache;
 import com.github.juupje.calculator.algorithms.linalg.JordanElimination;
+import com.github.juupje.calculator.algorithms.linalg.Factorization;
 import com.github.juupje.calculator.algorithms.linalg.LUDecomposition;
+import com.github.juupje.calculator.algorithms.linalg.MatrixMultiplication;
 import com.github.juupje.calculator.helpers.exceptions.IndexException;
 import com.github.juupje.calculator.helpers.exceptions.InvalidOperationException;
 import com.github.juupje.calculator.helpers.exceptions.ShapeException;
 import com.github.juupje.calculator.main.Operator;
 import com.github.juupje.calculator.printer.TextPrinter;
 
+/**
+ * A two dimensional matrix of {@link MathObject}s.
+ * <p>
+ * If every element of the matrix is a real number (an {@link MReal}, but not one of its subclasses),
+ * the matrix is stored as a single row-major <tt>double[]</tt> instead of an array of objects.
+ * This happens automatically when the matrix is created and after arithmetic operations. Setting
+ * a non-real element converts the matrix back to an array of objects.
+ * Elements returned by {@link #get(int, int)} of such a matrix are new objects, so modifying them
+ * does not change the matrix.
+ * </p>
+ */
 public class MMatrix extends MIndexable {
 
+	/**
+	 * The elements of this matrix, or <tt>null</tt> if the matrix is stored in {@link #values}.
+	 */
 	MathObject m[][];
+	/**
+	 * The values of this matrix in row-major order (the element at [i,j] is stored at <tt>i*cols+j</tt>),
+	 * or <tt>null</tt> if the matrix is stored in {@link #m}.
+	 */
+	double[] values;
+	/**
+	 * The amount of times this matrix has been modified, see {@link #getModificationCount()}.
+	 */
+	private int modCount = 0;
 
 	public MMatrix(MathObject[][] m) {
 		this.m = m;
 		shape = new Shape(m.length, m[0].length);
+		pack();
 	}
 
 	public MMatrix(double[][] m) {
-		this.m = new MathObject[m.length][m[0].length];
-		for (int i = 0; i < m.length; i++)
-			for (int j = 0; j < m[i].length; j++)
-				this.m[i][j] = new MReal(m[i][j]);
 		shape = new Shape(m.length, m[0].length);
+		int cols = shape.cols();
+		values = new double[m.length*cols];
+		for (int i = 0; i < m.length; i++)
+			System.arraycopy(m[i], 0, values, i*cols, cols);
 	}
 	
 	public MMatrix(int[][] m) {
-		this.m = new MathObject[m.length][m[0].length];
-		for (int i = 0; i < m.length; i++)
-			for (int j = 0; j < m[i].length; j++)
-				this.m[i][j] = new MReal(m[i][j]);
 		shape = new Shape(m.length, m[0].length);
+		int cols = shape.cols();
+		values = new double[m.length*cols];
+		for (int i = 0; i < m.length; i++)
+			for (int j = 0; j < cols; j++)
+				values[i*cols+j] = m[i][j];
 	}
 	
 	public MMatrix(Double[][] m) {
-		this.m = new MathObject[m.length][m[0].length];
-		for (int i = 0; i < m.length; i++)
-			for (int j = 0; j < m[i].length; j++)
-				this.m[i][j] = new MReal(m[i][j]);
 		shape = new Shape(m.length, m[0].length);
+		int cols = shape.cols();
+		values = new double[m.length*cols];
+		for (int i = 0; i < m.length; i++)
+			for (int j = 0; j < cols; j++)
+				values[i*cols+j] = m[i][j];
+	}
+	
+	/**
+	 * Creates a real matrix backed by the given array, which is not copied.
+	 * @param rows the amount of rows of the matrix.
+	 * @param cols the amount of columns of the matrix.
+	 * @param values the values of the matrix in row-major order, so the element at [i,j] is <tt>values[i*cols+j]</tt>.
+	 * @throws ShapeException if the length of the array does not equal <tt>rows*cols</tt>.
+	 */
+	public MMatrix(int rows, int cols, double[] values) {
+		if(rows <= 0 || cols <= 0 || values.length != rows*cols)
+			throw new ShapeException("Cannot create matrix of shape (" + rows + ", " + cols + ") from " + values.length + " values");
+		shape = new Shape(rows, cols);
+		this.values = values;
 	}
 
 	/**
@@ -74,6 +119,7 @@ public class MMatrix extends MIndexable {
 			m[i] = list.get(i).elements();
 		}
 		shape = new Shape(m.length, m[0].length);
+		pack();
 	}
 
 	/**
@@ -96,6 +142,78 @@ public class MMatrix extends MIndexable {
 				m[j][i] = v[i].get(j);
 		}
 		shape = new Shape(m.length, m[0].length);
+		pack();
+	}
+	
+	/**
+	 * Stores the matrix as a row-major <tt>double[]</tt> if all of its elements are real numbers.
+	 * @return <tt>true</tt> if the matrix is (now) stored as real values.
+	 */
+	private boolean pack() {
+		if(values != null)
+			return true;
+		int cols = shape.cols();
+		for(MathObject[] row : m)
+			for(MathObject mo : row)
+				if(mo == null || mo.getClass() != MReal.class)
+					return false;
+		values = new double[m.length*cols];
+		for(int i = 0; i < m.length; i++)
+			for(int j = 0; j < cols; j++)
+				values[i*cols+j] = ((MReal) m[i][j]).getValue();
+		m = null;
+		return true;
+	}
+	
+	/**
+	 * Converts the matrix from a row-major <tt>double[]</tt> to an array of objects, so it can hold non-real elements.
+	 */
+	private void unpack() {
+		if(values == null)
+			return;
+		int cols = shape.cols();
+		m = new MathObject[shape.rows()][cols];
+		for(int i = 0; i < m.length; i++)
+			for(int j = 0; j < cols; j++)
+				m[i][j] = new MReal(values[i*cols+j]);
+		values = null;
+	}
+	
+	/**
+	 * Returns {@code true} if this matrix is stored as a row-major <tt>double[]</tt>, which means that
+	 * all of its elements are real numbers.
+	 * @see #values()
+	 */
+	public boolean isReal() {
+		return values != null;
+	}
+	
+	/**
+	 * Returns the values of a real matrix in row-major order, the element at [i,j] is stored at <tt>i*cols+j</tt>.
+	 * The array is not copied, so changes to it will affect this matrix.
+	 * @return the values of the matrix, or <tt>null</tt> if the matrix is not real.
+	 * @see #isReal()
+	 */
+	public double[] values() {
+		return values;
+	}
+
+	/**
+	 * Returns the amount of times this matrix has been modified in place (by setting an element or by an
+	 * in-place operation such as {@link #add(MMatrix)}). This is used by the
+	 * {@link FactorizationCache} to detect that a cached factorization of this matrix is outdated.
+	 * Code which modifies the array returned by {@link #values()} or {@link #elements()} should call {@link #modified()}.
+	 */
+	public int getModificationCount() {
+		return modCount;
+	}
+
+	/**
+	 * Marks this matrix as modified, which invalidates its cached factorizations.
+	 * @see #getModificationCount()
+	 */
+	public void modified() {
+		modCount++;
 	}
 
 	@Override
@@ -115,6 +233,8 @@ public class MMatrix extends MIndexable {
 	 */
 	public MathObject get(int i, int j) {
 		checkindex(i,j);
+		if(values != null)
+			return new MReal(values[i*shape.cols()+j]);
 		return m[i][j];
 	}
 	
@@ -135,13 +255,21 @@ public class MMatrix extends MIndexable {
 	 */
 	public void set(int i, int j, MathObject mo) {
 		checkindex(i, j);
+		modCount++;
+		if(values != null) {
+			if(mo != null && mo.getClass() == MReal.class) {
+				values[i*shape.cols()+j] = ((MReal) mo).getValue();
+				return;
+			}
+			unpack();
+		}
 		m[i][j] = mo;
 	}
 	
 	@Override
 	public void set(MathObject mo, int... index) {
 		checkindex(index);
-		m[index[0]][index[1]] = mo;
+		set(index[0], index[1], mo);
 	}
 
 	/**
@@ -151,9 +279,9 @@ public class MMatrix extends MIndexable {
 	 * @param mo a <tt>MVector</tt> containing the values in the i-th row.
 	 */
 	public MVector getRow(int i) {
-		MathObject[] v = new MathObject[m[i].length];
-		for (int j = 0; j < m[i].length; j++)
-			v[j] = m[i][j];
+		MathObject[] v = new MathObject[shape.cols()];
+		for (int j = 0; j < v.length; j++)
+			v[j] = values != null ? new MReal(values[i*v.length+j]) : m[i][j];
 		return new MVector(v);
 	}
 
@@ -164,19 +292,27 @@ public class MMatrix extends MIndexable {
 	 * @param mo a <tt>MVector</tt> containing the values in the j-th column.
 	 */
 	public MVector getColumn(int j) {
-		MathObject[] v = new MathObject[m.length];
-		for (int i = 0; i < m.length; i++)
-			v[i] = m[i][j];
+		MathObject[] v = new MathObject[shape.rows()];
+		for (int i = 0; i < v.length; i++)
+			v[i] = values != null ? new MReal(values[i*shape.cols()+j]) : m[i][j];
 		return new MVector(v);
 	}
 
 	/**
-	 * Returns the elements in this matrix.
+	 * Returns the elements in this matrix. If the matrix is real, the elements are
+	 * created from its values, so changes to the returned array will not affect the matrix.
 	 * 
 	 * @return a <tt>MathObject[][]</tt> of the elements in the matrix.
 	 */
 	public MathObject[][] elements() {
-		return m;
+		if(values == null)
+			return m;
+		int cols = shape.cols();
+		MathObject[][] elements = new MathObject[shape.rows()][cols];
+		for (int i = 0; i < elements.length; i++)
+			for (int j = 0; j < cols; j++)
+				elements[i][j] = new MReal(values[i*cols+j]);
+		return elements;
 	}
 	
 	/**
@@ -204,7 +340,14 @@ public class MMatrix extends MIndexable {
 		if (lefttoprow < 0 || lefttopcol < 0 || rightbottomrow >= shape.rows() || rightbottomcol >= shape.cols())
 			throw new IndexOutOfBoundsException("Bounds of submatrix out of bounds! (" + lefttoprow + ", " + lefttopcol
 					+ ", " + rightbottomrow + ", " + rightbottomcol + ") does not fit inside matrix of shape " + shape);
-		MMatrix result = new MMatrix(new Shape(rightbottomrow - lefttoprow + 1, rightbottomcol - lefttopcol + 1));
+		int rows = rightbottomrow - lefttoprow + 1, cols = rightbottomcol - lefttopcol + 1;
+		if(values != null) {
+			double[] result = new double[rows*cols];
+			for (int i = 0; i < rows; i++)
+				System.arraycopy(values, (i+lefttoprow)*shape.cols()+lefttopcol, result, i*cols, cols);
+			return new MMatrix(rows, cols, result);
+		}
+		MMatrix result = new MMatrix(new Shape(rows, cols));
 		for (int i = lefttoprow; i <= rightbottomrow; i++)
 			for (int j = lefttopcol; j <= rightbottomcol; j++)
 				result.set(i - lefttoprow, j - lefttopcol, m[i][j]);
@@ -225,9 +368,16 @@ public class MMatrix extends MIndexable {
 		if (!other.shape().equals(shape()))
 			throw new ShapeException(
 					"To add two matrices, they need to be the same shape! Shape: " + shape() + " and " + other.shape());
+		modCount++;
+		if(values != null && other.values != null) {
+			DoubleKernels.get().add(values, other.values);
+			return this;
+		}
+		unpack();
 		for (int i = 0; i < m.length; i++)
 			for (int j = 0; j < m[i].length; j++)
 				m[i][j] = Operator.ADD.evaluate(m[i][j], other.get(i, j));
+		pack();
 		return this;
 	}
 
@@ -246,9 +396,16 @@ public class MMatrix extends MIndexable {
 		if (!other.shape().equals(shape()))
 			throw new ShapeException("To subtract two matrices, they need to be the same shape! Shape: "
 					+ shape() + " and " + other.shape());
+		modCount++;
+		if(values != null && other.values != null) {
+			DoubleKernels.get().subtract(values, other.values);
+			return this;
+		}
+		unpack();
 		for (int i = 0; i < m.length; i++)
 			for (int j = 0; j < m[i].length; j++)
 				m[i][j] = Operator.SUBTRACT.evaluate(m[i][j], other.get(i, j));
+		pack();
 		return this;
 	}
 
@@ -261,9 +418,16 @@ public class MMatrix extends MIndexable {
 	 */
 	@Override
 	public MMatrix multiply(MScalar other) {
+		modCount++;
+		if(values != null && other.getClass() == MReal.class) {
+			DoubleKernels.get().scale(((MReal) other).getValue(), values, 0, values.length);
+			return this;
+		}
+		unpack();
 		for (MathObject[] row : m)
 			for (int i = 0; i < row.length; i++)
 				row[i] = Operator.MULTIPLY.evaluate(row[i], other);
+		pack();
 		return this;
 	}
 
@@ -292,11 +456,13 @@ public class MMatrix extends MIndexable {
 		if (shape.cols() != other.shape().rows())
 			throw new ShapeException("Matrix product is only defined for n x m and m x k Matrices. Shapes: " + shape()
 					+ ", " + other.shape());
+		if(values != null && other.values != null)
+			return new MMatrix(shape.rows(), other.shape().cols(), MatrixMultiplication.multiply(values, other.values, shape.rows(), shape.cols(), other.shape().cols()));
 		MathObject[][] C = new MathObject[shape.rows()][other.shape().cols()];
 		for (int i = 0; i < C.length; i++) {
 			for (int j = 0; j < C[0].length; j++) {
 				for (int k = 0; k < shape().cols(); k++)
-					C[i][j] = Operator.ADD.evaluate(C[i][j], Operator.MULTIPLY.evaluate(m[i][k], other.get(k, j)));
+					C[i][j] = Operator.ADD.evaluate(C[i][j], Operator.MULTIPLY.evaluate(get(i, k), other.get(k, j)));
 			}
 		}
 		return new MMatrix(C);
@@ -330,7 +496,7 @@ public class MMatrix extends MIndexable {
 				MathObject[][] matrix = new MathObject[shape.rows()][other.size()];
 				for (int i = 0; i < matrix.length; i++)
 					for (int j = 0; j < matrix[0].length; j++)
-						matrix[i][j] =  Operator.MULTIPLY.evaluate(m[i][0], other.get(j));
+						matrix[i][j] =  Operator.MULTIPLY.evaluate(get(i, 0), other.get(j));
 				return new MMatrix(matrix);
 			} else
 				throw new ShapeException("matrix/row-vector product is only defined for an (n x 1)-matrix and n-vector, got " + shape + " and " + other.shape());
@@ -339,6 +505,15 @@ public class MMatrix extends MIndexable {
 				throw new ShapeException(
 						"The Matrix-Vector product is only defined for an (m x n)-matrix and n-Vector. Shapes: "
 								+ shape() + ", " + other.shape());
+			double[] x = values != null ? other.values() : null;
+			if(x != null) {
+				int cols = shape.cols();
+				DoubleKernels kernels = DoubleKernels.get();
+				double[] b = new double[shape.rows()];
+				for (int i = 0; i < b.length; i++)
+					b[i] = kernels.dot(values, i*cols, x, 0, cols);
+				return new MVector(b);
+			}
 			MVector b = new MVector(shape().rows());
 			for (int i = 0; i < b.size(); i++) {
 				MathObject b_i = null;
@@ -389,7 +564,7 @@ public class MMatrix extends MIndexable {
 				MathObject[][] result = new MathObject[other.size][shape.cols()];
 				for (int i = 0; i < result.length; i++)
 					for (int j = 0; j < result[0].length; j++)
-						result[i][j] = Operator.MULTIPLY.evaluate(other.get(i), m[0][j]);
+						result[i][j] = Operator.MULTIPLY.evaluate(other.get(i), get(0, j));
 				return new MMatrix(result);
 			} else
 				throw new ShapeException(
@@ -407,9 +582,18 @@ public class MMatrix extends MIndexable {
 	 *              {@code this}
 	 */
 	public MMatrix divide(MScalar other) {
+		modCount++;
+		if(values != null && other.getClass() == MReal.class) {
+			double d = ((MReal) other).getValue();
+			for (int i = 0; i < values.length; i++)
+				values[i] /= d;
+			return this;
+		}
+		unpack();
 		for (MathObject[] row : m)
 			for (int i = 0; i < row.length; i++)
 				row[i] = Operator.DIVIDE.evaluate(row[i], other);
+		pack();
 		return this;
 	}
 
@@ -441,7 +625,7 @@ public class MMatrix extends MIndexable {
 		MathObject augm[][] = new MathObject[shape.rows()][shape.cols() + b.shape().cols()];
 		for (int i = 0; i < shape.rows(); i++) {
 			for (int j = 0; j < shape.cols(); j++)
-				augm[i][j] = m[i][j].copy();
+				augm[i][j] = get(i, j).copy();
 			for (int k = shape.cols(); k < shape.cols() + b.shape().cols(); k++) {
 				augm[i][k] = b.get(i, k - shape.cols()).copy();
 			}
@@ -466,13 +650,24 @@ public class MMatrix extends MIndexable {
 		MathObject augm[][] = new MathObject[shape.rows()][shape.cols() + 1];
 		for (int i = 0; i < shape.rows(); i++) {
 			for (int j = 0; j < shape.cols(); j++)
-				augm[i][j] = m[i][j].copy();
+				augm[i][j] = get(i, j).copy();
 			augm[i][shape.cols()] = b.get(i).copy();
 		}
 		return new MMatrix(augm);
 	}
 
 	public MMatrix transpose() {
+		modCount++;
+		if(values != null) {
+			int rows = shape.rows(), cols = shape.cols();
+			double[] t = new double[values.length];
+			for (int i = 0; i < rows; i++)
+				for (int j = 0; j < cols; j++)
+					t[j*rows+i] = values[i*cols+j];
+			values = t;
+			shape = shape.transpose();
+			return this;
+		}
 		MathObject[][] matrix = new MathObject[m[0].length][m.length];
 		for (int i = 0; i < matrix.length; i++)
 			for (int j = 0; j < matrix[i].length; j++)
@@ -485,7 +680,9 @@ public class MMatrix extends MIndexable {
 	public MScalar det() {
 		if(!isSquare())
 			throw new ShapeException("Determinant is only defined for square matrices. Shape: " + shape);
-		if(m.length==2) {
+		if(shape.rows()==2) {
+			if(values != null)
+				return new MReal(values[0]*values[3]-values[1]*values[2]);
 			try {
 				return ((MScalar) m[0][0].evaluate()).multiply((MScalar) m[1][1].evaluate()).subtract(((MScalar)m[0][1].evaluate()).multiply((MScalar)m[1][0].evaluate()));
 			} catch(ClassCastException e) {
@@ -493,6 +690,9 @@ public class MMatrix extends MIndexable {
 			}
 		}
 		//Decompose the matrix into LU decomposition and use Det(A)=Det(PLU)=Det(P)Det(L)Det(U)=Det(P)Det(U)
+		//(or the Cholesky/LDL decomposition for symmetric matrices, see Factorization#of(MMatrix))
+		if(values != null)
+			return new MReal(Factorization.of(this).det());
 		LUDecomposition decomp = new LUDecomposition(evaluate());
 		return new MReal(decomp.det());	
 	}
@@ -530,10 +730,10 @@ public class MMatrix extends MIndexable {
 	 * @return the newly created MMatrix of the same shape.
 	 */
 	public MMatrix forEach(Function<MathObject, MathObject> f) {
-		MathObject[][] m2 = new MathObject[m.length][m[0].length];
+		MathObject[][] m2 = new MathObject[shape.rows()][shape.cols()];
 		for(int i = 0; i < m2.length; i++)
 			for(int j = 0; j < m2[0].length; j++)
-				m2[i][j] = f.apply(m[i][j]);
+				m2[i][j] = f.apply(get(i, j));
 		return new MMatrix(m2);
 	}
 	
@@ -547,6 +747,12 @@ public class MMatrix extends MIndexable {
 	 */
 	@Override
 	public MMatrix negate() {
+		modCount++;
+		if(values != null) {
+			for (int i = 0; i < values.length; i++)
+				values[i] = -values[i];
+			return this;
+		}
 		for (MathObject[] row : m)
 			for (MathObject mo : row)
 				mo.negate();
@@ -562,11 +768,31 @@ public class MMatrix extends MIndexable {
 	 */
 	@Override
 	public MMatrix invert() {
+		MMatrix inverse = inverse();
+		m = inverse.m;
+		values = inverse.values;
+		modCount++;
+		return this;
+	}
+
+	/**
+	 * Calculates the inverse of this <tt>MMatrix</tt>, leaving this matrix unchanged.
+	 * The inverse of a real matrix is calculated using its (cached) factorization,
+	 * see {@link Factorization#of(MMatrix)}.
+	 * 
+	 * @return a new <tt>MMatrix</tt> containing the inverse.
+	 * @throws InvalidOperationException if the matrix is not square.
+	 */
+	public MMatrix inverse() {
 		if (shape.cols() != shape.rows())
 			throw new InvalidOperationException("Only square matrices can be inverted: dimension=" + shape);
-		m = new JordanElimination(this, identity(shape.rows())).execute()
-				.extractSubMatrix(0, shape.cols(), shape.rows() - 1, shape.cols() * 2 - 1).elements();
-		return this;
+		if(values != null) {
+			Factorization decomp = Factorization.of(this);
+			if(!decomp.isDegenerate())
+				return new MMatrix(shape.rows(), shape.cols(), decomp.inverse());
+		}
+		return new JordanElimination(this, identity(shape.rows())).execute()
+				.extractSubMatrix(0, shape.cols(), shape.rows() - 1, shape.cols() * 2 - 1);
 	}
 
 	/**
@@ -578,6 +804,8 @@ public class MMatrix extends MIndexable {
 	 */
 	@Override
 	public MMatrix copy() {
+		if(values != null)
+			return new MMatrix(shape.rows(), shape.cols(), values.clone());
 		MathObject[][] co = new MathObject[m.length][m[0].length];
 		for (int i = 0; i < m.length; i++)
 			for (int j = 0; j < m[i].length; j++)
@@ -590,6 +818,8 @@ public class MMatrix extends MIndexable {
 	 */
 	@Override
 	public MMatrix evaluate() {
+		if(values != null)
+			return copy();
 		MathObject[][] copy = new MathObject[shape.rows()][shape.cols()];
 		for (int i = 0; i < copy.length; i++)
 			for (int j = 0; j < copy[0].length; j++)
@@ -599,6 +829,8 @@ public class MMatrix extends MIndexable {
 	
 	@Override
 	public boolean isNumeric() {
+		if(values != null)
+			return true;
 		for(MathObject[] row : m)
 			for(MathObject element : row)
 				if(!element.isNumeric()) return false;
@@ -621,6 +853,8 @@ public class MMatrix extends MIndexable {
 	 * @return A*
 	 */
 	public MMatrix getHermitian() {
+		if(values != null)
+			return copy().transpose();
 		MathObject[][] matrix = new MathObject[shape.cols()][shape.rows()];
 		for (int i = 0; i < shape.rows(); i++)
 			for(int j = 0; j < shape.cols(); j++) {
@@ -635,19 +869,27 @@ public class MMatrix extends MIndexable {
 	}
 	
 	public static MMatrix identity(int size) {
-		MMatrix matrix = new MMatrix(new Shape(size, size));
+		double[] values = new double[size*size];
 		for (int i = 0; i < size; i++)
-			for (int j = 0; j < size; j++)
-				matrix.set(i, j, new MReal(i == j ? 1 : 0));
-		return matrix;
+			values[i*size+i] = 1;
+		return new MMatrix(size, size, values);
 	}
 	
 	public static MMatrix zeros(int rows, int cols) {
-		MMatrix matrix = new MMatrix(new Shape(rows, cols));
-		for (int i = 0; i < rows; i++)
-			for (int j = 0; j < cols; j++)
-				matrix.set(i, j, new MReal(0));
-		return matrix;
+		return new MMatrix(rows, cols, new double[rows*cols]);
+	}
+	
+	/**
+	 * Creates a real matrix of which every element is equal to the given value.
+	 * @param rows the amount of rows of the matrix
+	 * @param cols the amount of columns of the matrix
+	 * @param d the value of the elements
+	 * @return the created matrix
+	 */
+	public static MMatrix full(int rows, int cols, double d) {
+		double[] values = new double[rows*cols];
+		Arrays.fill(values, d);
+		return new MMatrix(rows, cols, values);
 	}
 
 	public static MMatrix empty(int rows, int cols) {
@@ -110,13 +110,15 @@ public class MRecSequence extends MSequence {
 		return this;
 	}
 
+	/**
+	 * Returns the element at the given index, calculating (and storing) all elements before it that have not
+	 * been calculated yet. This method is synchronized, as the stored elements are shared between threads.
+	 */
 	@Override
-	public MathObject get(int index) {
+	public synchronized MathObject get(int index) {
 		if(items.size()>index)
 			return items.get(index);
-		MathObject temp = func.paramMap.get(indexName);
 		MScalar result = (MScalar) func.evaluateAt(this, new MReal(index));
-		func.paramMap.put(indexName, temp);
 		items.add(result);
 		return result;
 	}
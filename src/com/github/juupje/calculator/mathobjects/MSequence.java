@@ -13,14 +13,12 @@ public class MSequence extends MIndexable {
 	int begin = 1;
 	int end;
 	MFunction func;
-	MReal index;
 	
 	public MSequence(String index, int begin, int end, MFunction func) {
 		this.indexName = index;
 		this.begin = begin;
 		this.end = end;
 		this.func = func;
-		this.index = new MReal(begin);
 		Shape fshape = func.shape();
 		if(end < 0)
 			end = Integer.MAX_VALUE;
@@ -35,13 +33,12 @@ public class MSequence extends MIndexable {
 	}
 	
 	public MathObject get(int index) {
-		this.index = new MReal(index);
 		if(end<0) {
 			if(index>=begin)
-				return func.evaluateAt(this.index);
+				return func.evaluateAt(new MReal(index));
 		} else {
 			if(index>=begin && index<=end)
-				return func.evaluateAt(this.index);
+				return func.evaluateAt(new MReal(index));
 		}
 		throw new IndexException(String.valueOf(index), String.valueOf(begin), (String)(end>0 ? end : "infinity"));
 	}
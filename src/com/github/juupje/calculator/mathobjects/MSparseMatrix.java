@@ -0,0 +1,643 @@
+package com.github.juupje.calculator.mathobjects;
+
+import java.util.Arrays;
+
+import com.github.juupje.calculator.helpers.exceptions.IndexException;
+import com.github.juupje.calculator.helpers.exceptions.InvalidOperationException;
+import com.github.juupje.calculator.helpers.exceptions.ShapeException;
+import com.github.juupje.calculator.main.Operator;
+import com.github.juupje.calculator.printer.TextPrinter;
+
+/**
+ * A real matrix of which only the non-zero elements are stored, in compressed sparse row (CSR) format.
+ * <p>
+ * The non-zero elements of row <tt>i</tt> are stored at the indices <tt>rowPtr[i]</tt> (inclusive) to
+ * <tt>rowPtr[i+1]</tt> (exclusive) of {@link #colIdx} and {@link #values}, ordered by their column. The memory usage
+ * and the cost of most operations is therefore proportional to the amount of non-zero elements, rather than
+ * the size of the matrix.
+ * </p>
+ * A sparse matrix can be created from a dense {@link MMatrix} or using a {@link Builder}, which collects the elements
+ * as (row, column, value) triplets in any order. Operations which (generally) produce a dense result, like
+ * adding a dense matrix, return a {@link MMatrix}.
+ * @author Joep Geuskens
+ */
+public class MSparseMatrix extends MIndexable {
+
+	int rows, cols;
+	int[] rowPtr;
+	int[] colIdx;
+	double[] values;
+
+	/**
+	 * Creates a sparse matrix from the given arrays, which are not copied.
+	 * @param rowPtr the indices in <tt>colIdx</tt> and <tt>values</tt> where each row starts, with length <tt>rows+1</tt>.
+	 * @param colIdx the column of each non-zero element, ordered within each row.
+	 * @param values the value of each non-zero element.
+	 */
+	MSparseMatrix(int rows, int cols, int[] rowPtr, int[] colIdx, double[] values) {
+		this.rows = rows;
+		this.cols = cols;
+		this.rowPtr = rowPtr;
+		this.colIdx = colIdx;
+		this.values = values;
+		shape = new Shape(rows, cols);
+	}
+
+	/**
+	 * Creates a <tt>rows</tt> x <tt>cols</tt> matrix of zeros.
+	 * @throws ShapeException if <tt>rows</tt> or <tt>cols</tt> is not positive.
+	 */
+	public MSparseMatrix(int rows, int cols) {
+		this(rows, cols, new int[checkShape(rows, cols)+1], new int[0], new double[0]);
+	}
+
+	/**
+	 * Creates a sparse matrix containing the non-zero elements of the given matrix.
+	 * @throws InvalidOperationException if <tt>m</tt> contains elements which are not real numbers.
+	 */
+	public MSparseMatrix(MMatrix m) {
+		if(!m.isReal())
+			throw new InvalidOperationException("Only real matrices can be converted to sparse matrices.");
+		rows = m.shape().rows();
+		cols = m.shape().cols();
+		shape = new Shape(rows, cols);
+		double[] a = m.values();
+		int nnz = 0;
+		for(double d : a)
+			if(d != 0) nnz++;
+		rowPtr = new int[rows+1];
+		colIdx = new int[nnz];
+		values = new double[nnz];
+		for(int i = 0, k = 0; i < rows; i++) {
+			for(int j = 0; j < cols; j++) {
+				double d = a[i*cols+j];
+				if(d != 0) {
+					colIdx[k] = j;
+					values[k++] = d;
+				}
+			}
+			rowPtr[i+1] = k;
+		}
+	}
+
+	private static int checkShape(int rows, int cols) {
+		if(rows <= 0 || cols <= 0)
+			throw new ShapeException("Matrix size cannot be <=0, got shape (" + rows + ", " + cols + ")");
+		return rows;
+	}
+
+	/**
+	 * @return the amount of stored (non-zero) elements.
+	 */
+	public int nonZeros() {
+		return rowPtr[rows];
+	}
+
+	/**
+	 * Returns the element at the given row and column.
+	 * @return the value of the element, or 0 if it is not stored.
+	 */
+	public double value(int i, int j) {
+		int k = find(i, j);
+		return k >= 0 ? values[k] : 0;
+	}
+
+	/**
+	 * Finds the index of the element at [i,j] in {@link #colIdx}.
+	 * @return the index, or <tt>-(insertion point)-1</tt> if the element is not stored.
+	 */
+	private int find(int i, int j) {
+		if(i < 0 || i >= rows || j < 0 || j >= cols)
+			throw new IndexException("Index [" + i + ", " + j + "] out of bounds for matrix of size " + shape);
+		return Arrays.binarySearch(colIdx, rowPtr[i], rowPtr[i+1], j);
+	}
+
+	@Override
+	public MReal get(int... index) {
+		if(index.length != 2)
+			throw new IndexException("Got " + index.length + " indices for object with dimension 2");
+		return new MReal(value(index[0], index[1]));
+	}
+
+	/**
+	 * Sets the element at [i,j] to the given real number. Setting an element which was not stored yet
+	 * (or setting an element to zero) requires the arrays to be rebuilt, which takes a time proportional to
+	 * the amount of non-zero elements. To create a sparse matrix element by element, use a {@link Builder} instead.
+	 * @throws InvalidOperationException if <tt>m</tt> is not a real number.
+	 */
+	@Override
+	public void set(MathObject m, int... index) {
+		if(index.length != 2)
+			throw new IndexException("Got " + index.length + " indices for object with dimension 2");
+		if(!(m instanceof MReal))
+			throw new InvalidOperationException("Sparse matrices can only contain real numbers, got " + m);
+		set(index[0], index[1], ((MReal) m).getValue());
+	}
+
+	public void set(int i, int j, double d) {
+		int k = find(i, j);
+		if(k >= 0) {
+			if(d != 0)
+				values[k] = d;
+			else
+				remove(i, k);
+		} else if(d != 0)
+			insert(i, -k-1, j, d);
+	}
+
+	private void insert(int row, int k, int j, double d) {
+		int nnz = nonZeros();
+		int[] c = new int[nnz+1];
+		double[] v = new double[nnz+1];
+		System.arraycopy(colIdx, 0, c, 0, k);
+		System.arraycopy(values, 0, v, 0, k);
+		c[k] = j;
+		v[k] = d;
+		System.arraycopy(colIdx, k, c, k+1, nnz-k);
+		System.arraycopy(values, k, v, k+1, nnz-k);
+		colIdx = c;
+		values = v;
+		for(int i = row+1; i <= rows; i++)
+			rowPtr[i]++;
+	}
+
+	private void remove(int row, int k) {
+		int nnz = nonZeros();
+		int[] c = new int[nnz-1];
+		double[] v = new double[nnz-1];
+		System.arraycopy(colIdx, 0, c, 0, k);
+		System.arraycopy(values, 0, v, 0, k);
+		System.arraycopy(colIdx, k+1, c, k, nnz-k-1);
+		System.arraycopy(values, k+1, v, k, nnz-k-1);
+		colIdx = c;
+		values = v;
+		for(int i = row+1; i <= rows; i++)
+			rowPtr[i]--;
+	}
+
+	/**
+	 * Adds another sparse matrix to this one. Neither matrix is changed.
+	 * @return a new sparse matrix containing the sum.
+	 * @throws ShapeException if the shapes of the matrices are not equal.
+	 */
+	public MSparseMatrix add(MSparseMatrix other) {
+		return merge(other, 1);
+	}
+
+	/**
+	 * Subtracts another sparse matrix from this one. Neither matrix is changed.
+	 * @return a new sparse matrix containing the difference.
+	 * @throws ShapeException if the shapes of the matrices are not equal.
+	 */
+	public MSparseMatrix subtract(MSparseMatrix other) {
+		return merge(other, -1);
+	}
+
+	/**
+	 * Calculates <tt>this+c*other</tt> by merging the (ordered) rows of both matrices.
+	 */
+	private MSparseMatrix merge(MSparseMatrix other, double c) {
+		if(!shape.equals(other.shape))
+			throw new ShapeException("To add two matrices, they need to be the same shape! Shape: " + shape + " and " + other.shape);
+		int[] p = new int[rows+1];
+		int[] ci = new int[nonZeros()+other.nonZeros()];
+		double[] v = new double[ci.length];
+		int k = 0;
+		for(int i = 0; i < rows; i++) {
+			int a = rowPtr[i], aend = rowPtr[i+1];
+			int b = other.rowPtr[i], bend = other.rowPtr[i+1];
+			while(a < aend || b < bend) {
+				int ja = a < aend ? colIdx[a] : cols;
+				int jb = b < bend ? other.colIdx[b] : cols;
+				double d;
+				int j;
+				if(ja < jb) {
+					j = ja;
+					d = values[a++];
+				} else if(jb < ja) {
+					j = jb;
+					d = c*other.values[b++];
+				} else {
+					j = ja;
+					d = values[a++] + c*other.values[b++];
+				}
+				if(d != 0) {
+					ci[k] = j;
+					v[k++] = d;
+				}
+			}
+			p[i+1] = k;
+		}
+		return new MSparseMatrix(rows, cols, p, Arrays.copyOf(ci, k), Arrays.copyOf(v, k));
+	}
+
+	/**
+	 * Adds a dense matrix to this one. Neither matrix is changed.
+	 * @return a new (dense) matrix containing the sum.
+	 * @throws ShapeException if the shapes of the matrices are not equal.
+	 */
+	public MMatrix add(MMatrix other) {
+		return other.copy().add(toMMatrix());
+	}
+
+	/**
+	 * Calculates the matrix-vector product of this matrix and the given (column) vector, which takes a time
+	 * proportional to the amount of non-zero elements.
+	 * @return a new vector containing the product.
+	 * @throws ShapeException if the size of the vector does not equal the amount of columns.
+	 */
+	public MVector multiply(MVector v) {
+		if(v.size() != cols)
+			throw new ShapeException("The Matrix-Vector product is only defined for an (m x n)-matrix and n-Vector. Shapes: "
+					+ shape + ", " + v.shape());
+		double[] x = v.values();
+		if(x != null)
+			return new MVector(multiply(x));
+		MathObject[] b = new MathObject[rows];
+		for(int i = 0; i < rows; i++) {
+			MathObject b_i = new MReal(0);
+			for(int k = rowPtr[i]; k < rowPtr[i+1]; k++)
+				b_i = Operator.ADD.evaluate(b_i, v.get(colIdx[k]).copy().multiply(values[k]));
+			b[i] = b_i;
+		}
+		return new MVector(b);
+	}
+
+	/**
+	 * Calculates the product of this matrix and the vector <tt>x</tt>.
+	 * @param x the values of a vector with a length equal to the amount of columns.
+	 * @return the values of the product.
+	 */
+	public double[] multiply(double[] x) {
+		double[] b = new double[rows];
+		for(int i = 0; i < rows; i++) {
+			double b_i = 0;
+			for(int k = rowPtr[i]; k < rowPtr[i+1]; k++)
+				b_i += values[k]*x[colIdx[k]];
+			b[i] = b_i;
+		}
+		return b;
+	}
+
+	/**
+	 * Calculates the product of the given row vector and this matrix, <tt>v'A</tt>.
+	 * @return a new row vector containing the product.
+	 * @throws ShapeException if the size of the vector does not equal the amount of rows.
+	 */
+	public MVector multiplyRight(MVector v) {
+		if(v.size() != rows)
+			throw new ShapeException("The Vector-Matrix product is only defined for an n-Vector and (n x m)-matrix. Shapes: "
+					+ v.shape() + ", " + shape);
+		return transpose().multiply(v).transpose();
+	}
+
+	/**
+	 * Calculates the matrix product of this matrix and another sparse matrix, row by row (Gustavson's algorithm).
+	 * Neither matrix is changed.
+	 * @return a new sparse matrix containing the product.
+	 * @throws ShapeException if the amount of columns of this matrix does not equal the amount of rows of the other.
+	 */
+	public MSparseMatrix multiply(MSparseMatrix other) {
+		if(cols != other.rows)
+			throw new ShapeException("Matrix product is only defined for n x m and m x k Matrices. Shapes: " + shape + ", " + other.shape);
+		int k = other.cols;
+		int[] p = new int[rows+1];
+		int[] ci = new int[Math.max(16, nonZeros())];
+		double[] v = new double[ci.length];
+		double[] acc = new double[k];
+		int[] marker = new int[k];
+		Arrays.fill(marker, -1);
+		int[] pattern = new int[k];
+		int nnz = 0;
+		for(int i = 0; i < rows; i++) {
+			int count = 0;
+			for(int a = rowPtr[i]; a < rowPtr[i+1]; a++) {
+				int l = colIdx[a];
+				double d = values[a];
+				for(int b = other.rowPtr[l]; b < other.rowPtr[l+1]; b++) {
+					int j = other.colIdx[b];
+					if(marker[j] != i) {
+						marker[j] = i;
+						pattern[count++] = j;
+						acc[j] = d*other.values[b];
+					} else
+						acc[j] += d*other.values[b];
+				}
+			}
+			Arrays.sort(pattern, 0, count);
+			if(nnz + count > ci.length) {
+				int len = Math.max(ci.length*2, nnz+count);
+				ci = Arrays.copyOf(ci, len);
+				v = Arrays.copyOf(v, len);
+			}
+			for(int c = 0; c < count; c++) {
+				int j = pattern[c];
+				if(acc[j] != 0) {
+					ci[nnz] = j;
+					v[nnz++] = acc[j];
+				}
+			}
+			p[i+1] = nnz;
+		}
+		return new MSparseMatrix(rows, k, p, Arrays.copyOf(ci, nnz), Arrays.copyOf(v, nnz));
+	}
+
+	/**
+	 * Calculates the matrix product of this matrix and a dense matrix. Neither matrix is changed.
+	 * @return a new (dense) matrix containing the product.
+	 * @throws ShapeException if the amount of columns of this matrix does not equal the amount of rows of the other.
+	 */
+	public MMatrix multiply(MMatrix other) {
+		if(cols != other.shape().rows())
+			throw new ShapeException("Matrix product is only defined for n x m and m x k Matrices. Shapes: " + shape + ", " + other.shape());
+		if(!other.isReal())
+			return toMMatrix().multiplyLeft(other);
+		int k = other.shape().cols();
+		double[] b = other.values();
+		double[] c = new double[rows*k];
+		for(int i = 0; i < rows; i++)
+			for(int a = rowPtr[i]; a < rowPtr[i+1]; a++) {
+				double d = values[a];
+				int l = colIdx[a];
+				for(int j = 0; j < k; j++)
+					c[i*k+j] += d*b[l*k+j];
+			}
+		return new MMatrix(rows, k, c);
+	}
+
+	/**
+	 * Calculates the matrix product of a dense matrix and this matrix. Neither matrix is changed.
+	 * @return a new (dense) matrix containing the product.
+	 * @throws ShapeException if the amount of columns of the other matrix does not equal the amount of rows of this one.
+	 */
+	public MMatrix multiplyRight(MMatrix other) {
+		int n = other.shape().rows(), m = other.shape().cols();
+		if(m != rows)
+			throw new ShapeException("Matrix product is only defined for n x m and m x k Matrices. Shapes: " + other.shape() + ", " + shape);
+		if(!other.isReal())
+			return other.multiplyLeft(toMMatrix());
+		double[] a = other.values();
+		double[] c = new double[n*cols];
+		for(int i = 0; i < n; i++)
+			for(int l = 0; l < rows; l++) {
+				double d = a[i*m+l];
+				if(d == 0) continue;
+				for(int b = rowPtr[l]; b < rowPtr[l+1]; b++)
+					c[i*cols+colIdx[b]] += d*values[b];
+			}
+		return new MMatrix(n, cols, c);
+	}
+
+	@Override
+	public MIndexable multiply(MScalar s) {
+		if(!(s instanceof MReal))
+			return toMMatrix().multiply(s);
+		double d = ((MReal) s).getValue();
+		if(d == 0) {
+			Arrays.fill(rowPtr, 0);
+			colIdx = new int[0];
+			values = new double[0];
+		} else
+			for(int k = 0; k < values.length; k++)
+				values[k] *= d;
+		return this;
+	}
+
+	/**
+	 * Returns the transpose of this matrix, which is created by counting the non-zero elements in each
+	 * column. This matrix is not changed.
+	 * @return a new sparse matrix containing the transpose.
+	 */
+	public MSparseMatrix transpose() {
+		int nnz = nonZeros();
+		int[] p = new int[cols+1];
+		for(int k = 0; k < nnz; k++)
+			p[colIdx[k]+1]++;
+		for(int j = 0; j < cols; j++)
+			p[j+1] += p[j];
+		int[] next = Arrays.copyOf(p, cols);
+		int[] ci = new int[nnz];
+		double[] v = new double[nnz];
+		for(int i = 0; i < rows; i++)
+			for(int k = rowPtr[i]; k < rowPtr[i+1]; k++) {
+				int dest = next[colIdx[k]]++;
+				ci[dest] = i;
+				v[dest] = values[k];
+			}
+		return new MSparseMatrix(cols, rows, p, ci, v);
+	}
+
+	/**
+	 * @return the sum of the diagonal elements.
+	 * @throws ShapeException if the matrix is not square.
+	 */
+	public double trace() {
+		if(rows != cols)
+			throw new ShapeException("Trace is only defined for square matrices, got shape " + shape);
+		double t = 0;
+		for(int i = 0; i < rows; i++)
+			t += value(i, i);
+		return t;
+	}
+
+	/**
+	 * @return the square root of the sum of the squares of all elements (the Frobenius norm).
+	 */
+	public double normFrobenius() {
+		double d = 0;
+		for(int k = 0; k < nonZeros(); k++)
+			d += values[k]*values[k];
+		return Math.sqrt(d);
+	}
+
+	/**
+	 * @return the maximum absolute column sum.
+	 */
+	public double norm1() {
+		double[] sums = new double[cols];
+		for(int k = 0; k < nonZeros(); k++)
+			sums[colIdx[k]] += Math.abs(values[k]);
+		double max = 0;
+		for(double d : sums)
+			max = Math.max(max, d);
+		return max;
+	}
+
+	/**
+	 * @return the maximum absolute row sum.
+	 */
+	public double normInf() {
+		double max = 0;
+		for(int i = 0; i < rows; i++) {
+			double d = 0;
+			for(int k = rowPtr[i]; k < rowPtr[i+1]; k++)
+				d += Math.abs(values[k]);
+			max = Math.max(max, d);
+		}
+		return max;
+	}
+
+	/**
+	 * @return a dense matrix containing the same elements.
+	 */
+	public MMatrix toMMatrix() {
+		double[] a = new double[rows*cols];
+		for(int i = 0; i < rows; i++)
+			for(int k = rowPtr[i]; k < rowPtr[i+1]; k++)
+				a[i*cols+colIdx[k]] = values[k];
+		return new MMatrix(rows, cols, a);
+	}
+
+	public boolean isSquare() {
+		return rows == cols;
+	}
+
+	/**
+	 * Returns the row pointers. Row <tt>i</tt> consists of the elements <tt>rowPtr[i]</tt> to <tt>rowPtr[i+1]</tt>
+	 * (exclusive) of {@link #getColumnIndices()} and {@link #getValues()}. The arrays are not copied.
+	 */
+	public int[] getRowPointers() {
+		return rowPtr;
+	}
+
+	/**
+	 * @return the column of every non-zero element. The array is not copied.
+	 */
+	public int[] getColumnIndices() {
+		return colIdx;
+	}
+
+	/**
+	 * @return the value of every non-zero element. The array is not copied.
+	 */
+	public double[] getValues() {
+		return values;
+	}
+
+	@Override
+	public MSparseMatrix negate() {
+		for(int k = 0; k < values.length; k++)
+			values[k] = -values[k];
+		return this;
+	}
+
+	/**
+	 * The inverse of a sparse matrix is generally dense, therefore it is not calculated in place.
+	 * @throws InvalidOperationException always.
+	 */
+	@Override
+	public MathObject invert() {
+		throw new InvalidOperationException("Sparse matrices cannot be inverted, convert it to a dense matrix using dense(A) first.");
+	}
+
+	@Override
+	public MSparseMatrix copy() {
+		return new MSparseMatrix(rows, cols, rowPtr.clone(), colIdx.clone(), values.clone());
+	}
+
+	@Override
+	public MSparseMatrix evaluate() {
+		return copy();
+	}
+
+	@Override
+	public boolean isNumeric() {
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		return TextPrinter.toText(this);
+	}
+
+	/**
+	 * Collects the elements of a sparse matrix as (row, column, value) triplets (coordinate format), in any order.
+	 * Elements with the same row and column are added.
+	 */
+	public static class Builder {
+		final int rows, cols;
+		int[] ri, ci;
+		double[] v;
+		int size = 0;
+
+		public Builder(int rows, int cols) {
+			checkShape(rows, cols);
+			this.rows = rows;
+			this.cols = cols;
+			ri = new int[16];
+			ci = new int[16];
+			v = new double[16];
+		}
+
+		/**
+		 * Adds <tt>d</tt> to the element at [i,j].
+		 * @return <tt>this</tt>
+		 * @throws IndexException if the index is outside of the matrix.
+		 */
+		public Builder add(int i, int j, double d) {
+			if(i < 0 || i >= rows || j < 0 || j >= cols)
+				throw new IndexException("Index [" + i + ", " + j + "] out of bounds for matrix of size (" + rows + ", " + cols + ")");
+			if(size == ri.length) {
+				ri = Arrays.copyOf(ri, size*2);
+				ci = Arrays.copyOf(ci, size*2);
+				v = Arrays.copyOf(v, size*2);
+			}
+			ri[size] = i;
+			ci[size] = j;
+			v[size++] = d;
+			return this;
+		}
+
+		/**
+		 * Creates the sparse matrix by sorting the triplets by row (counting sort) and column, after which
+		 * duplicates are added and zeros are removed.
+		 */
+		public MSparseMatrix build() {
+			int[] p = new int[rows+1];
+			for(int k = 0; k < size; k++)
+				p[ri[k]+1]++;
+			for(int i = 0; i < rows; i++)
+				p[i+1] += p[i];
+			int[] next = Arrays.copyOf(p, rows);
+			int[] order = new int[size];
+			for(int k = 0; k < size; k++)
+				order[next[ri[k]]++] = k;
+			int[] colIdx = new int[size];
+			double[] values = new double[size];
+			int[] rowPtr = new int[rows+1];
+			int nnz = 0;
+			long[] keys = new long[0];
+			for(int i = 0; i < rows; i++) {
+				int len = p[i+1]-p[i];
+				if(keys.length < len)
+					keys = new long[Math.max(len, keys.length*2)];
+				// sort the elements of this row by column, keeping the order of insertion for equal columns
+				for(int a = 0; a < len; a++) {
+					int k = order[p[i]+a];
+					keys[a] = ((long) ci[k] << 32) | k;
+				}
+				Arrays.sort(keys, 0, len);
+				for(int a = 0; a < len; a++) {
+					int k = (int) keys[a];
+					int j = (int) (keys[a] >>> 32);
+					if(nnz > rowPtr[i] && colIdx[nnz-1] == j)
+						values[nnz-1] += v[k];
+					else {
+						colIdx[nnz] = j;
+						values[nnz++] = v[k];
+					}
+				}
+				// remove the zeros of this row
+				int w = rowPtr[i];
+				for(int a = rowPtr[i]; a < nnz; a++)
+					if(values[a] != 0) {
+						colIdx[w] = colIdx[a];
+						values[w++] = values[a];
+					}
+				nnz = w;
+				rowPtr[i+1] = nnz;
+			}
+			return new MSparseMatrix(rows, cols, rowPtr, Arrays.copyOf(colIdx, nnz), Arrays.copyOf(values, nnz));
+		}
+	}
+}
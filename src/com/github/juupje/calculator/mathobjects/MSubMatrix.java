@@ -88,7 +88,7 @@ public class MSubMatrix extends MIndexable {
 			throw new ShapeException("Cannot set submatrix of shape " + shape + " to matrix of size " + m.shape());
 		for(int i = 0; i < rows; i++)
 			for(int j = 0; j < cols; j++)
-				p.m[i+rstart][j+cstart] = m.get(i, j).copy();
+				p.set(i+rstart, j+cstart, m.get(i, j).copy());
 	}
 	
 	/**
@@ -101,7 +101,7 @@ public class MSubMatrix extends MIndexable {
 			throw new ShapeException("Cannot set submatrix of shape " + shape + " to matrix of size " + m.shape());
 		for(int i = 0; i < rows; i++)
 			for(int j = 0; j < cols; j++)
-				p.m[i+rstart][j+cstart] = m.get(i, j);
+				p.set(i+rstart, j+cstart, m.get(i, j));
 	}
 	
 	/**
@@ -114,7 +114,7 @@ public class MSubMatrix extends MIndexable {
 		i += rstart;
 		MathObject[] v = new MathObject[cols];
 		for (int j = cstart; j < cend; j++)
-			v[j] = p.m[i][j];
+			v[j] = p.get(i, j);
 		return new MVector(v);
 	}
 
@@ -128,7 +128,7 @@ public class MSubMatrix extends MIndexable {
 		j += cstart;
 		MathObject[] v = new MathObject[rows];
 		for (int i = rstart; i < rend; i++)
-			v[i] = p.m[i][j];
+			v[i] = p.get(i, j);
 		return new MVector(v);
 	}
 	
@@ -156,7 +156,7 @@ public class MSubMatrix extends MIndexable {
 					"To add two matrices, they need to be the same shape! Shape: " + shape + " and " + other.shape());
 		for (int i = rstart; i < rend; i++)
 			for (int j = cstart; j < cend; j++)
-				p.m[i][j] = Operator.ADD.evaluate(p.m[i][j], other.get(i-rstart, j-cstart));
+				p.set(i, j, Operator.ADD.evaluate(p.get(i, j), other.get(i-rstart, j-cstart)));
 		return this;
 	}
 
@@ -176,7 +176,7 @@ public class MSubMatrix extends MIndexable {
 					+ shape + " and " + other.shape());
 		for (int i = rstart; i < rend; i++)
 			for (int j = cstart; j < cend; j++)
-				p.m[i][j] = Operator.SUBTRACT.evaluate(p.m[i][j], other.get(i-rstart, j-cstart));
+				p.set(i, j, Operator.SUBTRACT.evaluate(p.get(i, j), other.get(i-rstart, j-cstart)));
 		return this;
 	}
 
@@ -227,7 +227,7 @@ public class MSubMatrix extends MIndexable {
 				MathObject[][] matrix = new MathObject[rows][other.size()];
 				for (int i = 0; i < matrix.length; i++)
 					for (int j = 0; j < matrix[0].length; j++)
-						matrix[i][j] = Operator.MULTIPLY.evaluate(p.m[i+rstart][cstart], other.get(j));
+						matrix[i][j] = Operator.MULTIPLY.evaluate(p.get(i+rstart, cstart), other.get(j));
 				return new MMatrix(matrix);
 			} else
 				throw new ShapeException("matrix/row-vector product is only defined for an (n x 1)-matrix and n-vector, got " + shape + " and " + other.shape());
@@ -240,7 +240,7 @@ public class MSubMatrix extends MIndexable {
 			for (int i = rstart; i < rend; i++) {
 				MathObject b_i = null;
 				for (int j = 0; j < shape().cols(); j++) {
-					b_i = Operator.ADD.evaluate(b_i, Operator.MULTIPLY.evaluate(p.m[i+rstart][j+cstart], other.get(j)));
+					b_i = Operator.ADD.evaluate(b_i, Operator.MULTIPLY.evaluate(p.get(i+rstart, j+cstart), other.get(j)));
 				}
 				b[i-rstart] = b_i;
 			}
@@ -273,7 +273,7 @@ public class MSubMatrix extends MIndexable {
 				for (int i = 0; i < shape.cols(); i++) {
 					MathObject mo = null;
 					for (int j = 0; j < shape.rows(); j++)
-						mo = Operator.ADD.evaluate(mo, Operator.MULTIPLY.evaluate(p.m[rstart+j][cstart+i], other.get(j)));
+						mo = Operator.ADD.evaluate(mo, Operator.MULTIPLY.evaluate(p.get(rstart+j, cstart+i), other.get(j)));
 					v[i] = mo;
 				}
 				return new MVector(v).transpose();
@@ -286,7 +286,7 @@ public class MSubMatrix extends MIndexable {
 				MathObject[][] m = new MathObject[other.size][cols];
 				for (int i = 0; i < m.length; i++)
 					for (int j = 0; j < m[0].length; j++)
-						m[i][j] = Operator.MULTIPLY.evaluate(other.get(i), p.m[rstart][cstart+j]);
+						m[i][j] = Operator.MULTIPLY.evaluate(other.get(i), p.get(rstart, cstart+j));
 				return new MMatrix(m);
 			} else
 				throw new ShapeException(
@@ -306,7 +306,7 @@ public class MSubMatrix extends MIndexable {
 	public MSubMatrix multiply(MScalar other) {
 		for (int i = rstart; i < rend; i++)
 			for(int j = cstart; j < cend; j++)
-				p.m[i][j].multiply(other);
+				p.set(i, j, p.get(i, j).multiply(other));
 		return this;
 	}
 	
@@ -319,7 +319,7 @@ public class MSubMatrix extends MIndexable {
 		MathObject[][] m = new MathObject[rows][cols];
 		for(int i = 0; i < rows; i++)
 			for(int j = 0; j < cols; j++)
-				m[i][j] = p.m[i+rstart][j+cstart];
+				m[i][j] = p.get(i+rstart, j+cstart);
 		return m;
 	}
 	
@@ -335,7 +335,7 @@ public class MSubMatrix extends MIndexable {
 	public MSubMatrix negate() {
 		for(int i = rstart; i < rend; i++)
 			for(int j = cstart; j < cend; j++)
-				p.m[i][j].negate();
+				p.set(i, j, p.get(i, j).negate());
 		return this;
 	}
 
@@ -352,7 +352,7 @@ public class MSubMatrix extends MIndexable {
 		MathObject[][] m = new MathObject[rows][cols];
 		for(int i = 0; i < rows; i++)
 			for(int j = 0; j < cols; j++)
-				m[i][j] = p.m[i+rstart][j+cstart].copy();
+				m[i][j] = p.get(i+rstart, j+cstart).copy();
 		return new MMatrix(m);
 	}
 
@@ -360,7 +360,7 @@ public class MSubMatrix extends MIndexable {
 	public MathObject evaluate() {
 		for(int i = rstart; i < rend; i++)
 			for(int j = cstart; j < cend; j++)
-				p.m[i][j] = p.m[i][j].evaluate();
+				p.set(i, j, p.get(i, j).evaluate());
 		return this;
 	}
 
@@ -373,14 +373,14 @@ public class MSubMatrix extends MIndexable {
 	public boolean isNumeric() {
 		for(int i = rstart; i < rend; i++)
 			for(int j = cstart; j < cend; j++)
-				if(!p.m[i][j].isNumeric()) return false;
+				if(!p.get(i, j).isNumeric()) return false;
 		return true;
 	}
 	
 	@Override
 	public String toString() {
 		StringBuilder sb = new StringBuilder();
-		TextPrinter.toText(sb, p.m, rstart, rend-1, cstart, cend-1);
+		TextPrinter.toText(sb, p.elements(), rstart, rend-1, cstart, cend-1);
 		return sb.toString();
 	}
 }
@@ -3,6 +3,7 @@ package com.github.juupje.calculator.mathobjects;
 import java.util.function.Function;
 
 import com.github.juupje.calculator.algorithms.Norm;
+import com.github.juupje.calculator.algorithms.linalg.DoubleKernels;
 import com.github.juupje.calculator.helpers.exceptions.IndexException;
 import com.github.juupje.calculator.helpers.exceptions.InvalidOperationException;
 import com.github.juupje.calculator.helpers.exceptions.ShapeException;
@@ -197,6 +198,9 @@ public class MVector extends MIndexable {
 	public MathObject dot(MVector other) {
 		if(other.size() != size)
 			throw new ShapeException("The dot product is only defined for vectors of the same length. Lengths: " + size + ", " + other.size());
+		double[] x = values(), y;
+		if(x != null && (y = other.values()) != null && size > 0)
+			return new MReal(DoubleKernels.get().dot(x, 0, y, 0, size));
 		MathObject mo = null;
 		for(int i = 0; i < size; i++)
 			if(i == 0)
@@ -228,6 +232,20 @@ public class MVector extends MIndexable {
 	public MathObject[] elements() {
 		return v;
 	}
+	
+	/**
+	 * Returns the values of this vector if all of its elements are real numbers.
+	 * @return a new <tt>double[]</tt> with the values of the vector, or <tt>null</tt> if the vector contains non-real elements.
+	 */
+	public double[] values() {
+		double[] x = new double[size];
+		for (int i = 0; i < size; i++) {
+			if (v[i] == null || v[i].getClass() != MReal.class)
+				return null;
+			x[i] = ((MReal) v[i]).getValue();
+		}
+		return x;
+	}
 	/**
 	 * returns the i-th element of the vector. (Note that the vector starts at index 0).
 	 * @param i the element's index.
@@ -14,17 +14,14 @@ public class MVectorFunction extends MVector {
 	String[] vars;
 	Shape[] varShapes;
 	boolean defined;
-	HashMap<String, MathObject> paramMap;
 	
 	public MVectorFunction(String[] vars, Shape[] varShapes, boolean defined, Tree... trees) {
 		super(trees.length);
 		this.defined = defined;
 		this.vars = vars;
-		paramMap = new HashMap<String, MathObject>(vars.length);
 		v = new MFunction[trees.length];
 		for(int i = 0; i < trees.length; i++) {
 			MFunction func = new MFunction(vars, varShapes, trees[i], defined);
-			func.setParamMap(paramMap);
 			v[i] = defined ? func : func.evaluate();
 		}
 	}
@@ -33,7 +30,6 @@ public class MVectorFunction extends MVector {
 		super(vector.size());
 		this.defined = defined;
 		this.vars = vars;
-		paramMap = new HashMap<String, MathObject>(vars.length);
 		v = new MFunction[vector.size()];
 		for(int i = 0; i < vector.size(); i++) {
 			MFunction func = null;
@@ -42,7 +38,6 @@ public class MVectorFunction extends MVector {
 			} else { //vector[i] is a constant
 				func = new MFunction(vars, varShapes, new Tree(new Node<MathObject>(vector.get(i))), defined);
 			}
-			func.setParamMap(paramMap);
 			v[i] = defined ? func : func.evaluate();
 		}
 	}
@@ -51,10 +46,12 @@ public class MVectorFunction extends MVector {
 		if (paramVals.length != vars.length)
 			throw new IllegalArgumentException(
 					"Function expected " + vars.length + " arguments, got " + paramVals.length);
-		paramMap.clear();
-		for(int i = 0; i < paramVals.length; i++)
-			paramMap.put(vars[i], paramVals[i]);
-		return evaluateAt();
+		EvaluationContext ctx = EvaluationContext.acquire(paramVals);
+		try {
+			return evaluateAt(ctx);
+		} finally {
+			ctx.release();
+		}
 	}
 
 	public MathObject evaluateAt(String s)
@@ -67,20 +64,24 @@ public class MVectorFunction extends MVector {
 	}
 	
 	public MVector evaluateAt(HashMap<String, MathObject> map) throws TreeException {
-		setParamMap(map);
-		return evaluateAt();
-	}
-	
-	public void setParamMap(HashMap<String, MathObject> map) {
-		paramMap = map;
-		for(int i = 0; i < size; i++)
-			((MFunction) v[i]).setParamMap(map);
+		EvaluationContext ctx = EvaluationContext.acquire(vars.length);
+		for(int i = 0; i < vars.length; i++)
+			ctx.set(i, map.get(vars[i]));
+		try {
+			return evaluateAt(ctx);
+		} finally {
+			ctx.release();
+		}
 	}
 	
-	public MVector evaluateAt() throws TreeException {
+	/**
+	 * Evaluates every component at the arguments in the given context.
+	 * @see MFunction#evaluateAt(EvaluationContext)
+	 */
+	public MVector evaluateAt(EvaluationContext ctx) throws TreeException {
 		MathObject[] values = new MathObject[size];
 		for(int i = 0; i < size; i++)
-			values[i] = ((MFunction) v[i]).evaluateAt();
+			values[i] = ((MFunction) v[i]).evaluateAt(ctx);
 		return new MVector(values);
 	}
 	
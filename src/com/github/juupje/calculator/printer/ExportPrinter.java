@@ -21,6 +21,7 @@ import com.github.juupje.calculator.mathobjects.MMatrix;
 import com.github.juupje.calculator.mathobjects.MRecSequence;
 import com.github.juupje.calculator.mathobjects.MScalar;
 import com.github.juupje.calculator.mathobjects.MSequence;
+import com.github.juupje.calculator.mathobjects.MSparseMatrix;
 import com.github.juupje.calculator.mathobjects.MVector;
 import com.github.juupje.calculator.mathobjects.MVectorFunction;
 import com.github.juupje.calculator.mathobjects.MathObject;
@@ -55,6 +56,24 @@ public class ExportPrinter {
 					sb.append(';');
 			}
 			sb.append(']');
+		} else if(mo instanceof MSparseMatrix) {
+			MSparseMatrix s = (MSparseMatrix) mo;
+			sb.append("sparse(").append(s.shape().rows()).append(',').append(s.shape().cols());
+			if(s.nonZeros() > 0) {
+				int[] rowPtr = s.getRowPointers();
+				StringBuilder rows = new StringBuilder(), cols = new StringBuilder(), values = new StringBuilder();
+				for(int i = 0; i < s.shape().rows(); i++)
+					for(int k = rowPtr[i]; k < rowPtr[i+1]; k++) {
+						rows.append(i).append(',');
+						cols.append(s.getColumnIndices()[k]).append(',');
+						values.append(Printer.numToString(s.getValues()[k]).toUpperCase()).append(',');
+					}
+				rows.setLength(rows.length()-1);
+				cols.setLength(cols.length()-1);
+				values.setLength(values.length()-1);
+				sb.append(",[").append(rows).append("],[").append(cols).append("],[").append(values).append(']');
+			}
+			sb.append(')');
 		} else if(mo instanceof MIndexedObject) {
 			MathObject[] v = ((MIndexedObject) mo).elements();
 			sb.append('[');
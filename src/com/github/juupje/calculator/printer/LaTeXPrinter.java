@@ -13,6 +13,7 @@ import com.github.juupje.calculator.mathobjects.MReal;
 import com.github.juupje.calculator.mathobjects.MRecSequence;
 import com.github.juupje.calculator.mathobjects.MScalar;
 import com.github.juupje.calculator.mathobjects.MSequence;
+import com.github.juupje.calculator.mathobjects.MSparseMatrix;
 import com.github.juupje.calculator.mathobjects.MVector;
 import com.github.juupje.calculator.mathobjects.MathObject;
 import com.github.juupje.calculator.settings.Settings;
@@ -315,6 +316,8 @@ public class LaTeXPrinter {
 			toLatex(sb, (MVector) mo);
 		else if (mo instanceof MMatrix)
 			toLatex(sb, (MMatrix) mo);
+		else if (mo instanceof MSparseMatrix)
+			toLatex(sb, ((MSparseMatrix) mo).toMMatrix());
 		else if (mo instanceof MIndexedObject) 
 			toLatex(sb, (MIndexedObject) mo);
 		else if (mo instanceof MExpression)
@@ -10,6 +10,7 @@ import com.github.juupje.calculator.mathobjects.MMatrix;
 import com.github.juupje.calculator.mathobjects.MRecSequence;
 import com.github.juupje.calculator.mathobjects.MScalar;
 import com.github.juupje.calculator.mathobjects.MSequence;
+import com.github.juupje.calculator.mathobjects.MSparseMatrix;
 import com.github.juupje.calculator.mathobjects.MVector;
 import com.github.juupje.calculator.mathobjects.MathObject;
 import com.github.juupje.calculator.mathobjects.Shape;
@@ -158,6 +159,25 @@ public class TextPrinter {
 		toText(sb, mo.elements());
 	}
 
+	/**
+	 * Converts the given <tt>MSparseMatrix</tt> to a text format and returns it as a
+	 * <tt>String</tt>. Only the non-zero elements are printed, one per line, preceded by their index.
+	 * 
+	 * @param mo the {@link MSparseMatrix} to be converted to text.
+	 * @return a <tt>String</tt> containing the argument in text format.
+	 */
+	public static void toText(StringBuilder sb, MSparseMatrix mo) {
+		Shape shape = mo.shape();
+		sb.append("Sparse ").append(shape.rows()).append("x").append(shape.cols()).append(" matrix with ")
+			.append(mo.nonZeros()).append(" non-zero elements");
+		int[] rowPtr = mo.getRowPointers();
+		int[] colIdx = mo.getColumnIndices();
+		double[] values = mo.getValues();
+		for(int i = 0; i < shape.rows(); i++)
+			for(int k = rowPtr[i]; k < rowPtr[i+1]; k++)
+				sb.append("\n  (").append(i).append(", ").append(colIdx[k]).append(")  ").append(Printer.numToString(values[k]));
+	}
+
 	/**
 	 * Converts the given <tt>MIndexedObject</tt> to a text format and returns it as a
 	 * <tt>String</tt>.
@@ -368,6 +388,8 @@ public class TextPrinter {
 			toText(sb, (MVector) mo);
 		else if (mo instanceof MMatrix)
 			toText(sb, (MMatrix) mo);
+		else if (mo instanceof MSparseMatrix)
+			toText(sb, (MSparseMatrix) mo);
 		else if (mo instanceof MIndexedObject) 
 			toText(sb, (MIndexedObject) mo);
 		else if (mo instanceof MExpression)
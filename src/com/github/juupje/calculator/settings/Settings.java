@@ -17,10 +17,16 @@ public enum Settings {
 	PRECISION(Integer.class),
 	COMPLEX_ENABLED(Boolean.class),
 	ERROR_SIGNIFICANCE(Integer.class),
+	JIT_THRESHOLD(Integer.class),
+	SIMD_ENABLED(Boolean.class),
 
 	//Algoritm stuff
 	TIMER_DEF_RUNS(Integer.class),
 	INT_DEF_STEPS(Integer.class),
+	INT_PARALLEL(Boolean.class),
+	EINSUM_THREADS(Integer.class),
+	EINSUM_CACHE(Integer.class),
+	FACTORIZATION_CACHE(Integer.class),
 	ABC_SHOW_TEXT(Boolean.class),
 
 	//Display stuff
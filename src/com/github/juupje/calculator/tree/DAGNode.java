@@ -0,0 +1,82 @@
+package com.github.juupje.calculator.tree;
+
+/**
+ * A node of an {@link ExpressionDAG}. Unlike a {@link Node}, a <tt>DAGNode</tt> can not be changed after it is
+ * created and has no parent, so that it can be shared by all nodes which have it as a child.
+ * <br/>
+ * Nodes are only created by {@link ExpressionDAG#node(Object, DAGNode, DAGNode)}, which returns the existing node if
+ * there already is a node with the same data and children. Therefore, two nodes of the same DAG represent the same
+ * expression if and only if they are the same object.
+ * @author Joep Geuskens
+ */
+public final class DAGNode {
+
+	public final Object data;
+	final DAGNode left, right;
+	final int id;
+	private final int hash;
+	int parents = 0;
+
+	DAGNode(Object data, DAGNode left, DAGNode right, int id) {
+		this.data = data;
+		this.left = left;
+		this.right = right;
+		this.id = id;
+		hash = (ExpressionDAG.hashData(data) * 31 + System.identityHashCode(left)) * 31 + System.identityHashCode(right);
+	}
+
+	public Object getData() {
+		return data;
+	}
+
+	public DAGNode left() {
+		return left;
+	}
+
+	public DAGNode right() {
+		return right;
+	}
+
+	public boolean isInternal() {
+		return !(left == null && right == null);
+	}
+
+	/**
+	 * @return the index of this node in {@link ExpressionDAG#nodes()}. The children of a node always have a lower index
+	 * than the node itself.
+	 */
+	public int getId() {
+		return id;
+	}
+
+	/**
+	 * @return the number of nodes in the DAG which have this node as a child. If this is more than one, the expression
+	 * of this node is shared.
+	 */
+	public int getParents() {
+		return parents;
+	}
+
+	/**
+	 * The children are compared by identity, which is sufficient because they are already unique within the DAG.
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		if(this == obj)
+			return true;
+		if(!(obj instanceof DAGNode))
+			return false;
+		DAGNode n = (DAGNode) obj;
+		return hash == n.hash && left == n.left && right == n.right && ExpressionDAG.sameData(data, n.data);
+	}
+
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+
+	@Override
+	public String toString() {
+		return data == null ? "null" : data.toString();
+	}
+}
@@ -0,0 +1,143 @@
+package com.github.juupje.calculator.tree;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.github.juupje.calculator.main.Parameter;
+import com.github.juupje.calculator.main.Variable;
+import com.github.juupje.calculator.mathobjects.MReal;
+import com.github.juupje.calculator.mathobjects.MathObject;
+
+/**
+ * A directed acyclic graph representing one or more expressions, in which every subexpression is stored only once
+ * (the nodes are <i>hash-consed</i>). When a {@link Tree} is converted by {@link #intern(Node)}, identical subtrees,
+ * like both occurrences of <tt>sin(x)</tt> in <tt>sin(x)^2+sin(x)*cos(x)</tt>, become the same {@link DAGNode}.
+ * Whether a subexpression is shared can then be seen from {@link DAGNode#getParents()}, and comparing two
+ * subexpressions only takes a comparison of references.
+ * <p>
+ * Two nodes are considered the same if they have the same children and the same data: the same operator, function
+ * or constant, a variable with the same name (and parameter index), or a real number with the same value. Any other
+ * {@link MathObject} (like vectors, matrices or functions) is only the same as itself.
+ * </p>
+ * The leaves of an expression are not copied when they are interned, so the tree should not be changed as long as
+ * the DAG is used.
+ * @author Joep Geuskens
+ */
+public class ExpressionDAG {
+
+	private final HashMap<DAGNode, DAGNode> table = new HashMap<>();
+	private final ArrayList<DAGNode> nodes = new ArrayList<>();
+
+	/**
+	 * Returns the node with the given data and children, creating it if the DAG does not contain it yet.
+	 * @param data the data of the node (an operator, function, variable or {@link MathObject})
+	 * @param left the left child, which should be a node of this DAG (or <tt>null</tt>)
+	 * @param right the right child, which should be a node of this DAG (or <tt>null</tt>)
+	 * @return the unique node with the given data and children.
+	 */
+	public DAGNode node(Object data, DAGNode left, DAGNode right) {
+		DAGNode n = new DAGNode(data, left, right, nodes.size());
+		DAGNode existing = table.get(n);
+		if(existing != null)
+			return existing;
+		table.put(n, n);
+		nodes.add(n);
+		if(left != null)
+			left.parents++;
+		if(right != null)
+			right.parents++;
+		return n;
+	}
+
+	public DAGNode node(Object data, DAGNode left) {
+		return node(data, left, null);
+	}
+
+	public DAGNode node(Object data) {
+		return node(data, null, null);
+	}
+
+	/**
+	 * Adds the subtree of <tt>n</tt> to this DAG.
+	 * @param n the root of the subtree
+	 * @return the node representing <tt>n</tt>.
+	 */
+	public DAGNode intern(Node<?> n) {
+		return intern(n, null);
+	}
+
+	/**
+	 * Adds the subtree of <tt>n</tt> to this DAG, storing the node representing every node of the subtree in the given
+	 * map.
+	 * @param n the root of the subtree
+	 * @param nodes the map in which the nodes are stored, or <tt>null</tt>.
+	 * @return the node representing <tt>n</tt>.
+	 */
+	public DAGNode intern(Node<?> n, Map<Node<?>, DAGNode> nodes) {
+		DAGNode left = n.left() == null ? null : intern(n.left(), nodes);
+		DAGNode right = n.right() == null ? null : intern(n.right(), nodes);
+		DAGNode d = node(n.data, left, right);
+		if(nodes != null)
+			nodes.put(n, d);
+		return d;
+	}
+
+	/**
+	 * Expands the expression of the given node into a tree. Shared nodes are copied for every occurrence, as are the
+	 * {@link MathObject}s in the leaves (like {@link Node#copy()} does).
+	 * @param n a node of this DAG
+	 * @return the root of the new tree.
+	 */
+	public Node<?> toTree(DAGNode n) {
+		Node<?> node;
+		if(n.data instanceof MathObject)
+			node = new Node<MathObject>(((MathObject) n.data).copy());
+		else
+			node = new Node<Object>(n.data);
+		if(n.left != null)
+			node.left(toTree(n.left));
+		if(n.right != null)
+			node.right(toTree(n.right));
+		return node;
+	}
+
+	/**
+	 * @return the number of nodes in this DAG.
+	 */
+	public int size() {
+		return nodes.size();
+	}
+
+	/**
+	 * @return all nodes of this DAG, ordered by {@link DAGNode#getId()}. Every node comes after its children.
+	 */
+	public List<DAGNode> nodes() {
+		return Collections.unmodifiableList(nodes);
+	}
+
+	static boolean sameData(Object a, Object b) {
+		if(a == b)
+			return true;
+		if(a == null || b == null || a.getClass() != b.getClass())
+			return false;
+		if(a instanceof Variable) {
+			if(a instanceof Parameter && ((Parameter) a).getIndex() != ((Parameter) b).getIndex())
+				return false;
+			return ((Variable) a).getName().equals(((Variable) b).getName());
+		}
+		if(a.getClass() == MReal.class)
+			return Double.compare(((MReal) a).getValue(), ((MReal) b).getValue()) == 0;
+		return false;
+	}
+
+	static int hashData(Object data) {
+		if(data instanceof Variable)
+			return ((Variable) data).getName().hashCode();
+		if(data != null && data.getClass() == MReal.class)
+			return Double.hashCode(((MReal) data).getValue());
+		return System.identityHashCode(data);
+	}
+}
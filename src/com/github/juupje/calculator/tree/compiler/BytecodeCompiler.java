@@ -0,0 +1,356 @@
+package com.github.juupje.calculator.tree.compiler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.HashMap;
+
+import com.github.juupje.calculator.main.Calculator;
+
+/**
+ * Translates a {@link ScalarProgram} into a JVM class implementing {@link CompiledFunction}.
+ * The class is defined as a hidden class (see {@link MethodHandles.Lookup#defineHiddenClass(byte[], boolean, MethodHandles.Lookup.ClassOption...)}),
+ * which means that it can be unloaded as soon as the returned {@code CompiledFunction} is no longer referenced.
+ * <p>
+ * Each instruction of the program is mapped onto the equivalent bytecode, using the operand stack of the JVM
+ * instead of the <tt>double[]</tt> stack of the interpreter. Calls to {@link Math} are emitted directly, such that
+ * they can be inlined by the JIT compiler. The local slots of the program become local variables of the method.
+ * Instructions which might need to fall back to the tree walker delegate to the same methods as the interpreter in
+ * {@code ScalarProgram}.
+ * </p>
+ * @author Joep Geuskens
+ */
+public class BytecodeCompiler {
+
+	private static final String PROGRAM = "com/github/juupje/calculator/tree/compiler/ScalarProgram";
+	private static final String INTERFACE = "com/github/juupje/calculator/tree/compiler/CompiledFunction";
+	private static final String CLASS_NAME = "com/github/juupje/calculator/tree/compiler/GeneratedFunction";
+	private static final String HOLDER = "Lcom/github/juupje/calculator/main/VariableHolder;";
+	private static final String HOLDERS = "[" + HOLDER;
+
+	// ###### constant pool tags #######
+	private static final int UTF8 = 1, DOUBLE = 6, CLASS = 7, FIELDREF = 9, METHODREF = 10, NAME_AND_TYPE = 12;
+
+	// ###### opcodes #######
+	private static final int ICONST_0 = 0x03, DCONST_0 = 0x0e, DCONST_1 = 0x0f, BIPUSH = 0x10, SIPUSH = 0x11,
+			LDC2_W = 0x14, DLOAD = 0x18, DSTORE = 0x39, DUP2 = 0x5c, WIDE = 0xc4, ALOAD_0 = 0x2a, ALOAD_1 = 0x2b, DALOAD = 0x31, AALOAD = 0x32, DADD = 0x63, DSUB = 0x67,
+			DMUL = 0x6b, DDIV = 0x6f, DNEG = 0x77, DRETURN = 0xaf, RETURN = 0xb1, GETFIELD = 0xb4, PUTFIELD = 0xb5,
+			INVOKESPECIAL = 0xb7, INVOKESTATIC = 0xb8;
+
+	private ByteArrayOutputStream pool = new ByteArrayOutputStream();
+	private DataOutputStream poolOut = new DataOutputStream(pool);
+	private HashMap<String, Integer> entries = new HashMap<>();
+	private int poolSize = 1;
+	private int globalsField;
+
+	private BytecodeCompiler() {}
+
+	/**
+	 * Compiles the given program into a hidden class.
+	 * @param program the program to be compiled
+	 * @return a new instance of the generated class, or <tt>null</tt> if the class could not be created.
+	 */
+	public static CompiledFunction compile(ScalarProgram program) {
+		try {
+			byte[] bytes = new BytecodeCompiler().toClass(program);
+			if(bytes == null)
+				return null;
+			MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(bytes, true);
+			return (CompiledFunction) lookup.findConstructor(lookup.lookupClass(),
+					MethodType.methodType(void.class, program.globals.getClass())).invoke(program.globals);
+		} catch(Throwable e) {
+			Calculator.ioHandler.debug("Could not compile function to bytecode: " + e.getMessage());
+			return null;
+		}
+	}
+
+	private byte[] toClass(ScalarProgram program) throws IOException {
+		int thisClass = classEntry(CLASS_NAME);
+		int superClass = classEntry("java/lang/Object");
+		int iface = classEntry(INTERFACE);
+		int codeName = utf8("Code");
+		int initName = utf8("<init>");
+		int initDesc = utf8("(" + HOLDERS + ")V");
+		int objectInit = methodref("java/lang/Object", "<init>", "()V");
+		int fieldName = utf8("globals");
+		int fieldDesc = utf8(HOLDERS);
+		globalsField = fieldref(CLASS_NAME, "globals", HOLDERS);
+		int evaluateName = utf8("evaluate");
+		int evaluateDesc = utf8("([D)D");
+		byte[] code = translate(program);
+		if(code == null)
+			return null;
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(0xCAFEBABE);
+		out.writeShort(0);
+		out.writeShort(59); //Java 15, the generated code has no branches so it needs no StackMapTable
+		out.writeShort(poolSize);
+		out.write(pool.toByteArray());
+		out.writeShort(0x1031); //public final super synthetic
+		out.writeShort(thisClass);
+		out.writeShort(superClass);
+		out.writeShort(1);
+		out.writeShort(iface);
+		//private final VariableHolder[] globals
+		out.writeShort(1);
+		out.writeShort(0x0012);
+		out.writeShort(fieldName);
+		out.writeShort(fieldDesc);
+		out.writeShort(0);
+		out.writeShort(2); //methods
+
+		//constructor, which stores the holders of the global variables
+		byte[] init = new byte[] {(byte) ALOAD_0, (byte) INVOKESPECIAL, (byte) (objectInit >> 8), (byte) objectInit,
+				(byte) ALOAD_0, (byte) ALOAD_1, (byte) PUTFIELD, (byte) (globalsField >> 8), (byte) globalsField, (byte) RETURN};
+		method(out, 0x0001, initName, initDesc, codeName, 2, 2, init);
+		//double evaluate(double[] args)
+		method(out, 0x0001, evaluateName, evaluateDesc, codeName, 2 * program.stackSize + 4, 2 + 2 * program.localCount, code);
+		out.writeShort(0); //attributes
+		return bytes.toByteArray();
+	}
+
+	private void method(DataOutputStream out, int access, int name, int desc, int codeName, int maxStack, int maxLocals,
+			byte[] code) throws IOException {
+		out.writeShort(access);
+		out.writeShort(name);
+		out.writeShort(desc);
+		out.writeShort(1);
+		out.writeShort(codeName);
+		out.writeInt(12 + code.length);
+		out.writeShort(maxStack);
+		out.writeShort(maxLocals);
+		out.writeInt(code.length);
+		out.write(code);
+		out.writeShort(0); //exception table
+		out.writeShort(0); //attributes
+	}
+
+	/**
+	 * Translates the instructions of the program to bytecode.
+	 * @return the bytecode, or <tt>null</tt> if the method would be too large.
+	 */
+	private byte[] translate(ScalarProgram program) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		int[] code = program.code;
+		for(int pc = 0; pc < code.length; pc++) {
+			switch(code[pc]) {
+			case ScalarProgram.CONST:
+				double d = program.constants[code[++pc]];
+				if(Double.doubleToRawLongBits(d) == 0L)
+					out.writeByte(DCONST_0);
+				else if(d == 1)
+					out.writeByte(DCONST_1);
+				else {
+					out.writeByte(LDC2_W);
+					out.writeShort(doubleEntry(d));
+				}
+				break;
+			case ScalarProgram.STORE:
+				out.writeByte(DUP2);
+				local(out, DSTORE, code[++pc]);
+				break;
+			case ScalarProgram.LOAD:
+				local(out, DLOAD, code[++pc]);
+				break;
+			case ScalarProgram.ARG:
+				out.writeByte(ALOAD_1);
+				pushInt(out, code[++pc]);
+				out.writeByte(DALOAD);
+				break;
+			case ScalarProgram.GLOBAL:
+				out.writeByte(ALOAD_0);
+				out.writeByte(GETFIELD);
+				out.writeShort(globalsField);
+				pushInt(out, code[++pc]);
+				out.writeByte(AALOAD);
+				invokeStatic(out, PROGRAM, "global", "(" + HOLDER + ")D");
+				break;
+			case ScalarProgram.ADD:
+				out.writeByte(DADD);
+				break;
+			case ScalarProgram.SUBTRACT:
+				out.writeByte(DSUB);
+				break;
+			case ScalarProgram.MULTIPLY:
+				out.writeByte(DMUL);
+				break;
+			case ScalarProgram.DIVIDE:
+				out.writeByte(DDIV);
+				break;
+			case ScalarProgram.NEGATE:
+				out.writeByte(DNEG);
+				break;
+			case ScalarProgram.POWER:
+				invokeStatic(out, "java/lang/Math", "pow", "(DD)D");
+				break;
+			case ScalarProgram.MOD:
+				invokeStatic(out, PROGRAM, "mod", "(DD)D");
+				break;
+			case ScalarProgram.SIND:
+			case ScalarProgram.COSD:
+			case ScalarProgram.TAND:
+				invokeMath(out, "toRadians");
+				invokeMath(out, code[pc] == ScalarProgram.SIND ? "sin" : (code[pc] == ScalarProgram.COSD ? "cos" : "tan"));
+				break;
+			case ScalarProgram.ASINH:
+				invokeStatic(out, "com/github/juupje/calculator/algorithms/functions/TrigFunctions", "asinh", "(D)D");
+				break;
+			default:
+				String name = mathFunction(code[pc]);
+				if(name != null)
+					invokeMath(out, name);
+				else {
+					//let the interpreter handle this one
+					pushInt(out, code[pc]);
+					invokeStatic(out, PROGRAM, "apply", "(DI)D");
+				}
+			}
+		}
+		out.writeByte(DRETURN);
+		return bytes.size() > 0xFFFF ? null : bytes.toByteArray();
+	}
+
+	/**
+	 * @return the name of the method in {@link Math} which exactly matches the given instruction,
+	 * or <tt>null</tt> if there is no such method.
+	 */
+	private static String mathFunction(int op) {
+		switch(op) {
+		case ScalarProgram.SIN:
+			return "sin";
+		case ScalarProgram.COS:
+			return "cos";
+		case ScalarProgram.TAN:
+			return "tan";
+		case ScalarProgram.SINH:
+			return "sinh";
+		case ScalarProgram.COSH:
+			return "cosh";
+		case ScalarProgram.TANH:
+			return "tanh";
+		case ScalarProgram.ATAN:
+			return "atan";
+		case ScalarProgram.ABS:
+			return "abs";
+		case ScalarProgram.LN:
+			return "log";
+		case ScalarProgram.LOG:
+			return "log10";
+		case ScalarProgram.EXP:
+			return "exp";
+		case ScalarProgram.TODEG:
+			return "toDegrees";
+		case ScalarProgram.TORAD:
+			return "toRadians";
+		default:
+			return null;
+		}
+	}
+
+	private void invokeMath(DataOutputStream out, String name) throws IOException {
+		invokeStatic(out, "java/lang/Math", name, "(D)D");
+	}
+
+	private void invokeStatic(DataOutputStream out, String owner, String name, String desc) throws IOException {
+		out.writeByte(INVOKESTATIC);
+		out.writeShort(methodref(owner, name, desc));
+	}
+
+	/**
+	 * Emits a load or store of the given local slot of the program. The slots are stored after <tt>this</tt> and the
+	 * argument array, and take up two variables each.
+	 */
+	private static void local(DataOutputStream out, int opcode, int slot) throws IOException {
+		int index = 2 + 2 * slot;
+		if(index < 256) {
+			out.writeByte(opcode);
+			out.writeByte(index);
+		} else {
+			out.writeByte(WIDE);
+			out.writeByte(opcode);
+			out.writeShort(index);
+		}
+	}
+
+	private static void pushInt(DataOutputStream out, int i) throws IOException {
+		if(i <= 5)
+			out.writeByte(ICONST_0 + i);
+		else if(i < 128) {
+			out.writeByte(BIPUSH);
+			out.writeByte(i);
+		} else {
+			out.writeByte(SIPUSH);
+			out.writeShort(i);
+		}
+	}
+
+	// ###### constant pool #######
+
+	private int utf8(String s) throws IOException {
+		Integer index = entries.get("U" + s);
+		if(index != null)
+			return index;
+		poolOut.writeByte(UTF8);
+		poolOut.writeUTF(s);
+		return register("U" + s, 1);
+	}
+
+	private int classEntry(String name) throws IOException {
+		Integer index = entries.get("C" + name);
+		if(index != null)
+			return index;
+		int utf = utf8(name);
+		poolOut.writeByte(CLASS);
+		poolOut.writeShort(utf);
+		return register("C" + name, 1);
+	}
+
+
+	private int doubleEntry(double d) throws IOException {
+		String key = "D" + Double.doubleToRawLongBits(d);
+		Integer index = entries.get(key);
+		if(index != null)
+			return index;
+		poolOut.writeByte(DOUBLE);
+		poolOut.writeDouble(d);
+		return register(key, 2); //doubles take up two entries
+	}
+
+	private int methodref(String owner, String name, String desc) throws IOException {
+		return memberref(METHODREF, owner, name, desc);
+	}
+
+	private int fieldref(String owner, String name, String desc) throws IOException {
+		return memberref(FIELDREF, owner, name, desc);
+	}
+
+	private int memberref(int tag, String owner, String name, String desc) throws IOException {
+		String key = tag + owner + "." + name + desc;
+		Integer index = entries.get(key);
+		if(index != null)
+			return index;
+		int cls = classEntry(owner);
+		int nameIndex = utf8(name);
+		int descIndex = utf8(desc);
+		poolOut.writeByte(NAME_AND_TYPE);
+		poolOut.writeShort(nameIndex);
+		poolOut.writeShort(descIndex);
+		int nat = register("N" + name + desc, 1);
+		poolOut.writeByte(tag);
+		poolOut.writeShort(cls);
+		poolOut.writeShort(nat);
+		return register(key, 1);
+	}
+
+	private int register(String key, int size) {
+		int index = poolSize;
+		entries.put(key, index);
+		poolSize += size;
+		return index;
+	}
+}
@@ -0,0 +1,16 @@
+package com.github.juupje.calculator.tree.compiler;
+
+/**
+ * A function of one or more real numbers, compiled from an expression tree.
+ * @see ScalarProgram
+ * @see BytecodeCompiler
+ */
+public interface CompiledFunction {
+
+	/**
+	 * @param args the values of the parameters of the function.
+	 * @return the value of the function at the given arguments.
+	 * @throws ScalarProgram.Fallback if the result cannot be calculated using real numbers only.
+	 */
+	public double evaluate(double... args);
+}
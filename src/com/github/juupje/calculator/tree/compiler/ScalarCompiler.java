@@ -0,0 +1,236 @@
+package com.github.juupje.calculator.tree.compiler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import com.github.juupje.calculator.algorithms.functions.Function;
+import com.github.juupje.calculator.main.BoundVariable;
+import com.github.juupje.calculator.main.Operator;
+import com.github.juupje.calculator.main.Parameter;
+import com.github.juupje.calculator.main.Variable;
+import com.github.juupje.calculator.main.VariableHolder;
+import com.github.juupje.calculator.main.Variables;
+import com.github.juupje.calculator.mathobjects.MConst;
+import com.github.juupje.calculator.mathobjects.MReal;
+import com.github.juupje.calculator.tree.DAGNode;
+import com.github.juupje.calculator.tree.ExpressionDAG;
+import com.github.juupje.calculator.tree.Tree;
+
+/**
+ * Compiles a {@link Tree} into a {@link ScalarProgram}. Only trees consisting of real numbers, real constants,
+ * (function) parameters, variables and the scalar operators and functions can be compiled.
+ * For any other tree (containing for example vectors, matrices, complex numbers or calls to other functions)
+ * {@link #compile(Tree, String[])} returns <tt>null</tt>, in which case the tree itself should be evaluated.
+ * <br/>
+ * The tree is compiled from its {@link ExpressionDAG}, so a subtree which occurs more than once is calculated only
+ * once: the first time its value is stored in a local slot, after which it is loaded from that slot.
+ * @author Joep Geuskens
+ */
+public class ScalarCompiler {
+
+	private String[] params;
+	private ArrayList<Integer> code = new ArrayList<>();
+	private ArrayList<Double> constants = new ArrayList<>();
+	private ArrayList<VariableHolder> globals = new ArrayList<>();
+	private int depth = 0, maxDepth = 0;
+	private int[] slots;
+	private int locals = 0;
+
+	private ScalarCompiler(String[] params, int size) {
+		this.params = params;
+		slots = new int[size];
+		Arrays.fill(slots, -1);
+	}
+
+	/**
+	 * Tries to compile the given tree.
+	 * @param tree the tree to be compiled.
+	 * @param params the names of the parameters, which will be read from the argument array passed to
+	 * {@link ScalarProgram#evaluate(double...)}. Other variables are read from their {@link VariableHolder}
+	 * on evaluation.
+	 * @return the compiled program, or <tt>null</tt> if the tree cannot be compiled.
+	 */
+	public static ScalarProgram compile(Tree tree, String[] params) {
+		if(tree == null || tree.getRoot() == null)
+			return null;
+		ExpressionDAG dag = new ExpressionDAG();
+		DAGNode root = dag.intern(tree.getRoot());
+		ScalarCompiler compiler = new ScalarCompiler(params, dag.size());
+		if(!compiler.emit(root))
+			return null;
+		int[] code = new int[compiler.code.size()];
+		for(int i = 0; i < code.length; i++)
+			code[i] = compiler.code.get(i);
+		double[] constants = new double[compiler.constants.size()];
+		for(int i = 0; i < constants.length; i++)
+			constants[i] = compiler.constants.get(i);
+		return new ScalarProgram(code, constants, compiler.globals.toArray(new VariableHolder[0]), compiler.maxDepth, compiler.locals, params.length);
+	}
+
+	/**
+	 * Emits the instructions for <tt>n</tt> and its children (in post-order). If <tt>n</tt> is shared and has already
+	 * been emitted, its value is loaded instead.
+	 * @return <tt>false</tt> if the node (or one of its children) cannot be compiled.
+	 */
+	private boolean emit(DAGNode n) {
+		if(slots[n.getId()] != -1) {
+			instruction(ScalarProgram.LOAD, 1, slots[n.getId()]);
+			return true;
+		}
+		if(!emitNode(n))
+			return false;
+		if(n.isInternal() && n.getParents() > 1) {
+			slots[n.getId()] = locals++;
+			instruction(ScalarProgram.STORE, 0, slots[n.getId()]);
+		}
+		return true;
+	}
+
+	private boolean emitNode(DAGNode n) {
+		if(n.data instanceof Operator) {
+			int op = opcode((Operator) n.data);
+			if(op == -1 || n.left() == null)
+				return false;
+			boolean unary = op == ScalarProgram.NEGATE || op == ScalarProgram.INVERT;
+			if(unary != (n.right() == null))
+				return false;
+			if(!emit(n.left()) || (!unary && !emit(n.right())))
+				return false;
+			instruction(op, unary ? 0 : -1);
+			return true;
+		} else if(n.data instanceof Function) {
+			if(n.data == Function.CONJ) //the conjugate of a real number is the number itself
+				return n.left() != null && n.right() == null && emit(n.left());
+			int op = opcode((Function) n.data);
+			if(op == -1 || n.left() == null || n.right() != null || !emit(n.left()))
+				return false;
+			instruction(op, 0);
+			return true;
+		}
+		if(n.isInternal())
+			return false; //function calls, element access, etc.
+		if(n.data instanceof Variable) {
+			String name = ((Variable) n.data).getName();
+			if(n.data instanceof Parameter) {
+				instruction(ScalarProgram.ARG, 1, ((Parameter) n.data).getIndex());
+				return true;
+			}
+			for(int i = 0; i < params.length; i++)
+				if(params[i].equals(name)) {
+					instruction(ScalarProgram.ARG, 1, i);
+					return true;
+				}
+			VariableHolder holder = n.data instanceof BoundVariable ? ((BoundVariable) n.data).getHolder() : Variables.holder(name);
+			int index = globals.indexOf(holder);
+			if(index == -1) {
+				index = globals.size();
+				globals.add(holder);
+			}
+			instruction(ScalarProgram.GLOBAL, 1, index);
+			return true;
+		} else if(n.data instanceof MConst) {
+			MConst c = (MConst) n.data;
+			if(c.evaluate().getClass() != MReal.class)
+				return false;
+			constant(((MReal) c.evaluate()).getValue());
+			return true;
+		} else if(n.data != null && n.data.getClass() == MReal.class) {
+			constant(((MReal) n.data).getValue());
+			return true;
+		}
+		return false;
+	}
+
+	private void constant(double d) {
+		int index = constants.indexOf(d);
+		if(index == -1) {
+			index = constants.size();
+			constants.add(d);
+		}
+		instruction(ScalarProgram.CONST, 1, index);
+	}
+
+	private void instruction(int op, int stackChange, int... operands) {
+		code.add(op);
+		for(int operand : operands)
+			code.add(operand);
+		depth += stackChange;
+		maxDepth = Math.max(depth, maxDepth);
+	}
+
+	private static int opcode(Operator op) {
+		switch(op) {
+		case ADD:
+			return ScalarProgram.ADD;
+		case SUBTRACT:
+			return ScalarProgram.SUBTRACT;
+		case MULTIPLY:
+			return ScalarProgram.MULTIPLY;
+		case DIVIDE:
+			return ScalarProgram.DIVIDE;
+		case POWER:
+			return ScalarProgram.POWER;
+		case MOD:
+			return ScalarProgram.MOD;
+		case NEGATE:
+			return ScalarProgram.NEGATE;
+		case INVERT:
+			return ScalarProgram.INVERT;
+		default:
+			return -1;
+		}
+	}
+
+	private static int opcode(Function f) {
+		switch(f) {
+		case SIN:
+			return ScalarProgram.SIN;
+		case COS:
+			return ScalarProgram.COS;
+		case TAN:
+			return ScalarProgram.TAN;
+		case SIND:
+			return ScalarProgram.SIND;
+		case COSD:
+			return ScalarProgram.COSD;
+		case TAND:
+			return ScalarProgram.TAND;
+		case SINH:
+			return ScalarProgram.SINH;
+		case COSH:
+			return ScalarProgram.COSH;
+		case TANH:
+			return ScalarProgram.TANH;
+		case ASIN:
+			return ScalarProgram.ASIN;
+		case ACOS:
+			return ScalarProgram.ACOS;
+		case ATAN:
+			return ScalarProgram.ATAN;
+		case ASINH:
+			return ScalarProgram.ASINH;
+		case ACOSH:
+			return ScalarProgram.ACOSH;
+		case ATANH:
+			return ScalarProgram.ATANH;
+		case SQRT:
+			return ScalarProgram.SQRT;
+		case ABS:
+			return ScalarProgram.ABS;
+		case LN:
+			return ScalarProgram.LN;
+		case LOG:
+			return ScalarProgram.LOG;
+		case EXP:
+			return ScalarProgram.EXP;
+		case FACT:
+			return ScalarProgram.FACT;
+		case TODEG:
+			return ScalarProgram.TODEG;
+		case TORAD:
+			return ScalarProgram.TORAD;
+		default:
+			return -1;
+		}
+	}
+}
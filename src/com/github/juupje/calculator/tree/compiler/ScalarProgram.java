@@ -0,0 +1,343 @@
+package com.github.juupje.calculator.tree.compiler;
+
+import java.util.Arrays;
+
+import com.github.juupje.calculator.algorithms.functions.TrigFunctions;
+import com.github.juupje.calculator.main.VariableHolder;
+import com.github.juupje.calculator.mathobjects.MReal;
+import com.github.juupje.calculator.mathobjects.MathObject;
+import com.github.juupje.calculator.settings.Settings;
+
+/**
+ * A flat representation of a scalar-only expression tree, as created by {@link ScalarCompiler}.
+ * The program is a sequence of instructions operating on a stack of {@code double}s, which
+ * means that it can be evaluated without walking the tree or allocating a {@link MReal} for every node.
+ * <p>
+ * Some operations have a domain on which the tree walker returns something that is not a real number
+ * (like the square root of a negative number when complex numbers are enabled) or throws an exception.
+ * When the program encounters such a case, it throws a {@link Fallback}, after which the caller should evaluate
+ * the original tree instead.
+ * </p>
+ * @author Joep Geuskens
+ */
+public class ScalarProgram implements CompiledFunction {
+
+	// ###### opcodes #######
+	static final int CONST = 0, ARG = 1, GLOBAL = 2;
+	static final int ADD = 3, SUBTRACT = 4, MULTIPLY = 5, DIVIDE = 6, POWER = 7, MOD = 8;
+	static final int NEGATE = 9, INVERT = 10;
+	static final int SIN = 11, COS = 12, TAN = 13, SIND = 14, COSD = 15, TAND = 16;
+	static final int SINH = 17, COSH = 18, TANH = 19, ASIN = 20, ACOS = 21, ATAN = 22;
+	static final int ASINH = 23, ACOSH = 24, ATANH = 25;
+	static final int SQRT = 26, ABS = 27, LN = 28, LOG = 29, EXP = 30, FACT = 31;
+	static final int TODEG = 32, TORAD = 33;
+	static final int STORE = 34, LOAD = 35;
+
+	/**
+	 * The amount of points processed at once by {@link #evaluateBatch(double[][], double[])}.
+	 */
+	static final int CHUNK_SIZE = 256;
+
+	private static final Fallback FALLBACK = new Fallback();
+
+	final int[] code;
+	final double[] constants;
+	final VariableHolder[] globals;
+	final int stackSize;
+	/**
+	 * The number of local slots, in which the values of shared subexpressions are stored by {@link #STORE} (without
+	 * removing them from the stack) and read by {@link #LOAD}.
+	 */
+	final int localCount;
+	final int argCount;
+
+	ScalarProgram(int[] code, double[] constants, VariableHolder[] globals, int stackSize, int localCount, int argCount) {
+		this.code = code;
+		this.constants = constants;
+		this.globals = globals;
+		this.stackSize = stackSize;
+		this.localCount = localCount;
+		this.argCount = argCount;
+	}
+
+	/**
+	 * Runs the program for the given argument values.
+	 * @param args the values of the function parameters, in the order in which they were passed to the compiler.
+	 * @return the result of the program.
+	 * @throws Fallback if the result cannot be calculated as a real number by this program.
+	 */
+	@Override
+	public double evaluate(double... args) {
+		double[] stack = new double[stackSize];
+		double[] locals = localCount == 0 ? null : new double[localCount];
+		int sp = -1;
+		final int[] code = this.code;
+		for (int pc = 0; pc < code.length; pc++) {
+			switch (code[pc]) {
+			case CONST:
+				stack[++sp] = constants[code[++pc]];
+				break;
+			case STORE:
+				locals[code[++pc]] = stack[sp];
+				break;
+			case LOAD:
+				stack[++sp] = locals[code[++pc]];
+				break;
+			case ARG:
+				stack[++sp] = args[code[++pc]];
+				break;
+			case GLOBAL:
+				stack[++sp] = global(globals[code[++pc]]);
+				break;
+			case ADD:
+				sp--;
+				stack[sp] += stack[sp + 1];
+				break;
+			case SUBTRACT:
+				sp--;
+				stack[sp] -= stack[sp + 1];
+				break;
+			case MULTIPLY:
+				sp--;
+				stack[sp] *= stack[sp + 1];
+				break;
+			case DIVIDE:
+				sp--;
+				stack[sp] /= stack[sp + 1];
+				break;
+			case POWER:
+				sp--;
+				stack[sp] = Math.pow(stack[sp], stack[sp + 1]);
+				break;
+			case MOD:
+				sp--;
+				stack[sp] = mod(stack[sp], stack[sp + 1]);
+				break;
+			default:
+				stack[sp] = apply(stack[sp], code[pc]);
+			}
+		}
+		return stack[0];
+	}
+
+	/**
+	 * Runs the program for a batch of argument values. Instead of running the entire program for every point,
+	 * every instruction is applied to a chunk of points at once, with a stack of columns rather than numbers.
+	 * <br/>
+	 * Points for which the program would throw a {@link Fallback} are set to <tt>NaN</tt> and marked in the returned array.
+	 * @param args the values of the parameters. <tt>args[i]</tt> contains the values of the i-th parameter, and should
+	 * have at least the length of <tt>out</tt>.
+	 * @param out the array in which the results will be stored.
+	 * @return <tt>null</tt> if all points were evaluated, otherwise an array in which the points which could not be evaluated
+	 * by this program are <tt>true</tt>.
+	 */
+	public boolean[] evaluateBatch(double[][] args, double[] out) {
+		int n = out.length;
+		double[][] stack = new double[stackSize][Math.min(CHUNK_SIZE, n)];
+		double[][] locals = new double[localCount][Math.min(CHUNK_SIZE, n)];
+		boolean[] failed = null;
+		final int[] code = this.code;
+		for (int start = 0; start < n; start += CHUNK_SIZE) {
+			int len = Math.min(CHUNK_SIZE, n - start);
+			int sp = -1;
+			for (int pc = 0; pc < code.length; pc++) {
+				int op = code[pc];
+				double[] a = null, b = null;
+				if (op >= ADD && op <= MOD) {
+					b = stack[sp--];
+					a = stack[sp];
+				}
+				switch (op) {
+				case CONST:
+					Arrays.fill(stack[++sp], 0, len, constants[code[++pc]]);
+					break;
+				case STORE:
+					System.arraycopy(stack[sp], 0, locals[code[++pc]], 0, len);
+					break;
+				case LOAD:
+					System.arraycopy(locals[code[++pc]], 0, stack[++sp], 0, len);
+					break;
+				case ARG:
+					System.arraycopy(args[code[++pc]], start, stack[++sp], 0, len);
+					break;
+				case GLOBAL:
+					try {
+						Arrays.fill(stack[++sp], 0, len, global(globals[code[++pc]]));
+					} catch (Fallback e) {
+						// this global variable is not a real number, so none of the points can be evaluated.
+						failed = new boolean[n];
+						Arrays.fill(failed, true);
+						Arrays.fill(out, Double.NaN);
+						return failed;
+					}
+					break;
+				case ADD:
+					for (int k = 0; k < len; k++)
+						a[k] += b[k];
+					break;
+				case SUBTRACT:
+					for (int k = 0; k < len; k++)
+						a[k] -= b[k];
+					break;
+				case MULTIPLY:
+					for (int k = 0; k < len; k++)
+						a[k] *= b[k];
+					break;
+				case DIVIDE:
+					for (int k = 0; k < len; k++)
+						a[k] /= b[k];
+					break;
+				case POWER:
+					for (int k = 0; k < len; k++)
+						a[k] = Math.pow(a[k], b[k]);
+					break;
+				case MOD:
+					for (int k = 0; k < len; k++) {
+						try {
+							a[k] = mod(a[k], b[k]);
+						} catch (Fallback e) {
+							a[k] = Double.NaN;
+							failed = markFailed(failed, n, start + k);
+						}
+					}
+					break;
+				case NEGATE:
+					a = stack[sp];
+					for (int k = 0; k < len; k++)
+						a[k] = -a[k];
+					break;
+				default:
+					a = stack[sp];
+					for (int k = 0; k < len; k++) {
+						try {
+							a[k] = apply(a[k], op);
+						} catch (Fallback e) {
+							a[k] = Double.NaN;
+							failed = markFailed(failed, n, start + k);
+						}
+					}
+				}
+			}
+			System.arraycopy(stack[0], 0, out, start, len);
+		}
+		return failed;
+	}
+
+	private static boolean[] markFailed(boolean[] failed, int n, int index) {
+		if (failed == null)
+			failed = new boolean[n];
+		failed[index] = true;
+		return failed;
+	}
+
+	static double mod(double x, double y) {
+		if (!MReal.isInteger(y))
+			throw FALLBACK;
+		return x % y;
+	}
+
+	/**
+	 * Applies a single argument instruction to the given value.
+	 */
+	static double apply(double x, int op) {
+		switch (op) {
+		case NEGATE:
+			return -x;
+		case INVERT:
+			return 1 / x;
+		case SIN:
+			return Math.sin(x);
+		case COS:
+			return Math.cos(x);
+		case TAN:
+			return Math.tan(x);
+		case SIND:
+			return Math.sin(Math.toRadians(x));
+		case COSD:
+			return Math.cos(Math.toRadians(x));
+		case TAND:
+			return Math.tan(Math.toRadians(x));
+		case SINH:
+			return Math.sinh(x);
+		case COSH:
+			return Math.cosh(x);
+		case TANH:
+			return Math.tanh(x);
+		case ASIN:
+			if (x > 1 || x < -1)
+				throw FALLBACK;
+			return Math.asin(x);
+		case ACOS:
+			if (x > 1 || x < -1)
+				throw FALLBACK;
+			return Math.acos(x);
+		case ATAN:
+			return Math.atan(x);
+		case ASINH:
+			return TrigFunctions.asinh(x);
+		case ACOSH:
+			if (x > 1)
+				return TrigFunctions.acosh(x);
+			else if (x == 1)
+				return 0;
+			throw FALLBACK;
+		case ATANH:
+			if (Math.abs(x) < 1)
+				return TrigFunctions.atanh(x);
+			else if (Math.abs(x) == 1)
+				return Double.NaN;
+			throw FALLBACK;
+		case SQRT:
+			if (x < 0 && Settings.getBool(Settings.COMPLEX_ENABLED))
+				throw FALLBACK;
+			return Math.sqrt(x);
+		case ABS:
+			return Math.abs(x);
+		case LN:
+			return Math.log(x);
+		case LOG:
+			return Math.log10(x);
+		case EXP:
+			return Math.exp(x);
+		case FACT:
+			if (!MReal.isInteger(x) || x < 0)
+				throw FALLBACK;
+			double f = 1;
+			for (int i = 2; i <= (int) x; i++)
+				f *= i;
+			return f;
+		case TODEG:
+			return Math.toDegrees(x);
+		case TORAD:
+			return Math.toRadians(x);
+		default:
+			throw new IllegalStateException("Unknown instruction " + op);
+		}
+	}
+
+	static double global(VariableHolder holder) {
+		MathObject mo = holder.get();
+		if (mo != null && mo.getClass() == MReal.class)
+			return ((MReal) mo).getValue();
+		throw FALLBACK;
+	}
+
+	/**
+	 * @return the number of arguments this program expects.
+	 */
+	public int getArgumentCount() {
+		return argCount;
+	}
+
+	/**
+	 * Thrown by {@link CompiledFunction#evaluate(double...)} when the result cannot be calculated using doubles only.
+	 * Because this is used for control flow, a single instance without a stack trace is shared.
+	 */
+	public static class Fallback extends RuntimeException {
+		private static final long serialVersionUID = -2215408163906584542L;
+
+		private Fallback() {
+			super("Compiled program cannot evaluate this input", null, false, false);
+		}
+	}
+}